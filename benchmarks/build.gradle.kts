@@ -0,0 +1,47 @@
+description = "Lucene Index Upgrader - benchmarks"
+
+// Not published, so only the compile settings are shared with the other projects.
+plugins {
+    java
+    id("utf8-workarounds")
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+}
+
+val jmhVersion = "1.37"
+
+dependencies {
+    implementation(project(":core"))
+    // The codec benchmarks call into each version's embedded Lucene directly.
+    (3..9).forEach { version ->
+        implementation(project(":lucene$version"))
+    }
+    implementation("com.google.code.findbugs:jsr305:3.0.2")
+    implementation("org.openjdk.jmh:jmh-core:$jmhVersion")
+    annotationProcessor("org.openjdk.jmh:jmh-generator-annprocess:$jmhVersion")
+}
+
+// Runs the benchmarks and writes the results to build/results/jmh/results.json.
+// Pass a regular expression with -Pjmh.include to run only some of them, and JMH options
+// (e.g. "-p documentCount=100000") with -Pjmh.args.
+val jmh by tasks.registering(JavaExec::class) {
+    group = "verification"
+    description = "Runs the JMH benchmarks."
+    val results = layout.buildDirectory.file("results/jmh/results.json")
+    val fixtures = layout.buildDirectory.dir("fixtures")
+    outputs.file(results)
+    outputs.upToDateWhen { false }
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    // Forked JVMs inherit the system properties, so they all share the generated fixtures.
+    systemProperty("luceneupgrader.fixtures", fixtures.get().asFile.toString())
+    args(listOfNotNull(findProperty("jmh.include")?.toString()))
+    findProperty("jmh.args")?.toString()?.split(" ")?.filter { it.isNotEmpty() }?.let { args(it) }
+    args("-rf", "json", "-rff", results.get().asFile.toString())
+    args("-prof", "gc", "-prof", "org.trypticon.luceneupgrader.benchmark.PeakRssProfiler")
+    doFirst {
+        results.get().asFile.parentFile.mkdirs()
+    }
+}
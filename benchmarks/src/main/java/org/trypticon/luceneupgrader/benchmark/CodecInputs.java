@@ -0,0 +1,101 @@
+package org.trypticon.luceneupgrader.benchmark;
+
+import javax.annotation.Nonnull;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Inputs for the codec benchmarks, the same for every version and every run.
+ */
+final class CodecInputs {
+
+    private static final long SEED = 20240101L;
+
+    /**
+     * The number of values encoded or decoded per invocation: 1024 blocks of postings.
+     */
+    static final int VALUE_COUNT = 128 * 1024;
+
+    /**
+     * The number of bytes compressed or decompressed per invocation.
+     */
+    static final int TEXT_LENGTH = 1024 * 1024;
+
+    /**
+     * The size of each chunk compressed on its own, that of a stored fields block before Lucene 8.
+     */
+    static final int CHUNK_SIZE = 16 * 1024;
+
+    /**
+     * The number of terms added to the FST per invocation.
+     */
+    static final int TERM_COUNT = 100_000;
+
+    private CodecInputs() {
+    }
+
+    /**
+     * Makes evenly distributed values, each fitting in a number of bits.
+     *
+     * @param bitsPerValue the number of bits.
+     * @return {@link #VALUE_COUNT} values.
+     */
+    @Nonnull
+    static long[] longs(int bitsPerValue) {
+        Random random = new Random(SEED + bitsPerValue);
+        long[] values = new long[VALUE_COUNT];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextLong() >>> (64 - bitsPerValue);
+        }
+        return values;
+    }
+
+    /**
+     * Makes text of words drawn from a vocabulary, the common ones far more often than the rest,
+     * so that it compresses about as well as real text.
+     *
+     * @return {@link #TEXT_LENGTH} bytes of text.
+     */
+    @Nonnull
+    static byte[] text() {
+        Random random = new Random(SEED);
+        String[] vocabulary = new String[2_000];
+        for (int i = 0; i < vocabulary.length; i++) {
+            vocabulary[i] = word(random);
+        }
+        StringBuilder text = new StringBuilder(TEXT_LENGTH + 16);
+        while (text.length() < TEXT_LENGTH) {
+            double skew = random.nextDouble();
+            text.append(vocabulary[(int) (vocabulary.length * skew * skew * skew * skew)]).append(' ');
+        }
+        text.setLength(TEXT_LENGTH);
+        return text.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Makes terms for a terms dictionary.
+     *
+     * @return {@link #TERM_COUNT} terms, sorted and unique.
+     */
+    @Nonnull
+    static byte[][] sortedTerms() {
+        Random random = new Random(SEED);
+        // Plain ASCII, so sorting the strings sorts the bytes the same way.
+        TreeSet<String> terms = new TreeSet<>();
+        while (terms.size() < TERM_COUNT) {
+            terms.add(word(random));
+        }
+        return terms.stream()
+                .map(term -> term.getBytes(StandardCharsets.US_ASCII))
+                .toArray(byte[][]::new);
+    }
+
+    private static String word(Random random) {
+        char[] word = new char[3 + random.nextInt(10)];
+        for (int i = 0; i < word.length; i++) {
+            word[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(word);
+    }
+}
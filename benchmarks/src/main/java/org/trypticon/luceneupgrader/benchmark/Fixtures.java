@@ -0,0 +1,138 @@
+package org.trypticon.luceneupgrader.benchmark;
+
+import org.trypticon.luceneupgrader.FileUtils;
+import org.trypticon.luceneupgrader.LuceneVersion;
+import org.trypticon.luceneupgrader.SyntheticIndexConfig;
+import org.trypticon.luceneupgrader.SyntheticIndexConfig.Feature;
+import org.trypticon.luceneupgrader.SyntheticIndexGenerator;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Generated indexes for the benchmarks to upgrade.
+ * <p>
+ * Generating a big index takes longer than upgrading it, so each one is kept in the directory named by
+ * the {@code luceneupgrader.fixtures} system property, and reused by later runs.
+ */
+final class Fixtures {
+
+    /**
+     * The seed every fixture is generated with, so that runs on different releases upgrade the same content.
+     */
+    private static final long SEED = 20240101L;
+
+    /**
+     * The mix of content in a fixture.
+     */
+    enum Shape {
+
+        /**
+         * Text alone, which puts all the work into the postings.
+         */
+        TEXT(EnumSet.noneOf(Feature.class), 0),
+
+        /**
+         * Text with stored fields and term vectors, which puts most of the work into copying them.
+         */
+        STORED(EnumSet.of(Feature.STORED_FIELDS, Feature.TERM_VECTORS), 0),
+
+        /**
+         * Numbers indexed every way the version can, with only a few words of text.
+         */
+        NUMERIC(EnumSet.of(Feature.TRIE_FIELDS, Feature.DOC_VALUES, Feature.POINTS), 0),
+
+        /**
+         * Everything, including deletions for the merge to purge.
+         */
+        MIXED(EnumSet.allOf(Feature.class), 0.1);
+
+        private final EnumSet<Feature> features;
+
+        private final double deletionRatio;
+
+        Shape(EnumSet<Feature> features, double deletionRatio) {
+            this.features = features;
+            this.deletionRatio = deletionRatio;
+        }
+
+        SyntheticIndexConfig createConfig(int documentCount) {
+            return new SyntheticIndexConfig()
+                    .setFeatures(features)
+                    .setDeletionRatio(deletionRatio)
+                    .setWordsPerDocument(this == NUMERIC ? 5 : 200)
+                    .setDocumentCount(documentCount)
+                    .setSeed(SEED);
+        }
+    }
+
+    private Fixtures() {
+    }
+
+    /**
+     * Gets a fixture, generating it if it hasn't been generated before.
+     *
+     * @param version the version of the index.
+     * @param shape the mix of content.
+     * @param documentCount the number of documents.
+     * @return the directory containing the index. It must not be modified.
+     * @throws IOException if an error occurs generating the index.
+     */
+    @Nonnull
+    static Path get(@Nonnull LuceneVersion version, @Nonnull Shape shape, int documentCount) throws IOException {
+        Path root = Path.of(System.getProperty("luceneupgrader.fixtures",
+                                               System.getProperty("java.io.tmpdir") + "/luceneupgrader-fixtures"));
+        Path fixture = root.resolve(shape.name().toLowerCase(Locale.ROOT) + "-" + documentCount +
+                                    "-" + version.getNumber());
+        if (!Files.isDirectory(fixture)) {
+            // Generated beside the final location and moved in when complete, so an interrupted run
+            // doesn't leave half an index behind to be reused.
+            Path partial = root.resolve(fixture.getFileName() + ".partial");
+            if (Files.exists(partial)) {
+                FileUtils.insecureRecursiveDelete(partial);
+            }
+            new SyntheticIndexGenerator(shape.createConfig(documentCount)).generate(partial, version);
+            Files.move(partial, fixture, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return fixture;
+    }
+
+    /**
+     * Copies a fixture somewhere it can be upgraded.
+     *
+     * @param fixture the fixture.
+     * @param destination the directory to copy it to, which must not exist.
+     * @throws IOException if an error occurs copying the files.
+     */
+    static void copy(@Nonnull Path fixture, @Nonnull Path destination) throws IOException {
+        Files.createDirectories(destination);
+        try (Stream<Path> files = Files.list(fixture)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, destination.resolve(file.getFileName()));
+            }
+        }
+    }
+
+    /**
+     * Adds up the sizes of the files in a fixture.
+     *
+     * @param fixture the fixture.
+     * @return the size in bytes.
+     * @throws IOException if an error occurs reading the sizes.
+     */
+    static long sizeOf(@Nonnull Path fixture) throws IOException {
+        long size = 0;
+        try (Stream<Path> files = Files.list(fixture)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                size += Files.size(file);
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,53 @@
+package org.trypticon.luceneupgrader.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures decoding blocks of postings with {@code ForUtil}: Lucene50 in Lucene 5, Lucene84 in Lucene 8
+ * and Lucene90 in Lucene 9. The score is values decoded per microsecond.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ForUtilBenchmark {
+
+    @Param({ "5", "8", "9" })
+    public int version;
+
+    @Param({ "4", "12", "20" })
+    public int bitsPerValue;
+
+
+    private Kernel decode;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Kernels kernels = Kernels.forVersion(version);
+        decode = kernels.forDecode(CodecInputs.longs(bitsPerValue), bitsPerValue);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CodecInputs.VALUE_COUNT)
+    public void decode(Blackhole blackhole) throws IOException {
+        blackhole.consume(decode.run());
+    }
+}
@@ -0,0 +1,49 @@
+package org.trypticon.luceneupgrader.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building an FST from sorted terms, as writing the terms dictionary does, with {@code Builder}
+ * up to Lucene 8 and {@code FSTCompiler} in Lucene 9. The score is terms added per microsecond.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FstBenchmark {
+
+    @Param({ "3", "4", "5", "6", "7", "8", "9" })
+    public int version;
+
+    private Kernel build;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Kernels kernels = Kernels.forVersion(version);
+        build = kernels.fstBuild(CodecInputs.sortedTerms());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CodecInputs.TERM_COUNT)
+    public void build(Blackhole blackhole) throws IOException {
+        blackhole.consume(build.run());
+    }
+}
@@ -0,0 +1,22 @@
+package org.trypticon.luceneupgrader.benchmark;
+
+import java.io.IOException;
+
+/**
+ * One pass of a codec's inner loop over inputs prepared ahead of time.
+ * <p>
+ * Public because the kernels for classes which are private to their package in Lucene have to live
+ * in that package.
+ */
+@FunctionalInterface
+public interface Kernel {
+
+    /**
+     * Runs the loop once.
+     *
+     * @return something derived from the output, for the benchmark to consume so that the work
+     *         can't be optimised away.
+     * @throws IOException if an error occurs. Everything is in memory, so it shouldn't.
+     */
+    Object run() throws IOException;
+}
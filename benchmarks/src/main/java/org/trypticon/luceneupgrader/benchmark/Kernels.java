@@ -0,0 +1,157 @@
+package org.trypticon.luceneupgrader.benchmark;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+
+/**
+ * Builds the codec kernels for one embedded version of Lucene, all from the same inputs, so that the
+ * same loop can be timed across versions.
+ * <p>
+ * Each method prepares anything the loop reads (e.g. encoding the values for a decoder) before
+ * returning, so only the loop itself is timed. Versions which don't have a codec throw
+ * {@link UnsupportedOperationException}.
+ */
+interface Kernels {
+
+    /**
+     * Gets the kernels for a version.
+     *
+     * @param version the major version of Lucene.
+     * @return the kernels.
+     * @throws IllegalArgumentException if there's no embedded copy of that version.
+     */
+    @Nonnull
+    static Kernels forVersion(int version) {
+        switch (version) {
+            case 3:
+                return new Kernels3();
+            case 4:
+                return new Kernels4();
+            case 5:
+                return new Kernels5();
+            case 6:
+                return new Kernels6();
+            case 7:
+                return new Kernels7();
+            case 8:
+                return new Kernels8();
+            case 9:
+                return new Kernels9();
+            default:
+                throw new IllegalArgumentException("No embedded copy of Lucene " + version);
+        }
+    }
+
+    /**
+     * Gets the version these are the kernels for.
+     *
+     * @return the major version of Lucene.
+     */
+    int getVersion();
+
+    /**
+     * Decodes blocks of postings with the frame of reference encoding ({@code ForUtil}).
+     *
+     * @param values the values, a multiple of 128 of them, each fitting in {@code bitsPerValue} bits.
+     * @param bitsPerValue the number of bits per value.
+     * @return the kernel.
+     * @throws IOException if an error occurs preparing the inputs.
+     */
+    @Nonnull
+    default Kernel forDecode(@Nonnull long[] values, int bitsPerValue) throws IOException {
+        throw unsupported("ForUtil");
+    }
+
+    /**
+     * Decodes blocks of postings with the patched frame of reference encoding ({@code PForUtil}).
+     *
+     * @param values the values, a multiple of 128 of them, each fitting in {@code bitsPerValue} bits.
+     * @param bitsPerValue the number of bits per value.
+     * @return the kernel.
+     * @throws IOException if an error occurs preparing the inputs.
+     */
+    @Nonnull
+    default Kernel pforDecode(@Nonnull long[] values, int bitsPerValue) throws IOException {
+        throw unsupported("PForUtil");
+    }
+
+    /**
+     * Compresses chunks of stored fields with LZ4, as {@code CompressionMode.FAST} does.
+     *
+     * @param data the data, a multiple of {@code chunkSize} long.
+     * @param chunkSize the size of each chunk compressed on its own.
+     * @return the kernel.
+     * @throws IOException if an error occurs preparing the inputs.
+     */
+    @Nonnull
+    default Kernel lz4Compress(@Nonnull byte[] data, int chunkSize) throws IOException {
+        throw unsupported("LZ4");
+    }
+
+    /**
+     * Decompresses chunks compressed with LZ4, as {@code CompressionMode.FAST} does.
+     *
+     * @param data the data to compress first, a multiple of {@code chunkSize} long.
+     * @param chunkSize the size of each chunk compressed on its own.
+     * @return the kernel.
+     * @throws IOException if an error occurs preparing the inputs.
+     */
+    @Nonnull
+    default Kernel lz4Decompress(@Nonnull byte[] data, int chunkSize) throws IOException {
+        throw unsupported("LZ4");
+    }
+
+    /**
+     * Builds an FST mapping each term to its ordinal, as the terms dictionary does.
+     *
+     * @param terms the terms, sorted and unique.
+     * @return the kernel.
+     * @throws IOException if an error occurs preparing the inputs.
+     */
+    @Nonnull
+    default Kernel fstBuild(@Nonnull byte[][] terms) throws IOException {
+        throw unsupported("FST");
+    }
+
+    /**
+     * Writes a one-dimensional BKD tree of longs, one per document, as a {@code LongPoint} field does.
+     *
+     * @param values the values.
+     * @return the kernel.
+     * @throws IOException if an error occurs preparing the inputs.
+     */
+    @Nonnull
+    default Kernel bkdWrite(@Nonnull long[] values) throws IOException {
+        throw unsupported("BKDWriter");
+    }
+
+    /**
+     * Writes values with {@code DirectWriter}, as numeric doc values do.
+     *
+     * @param values the values, each fitting in {@code bitsPerValue} bits.
+     * @param bitsPerValue the number of bits per value, which must be one {@code DirectWriter} supports.
+     * @return the kernel.
+     * @throws IOException if an error occurs preparing the inputs.
+     */
+    @Nonnull
+    default Kernel directWrite(@Nonnull long[] values, int bitsPerValue) throws IOException {
+        throw unsupported("DirectWriter");
+    }
+
+    /**
+     * Decodes packed values with the {@code BulkOperation} for the number of bits.
+     *
+     * @param values the values, a multiple of 64 of them, each fitting in {@code bitsPerValue} bits.
+     * @param bitsPerValue the number of bits per value.
+     * @return the kernel.
+     * @throws IOException if an error occurs preparing the inputs.
+     */
+    @Nonnull
+    default Kernel packedDecode(@Nonnull long[] values, int bitsPerValue) throws IOException {
+        throw unsupported("BulkOperation");
+    }
+
+    private UnsupportedOperationException unsupported(String codec) {
+        return new UnsupportedOperationException("Lucene " + getVersion() + " has no " + codec);
+    }
+}
@@ -0,0 +1,34 @@
+package org.trypticon.luceneupgrader.benchmark;
+
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.util.BytesRef;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.util.IntsRef;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.util.fst.Builder;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.util.fst.FST;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.util.fst.PositiveIntOutputs;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.util.fst.Util;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Kernels for Lucene 3, which only has the FST of the codecs measured.
+ */
+final class Kernels3 implements Kernels {
+
+    @Override
+    public int getVersion() {
+        return 3;
+    }
+
+    @Nonnull
+    @Override
+    public Kernel fstBuild(@Nonnull byte[][] terms) {
+        return () -> {
+            Builder<Long> builder = new Builder<>(FST.INPUT_TYPE.BYTE1, PositiveIntOutputs.getSingleton(true));
+            IntsRef scratch = new IntsRef();
+            for (int i = 0; i < terms.length; i++) {
+                builder.add(Util.toIntsRef(new BytesRef(terms[i]), scratch), (long) i);
+            }
+            return builder.finish();
+        };
+    }
+}
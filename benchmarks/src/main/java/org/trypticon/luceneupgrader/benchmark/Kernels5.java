@@ -0,0 +1,123 @@
+package org.trypticon.luceneupgrader.benchmark;
+
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.codecs.compressing.CompressionMode;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.codecs.compressing.Compressor;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.codecs.compressing.Decompressor;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.codecs.lucene50.ForUtilKernels;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.store.ByteArrayDataInput;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.store.ByteArrayDataOutput;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.store.RAMOutputStream;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.util.BytesRef;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.util.IntsRefBuilder;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.util.fst.Builder;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.util.fst.FST;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.util.fst.PositiveIntOutputs;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.util.fst.Util;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.util.packed.DirectWriter;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.util.packed.PackedInts;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Kernels for Lucene 5.
+ */
+final class Kernels5 implements Kernels {
+
+    @Override
+    public int getVersion() {
+        return 5;
+    }
+
+    @Nonnull
+    @Override
+    public Kernel forDecode(@Nonnull long[] values, int bitsPerValue) throws IOException {
+        // The number of bits comes from the largest value in each block.
+        return ForUtilKernels.forDecode(values);
+    }
+
+    @Nonnull
+    @Override
+    public Kernel lz4Compress(@Nonnull byte[] data, int chunkSize) {
+        Compressor compressor = CompressionMode.FAST.newCompressor();
+        byte[] compressed = new byte[chunkSize * 2];
+        return () -> {
+            long total = 0;
+            for (int offset = 0; offset < data.length; offset += chunkSize) {
+                ByteArrayDataOutput out = new ByteArrayDataOutput(compressed);
+                compressor.compress(data, offset, chunkSize, out);
+                total += out.getPosition();
+            }
+            return total;
+        };
+    }
+
+    @Nonnull
+    @Override
+    public Kernel lz4Decompress(@Nonnull byte[] data, int chunkSize) throws IOException {
+        Compressor compressor = CompressionMode.FAST.newCompressor();
+        byte[][] chunks = new byte[data.length / chunkSize][];
+        byte[] compressed = new byte[chunkSize * 2];
+        for (int i = 0; i < chunks.length; i++) {
+            ByteArrayDataOutput out = new ByteArrayDataOutput(compressed);
+            compressor.compress(data, i * chunkSize, chunkSize, out);
+            chunks[i] = Arrays.copyOf(compressed, out.getPosition());
+        }
+        Decompressor decompressor = CompressionMode.FAST.newDecompressor();
+        BytesRef bytes = new BytesRef();
+        return () -> {
+            long total = 0;
+            for (byte[] chunk : chunks) {
+                decompressor.decompress(new ByteArrayDataInput(chunk), chunkSize, 0, chunkSize, bytes);
+                total += bytes.length;
+            }
+            return total;
+        };
+    }
+
+    @Nonnull
+    @Override
+    public Kernel fstBuild(@Nonnull byte[][] terms) {
+        return () -> {
+            Builder<Long> builder = new Builder<>(FST.INPUT_TYPE.BYTE1, PositiveIntOutputs.getSingleton());
+            IntsRefBuilder scratch = new IntsRefBuilder();
+            for (int i = 0; i < terms.length; i++) {
+                builder.add(Util.toIntsRef(new BytesRef(terms[i]), scratch), (long) i);
+            }
+            return builder.finish();
+        };
+    }
+
+    @Nonnull
+    @Override
+    public Kernel directWrite(@Nonnull long[] values, int bitsPerValue) {
+        RAMOutputStream out = new RAMOutputStream();
+        return () -> {
+            out.reset();
+            DirectWriter writer = DirectWriter.getInstance(out, values.length, bitsPerValue);
+            for (long value : values) {
+                writer.add(value);
+            }
+            writer.finish();
+            return out.getFilePointer();
+        };
+    }
+
+    @Nonnull
+    @Override
+    public Kernel packedDecode(@Nonnull long[] values, int bitsPerValue) {
+        PackedInts.Encoder encoder = PackedInts.getEncoder(
+                PackedInts.Format.PACKED, PackedInts.VERSION_CURRENT, bitsPerValue);
+        PackedInts.Decoder decoder = PackedInts.getDecoder(
+                PackedInts.Format.PACKED, PackedInts.VERSION_CURRENT, bitsPerValue);
+        int iterations = values.length / decoder.longValueCount();
+        long[] blocks = new long[iterations * decoder.longBlockCount()];
+        encoder.encode(values, 0, blocks, 0, iterations);
+        long[] decoded = new long[values.length];
+        return () -> {
+            decoder.decode(blocks, 0, decoded, 0, iterations);
+            return decoded;
+        };
+    }
+}
@@ -0,0 +1,60 @@
+package org.trypticon.luceneupgrader.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the LZ4 used for stored fields and term vectors: {@code codecs.compressing.LZ4} up to Lucene 7
+ * and {@code util.compress.LZ4} from Lucene 8. The text is compressed in 16KB chunks, each on its own.
+ * The score is bytes of text per microsecond, i.e. megabytes per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class Lz4Benchmark {
+
+    @Param({ "4", "5", "6", "7", "8", "9" })
+    public int version;
+
+    private Kernel compress;
+
+    private Kernel decompress;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Kernels kernels = Kernels.forVersion(version);
+        byte[] text = CodecInputs.text();
+        compress = kernels.lz4Compress(text, CodecInputs.CHUNK_SIZE);
+        decompress = kernels.lz4Decompress(text, CodecInputs.CHUNK_SIZE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CodecInputs.TEXT_LENGTH)
+    public void compress(Blackhole blackhole) throws IOException {
+        blackhole.consume(compress.run());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CodecInputs.TEXT_LENGTH)
+    public void decompress(Blackhole blackhole) throws IOException {
+        blackhole.consume(decompress.run());
+    }
+}
@@ -0,0 +1,63 @@
+package org.trypticon.luceneupgrader.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the packed integer code behind doc values and norms: writing with {@code DirectWriter}, and
+ * decoding with the {@code BulkOperation} for the number of bits. The score is values per microsecond.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PackedBenchmark {
+
+    @Param({ "4", "5", "6", "7", "8", "9" })
+    public int version;
+
+    @Param({ "4", "12", "20" })
+    public int bitsPerValue;
+
+
+    private Kernel directWrite;
+
+    private Kernel bulkDecode;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Kernels kernels = Kernels.forVersion(version);
+        long[] values = CodecInputs.longs(bitsPerValue);
+        directWrite = kernels.directWrite(values, bitsPerValue);
+        bulkDecode = kernels.packedDecode(values, bitsPerValue);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CodecInputs.VALUE_COUNT)
+    public void directWrite(Blackhole blackhole) throws IOException {
+        blackhole.consume(directWrite.run());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CodecInputs.VALUE_COUNT)
+    public void bulkDecode(Blackhole blackhole) throws IOException {
+        blackhole.consume(bulkDecode.run());
+    }
+}
@@ -0,0 +1,64 @@
+package org.trypticon.luceneupgrader.benchmark;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Reports the peak resident set size of the benchmark JVM, as {@code rss.peak} in megabytes.
+ * <p>
+ * The peak covers the life of the JVM, and JMH forks a new one for each set of parameters, so it's the
+ * peak for that benchmark alone. It's read from {@code /proc/self/status}, so it's only reported on Linux.
+ */
+public class PeakRssProfiler implements InternalProfiler {
+
+    private static final Path STATUS = Path.of("/proc/self/status");
+
+    @Override
+    public String getDescription() {
+        return "Peak resident set size of the benchmark JVM (Linux only)";
+    }
+
+    @Override
+    public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+    }
+
+    @Override
+    public Collection<? extends Result> afterIteration(BenchmarkParams benchmarkParams,
+                                                       IterationParams iterationParams,
+                                                       IterationResult result) {
+        long kilobytes = readPeakKilobytes();
+        if (kilobytes < 0) {
+            return List.of();
+        }
+        return List.of(new ScalarResult("rss.peak", kilobytes / 1024.0, "MB", AggregationPolicy.MAX));
+    }
+
+    /**
+     * Reads the {@code VmHWM} line, which is the peak resident set size.
+     *
+     * @return the size in kilobytes, or -1 if it couldn't be read.
+     */
+    private static long readPeakKilobytes() {
+        try {
+            for (String line : Files.readAllLines(STATUS)) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.substring("VmHWM:".length()).replace("kB", "").trim());
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Not Linux, or not a format we know.
+        }
+        return -1;
+    }
+}
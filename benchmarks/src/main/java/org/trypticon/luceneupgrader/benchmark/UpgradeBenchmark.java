@@ -0,0 +1,110 @@
+package org.trypticon.luceneupgrader.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.trypticon.luceneupgrader.FileUtils;
+import org.trypticon.luceneupgrader.IndexUpgrader;
+import org.trypticon.luceneupgrader.LuceneVersion;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how fast each upgrade step rewrites an index, and how fast the whole chain does.
+ * <p>
+ * Each invocation upgrades a fresh copy of a generated fixture, copied before the clock starts.
+ * A hop of {@code 6-7} runs only the step to Lucene 7; {@code 3-9} runs every step. Besides the
+ * upgrades per second, the results have the rates of {@code megabytes} (of the source index) and
+ * {@code documents} rewritten per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class UpgradeBenchmark {
+
+    @Param({ "3-4", "4-5", "5-6", "6-7", "7-8", "8-9", "3-9" })
+    public String hop;
+
+    /**
+     * The name of a {@link Fixtures.Shape}: {@code TEXT}, {@code STORED}, {@code NUMERIC} or {@code MIXED}.
+     */
+    @Param({ "TEXT", "MIXED" })
+    public String shape;
+
+    @Param({ "10000" })
+    public int documentCount;
+
+    private LuceneVersion destination;
+
+    private Path fixture;
+
+    private long fixtureSize;
+
+    private Path work;
+
+    private Path index;
+
+    /**
+     * The amount rewritten, which JMH reports as rates alongside the upgrades per second.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Rewritten {
+        public double megabytes;
+        public long documents;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            megabytes = 0;
+            documents = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws IOException {
+        String[] versions = hop.split("-");
+        LuceneVersion source = LuceneVersion.findByNumber(Integer.parseInt(versions[0]));
+        destination = LuceneVersion.findByNumber(Integer.parseInt(versions[1]));
+        fixture = Fixtures.get(source, Fixtures.Shape.valueOf(shape), documentCount);
+        fixtureSize = Fixtures.sizeOf(fixture);
+        work = Files.createTempDirectory("upgrade-benchmark");
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation() throws IOException {
+        index = work.resolve("index");
+        if (Files.exists(index)) {
+            FileUtils.insecureRecursiveDelete(index);
+        }
+        Fixtures.copy(fixture, index);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() throws IOException {
+        FileUtils.insecureRecursiveDelete(work);
+    }
+
+    @Benchmark
+    public void upgrade(Rewritten rewritten) throws IOException {
+        new IndexUpgrader(index).upgradeTo(destination);
+        rewritten.megabytes += fixtureSize / 1_000_000.0;
+        rewritten.documents += documentCount;
+    }
+}
@@ -0,0 +1,56 @@
+package org.trypticon.luceneupgrader.lucene5.internal.lucene.codecs.lucene50;
+
+import org.trypticon.luceneupgrader.benchmark.Kernel;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.store.IOContext;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.store.IndexInput;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.store.IndexOutput;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.store.RAMDirectory;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.util.packed.PackedInts;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+
+import static org.trypticon.luceneupgrader.lucene5.internal.lucene.codecs.lucene50.Lucene50PostingsFormat.BLOCK_SIZE;
+
+/**
+ * Kernels for {@link ForUtil}, which can only be used from this package.
+ */
+public final class ForUtilKernels {
+
+    private ForUtilKernels() {
+    }
+
+    /**
+     * Decodes blocks written the way the postings writer writes them.
+     *
+     * @param values the values, a multiple of 128 of them, each fitting in an {@code int}.
+     * @return the kernel.
+     * @throws IOException if an error occurs encoding the values.
+     */
+    @Nonnull
+    public static Kernel forDecode(@Nonnull long[] values) throws IOException {
+        RAMDirectory directory = new RAMDirectory();
+        int[] data = new int[ForUtil.MAX_DATA_SIZE];
+        byte[] encoded = new byte[ForUtil.MAX_ENCODED_SIZE];
+        try (IndexOutput out = directory.createOutput("for", IOContext.DEFAULT)) {
+            ForUtil forUtil = new ForUtil(PackedInts.COMPACT, out);
+            for (int offset = 0; offset < values.length; offset += BLOCK_SIZE) {
+                for (int i = 0; i < BLOCK_SIZE; i++) {
+                    data[i] = (int) values[offset + i];
+                }
+                forUtil.writeBlock(data, encoded, out);
+            }
+        }
+        IndexInput in = directory.openInput("for", IOContext.DEFAULT);
+        ForUtil forUtil = new ForUtil(in);
+        long start = in.getFilePointer();
+        int blockCount = values.length / BLOCK_SIZE;
+        return () -> {
+            in.seek(start);
+            for (int i = 0; i < blockCount; i++) {
+                forUtil.readBlock(in, encoded, data);
+            }
+            return data;
+        };
+    }
+}
@@ -0,0 +1,75 @@
+package org.trypticon.luceneupgrader.lucene8.internal.lucene.codecs.lucene84;
+
+import org.trypticon.luceneupgrader.benchmark.Kernel;
+import org.trypticon.luceneupgrader.lucene8.internal.lucene.store.ByteBuffersDataInput;
+import org.trypticon.luceneupgrader.lucene8.internal.lucene.store.ByteBuffersDataOutput;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+
+import static org.trypticon.luceneupgrader.lucene8.internal.lucene.codecs.lucene84.ForUtil.BLOCK_SIZE;
+
+/**
+ * Kernels for {@link ForUtil} and {@link PForUtil}, which can only be used from this package.
+ */
+public final class ForUtilKernels {
+
+    private ForUtilKernels() {
+    }
+
+    /**
+     * Decodes blocks encoded with {@link ForUtil}.
+     *
+     * @param values the values, a multiple of 128 of them, each fitting in {@code bitsPerValue} bits.
+     * @param bitsPerValue the number of bits per value.
+     * @return the kernel.
+     * @throws IOException if an error occurs encoding the values.
+     */
+    @Nonnull
+    public static Kernel forDecode(@Nonnull long[] values, int bitsPerValue) throws IOException {
+        ForUtil forUtil = new ForUtil();
+        ByteBuffersDataOutput out = new ByteBuffersDataOutput();
+        long[] block = new long[BLOCK_SIZE];
+        for (int offset = 0; offset < values.length; offset += BLOCK_SIZE) {
+            // Encoding overwrites the block, so it gets a copy.
+            System.arraycopy(values, offset, block, 0, BLOCK_SIZE);
+            forUtil.encode(block, bitsPerValue, out);
+        }
+        ByteBuffersDataInput in = out.toDataInput();
+        int blockCount = values.length / BLOCK_SIZE;
+        return () -> {
+            in.seek(0);
+            for (int i = 0; i < blockCount; i++) {
+                forUtil.decode(bitsPerValue, in, block);
+            }
+            return block;
+        };
+    }
+
+    /**
+     * Decodes blocks encoded with {@link PForUtil}.
+     *
+     * @param values the values, a multiple of 128 of them.
+     * @return the kernel.
+     * @throws IOException if an error occurs encoding the values.
+     */
+    @Nonnull
+    public static Kernel pforDecode(@Nonnull long[] values) throws IOException {
+        PForUtil pforUtil = new PForUtil(new ForUtil());
+        ByteBuffersDataOutput out = new ByteBuffersDataOutput();
+        long[] block = new long[BLOCK_SIZE];
+        for (int offset = 0; offset < values.length; offset += BLOCK_SIZE) {
+            System.arraycopy(values, offset, block, 0, BLOCK_SIZE);
+            pforUtil.encode(block, out);
+        }
+        ByteBuffersDataInput in = out.toDataInput();
+        int blockCount = values.length / BLOCK_SIZE;
+        return () -> {
+            in.seek(0);
+            for (int i = 0; i < blockCount; i++) {
+                pforUtil.decode(in, block);
+            }
+            return block;
+        };
+    }
+}
@@ -1,23 +1,15 @@
-
-version = "0.7.0-SNAPSHOT"
-group = "garden.ephemeral.luceneupgrader"
 description = "Lucene Index Upgrader"
 
 plugins {
     application
-    `maven-publish`
-    signing
-    `utf8-workarounds`
-}
-
-java {
-    sourceCompatibility = JavaVersion.VERSION_11
-    //withJavadocJar()
-    withSourcesJar()
+    `luceneupgrader-publishing`
 }
 
 dependencies {
-    implementation("com.google.code.findbugs:jsr305:3.0.2")
+    api(project(":core"))
+    (3..9).forEach { version ->
+        runtimeOnly(project(":lucene$version"))
+    }
 
     testImplementation("junit:junit:4.13.2")
     testImplementation("org.hamcrest:hamcrest-library:2.2")
@@ -27,10 +19,6 @@ application {
     mainClass.set("org.trypticon.luceneupgrader.cli.Main")
 }
 
-//tasks.javadoc {
-//    exclude("**/internal/**/*.java")
-//}
-
 tasks.jar {
     manifest {
         // Gradle's application plugin doesn't add this for us :(
@@ -38,64 +26,77 @@ tasks.jar {
     }
 }
 
-publishing {
-    publications {
-        register("mavenJava", MavenPublication::class) {
-            from(components["java"])
-
-            pom {
-                name.set(project.name)
-                url.set("https://github.com/trejkaz/luceneupgrader")
-                description.set(project.description)
-
-                licenses {
-                    license {
-                        name.set("The Apache Software License, Version 2.0")
-                        url.set("https://www.apache.org/licenses/LICENSE-2.0.txt")
-                    }
-                }
-
-                scm {
-                    url.set("https://github.com/trejkaz/luceneupgrader")
-                    connection.set("git@github.com:trejkaz/luceneupgrader")
-                    developerConnection.set("scm:git:git@github.com:trejkaz/luceneupgrader")
-                }
-
-                issueManagement {
-                    system.set("GitHub Issues")
-                    url.set("https://github.com/trejkaz/luceneupgrader/issues")
-                }
-
-                developers {
-                    developer {
-                        name.set("Hakanai")
-                        email.set("hakanai@ephemeral.garden")
-                        roles.add("Project Lead")
-                    }
+// Every module registers its support under the same service file, and the vendored copies of Lucene
+// have service files of their own, so the service files are merged for the uber-jar.
+val uberJarServices by tasks.registering {
+    val outputDir = layout.buildDirectory.dir("uber-jar-services")
+    inputs.files(configurations.runtimeClasspath)
+    outputs.dir(outputDir)
+    doLast {
+        val services = sortedMapOf<String, MutableSet<String>>()
+        inputs.files.filter { it.name.endsWith(".jar") }.forEach { jar ->
+            zipTree(jar).matching { include("META-INF/services/*") }.visit {
+                if (!isDirectory) {
+                    services.getOrPut(name) { linkedSetOf() }
+                        .addAll(file.readLines().map(String::trim).filter { it.isNotEmpty() && !it.startsWith("#") })
                 }
             }
         }
+        val servicesDir = outputDir.get().dir("META-INF/services").asFile
+        delete(servicesDir)
+        servicesDir.mkdirs()
+        services.forEach { (name, providers) ->
+            servicesDir.resolve(name).writeText(providers.joinToString("\n", postfix = "\n"))
+        }
     }
+}
 
-    repositories {
-        val repoUrl = if (version.toString().contains("SNAPSHOT")) {
-            "https://s01.oss.sonatype.org/content/repositories/snapshots/"
-        } else {
-            "https://s01.oss.sonatype.org/service/local/staging/deploy/maven2/"
-        }
-        maven(repoUrl) {
-            val user = System.getenv("DEPLOY_USER")
-            val pass = System.getenv("DEPLOY_PASS")
-            if (user != null && pass != null) {
-                credentials {
-                    username = user
-                    password = pass
-                }
-            }
-        }
+// The CLI with the core and every version of Lucene, runnable with java -jar.
+val uberJar by tasks.registering(Jar::class) {
+    group = "build"
+    description = "Assembles a jar containing the CLI and everything it needs."
+    archiveClassifier.set("all")
+    manifest {
+        attributes["Main-Class"] = application.mainClass.get()
     }
+    from(sourceSets.main.map { it.output })
+    from(uberJarServices)
+    dependsOn(configurations.runtimeClasspath)
+    from({ configurations.runtimeClasspath.get().filter { it.name.endsWith(".jar") }.map { zipTree(it) } }) {
+        exclude("META-INF/MANIFEST.MF", "META-INF/services/**")
+    }
+    duplicatesStrategy = DuplicatesStrategy.EXCLUDE
+}
+
+tasks.assemble {
+    dependsOn(uberJar)
+}
+
+publishing {
+    publications.named<MavenPublication>("mavenJava") {
+        artifact(uberJar)
+    }
+}
+
+// An AppCDS archive of the classes loaded while upgrading an index from Lucene 3 all the way up,
+// so that the JVM can map them in at startup instead of loading and verifying them each run.
+// Needs JDK 13 or later, both to build and to use.
+val cdsTrainingIndex by tasks.registering(Sync::class) {
+    from(zipTree("src/test/resources/lucene-3.6.2-nonempty.zip"))
+    into(layout.buildDirectory.dir("cds/training-index"))
 }
 
-signing {
-    sign(publishing.publications["mavenJava"])
+val cdsArchive by tasks.registering(JavaExec::class) {
+    group = "build"
+    description = "Creates an AppCDS archive for the jar."
+    dependsOn(cdsTrainingIndex)
+    val archiveFile = layout.buildDirectory.file("cds/luceneupgrader.jsa")
+    val trainingIndex = layout.buildDirectory.dir("cds/training-index")
+    inputs.files(uberJar)
+    outputs.file(archiveFile)
+    // The archive only matches the jar when the classpath is just the jar itself, as with -jar.
+    classpath = files(uberJar)
+    mainClass.set(application.mainClass)
+    jvmArgs("-XX:ArchiveClassesAtExit=${archiveFile.get().asFile}")
+    args("upgrade", trainingIndex.get().asFile.toString(), "9")
 }
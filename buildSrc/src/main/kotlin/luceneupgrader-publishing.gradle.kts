@@ -0,0 +1,91 @@
+// Settings shared by every published project: the CLI, the core and the module for each version of Lucene.
+
+plugins {
+    `java-library`
+    `maven-publish`
+    signing
+    id("utf8-workarounds")
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    //withJavadocJar()
+    withSourcesJar()
+}
+
+base {
+    if (project != rootProject) {
+        archivesName.set("${rootProject.name}-${project.name}")
+    }
+}
+
+dependencies {
+    implementation("com.google.code.findbugs:jsr305:3.0.2")
+}
+
+//tasks.javadoc {
+//    exclude("**/internal/**/*.java")
+//}
+
+publishing {
+    publications {
+        register("mavenJava", MavenPublication::class) {
+            from(components["java"])
+            artifactId = base.archivesName.get()
+
+            pom {
+                name.set(base.archivesName)
+                url.set("https://github.com/trejkaz/luceneupgrader")
+                description.set(provider { project.description })
+
+                licenses {
+                    license {
+                        name.set("The Apache Software License, Version 2.0")
+                        url.set("https://www.apache.org/licenses/LICENSE-2.0.txt")
+                    }
+                }
+
+                scm {
+                    url.set("https://github.com/trejkaz/luceneupgrader")
+                    connection.set("git@github.com:trejkaz/luceneupgrader")
+                    developerConnection.set("scm:git:git@github.com:trejkaz/luceneupgrader")
+                }
+
+                issueManagement {
+                    system.set("GitHub Issues")
+                    url.set("https://github.com/trejkaz/luceneupgrader/issues")
+                }
+
+                developers {
+                    developer {
+                        name.set("Hakanai")
+                        email.set("hakanai@ephemeral.garden")
+                        roles.add("Project Lead")
+                    }
+                }
+            }
+        }
+    }
+
+    repositories {
+        val repoUrl = if (version.toString().contains("SNAPSHOT")) {
+            "https://s01.oss.sonatype.org/content/repositories/snapshots/"
+        } else {
+            "https://s01.oss.sonatype.org/service/local/staging/deploy/maven2/"
+        }
+        maven(repoUrl) {
+            val user = System.getenv("DEPLOY_USER")
+            val pass = System.getenv("DEPLOY_PASS")
+            if (user != null && pass != null) {
+                credentials {
+                    username = user
+                    password = pass
+                }
+            }
+        }
+    }
+}
+
+signing {
+    sign(publishing.publications["mavenJava"])
+}
@@ -0,0 +1,5 @@
+description = "Lucene Index Upgrader - core"
+
+plugins {
+    `luceneupgrader-publishing`
+}
@@ -0,0 +1,31 @@
+package org.trypticon.luceneupgrader;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown when the content of an upgraded index doesn't match the content of the index before the upgrade.
+ */
+public class ContentMismatchException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    @Nonnull
+    private final List<String> differences;
+
+    public ContentMismatchException(@Nonnull List<String> differences) {
+        super("Content of the upgraded index doesn't match the original:\n  " + String.join("\n  ", differences));
+        this.differences = Collections.unmodifiableList(differences);
+    }
+
+    /**
+     * Gets a description of each part of the index which doesn't match.
+     *
+     * @return the differences.
+     */
+    @Nonnull
+    public List<String> getDifferences() {
+        return differences;
+    }
+}
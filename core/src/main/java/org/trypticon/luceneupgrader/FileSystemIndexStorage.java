@@ -0,0 +1,147 @@
+package org.trypticon.luceneupgrader;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+
+/**
+ * Stores the index in a directory on the file system. The scratch area is a sibling directory
+ * with {@code .tmp} appended to the name, and the snapshot one with {@code .snapshot} appended.
+ * Snapshots are made of hard links where the file system supports them, so they take next to no
+ * time or space.
+ */
+public class FileSystemIndexStorage implements IndexStorage {
+
+    @Nonnull
+    private final Path path;
+
+    @Nonnull
+    private final Path scratchPath;
+
+    @Nonnull
+    private final Path oldPath;
+
+    @Nonnull
+    private final Path snapshotPath;
+
+    @Nonnull
+    private final IndexUpgraderConfig config;
+
+    public FileSystemIndexStorage(@Nonnull Path path) {
+        this(path, new IndexUpgraderConfig());
+    }
+
+    /**
+     * Constructs the storage.
+     *
+     * @param path the directory containing the index.
+     * @param config the config, which determines which steps use direct I/O.
+     */
+    public FileSystemIndexStorage(@Nonnull Path path, @Nonnull IndexUpgraderConfig config) {
+        this.path = path;
+        this.scratchPath = path.resolveSibling(path.getFileName() + ".tmp");
+        this.oldPath = path.resolveSibling(path.getFileName() + ".old");
+        this.snapshotPath = path.resolveSibling(path.getFileName() + ".snapshot");
+        this.config = config;
+    }
+
+    /**
+     * Gets the directory containing the index.
+     *
+     * @return the path.
+     */
+    @Nonnull
+    public Path getPath() {
+        return path;
+    }
+
+    @Nonnull
+    @Override
+    public <D> D openDirectory(@Nonnull Area area, @Nonnull Class<D> directoryType) throws IOException {
+        VersionSupport support = LuceneVersion.findSupport(directoryType);
+        if (support == null) {
+            throw new IllegalArgumentException("Not a supported directory type: " + directoryType.getName());
+        }
+
+        Path directory = area == Area.SCRATCH ? scratchPath : path;
+        Object result = support.openFileSystemDirectory(directory, area, config);
+        return directoryType.cast(result);
+    }
+
+    @Override
+    public void clearScratch() throws IOException {
+        FileUtils.insecureRecursiveDelete(scratchPath);
+        Files.createDirectory(scratchPath);
+    }
+
+    @Override
+    public void promoteScratch() throws IOException {
+        UpgradeEvents.DirectorySwap event = new UpgradeEvents.DirectorySwap();
+        event.begin();
+        Files.move(path, oldPath);
+        Files.move(scratchPath, path);
+        FileUtils.insecureRecursiveDelete(oldPath);
+        event.end();
+        if (event.shouldCommit()) {
+            event.directory = path.toString();
+            event.commit();
+        }
+    }
+
+    @Override
+    public void createSnapshot(@Nonnull Collection<String> fileNames) throws IOException {
+        // Built under a temporary name so that a half-made snapshot is never mistaken for a good one.
+        Path tempSnapshotPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        FileUtils.insecureRecursiveDelete(tempSnapshotPath);
+        Files.createDirectory(tempSnapshotPath);
+        for (String name : fileNames) {
+            Path source = path.resolve(name);
+            Path target = tempSnapshotPath.resolve(name);
+            try {
+                Files.createLink(target, source);
+            } catch (UnsupportedOperationException | IOException e) {
+                // No hard links on this file system, or the snapshot is on another one.
+                Files.copy(source, target);
+            }
+        }
+        FileUtils.fsyncDirectory(tempSnapshotPath);
+
+        FileUtils.insecureRecursiveDelete(snapshotPath);
+        Files.move(tempSnapshotPath, snapshotPath, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public boolean hasSnapshot() {
+        return Files.isDirectory(snapshotPath);
+    }
+
+    @Override
+    public void restoreSnapshot() throws IOException {
+        if (!hasSnapshot()) {
+            throw new IllegalStateException("There is no snapshot to restore at: " + snapshotPath);
+        }
+
+        // Whatever an upgrade which failed part way through left behind.
+        FileUtils.insecureRecursiveDelete(scratchPath);
+
+        FileUtils.insecureRecursiveDelete(oldPath);
+        if (Files.exists(path)) {
+            Files.move(path, oldPath);
+        }
+        Files.move(snapshotPath, path);
+        FileUtils.insecureRecursiveDelete(oldPath);
+    }
+
+    @Override
+    public void deleteSnapshot() throws IOException {
+        FileUtils.insecureRecursiveDelete(snapshotPath);
+    }
+
+    @Override
+    public String toString() {
+        return path.toString();
+    }
+}
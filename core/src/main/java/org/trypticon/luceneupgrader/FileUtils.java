@@ -0,0 +1,46 @@
+package org.trypticon.luceneupgrader;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class FileUtils {
+    public static void insecureRecursiveDelete(Path path) throws IOException {
+        try (DirectoryStream<? extends Path> stream = Files.newDirectoryStream(path)) {
+            for (Path child : stream) {
+                insecureRecursiveDelete(child);
+            }
+        } catch (NotDirectoryException | NoSuchFileException e) {
+            // Fine.
+        }
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Makes sure the listing of a directory is on stable storage, the same way Lucene does it.
+     *
+     * @param path the directory.
+     * @throws IOException if an error occurs syncing the directory.
+     */
+    public static void fsyncDirectory(Path path) throws IOException {
+        if (System.getProperty("os.name").startsWith("Windows")) {
+            // Directories can't be opened, let alone synced, on Windows.
+            if (!Files.exists(path)) {
+                throw new NoSuchFileException(path.toString());
+            }
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            try {
+                channel.force(true);
+            } catch (IOException e) {
+                // Some platforms refuse to sync a directory, which is as good as it gets on them.
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,164 @@
+package org.trypticon.luceneupgrader;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Verifies the files of an index in parallel, for {@link VersionChecker#verify(int, PrintStream)}.
+ * Each file is read start to finish by a single thread, so that the disk sees sequential reads.
+ */
+public final class FileVerifier {
+
+    private FileVerifier() {
+    }
+
+    /**
+     * Verifies a single file.
+     */
+    @FunctionalInterface
+    public interface FileCheck {
+
+        /**
+         * Verifies the file.
+         *
+         * @param fileName the name of the file.
+         * @throws IOException if the file is corrupt or an error occurs reading it.
+         */
+        void verify(@Nonnull String fileName) throws IOException;
+
+        /**
+         * Combines this check with another, run after it.
+         *
+         * @param next the check to run after this one.
+         * @return the combined check.
+         */
+        @Nonnull
+        default FileCheck andThen(@Nonnull FileCheck next) {
+            return fileName -> {
+                verify(fileName);
+                next.verify(fileName);
+            };
+        }
+    }
+
+    /**
+     * Gets the length of a file.
+     */
+    @FunctionalInterface
+    public interface FileLength {
+
+        /**
+         * Gets the length of the file.
+         *
+         * @param fileName the name of the file.
+         * @return the length in bytes.
+         * @throws IOException if an error occurs getting the length.
+         */
+        long length(@Nonnull String fileName) throws IOException;
+    }
+
+    /**
+     * Reads bytes from a file, the way {@code IndexInput.readBytes} does in every version of Lucene.
+     */
+    @FunctionalInterface
+    public interface ByteReader {
+
+        /**
+         * Reads bytes into a buffer.
+         *
+         * @param buffer the buffer to read into.
+         * @param offset the offset in the buffer to start at.
+         * @param length the number of bytes to read.
+         * @throws IOException if an error occurs reading.
+         */
+        void readBytes(@Nonnull byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    /**
+     * Reads the rest of a file which has no checksum, which at least shows that it can be read.
+     *
+     * @param remaining the number of bytes left to read.
+     * @param reader reads the bytes.
+     * @throws IOException if an error occurs reading the file.
+     */
+    public static void readFully(long remaining, @Nonnull ByteReader reader) throws IOException {
+        byte[] buffer = new byte[8192];
+        while (remaining > 0) {
+            int count = (int) Math.min(buffer.length, remaining);
+            reader.readBytes(buffer, 0, count);
+            remaining -= count;
+        }
+    }
+
+    /**
+     * Verifies the files. The largest are started first, which keeps the last thread from finishing
+     * long after the others.
+     *
+     * @param fileNames the names of the files.
+     * @param fileLength gets the length of each file.
+     * @param threadCount the number of threads to verify with.
+     * @param output a stream to print the result for each file to, or {@code null} to print nothing.
+     * @param check the check to apply to each file.
+     * @return {@code true} if every file passed, {@code false} otherwise.
+     */
+    public static boolean verify(@Nonnull Collection<String> fileNames, @Nonnull FileLength fileLength,
+                                 int threadCount, PrintStream output, @Nonnull FileCheck check) {
+        Map<String, Long> lengths = new HashMap<>();
+        for (String fileName : fileNames) {
+            try {
+                lengths.put(fileName, fileLength.length(fileName));
+            } catch (IOException e) {
+                // Left for the check itself to report.
+                lengths.put(fileName, 0L);
+            }
+        }
+        List<String> sortedNames = new ArrayList<>(fileNames);
+        sortedNames.sort(Comparator.comparing(lengths::get, Comparator.reverseOrder()));
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount, new NamedThreadFactory("verify-index"));
+        try {
+            List<Future<Long>> futures = new ArrayList<>(sortedNames.size());
+            for (String fileName : sortedNames) {
+                futures.add(executor.submit(() -> {
+                    long startNS = System.nanoTime();
+                    check.verify(fileName);
+                    return System.nanoTime() - startNS;
+                }));
+            }
+
+            boolean clean = true;
+            for (int i = 0; i < sortedNames.size(); i++) {
+                try {
+                    long tookNS = futures.get(i).get();
+                    if (output != null) {
+                        output.println(String.format(Locale.ROOT, "  %s: OK [took %.3f sec]",
+                                                     sortedNames.get(i), tookNS / 1_000_000_000.0));
+                    }
+                } catch (ExecutionException e) {
+                    clean = false;
+                    if (output != null) {
+                        output.println("  " + sortedNames.get(i) + ": FAILED");
+                        e.getCause().printStackTrace(output);
+                    }
+                }
+            }
+            return clean;
+        } catch (InterruptedException e) {
+            throw new ThreadInterruptedException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package org.trypticon.luceneupgrader;
+
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the upgrade steps sharing it within a budget for heap, so that upgrading several indexes side by
+ * side, or one index with a large terms dictionary or many points, doesn't run out of memory.
+ * <p>
+ * Before each step, the upgrader estimates the heap the step's merge will need from the segment statistics
+ * of the index and asks to be admitted. Steps wait while the estimates of those already admitted leave no
+ * room for theirs. A step estimated to need more than the whole budget is admitted on its own, with the
+ * whole budget as its allowance, and told how far short it is so that the parts of the merge which can
+ * spill to disk do so sooner: the points are sorted offline with a smaller buffer and, in the steps to
+ * Lucene 8 and 9, the terms index is built off the heap.
+ * <p>
+ * One governor can be shared by the configs of any number of upgraders.
+ */
+public class HeapGovernor {
+
+    /**
+     * The heap an index writer needs for a merge regardless of the size of the index.
+     */
+    static final long WRITER_HEAP = 64L * 1024 * 1024;
+
+    /**
+     * The heap the points writer sorts in before it spills to disk, in Lucene 6 and later.
+     */
+    static final long POINTS_SORT_HEAP = 16L * 1024 * 1024;
+
+    /**
+     * The smallest sort buffer points are given, however short a step is. Below this, a points writer
+     * may not be able to hold a single leaf of points with many dimensions.
+     */
+    static final long MIN_POINTS_SORT_HEAP = 4L * 1024 * 1024;
+
+    /**
+     * File extensions whose content is held on the heap while a segment is open: the terms index
+     * of older formats, and norms before Lucene 4.
+     */
+    private static final Set<String> HEAP_RESIDENT_EXTENSIONS = Set.of("tii", "tip", "nrm");
+
+    /**
+     * File extensions whose content is rebuilt on the heap when a segment is merged: the HNSW graph
+     * of the vectors.
+     */
+    private static final Set<String> MERGE_RESIDENT_EXTENSIONS = Set.of("vex");
+
+    private final long budget;
+
+    private long admittedBytes;
+
+    /**
+     * Constructs a governor.
+     *
+     * @param budget the heap the steps admitted at the same time can use between them, in bytes.
+     */
+    public HeapGovernor(long budget) {
+        if (budget <= 0) {
+            throw new IllegalArgumentException("Budget must be positive: " + budget);
+        }
+        this.budget = budget;
+    }
+
+    /**
+     * Gets the heap the steps admitted at the same time can use between them.
+     *
+     * @return the budget in bytes.
+     */
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Gets the heap allowed to the steps admitted right now.
+     *
+     * @return the sum of their allowances in bytes.
+     */
+    public synchronized long getAdmittedBytes() {
+        return admittedBytes;
+    }
+
+    /**
+     * Waits until there is room in the budget for a step, then admits it.
+     *
+     * @param estimate the heap the step is estimated to need, in bytes.
+     * @return the grant, to be closed once the step is done.
+     * @throws InterruptedIOException if interrupted while waiting.
+     */
+    public Grant admit(long estimate) throws InterruptedIOException {
+        long allowance = Math.min(estimate, budget);
+        synchronized (this) {
+            while (admittedBytes + allowance > budget) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    InterruptedIOException exception = new InterruptedIOException("Interrupted while waiting for heap");
+                    exception.initCause(e);
+                    throw exception;
+                }
+            }
+            admittedBytes += allowance;
+        }
+        return new Grant(estimate, allowance);
+    }
+
+    private synchronized void release(long allowance) {
+        admittedBytes -= allowance;
+        notifyAll();
+    }
+
+    /**
+     * Estimates the heap a step needs to merge an index: the writer's own, the parts of the segments held on
+     * the heap while they're open, the buffer points are sorted in, and the graphs of any vectors. The share
+     * of the index held on the heap is assumed to stay the same at every step.
+     *
+     * @param statistics the statistics of the index.
+     * @return the estimate in bytes.
+     */
+    static long estimate(IndexStatistics statistics) {
+        long bytes = WRITER_HEAP;
+        boolean hasPoints = false;
+        for (IndexStatistics.Segment segment : statistics.getSegments()) {
+            hasPoints |= segment.hasPoints();
+            for (Map.Entry<String, Long> entry : segment.getSizeByExtension().entrySet()) {
+                if (HEAP_RESIDENT_EXTENSIONS.contains(entry.getKey()) ||
+                    MERGE_RESIDENT_EXTENSIONS.contains(entry.getKey())) {
+                    bytes += entry.getValue();
+                }
+            }
+        }
+        if (hasPoints) {
+            bytes += POINTS_SORT_HEAP;
+        }
+        return bytes;
+    }
+
+    /**
+     * The admission of one step, which holds its allowance against the budget until it's closed.
+     */
+    public final class Grant implements AutoCloseable {
+        private final long estimate;
+
+        private final long allowance;
+
+        private boolean closed;
+
+        private Grant(long estimate, long allowance) {
+            this.estimate = estimate;
+            this.allowance = allowance;
+        }
+
+        /**
+         * Gets the heap the step is allowed to use.
+         *
+         * @return the allowance in bytes.
+         */
+        public long getAllowance() {
+            return allowance;
+        }
+
+        /**
+         * Gets how much more heap the step was estimated to need than it was allowed.
+         *
+         * @return the shortfall in bytes, or {@code 0} if the step got all it needed.
+         */
+        public long getShortfall() {
+            return estimate - allowance;
+        }
+
+        /**
+         * Gets the buffer the step should sort points in before spilling them to disk. When the step is
+         * short, the buffer is cut by the shortfall, down to a minimum.
+         *
+         * @return the size of the buffer in megabytes, as the points writers take it.
+         */
+        public double getPointsSortHeapMB() {
+            long bytes = Math.max(MIN_POINTS_SORT_HEAP, POINTS_SORT_HEAP - getShortfall());
+            return bytes / (1024.0 * 1024.0);
+        }
+
+        /**
+         * Releases the allowance, letting waiting steps in.
+         */
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                release(allowance);
+            }
+        }
+    }
+}
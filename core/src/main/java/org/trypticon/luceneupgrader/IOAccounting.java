@@ -0,0 +1,372 @@
+package org.trypticon.luceneupgrader;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * The bytes one upgrade step read and wrote, broken down by the phase of the step, the kind of
+ * {@code IOContext} each file was opened with, and the file extension.
+ * <p>
+ * Set a listener with {@link IndexUpgraderConfig#setIOAccountingListener} to get one of these for
+ * each step. Comparing the totals with the size of the index before and after the step gives the
+ * read and write amplification: how many times over, on average, each byte was read or written.
+ * <p>
+ * Counts are of the bytes asked of the storage, so a read served from the page cache or from a
+ * read-ahead buffer still counts. Contexts are those the storage was asked for, and the upgrade
+ * asks for every read of the source index as a merge read.
+ */
+public final class IOAccounting {
+
+    /**
+     * The phases of a step, in the order they happen.
+     * <p>
+     * Steps to Lucene 3 through 6 use that version's own {@code IndexUpgrader}, which does
+     * everything at once, so all of their I/O counts towards {@link #MERGE}.
+     */
+    public enum Phase {
+
+        /**
+         * Reading the latest commit and opening its segments.
+         */
+        OPEN,
+
+        /**
+         * Merging the segments into the new index. This includes checking the integrity of the source
+         * segments and packing the new one into a compound file.
+         */
+        MERGE,
+
+        /**
+         * Verifying the checksums of the source index, when that's done after the merge instead of before.
+         */
+        VERIFY,
+
+        /**
+         * Committing the new index.
+         */
+        COMMIT
+    }
+
+    @Nonnull
+    private final LuceneVersion version;
+
+    @Nonnull
+    private volatile Phase phase = Phase.OPEN;
+
+    @Nonnull
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+
+    @Nonnull
+    private final LongAdder bytesDiscarded = new LongAdder();
+
+    private long sizeBefore;
+
+    private long sizeAfter;
+
+    /**
+     * Constructs the accounting for a step.
+     *
+     * @param version the version the step upgrades to.
+     */
+    public IOAccounting(@Nonnull LuceneVersion version) {
+        this.version = version;
+    }
+
+    /**
+     * Gets the version the step upgrades to.
+     *
+     * @return the version.
+     */
+    @Nonnull
+    public LuceneVersion getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets the phase the step is in, which I/O is counted towards.
+     *
+     * @return the phase.
+     */
+    @Nonnull
+    public Phase getPhase() {
+        return phase;
+    }
+
+    /**
+     * Moves the step on to another phase.
+     *
+     * @param phase the phase.
+     */
+    public void setPhase(@Nonnull Phase phase) {
+        this.phase = phase;
+    }
+
+    /**
+     * Gets the counter for the reads and writes of a file opened with a kind of context.
+     * Every file with the same extension and context shares the counter.
+     *
+     * @param fileName the name of the file.
+     * @param context the kind of context, e.g. {@code MERGE} or {@code READONCE}.
+     * @return the counter.
+     */
+    @Nonnull
+    public Counter counter(@Nonnull String fileName, @Nonnull String context) {
+        String extension = extensionOf(fileName);
+        return counters.computeIfAbsent(extension + '/' + context, key -> new Counter(extension, context));
+    }
+
+    /**
+     * Records that a file was deleted before the end of the step, e.g. one packed into a compound file.
+     *
+     * @param bytesWritten the number of bytes which had been written to the file.
+     */
+    public void addDiscarded(long bytesWritten) {
+        bytesDiscarded.add(bytesWritten);
+    }
+
+    /**
+     * Sets the size of the index before the step.
+     *
+     * @param sizeBefore the size in bytes.
+     */
+    public void setSizeBefore(long sizeBefore) {
+        this.sizeBefore = sizeBefore;
+    }
+
+    /**
+     * Gets the size of the index before the step.
+     *
+     * @return the size in bytes.
+     */
+    public long getSizeBefore() {
+        return sizeBefore;
+    }
+
+    /**
+     * Sets the size of the index after the step.
+     *
+     * @param sizeAfter the size in bytes.
+     */
+    public void setSizeAfter(long sizeAfter) {
+        this.sizeAfter = sizeAfter;
+    }
+
+    /**
+     * Gets the size of the index after the step.
+     *
+     * @return the size in bytes.
+     */
+    public long getSizeAfter() {
+        return sizeAfter;
+    }
+
+    /**
+     * Gets the number of bytes read during the step.
+     *
+     * @return the number of bytes.
+     */
+    public long getBytesRead() {
+        return counters.values().stream().mapToLong(Counter::getBytesRead).sum();
+    }
+
+    /**
+     * Gets the number of bytes written during the step.
+     *
+     * @return the number of bytes.
+     */
+    public long getBytesWritten() {
+        return counters.values().stream().mapToLong(Counter::getBytesWritten).sum();
+    }
+
+    /**
+     * Gets the number of bytes written to files which were deleted before the end of the step.
+     * These are temporary files, and files which were packed into a compound file once written.
+     *
+     * @return the number of bytes.
+     */
+    public long getBytesDiscarded() {
+        return bytesDiscarded.sum();
+    }
+
+    /**
+     * Gets the number of bytes read in each phase.
+     *
+     * @return the number of bytes for each phase.
+     */
+    @Nonnull
+    public Map<Phase, Long> getBytesReadByPhase() {
+        return byPhase(true);
+    }
+
+    /**
+     * Gets the number of bytes written in each phase.
+     *
+     * @return the number of bytes for each phase.
+     */
+    @Nonnull
+    public Map<Phase, Long> getBytesWrittenByPhase() {
+        return byPhase(false);
+    }
+
+    /**
+     * Gets the number of bytes read from each kind of file.
+     *
+     * @return the number of bytes for each file extension.
+     */
+    @Nonnull
+    public SortedMap<String, Long> getBytesReadByExtension() {
+        return group(counter -> counter.extension, Counter::getBytesRead);
+    }
+
+    /**
+     * Gets the number of bytes written to each kind of file.
+     *
+     * @return the number of bytes for each file extension.
+     */
+    @Nonnull
+    public SortedMap<String, Long> getBytesWrittenByExtension() {
+        return group(counter -> counter.extension, Counter::getBytesWritten);
+    }
+
+    /**
+     * Gets the number of bytes read through each kind of context.
+     *
+     * @return the number of bytes for each kind of context.
+     */
+    @Nonnull
+    public SortedMap<String, Long> getBytesReadByContext() {
+        return group(counter -> counter.context, Counter::getBytesRead);
+    }
+
+    /**
+     * Gets the number of bytes written through each kind of context.
+     *
+     * @return the number of bytes for each kind of context.
+     */
+    @Nonnull
+    public SortedMap<String, Long> getBytesWrittenByContext() {
+        return group(counter -> counter.context, Counter::getBytesWritten);
+    }
+
+    /**
+     * Gets the number of times over the index was read, on average.
+     *
+     * @return the bytes read divided by the size of the index before the step, or 0 if it was empty.
+     */
+    public double getReadAmplification() {
+        return sizeBefore == 0 ? 0 : (double) getBytesRead() / sizeBefore;
+    }
+
+    /**
+     * Gets the number of times over the new index was written, on average.
+     *
+     * @return the bytes written divided by the size of the index after the step, or 0 if it's empty.
+     */
+    public double getWriteAmplification() {
+        return sizeAfter == 0 ? 0 : (double) getBytesWritten() / sizeAfter;
+    }
+
+    private Map<Phase, Long> byPhase(boolean read) {
+        Map<Phase, Long> result = new EnumMap<>(Phase.class);
+        for (Phase phase : Phase.values()) {
+            long sum = 0;
+            for (Counter counter : counters.values()) {
+                sum += (read ? counter.read : counter.written)[phase.ordinal()].sum();
+            }
+            result.put(phase, sum);
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    private SortedMap<String, Long> group(Function<Counter, String> key,
+                                          ToLongFunction<Counter> bytes) {
+        SortedMap<String, Long> result = new TreeMap<>();
+        for (Counter counter : counters.values()) {
+            long count = bytes.applyAsLong(counter);
+            if (count > 0) {
+                result.merge(key.apply(counter), count, Long::sum);
+            }
+        }
+        return Collections.unmodifiableSortedMap(result);
+    }
+
+    /**
+     * Gets the extension of a file, or for a file without one, e.g. {@code segments_4}, the name up to
+     * the generation.
+     */
+    private static String extensionOf(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        if (dot >= 0) {
+            return fileName.substring(dot + 1);
+        }
+        int underscore = fileName.indexOf('_');
+        return underscore > 0 ? fileName.substring(0, underscore) : fileName;
+    }
+
+    /**
+     * Counts the bytes read and written for one file extension and kind of context, towards the phase
+     * the step is in at the time.
+     */
+    public final class Counter {
+        private final String extension;
+        private final String context;
+        private final LongAdder[] read = newAdders();
+        private final LongAdder[] written = newAdders();
+
+        private Counter(String extension, String context) {
+            this.extension = extension;
+            this.context = context;
+        }
+
+        /**
+         * Adds to the bytes read.
+         *
+         * @param bytes the number of bytes.
+         */
+        public void addRead(long bytes) {
+            read[phase.ordinal()].add(bytes);
+        }
+
+        /**
+         * Adds to the bytes written.
+         *
+         * @param bytes the number of bytes.
+         */
+        public void addWritten(long bytes) {
+            written[phase.ordinal()].add(bytes);
+        }
+
+        private long getBytesRead() {
+            return sum(read);
+        }
+
+        private long getBytesWritten() {
+            return sum(written);
+        }
+
+        private LongAdder[] newAdders() {
+            LongAdder[] adders = new LongAdder[Phase.values().length];
+            for (int i = 0; i < adders.length; i++) {
+                adders[i] = new LongAdder();
+            }
+            return adders;
+        }
+
+        private long sum(LongAdder[] adders) {
+            long sum = 0;
+            for (LongAdder adder : adders) {
+                sum += adder.sum();
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package org.trypticon.luceneupgrader;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The files of an index held on the heap, independent of any one version of Lucene, so that
+ * several upgrade steps can be performed without going back to disk in between.
+ */
+public class InMemoryIndex {
+
+    /**
+     * The name of the lock file, which every version of Lucene calls the same.
+     */
+    private static final String WRITE_LOCK_NAME = "write.lock";
+
+    @Nonnull
+    private final SortedMap<String, byte[]> files = new TreeMap<>();
+
+    /**
+     * Loads all the files of an index into memory.
+     *
+     * @param storage the storage containing the index.
+     * @return the in-memory index.
+     * @throws IOException if an error occurs reading the files.
+     */
+    @Nonnull
+    public static InMemoryIndex load(@Nonnull IndexStorage storage) throws IOException {
+        InMemoryIndex index = new InMemoryIndex();
+        try (IndexFiles indexFiles = openFiles(storage, IndexStorage.Area.INDEX)) {
+            for (String name : listFiles(indexFiles)) {
+                index.putFile(name, indexFiles.readFile(name));
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Measures how many bytes an index would take up if loaded into memory.
+     *
+     * @param storage the storage containing the index.
+     * @return the total size of the files in the index.
+     * @throws IOException if an error occurs listing the files.
+     */
+    public static long sizeOf(@Nonnull IndexStorage storage) throws IOException {
+        long size = 0;
+        try (IndexFiles indexFiles = openFiles(storage, IndexStorage.Area.INDEX)) {
+            for (String name : listFiles(indexFiles)) {
+                size += indexFiles.fileLength(name);
+            }
+        }
+        return size;
+    }
+
+    private static IndexFiles openFiles(IndexStorage storage, IndexStorage.Area area) throws IOException {
+        // The files are only copied, so any version of Lucene will do.
+        return LuceneVersion.getNewestSupport().openFiles(storage, area);
+    }
+
+    private static List<String> listFiles(IndexFiles indexFiles) throws IOException {
+        List<String> result = new ArrayList<>();
+        for (String name : indexFiles.listAll()) {
+            // The lock belongs to whoever has the directory open, not to the index.
+            if (!WRITE_LOCK_NAME.equals(name)) {
+                result.add(name);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the names of the files in the index.
+     *
+     * @return the file names, in sorted order.
+     */
+    @Nonnull
+    public Set<String> getFileNames() {
+        return Collections.unmodifiableSet(files.keySet());
+    }
+
+    /**
+     * Gets the content of a file.
+     *
+     * @param name the file name.
+     * @return the content of the file, or {@code null} if there is no such file.
+     */
+    public byte[] getFile(@Nonnull String name) {
+        return files.get(name);
+    }
+
+    /**
+     * Removes a file, returning its content. Used when copying the index elsewhere, so that
+     * the memory held by each file can be released as soon as it has been copied.
+     *
+     * @param name the file name.
+     * @return the content of the file, or {@code null} if there was no such file.
+     */
+    public byte[] removeFile(@Nonnull String name) {
+        return files.remove(name);
+    }
+
+    /**
+     * Adds or replaces a file.
+     *
+     * @param name the file name.
+     * @param content the content of the file.
+     */
+    public void putFile(@Nonnull String name, @Nonnull byte[] content) {
+        files.put(name, content);
+    }
+
+    /**
+     * Removes all files.
+     */
+    public void clear() {
+        files.clear();
+    }
+
+    /**
+     * Gets the total size of the files in the index.
+     *
+     * @return the size in bytes.
+     */
+    public long sizeInBytes() {
+        long size = 0;
+        for (byte[] content : files.values()) {
+            size += content.length;
+        }
+        return size;
+    }
+
+    /**
+     * Replaces the index in the storage with this one. All files are written to the scratch area
+     * and synced at once before the scratch area is promoted.
+     *
+     * @param storage the storage to write to.
+     * @throws IOException if an error occurs writing the files.
+     */
+    public void writeTo(@Nonnull IndexStorage storage) throws IOException {
+        storage.clearScratch();
+        try (IndexFiles indexFiles = openFiles(storage, IndexStorage.Area.SCRATCH)) {
+            for (Map.Entry<String, byte[]> entry : files.entrySet()) {
+                indexFiles.writeFile(entry.getKey(), entry.getValue());
+            }
+
+            // Deferring the syncs until everything has been written lets the OS schedule the writes together.
+            indexFiles.sync(files.keySet());
+        }
+        storage.promoteScratch();
+    }
+}
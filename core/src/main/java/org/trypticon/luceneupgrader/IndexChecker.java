@@ -0,0 +1,109 @@
+package org.trypticon.luceneupgrader;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+
+/**
+ * Checks an index for corruption, using the embedded version of Lucene matching the index.
+ * Segments are checked in parallel, as are the parts of each segment.
+ * For a quicker check before an upgrade, {@link #verify()} only verifies checksums.
+ */
+public class IndexChecker {
+
+    @Nonnull
+    private final IndexStorage storage;
+
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+
+    private PrintStream output;
+
+    public IndexChecker(@Nonnull Path directory) {
+        this(new FileSystemIndexStorage(directory));
+    }
+
+    /**
+     * Constructs a checker for an index in some other kind of storage.
+     *
+     * @param storage the storage containing the index.
+     */
+    public IndexChecker(@Nonnull IndexStorage storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * Sets the number of threads to check with. Defaults to the number of processors.
+     *
+     * @param threadCount the number of threads. {@code 1} checks sequentially.
+     * @return this checker.
+     */
+    public IndexChecker setThreadCount(int threadCount) {
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("Thread count must be at least 1: " + threadCount);
+        }
+        this.threadCount = threadCount;
+        return this;
+    }
+
+    /**
+     * Sets a stream to print the details of the check to. By default nothing is printed.
+     *
+     * @param output the stream.
+     * @return this checker.
+     */
+    public IndexChecker setOutput(@Nonnull PrintStream output) {
+        this.output = output;
+        return this;
+    }
+
+    /**
+     * Checks the index.
+     *
+     * @return {@code true} if no problems were found, {@code false} otherwise.
+     * @throws IOException if an error occurs reading the index.
+     */
+    public boolean check() throws IOException {
+        LuceneVersion version = new VersionGuesser().guess(storage);
+        return version.createChecker(storage).check(threadCount, output);
+    }
+
+    /**
+     * Verifies the checksum of every file in the index, without decoding any of them. This catches
+     * most corruption in the time it takes to read the index once, but not indexes which were written
+     * wrongly in the first place.
+     *
+     * @return {@code true} if no problems were found, {@code false} otherwise.
+     * @throws IOException if an error occurs reading the index.
+     */
+    public boolean verify() throws IOException {
+        LuceneVersion version = new VersionGuesser().guess(storage);
+        return version.createChecker(storage).verify(threadCount, output);
+    }
+
+    /**
+     * Computes a fingerprint of the content of the index. Comparing the fingerprints of an index before
+     * and after an upgrade shows whether the upgrade kept all of its content.
+     *
+     * @return the fingerprint.
+     * @throws IOException if an error occurs reading the index.
+     */
+    @Nonnull
+    public IndexFingerprint fingerprint() throws IOException {
+        LuceneVersion version = new VersionGuesser().guess(storage);
+        return version.createChecker(storage).fingerprint(threadCount);
+    }
+
+    /**
+     * Gathers statistics about each segment of the index, such as its size, how many of its documents
+     * are deleted and which version of Lucene wrote it.
+     *
+     * @return the statistics.
+     * @throws IOException if an error occurs reading the index.
+     */
+    @Nonnull
+    public IndexStatistics statistics() throws IOException {
+        LuceneVersion version = new VersionGuesser().guess(storage);
+        return version.createChecker(storage).statistics(threadCount);
+    }
+}
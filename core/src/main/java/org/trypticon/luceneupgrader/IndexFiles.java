@@ -0,0 +1,61 @@
+package org.trypticon.luceneupgrader;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The files in an area of an {@link IndexStorage} as plain bytes, for code which doesn't care which
+ * embedded version of Lucene reads and writes them.
+ *
+ * @see VersionSupport#openFiles(IndexStorage, IndexStorage.Area)
+ */
+public interface IndexFiles extends Closeable {
+
+    /**
+     * Lists the files.
+     *
+     * @return the file names.
+     * @throws IOException if an error occurs listing the files.
+     */
+    @Nonnull
+    List<String> listAll() throws IOException;
+
+    /**
+     * Gets the length of a file.
+     *
+     * @param name the file name.
+     * @return the length in bytes.
+     * @throws IOException if an error occurs reading the length.
+     */
+    long fileLength(@Nonnull String name) throws IOException;
+
+    /**
+     * Reads the whole of a file.
+     *
+     * @param name the file name.
+     * @return the content of the file.
+     * @throws IOException if an error occurs reading the file.
+     */
+    @Nonnull
+    byte[] readFile(@Nonnull String name) throws IOException;
+
+    /**
+     * Writes a new file.
+     *
+     * @param name the file name.
+     * @param content the content of the file.
+     * @throws IOException if an error occurs writing the file.
+     */
+    void writeFile(@Nonnull String name, @Nonnull byte[] content) throws IOException;
+
+    /**
+     * Makes sure files are on stable storage, along with the directory listing where that's supported.
+     *
+     * @param names the names of the files.
+     * @throws IOException if an error occurs syncing the files.
+     */
+    void sync(@Nonnull Collection<String> names) throws IOException;
+}
@@ -0,0 +1,384 @@
+package org.trypticon.luceneupgrader;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A digest of the content of an index, for checking that an upgrade didn't lose or alter anything.
+ * <p>
+ * Each field gets a digest of its terms and postings, of its stored values and of its doc values.
+ * A digest is a count of the items seen along with the sum of their hashes, so it doesn't depend on
+ * the order the items are seen in. Doc IDs are never hashed, which means two indexes holding the same
+ * documents have the same fingerprint however their documents are split into segments, and the
+ * fingerprint of an index can be computed one segment at a time using constant memory.
+ * <p>
+ * Deleted documents are skipped. Norms, points and vectors aren't covered.
+ */
+public final class IndexFingerprint {
+
+    /**
+     * The parts of the index a digest can cover.
+     */
+    public enum Part {
+        /**
+         * The documents themselves. Each document's item is the hash of all its stored fields in order,
+         * which ties the per-field digests of stored fields back to the documents they came from.
+         */
+        DOCUMENTS,
+
+        /**
+         * The terms of a field. Each item is a term along with its postings in a single document.
+         */
+        TERMS,
+
+        /**
+         * The stored values of a field.
+         */
+        STORED_FIELDS,
+
+        /**
+         * The doc values of a field. Each item is the value or values of a single document.
+         */
+        DOC_VALUES
+    }
+
+    /**
+     * The types of stored value. The type is hashed along with the value, so that values of different
+     * types with the same encoding don't collide.
+     */
+    public enum StoredType {
+        STRING, BINARY, INT, LONG, FLOAT, DOUBLE
+    }
+
+    private final Map<Part, Map<String, Digest>> digests = new EnumMap<>(Part.class);
+
+    /**
+     * Gets the digest for a part of a field, creating it if it doesn't exist yet.
+     *
+     * @param part the part.
+     * @param field the field. Ignored for {@link Part#DOCUMENTS}.
+     * @return the digest.
+     */
+    @Nonnull
+    public Digest digest(@Nonnull Part part, @Nonnull String field) {
+        return digests.computeIfAbsent(part, p -> new TreeMap<>())
+                      .computeIfAbsent(part == Part.DOCUMENTS ? "" : field, f -> new Digest());
+    }
+
+    /**
+     * Adds the digests of another fingerprint to this one, as if its items had been added here.
+     *
+     * @param other the other fingerprint.
+     */
+    public void addAll(@Nonnull IndexFingerprint other) {
+        other.digests.forEach((part, fields) -> fields.forEach((field, digest) -> {
+            Digest ours = digest(part, field);
+            ours.count += digest.count;
+            ours.sum += digest.sum;
+        }));
+    }
+
+    /**
+     * Compares this fingerprint with another.
+     *
+     * @param other the other fingerprint, of the index after the upgrade.
+     * @return a description of each digest which doesn't match. Empty if the fingerprints are the same.
+     */
+    @Nonnull
+    public List<String> differences(@Nonnull IndexFingerprint other) {
+        List<String> differences = new ArrayList<>();
+        for (Part part : Part.values()) {
+            Map<String, Digest> ourFields = digests.getOrDefault(part, new TreeMap<>());
+            Map<String, Digest> theirFields = other.digests.getOrDefault(part, new TreeMap<>());
+            TreeSet<String> fields = new TreeSet<>(ourFields.keySet());
+            fields.addAll(theirFields.keySet());
+            for (String field : fields) {
+                Digest ours = ourFields.getOrDefault(field, new Digest());
+                Digest theirs = theirFields.getOrDefault(field, new Digest());
+                if (!ours.equals(theirs)) {
+                    String name = part == Part.DOCUMENTS
+                        ? "documents"
+                        : part.name().toLowerCase(Locale.ROOT).replace('_', ' ') + " of field '" + field + "'";
+                    differences.add(name + ": " + ours + " before, " + theirs + " after");
+                }
+            }
+        }
+        return differences;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof IndexFingerprint && differences((IndexFingerprint) obj).isEmpty();
+    }
+
+    @Override
+    public int hashCode() {
+        // Empty digests are equal to absent ones, so only the non-empty ones can contribute.
+        int hashCode = 0;
+        for (Map.Entry<Part, Map<String, Digest>> entry : digests.entrySet()) {
+            for (Map.Entry<String, Digest> fieldEntry : entry.getValue().entrySet()) {
+                if (fieldEntry.getValue().count != 0) {
+                    hashCode += Objects.hash(entry.getKey(), fieldEntry.getKey(), fieldEntry.getValue());
+                }
+            }
+        }
+        return hashCode;
+    }
+
+    /**
+     * Computes the fingerprint of an index one segment at a time, with the segments spread across threads.
+     *
+     * @param segments the segments.
+     * @param threadCount the number of threads. {@code 1} computes it sequentially.
+     * @param fingerprinter computes the fingerprint of a single segment.
+     * @param <S> the type of the segments.
+     * @return the fingerprint of the whole index.
+     * @throws IOException if an error occurs reading the index.
+     */
+    @Nonnull
+    public static <S> IndexFingerprint compute(@Nonnull List<S> segments, int threadCount,
+                                               @Nonnull SegmentFingerprinter<S> fingerprinter) throws IOException {
+        IndexFingerprint fingerprint = new IndexFingerprint();
+        if (threadCount == 1 || segments.size() <= 1) {
+            for (S segment : segments) {
+                fingerprint.addAll(fingerprinter.fingerprint(segment));
+            }
+            return fingerprint;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threadCount, segments.size()),
+                                                                new NamedThreadFactory("fingerprint-index"));
+        try {
+            List<Future<IndexFingerprint>> futures = new ArrayList<>(segments.size());
+            for (S segment : segments) {
+                futures.add(executor.submit(() -> fingerprinter.fingerprint(segment)));
+            }
+            for (Future<IndexFingerprint> future : futures) {
+                fingerprint.addAll(future.get());
+            }
+            return fingerprint;
+        } catch (InterruptedException e) {
+            throw new ThreadInterruptedException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new IOException(cause);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Computes the fingerprint of a single segment.
+     *
+     * @param <S> the type of the segment.
+     */
+    @FunctionalInterface
+    public interface SegmentFingerprinter<S> {
+
+        /**
+         * Computes the fingerprint.
+         *
+         * @param segment the segment.
+         * @return the fingerprint.
+         * @throws IOException if an error occurs reading the segment.
+         */
+        @Nonnull
+        IndexFingerprint fingerprint(@Nonnull S segment) throws IOException;
+    }
+
+    /**
+     * The digest of one part of one field: how many items were added, and the sum of their hashes.
+     */
+    public static final class Digest {
+        private long count;
+        private long sum;
+
+        /**
+         * Adds an item.
+         *
+         * @param hash the hash of the item.
+         */
+        public void add(long hash) {
+            count++;
+            sum += hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Digest)) {
+                return false;
+            }
+            Digest other = (Digest) obj;
+            return count == other.count && sum == other.sum;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(count) * 31 + Long.hashCode(sum);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d items with digest %016x", count, sum);
+        }
+    }
+
+    /**
+     * Adds the stored fields of documents to a fingerprint. Each value is added to the digest of its field,
+     * and each document to the digest of {@link Part#DOCUMENTS}.
+     */
+    public static final class StoredFieldsDigester {
+        @Nonnull
+        private final IndexFingerprint fingerprint;
+
+        @Nonnull
+        private final Digest documents;
+
+        private final Hasher valueHasher = new Hasher();
+        private final Hasher documentHasher = new Hasher();
+
+        public StoredFieldsDigester(@Nonnull IndexFingerprint fingerprint) {
+            this.fingerprint = fingerprint;
+            documents = fingerprint.digest(Part.DOCUMENTS, "");
+        }
+
+        /**
+         * Starts a document.
+         */
+        public void startDocument() {
+            documentHasher.reset();
+        }
+
+        /**
+         * Starts a value, returning the hasher to put the value into.
+         *
+         * @param type the type of the value.
+         * @return the hasher.
+         */
+        @Nonnull
+        public Hasher startValue(@Nonnull StoredType type) {
+            return valueHasher.reset().putInt(type.ordinal());
+        }
+
+        /**
+         * Finishes the value started by {@link #startValue(StoredType)}.
+         *
+         * @param field the field the value is in.
+         */
+        public void finishValue(@Nonnull String field) {
+            long valueHash = valueHasher.hash();
+            fingerprint.digest(Part.STORED_FIELDS, field).add(valueHash);
+            documentHasher.putInt(field.hashCode()).putLong(valueHash);
+        }
+
+        /**
+         * Finishes the document started by {@link #startDocument()}.
+         */
+        public void finishDocument() {
+            documents.add(documentHasher.hash());
+        }
+    }
+
+    /**
+     * Hashes a sequence of values into 64 bits. Reset and reused for each item, so that hashing
+     * doesn't allocate.
+     */
+    public static final class Hasher {
+        private static final long SEED = 0x9E3779B97F4A7C15L;
+
+        private long hash = SEED;
+        private long length;
+
+        /**
+         * Resets the hasher to hash a new item.
+         *
+         * @return this hasher.
+         */
+        public Hasher reset() {
+            hash = SEED;
+            length = 0;
+            return this;
+        }
+
+        public Hasher putLong(long value) {
+            hash = Long.rotateLeft(hash ^ mix(value), 27) * 0xC2B2AE3D27D4EB4FL + 0x52DCE729L;
+            length++;
+            return this;
+        }
+
+        public Hasher putInt(int value) {
+            return putLong(value);
+        }
+
+        public Hasher putBytes(@Nonnull byte[] bytes, int offset, int length) {
+            putLong(length);
+            int end = offset + length;
+            int i = offset;
+            for (; i + 8 <= end; i += 8) {
+                putLong((bytes[i] & 0xFFL) |
+                        (bytes[i + 1] & 0xFFL) << 8 |
+                        (bytes[i + 2] & 0xFFL) << 16 |
+                        (bytes[i + 3] & 0xFFL) << 24 |
+                        (bytes[i + 4] & 0xFFL) << 32 |
+                        (bytes[i + 5] & 0xFFL) << 40 |
+                        (bytes[i + 6] & 0xFFL) << 48 |
+                        (bytes[i + 7] & 0xFFL) << 56);
+            }
+            if (i < end) {
+                long tail = 0;
+                for (int shift = 0; i < end; i++, shift += 8) {
+                    tail |= (bytes[i] & 0xFFL) << shift;
+                }
+                putLong(tail);
+            }
+            return this;
+        }
+
+        public Hasher putString(@Nonnull String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            return putBytes(bytes, 0, bytes.length);
+        }
+
+        /**
+         * Gets the hash of the values put since the last reset.
+         *
+         * @return the hash.
+         */
+        public long hash() {
+            return mix(hash ^ length);
+        }
+
+        /**
+         * The finalizer from MurmurHash3, so that every input bit affects every output bit.
+         */
+        private static long mix(long value) {
+            value ^= value >>> 33;
+            value *= 0xFF51AFD7ED558CCDL;
+            value ^= value >>> 33;
+            value *= 0xC4CEB9FE1A85EC53L;
+            value ^= value >>> 33;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package org.trypticon.luceneupgrader;
+
+import javax.annotation.Nonnull;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Takes an inventory of every index under a directory tree, reading as little of each index as possible.
+ * <p>
+ * The tree is walked in parallel. Any directory containing a segments file is taken to be an index, and
+ * its version and number of segments are read from the first few bytes of its latest segments file with
+ * a single positional read. Nothing else in the index is opened, so classifying an index costs about as
+ * much as listing its directory.
+ */
+public class IndexInventory {
+
+    /**
+     * How much of a segments file is read at first. This covers the header of every format except
+     * the oldest, whose segment list comes before the end of the header.
+     */
+    private static final int HEADER_READ_SIZE = 4096;
+
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Sets the number of threads to walk the tree with. Defaults to the number of processors.
+     *
+     * @param threadCount the number of threads.
+     * @return this inventory.
+     */
+    public IndexInventory setThreadCount(int threadCount) {
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("Thread count must be at least 1: " + threadCount);
+        }
+        this.threadCount = threadCount;
+        return this;
+    }
+
+    /**
+     * Finds every index under a directory.
+     *
+     * @param root the directory to start from. May itself be an index.
+     * @return an entry for each index found, sorted by path.
+     */
+    @Nonnull
+    public List<Entry> scan(@Nonnull Path root) {
+        List<Entry> entries = new ArrayList<>();
+        scan(root, entries::add);
+        entries.sort(Comparator.comparing(Entry::getPath));
+        return entries;
+    }
+
+    /**
+     * Finds every index under a directory, passing each to the consumer as soon as it has been read.
+     * Entries arrive in no particular order, but the consumer is never called concurrently.
+     *
+     * @param root the directory to start from. May itself be an index.
+     * @param consumer the consumer to pass each entry to.
+     */
+    public void scan(@Nonnull Path root, @Nonnull Consumer<Entry> consumer) {
+        Consumer<Entry> synchronizedConsumer = entry -> {
+            synchronized (consumer) {
+                consumer.accept(entry);
+            }
+        };
+        ForkJoinPool pool = new ForkJoinPool(threadCount);
+        try {
+            pool.invoke(new DirectoryTask(root, synchronizedConsumer));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Reads the entry for a single index.
+     *
+     * @param directory the directory containing the index.
+     * @return the entry.
+     * @throws IOException if an error occurs listing the directory or reading the segments file.
+     */
+    @Nonnull
+    public Entry inspect(@Nonnull Path directory) throws IOException {
+        List<String> fileNames = new ArrayList<>();
+        long sizeInBytes = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class,
+                                                                      LinkOption.NOFOLLOW_LINKS);
+                if (attributes.isRegularFile()) {
+                    fileNames.add(file.getFileName().toString());
+                    sizeInBytes += attributes.size();
+                }
+            }
+        }
+        return inspect(directory, fileNames, sizeInBytes);
+    }
+
+    private static Entry inspect(Path directory, List<String> fileNames, long sizeInBytes) throws IOException {
+        long generation = latestGeneration(directory, fileNames);
+        VersionGuesser.CommitHeader header = readCommitHeader(directory, generation);
+        return new Entry(directory, header.version, generation, header.segmentCount, sizeInBytes, null);
+    }
+
+    /**
+     * Finds the generation of the latest commit from the names of the files in an index directory.
+     *
+     * @param directory the directory, for the error message.
+     * @param fileNames the names of the files in the directory.
+     * @return the generation.
+     * @throws NoSuchFileException if there is no segments file.
+     */
+    static long latestGeneration(@Nonnull Path directory, @Nonnull List<String> fileNames)
+            throws NoSuchFileException {
+        long generation = VersionGuesser.getLastCommitGeneration(fileNames);
+        if (generation < 0) {
+            throw new NoSuchFileException(directory.resolve(VersionGuesser.SEGMENTS).toString());
+        }
+        return generation;
+    }
+
+    /**
+     * Reads the header of the segments file of a commit straight off disk, without opening a directory.
+     *
+     * @param directory the directory containing the index.
+     * @param generation the generation of the commit.
+     * @return the header.
+     * @throws IOException if an error occurs reading the segments file.
+     */
+    @Nonnull
+    static VersionGuesser.CommitHeader readCommitHeader(@Nonnull Path directory, long generation)
+            throws IOException {
+        Path segmentsFile = directory.resolve(VersionGuesser.segmentsFileName(generation));
+        try (FileChannel channel = FileChannel.open(segmentsFile, StandardOpenOption.READ)) {
+            long length = channel.size();
+            ByteBuffer buffer = readFully(channel, (int) Math.min(length, HEADER_READ_SIZE));
+            if (length > buffer.capacity()) {
+                try {
+                    return VersionGuesser.readCommitHeader(buffer);
+                } catch (EOFException | UnknownFormatException e) {
+                    // Only the oldest format runs past the initial read, in which case it's read again in full.
+                    buffer = readFully(channel, Math.toIntExact(length));
+                }
+            }
+            return VersionGuesser.readCommitHeader(buffer);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of file after " + buffer.position() + " bytes");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Lists a directory, forks a task for each subdirectory, and reads the directory itself if it's an index.
+     */
+    private static class DirectoryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+        private final Consumer<Entry> consumer;
+
+        DirectoryTask(Path directory, Consumer<Entry> consumer) {
+            this.directory = directory;
+            this.consumer = consumer;
+        }
+
+        @Override
+        protected void compute() {
+            List<DirectoryTask> subdirectories = new ArrayList<>();
+            List<String> fileNames = new ArrayList<>();
+            long sizeInBytes = 0;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path file : stream) {
+                    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class,
+                                                                          LinkOption.NOFOLLOW_LINKS);
+                    if (attributes.isDirectory()) {
+                        subdirectories.add(new DirectoryTask(file, consumer));
+                    } else if (attributes.isRegularFile()) {
+                        fileNames.add(file.getFileName().toString());
+                        sizeInBytes += attributes.size();
+                    }
+                }
+            } catch (IOException e) {
+                consumer.accept(new Entry(directory, null, -1, 0, 0, e));
+                return;
+            }
+
+            for (DirectoryTask subdirectory : subdirectories) {
+                subdirectory.fork();
+            }
+            if (VersionGuesser.getLastCommitGeneration(fileNames) >= 0) {
+                Entry entry;
+                try {
+                    entry = inspect(directory, fileNames, sizeInBytes);
+                } catch (IOException e) {
+                    entry = new Entry(directory, null, -1, 0, sizeInBytes, e);
+                }
+                consumer.accept(entry);
+            }
+            for (DirectoryTask subdirectory : subdirectories) {
+                subdirectory.join();
+            }
+        }
+    }
+
+    /**
+     * What was found out about a single index.
+     */
+    public static class Entry {
+        @Nonnull
+        private final Path path;
+        private final LuceneVersion version;
+        private final long generation;
+        private final int segmentCount;
+        private final long sizeInBytes;
+        private final IOException error;
+
+        Entry(@Nonnull Path path, LuceneVersion version, long generation, int segmentCount,
+              long sizeInBytes, IOException error) {
+            this.path = path;
+            this.version = version;
+            this.generation = generation;
+            this.segmentCount = segmentCount;
+            this.sizeInBytes = sizeInBytes;
+            this.error = error;
+        }
+
+        /**
+         * Gets the directory containing the index.
+         *
+         * @return the directory.
+         */
+        @Nonnull
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * Gets the version of the index.
+         *
+         * @return the version, or {@code null} if it couldn't be read.
+         */
+        public LuceneVersion getVersion() {
+            return version;
+        }
+
+        /**
+         * Gets the generation of the latest commit.
+         *
+         * @return the generation, or {@code -1} if it couldn't be read.
+         */
+        public long getGeneration() {
+            return generation;
+        }
+
+        /**
+         * Gets the number of segments in the latest commit.
+         *
+         * @return the number of segments.
+         */
+        public int getSegmentCount() {
+            return segmentCount;
+        }
+
+        /**
+         * Gets the total size of the files in the index directory, including any not referenced
+         * by the latest commit.
+         *
+         * @return the size in bytes.
+         */
+        public long getSizeInBytes() {
+            return sizeInBytes;
+        }
+
+        /**
+         * Gets the error which occurred reading the index.
+         *
+         * @return the error, or {@code null} if the index was read successfully.
+         */
+        public IOException getError() {
+            return error;
+        }
+    }
+}
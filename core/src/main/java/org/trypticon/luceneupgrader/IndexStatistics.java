@@ -0,0 +1,351 @@
+package org.trypticon.luceneupgrader;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Statistics about the segments in the latest commit of an index, for planning an upgrade.
+ * <p>
+ * The statistics come from the segment metadata and field infos alone, so gathering them costs
+ * a few small reads per segment no matter how big the segments are.
+ */
+public final class IndexStatistics {
+
+    private final long generation;
+
+    @Nonnull
+    private final List<Segment> segments;
+
+    private IndexStatistics(long generation, @Nonnull List<Segment> segments) {
+        this.generation = generation;
+        this.segments = Collections.unmodifiableList(segments);
+    }
+
+    /**
+     * Gets the generation of the commit.
+     *
+     * @return the generation.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Gets the statistics of each segment, in the order they appear in the commit.
+     *
+     * @return the segments.
+     */
+    @Nonnull
+    public List<Segment> getSegments() {
+        return segments;
+    }
+
+    /**
+     * Gets the number of documents in the index, including deleted ones.
+     *
+     * @return the number of documents.
+     */
+    public long getMaxDoc() {
+        return segments.stream().mapToLong(Segment::getMaxDoc).sum();
+    }
+
+    /**
+     * Gets the number of deleted documents in the index.
+     *
+     * @return the number of deleted documents.
+     */
+    public long getDeletedDocCount() {
+        return segments.stream().mapToLong(Segment::getDeletedDocCount).sum();
+    }
+
+    /**
+     * Gets the total size of the files referenced by the commit, not counting the segments file itself.
+     *
+     * @return the size in bytes.
+     */
+    public long getSizeInBytes() {
+        return segments.stream().mapToLong(Segment::getSizeInBytes).sum();
+    }
+
+    /**
+     * Gathers the statistics of an index one segment at a time, with the segments spread across threads.
+     *
+     * @param generation the generation of the commit.
+     * @param segments the segments.
+     * @param threadCount the number of threads. {@code 1} gathers them sequentially.
+     * @param describer gathers the statistics of a single segment.
+     * @param <S> the type of the segments.
+     * @return the statistics of the whole index.
+     * @throws IOException if an error occurs reading the index.
+     */
+    @Nonnull
+    public static <S> IndexStatistics compute(long generation, @Nonnull List<S> segments, int threadCount,
+                                              @Nonnull SegmentDescriber<S> describer) throws IOException {
+        List<Segment> results = new ArrayList<>(segments.size());
+        if (threadCount == 1 || segments.size() <= 1) {
+            for (S segment : segments) {
+                results.add(describer.describe(segment));
+            }
+            return new IndexStatistics(generation, results);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threadCount, segments.size()),
+                                                                new NamedThreadFactory("index-statistics"));
+        try {
+            List<Future<Segment>> futures = new ArrayList<>(segments.size());
+            for (S segment : segments) {
+                futures.add(executor.submit(() -> describer.describe(segment)));
+            }
+            for (Future<Segment> future : futures) {
+                results.add(future.get());
+            }
+            return new IndexStatistics(generation, results);
+        } catch (InterruptedException e) {
+            throw new ThreadInterruptedException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new IOException(cause);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Gathers the statistics of a single segment.
+     *
+     * @param <S> the type of the segment.
+     */
+    @FunctionalInterface
+    public interface SegmentDescriber<S> {
+
+        /**
+         * Gathers the statistics.
+         *
+         * @param segment the segment.
+         * @return the statistics of the segment.
+         * @throws IOException if an error occurs reading the segment.
+         */
+        @Nonnull
+        Segment describe(@Nonnull S segment) throws IOException;
+    }
+
+    /**
+     * Statistics about a single segment. Filled in by the code for the version of the index.
+     */
+    public static final class Segment {
+        @Nonnull
+        private final String name;
+        private String codec;
+        private String luceneVersion;
+        private int maxDoc;
+        private int deletedDocCount;
+        private boolean compoundFile;
+        private boolean hasDocValues;
+        private boolean hasPoints;
+        private boolean hasVectors;
+        private boolean hasTermVectors;
+
+        @Nonnull
+        private final SortedMap<String, Long> sizeByExtension = new TreeMap<>();
+
+        public Segment(@Nonnull String name) {
+            this.name = name;
+        }
+
+        /**
+         * Gets the name of the segment.
+         *
+         * @return the name.
+         */
+        @Nonnull
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the name of the codec the segment was written with.
+         *
+         * @return the codec name, or {@code null} for segments from before Lucene 4, which had no codecs.
+         */
+        public String getCodec() {
+            return codec;
+        }
+
+        public Segment setCodec(String codec) {
+            this.codec = codec;
+            return this;
+        }
+
+        /**
+         * Gets the version of Lucene which wrote the segment.
+         *
+         * @return the version, or {@code null} for segments from before Lucene 3, which didn't record it.
+         */
+        public String getLuceneVersion() {
+            return luceneVersion;
+        }
+
+        public Segment setLuceneVersion(String luceneVersion) {
+            this.luceneVersion = luceneVersion;
+            return this;
+        }
+
+        /**
+         * Gets the number of documents in the segment, including deleted ones.
+         *
+         * @return the number of documents.
+         */
+        public int getMaxDoc() {
+            return maxDoc;
+        }
+
+        public Segment setMaxDoc(int maxDoc) {
+            this.maxDoc = maxDoc;
+            return this;
+        }
+
+        /**
+         * Gets the number of deleted documents in the segment, including soft deletes.
+         *
+         * @return the number of deleted documents.
+         */
+        public int getDeletedDocCount() {
+            return deletedDocCount;
+        }
+
+        public Segment setDeletedDocCount(int deletedDocCount) {
+            this.deletedDocCount = deletedDocCount;
+            return this;
+        }
+
+        /**
+         * Gets the fraction of the documents in the segment which are deleted.
+         *
+         * @return the fraction, from {@code 0} to {@code 1}.
+         */
+        public double getDeletionRatio() {
+            return maxDoc == 0 ? 0 : (double) deletedDocCount / maxDoc;
+        }
+
+        /**
+         * Checks whether the segment is stored in a compound file.
+         *
+         * @return {@code true} if it is, {@code false} otherwise.
+         */
+        public boolean isCompoundFile() {
+            return compoundFile;
+        }
+
+        public Segment setCompoundFile(boolean compoundFile) {
+            this.compoundFile = compoundFile;
+            return this;
+        }
+
+        /**
+         * Checks whether any field in the segment has doc values.
+         *
+         * @return {@code true} if one does, {@code false} otherwise.
+         */
+        public boolean hasDocValues() {
+            return hasDocValues;
+        }
+
+        public Segment setHasDocValues(boolean hasDocValues) {
+            this.hasDocValues = hasDocValues;
+            return this;
+        }
+
+        /**
+         * Checks whether any field in the segment has points, which first appeared in Lucene 6.
+         *
+         * @return {@code true} if one does, {@code false} otherwise.
+         */
+        public boolean hasPoints() {
+            return hasPoints;
+        }
+
+        public Segment setHasPoints(boolean hasPoints) {
+            this.hasPoints = hasPoints;
+            return this;
+        }
+
+        /**
+         * Checks whether any field in the segment has vectors, which first appeared in Lucene 9.
+         *
+         * @return {@code true} if one does, {@code false} otherwise.
+         */
+        public boolean hasVectors() {
+            return hasVectors;
+        }
+
+        public Segment setHasVectors(boolean hasVectors) {
+            this.hasVectors = hasVectors;
+            return this;
+        }
+
+        /**
+         * Checks whether any field in the segment has term vectors.
+         *
+         * @return {@code true} if one does, {@code false} otherwise.
+         */
+        public boolean hasTermVectors() {
+            return hasTermVectors;
+        }
+
+        public Segment setHasTermVectors(boolean hasTermVectors) {
+            this.hasTermVectors = hasTermVectors;
+            return this;
+        }
+
+        /**
+         * Gets the total size of the files of the segment for each file extension. Files for deletions
+         * and updates are included.
+         *
+         * @return the size in bytes for each extension, sorted by extension.
+         */
+        @Nonnull
+        public SortedMap<String, Long> getSizeByExtension() {
+            return Collections.unmodifiableSortedMap(sizeByExtension);
+        }
+
+        /**
+         * Gets the total size of the files of the segment.
+         *
+         * @return the size in bytes.
+         */
+        public long getSizeInBytes() {
+            return sizeByExtension.values().stream().mapToLong(Long::longValue).sum();
+        }
+
+        /**
+         * Adds a file to the segment.
+         *
+         * @param fileName the name of the file.
+         * @param sizeInBytes the size of the file.
+         * @return this segment.
+         */
+        public Segment addFile(@Nonnull String fileName, long sizeInBytes) {
+            int dot = fileName.lastIndexOf('.');
+            String extension = dot < 0 ? "" : fileName.substring(dot + 1);
+            sizeByExtension.merge(extension, sizeInBytes, Long::sum);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package org.trypticon.luceneupgrader;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Where an index being upgraded is stored. Each upgrade step is performed by a different embedded
+ * version of Lucene, so the storage has to be able to present itself as a {@code Directory} of
+ * whichever version is asking.
+ *
+ * <p>Steps to Lucene 3 through 6 upgrade the index in place. Steps to Lucene 7 onwards
+ * read the index and write a new copy into the scratch area, which then replaces the index.</p>
+ *
+ * @see FileSystemIndexStorage
+ */
+public interface IndexStorage {
+
+    /**
+     * The areas of storage an upgrade step can open.
+     */
+    enum Area {
+        /**
+         * The index being upgraded.
+         */
+        INDEX,
+
+        /**
+         * Scratch space for writing a new copy of the index.
+         */
+        SCRATCH
+    }
+
+    /**
+     * Opens an area of the storage as a directory.
+     *
+     * @param area the area to open.
+     * @param directoryType the {@code Directory} class of the embedded version of Lucene which will use it,
+     *                      e.g. {@code org.trypticon.luceneupgrader.lucene9.internal.lucene.store.Directory}.
+     * @param <D> the directory type.
+     * @return the directory. The caller closes it.
+     * @throws IOException if an error occurs opening the directory.
+     * @throws IllegalArgumentException if the directory type is not one this storage supports.
+     */
+    @Nonnull
+    <D> D openDirectory(@Nonnull Area area, @Nonnull Class<D> directoryType) throws IOException;
+
+    /**
+     * Empties the scratch area, creating it if necessary.
+     *
+     * @throws IOException if an error occurs clearing the scratch area.
+     */
+    void clearScratch() throws IOException;
+
+    /**
+     * Replaces the index with the contents of the scratch area.
+     * The scratch area is not usable again until it is cleared.
+     *
+     * @throws IOException if an error occurs replacing the index.
+     */
+    void promoteScratch() throws IOException;
+
+    /**
+     * Takes a snapshot of some files of the index which can later be restored, replacing any
+     * existing snapshot. Index files are never modified once written, so the snapshot only has
+     * to keep the files from being deleted.
+     *
+     * @param fileNames the names of the files to include.
+     * @throws IOException if an error occurs taking the snapshot.
+     * @throws UnsupportedOperationException if this storage does not support snapshots.
+     */
+    default void createSnapshot(@Nonnull Collection<String> fileNames) throws IOException {
+        throw new UnsupportedOperationException("Snapshots are not supported by " + this);
+    }
+
+    /**
+     * Tests whether there is a snapshot.
+     *
+     * @return {@code true} if there is a snapshot, {@code false} otherwise.
+     * @throws IOException if an error occurs checking for the snapshot.
+     */
+    default boolean hasSnapshot() throws IOException {
+        return false;
+    }
+
+    /**
+     * Replaces the index with the snapshot. The snapshot is used up in the process.
+     *
+     * @throws IOException if an error occurs restoring the snapshot.
+     * @throws IllegalStateException if there is no snapshot.
+     */
+    default void restoreSnapshot() throws IOException {
+        throw new IllegalStateException("There is no snapshot to restore");
+    }
+
+    /**
+     * Deletes the snapshot, if there is one.
+     *
+     * @throws IOException if an error occurs deleting the snapshot.
+     */
+    default void deleteSnapshot() throws IOException {
+    }
+}
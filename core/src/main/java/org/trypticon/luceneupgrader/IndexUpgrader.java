@@ -0,0 +1,313 @@
+package org.trypticon.luceneupgrader;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Upgrades an index to a newer version.
+ */
+public class IndexUpgrader {
+
+    /**
+     * How much heap an in-memory upgrade needs relative to the size of the index.
+     * During each step, both the source index and the one being written are held, and copying
+     * the result back out makes a third copy. Upgrading 125 MB indexes from Lucene 4 and 7 to 9
+     * took a little over three times their size at the peak, which this leaves headroom above.
+     */
+    static final int IN_MEMORY_OVERHEAD = 4;
+
+    @Nonnull
+    private final IndexStorage storage;
+
+    @Nonnull
+    private final InfoStream infoStream;
+
+    @Nonnull
+    private final IndexUpgraderConfig config;
+
+    @Nonnull
+    private final UpgradeMonitor monitor;
+
+    @Nonnull
+    private LuceneVersion version;
+
+    public IndexUpgrader(@Nonnull Path directory) throws IOException {
+        this(directory, InfoStream.NO_OUTPUT);
+    }
+
+    public IndexUpgrader(@Nonnull Path directory, @Nonnull InfoStream infoStream) throws IOException {
+        this(directory, infoStream, new IndexUpgraderConfig());
+    }
+
+    public IndexUpgrader(@Nonnull Path directory, @Nonnull InfoStream infoStream,
+                         @Nonnull IndexUpgraderConfig config) throws IOException {
+        this(new FileSystemIndexStorage(directory, config), infoStream, config);
+    }
+
+    /**
+     * Constructs an upgrader for an index in some other kind of storage.
+     *
+     * @param storage the storage containing the index.
+     * @param infoStream an info stream to log to.
+     * @param config the config for the upgrade.
+     * @throws IOException if an error occurs reading the index to determine its version.
+     */
+    public IndexUpgrader(@Nonnull IndexStorage storage, @Nonnull InfoStream infoStream,
+                         @Nonnull IndexUpgraderConfig config) throws IOException {
+        this.storage = storage;
+        this.infoStream = infoStream;
+        this.config = config;
+        monitor = new UpgradeMonitor(config);
+
+        version = new VersionGuesser().guess(storage);
+    }
+
+    /**
+     * Gets the monitor for watching and tuning upgrades as they run, which is also registered over JMX
+     * while one does.
+     *
+     * @return the monitor.
+     */
+    @Nonnull
+    public UpgradeMonitor getMonitor() {
+        return monitor;
+    }
+
+    /**
+     * Upgrades to a specific version of Lucene.
+     *
+     * @param destinationVersion the destination version.
+     * @throws IOException if an error occurs reading or writing.
+     * @throws IllegalStateException if the module for one of the versions on the way is not on the classpath.
+     */
+    public void upgradeTo(LuceneVersion destinationVersion) throws IOException {
+        // Better to find out that a step can't be done before doing any of the others.
+        for (LuceneVersion stepVersion = version; stepVersion.isOlderThan(destinationVersion);
+             stepVersion = versionAfter(stepVersion)) {
+            versionAfter(stepVersion).getSupport();
+        }
+
+        if (!version.isOlderThan(destinationVersion)) {
+            return;
+        }
+
+        if (config.isSnapshot() && !storage.hasSnapshot()) {
+            // An existing snapshot is from an earlier upgrade which hasn't been confirmed yet,
+            // so it's further back than the current state and is the one to keep.
+            storage.createSnapshot(versionAfter(version).createUpgrader(storage, infoStream, config).listCommitFiles());
+        }
+
+        ObjectName monitorName = registerMonitor();
+        try {
+            IndexFingerprint fingerprintBefore = null;
+            if (config.isVerifyContent()) {
+                fingerprintBefore = fingerprint();
+            }
+
+            monitor.upgradeStarted(InMemoryIndex.sizeOf(storage), destinationVersion.ordinal() - version.ordinal());
+            try {
+                HeapGovernor governor = config.getHeapGovernor();
+                if (fitsInMemory()) {
+                    // The index is held on the heap from the first step to the last, so they're admitted as one.
+                    long estimate = InMemoryIndex.sizeOf(storage) * IN_MEMORY_OVERHEAD;
+                    try (HeapGovernor.Grant grant = governor == null ? null : governor.admit(estimate)) {
+                        upgradeInMemoryTo(destinationVersion, grant);
+                    }
+                } else {
+                    while (version.isOlderThan(destinationVersion)) {
+                        upgradeOneStepTo(versionAfter(version), governor);
+                    }
+                }
+            } finally {
+                monitor.upgradeFinished();
+            }
+
+            if (fingerprintBefore != null) {
+                List<String> differences = fingerprintBefore.differences(fingerprint());
+                if (!differences.isEmpty()) {
+                    throw new ContentMismatchException(differences);
+                }
+            }
+        } finally {
+            unregisterMonitor(monitorName);
+        }
+    }
+
+    /**
+     * Confirms that the upgrade went well, deleting the snapshot taken before it.
+     *
+     * @throws IOException if an error occurs deleting the snapshot.
+     */
+    public void confirmUpgrade() throws IOException {
+        storage.deleteSnapshot();
+    }
+
+    /**
+     * Rolls the index back to the snapshot taken before the upgrade.
+     *
+     * @throws IOException if an error occurs restoring the snapshot.
+     * @throws IllegalStateException if there is no snapshot.
+     */
+    public void rollback() throws IOException {
+        storage.restoreSnapshot();
+        version = new VersionGuesser().guess(storage);
+    }
+
+    private void upgradeOneStepTo(LuceneVersion version, @Nullable HeapGovernor governor) throws IOException {
+        UpgradeEvents.Step event = new UpgradeEvents.Step();
+        if (event.isEnabled()) {
+            event.sizeBefore = InMemoryIndex.sizeOf(storage);
+        }
+        event.begin();
+        try (HeapGovernor.Grant grant = governor == null ? null : governor.admit(estimateMergeHeap())) {
+            monitor.stepStarted(this.version, version);
+            createUpgrader(version, grant).upgrade();
+        }
+        event.end();
+
+        // Sanity check.
+        checkUpgraded(this.version, version, new VersionGuesser().guess(storage));
+
+        if (event.shouldCommit()) {
+            event.fromVersion = this.version.getNumber();
+            event.toVersion = version.getNumber();
+            event.sizeAfter = InMemoryIndex.sizeOf(storage);
+            event.commit();
+        }
+
+        this.version = version;
+    }
+
+    private VersionUpgrader createUpgrader(LuceneVersion version, @Nullable HeapGovernor.Grant grant) {
+        VersionUpgrader upgrader = version.createUpgrader(storage, infoStream, config);
+        upgrader.setMonitor(monitor);
+        if (grant != null) {
+            upgrader.setHeapGrant(grant);
+        }
+        if (!config.isIntermediateCompoundFiles()) {
+            // The next step rewrites every segment this one writes, and the last one force merges down to a
+            // segment too big to go in a compound file anyway.
+            upgrader.setCompoundFiles(false);
+        }
+        return upgrader;
+    }
+
+    /**
+     * Estimates the heap the next step's merge needs, from the segment statistics of the index as it is
+     * before the step.
+     */
+    private long estimateMergeHeap() throws IOException {
+        return HeapGovernor.estimate(version.createChecker(storage).statistics(monitor.getThreadCount()));
+    }
+
+    /**
+     * Computes the fingerprint of the index as it currently is, using the version of Lucene it's in.
+     */
+    private IndexFingerprint fingerprint() throws IOException {
+        return version.createChecker(storage).fingerprint(monitor.getThreadCount());
+    }
+
+    /**
+     * Registers the monitor with the platform MBean server for the duration of an upgrade.
+     *
+     * @return the name it was registered under, or {@code null} if it couldn't be.
+     */
+    @Nullable
+    private ObjectName registerMonitor() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName("org.trypticon.luceneupgrader:type=IndexUpgrader,index=" +
+                                             ObjectName.quote(storage.toString()));
+            server.registerMBean(monitor, name);
+            return name;
+        } catch (InstanceAlreadyExistsException e) {
+            // Another upgrader is working on the same index, which will fail on its lock soon enough.
+            return null;
+        } catch (JMException e) {
+            // Not being able to watch the upgrade is no reason not to do it.
+            if (infoStream.isEnabled("IU")) {
+                infoStream.message("IU", "Couldn't register the upgrade monitor: " + e);
+            }
+            return null;
+        }
+    }
+
+    private void unregisterMonitor(@Nullable ObjectName name) {
+        if (name == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            if (infoStream.isEnabled("IU")) {
+                infoStream.message("IU", "Couldn't unregister the upgrade monitor: " + e);
+            }
+        }
+    }
+
+    private boolean fitsInMemory() throws IOException {
+        long budget = config.getHeapBudget();
+        return budget > 0 && InMemoryIndex.sizeOf(storage) <= budget / IN_MEMORY_OVERHEAD;
+    }
+
+    /**
+     * Loads the index into memory, performs every step there, then writes the result back in one go.
+     *
+     * @param destinationVersion the destination version.
+     * @param grant the grant the whole upgrade was admitted with, or {@code null} if there is no governor.
+     * @throws IOException if an error occurs reading or writing.
+     */
+    private void upgradeInMemoryTo(LuceneVersion destinationVersion, @Nullable HeapGovernor.Grant grant)
+            throws IOException {
+        InMemoryIndex index = InMemoryIndex.load(storage);
+
+        LuceneVersion currentVersion = this.version;
+        while (currentVersion.isOlderThan(destinationVersion)) {
+            LuceneVersion nextVersion = versionAfter(currentVersion);
+            UpgradeEvents.Step event = new UpgradeEvents.Step();
+            event.sizeBefore = index.sizeInBytes();
+            event.begin();
+            monitor.stepStarted(currentVersion, nextVersion);
+            createUpgrader(nextVersion, grant).upgrade(index);
+            event.end();
+
+            // Sanity check.
+            checkUpgraded(currentVersion, nextVersion, new VersionGuesser().guess(index));
+
+            if (event.shouldCommit()) {
+                event.fromVersion = currentVersion.getNumber();
+                event.toVersion = nextVersion.getNumber();
+                event.inMemory = true;
+                event.sizeAfter = index.sizeInBytes();
+                event.commit();
+            }
+
+            currentVersion = nextVersion;
+        }
+
+        index.writeTo(storage);
+
+        this.version = currentVersion;
+    }
+
+    private static void checkUpgraded(LuceneVersion fromVersion, LuceneVersion toVersion,
+                                      LuceneVersion actualVersion) {
+        if (actualVersion != toVersion) {
+            throw new IllegalStateException("We tried to upgrade from " + fromVersion + " to " + toVersion +
+                                            ", but it didn't actually happen");
+        }
+    }
+
+    private static LuceneVersion versionAfter(LuceneVersion version) {
+        // we know this only gets called when we have checked that version is older.
+        return LuceneVersion.values()[version.ordinal() + 1];
+    }
+}
@@ -0,0 +1,339 @@
+package org.trypticon.luceneupgrader;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Holds the options controlling how an {@link IndexUpgrader} performs each upgrade step.
+ * Setters return the config itself so that calls can be chained.
+ */
+public class IndexUpgraderConfig {
+
+    @Nonnull
+    private Set<LuceneVersion> directIOVersions = EnumSet.noneOf(LuceneVersion.class);
+
+    private boolean directIOReads;
+
+    private long heapBudget;
+
+    private boolean snapshot;
+
+    private boolean fusedChecksums;
+
+    private boolean verifyContent;
+
+    private long throttleRate;
+
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+
+    @Nullable
+    private HeapGovernor heapGovernor;
+
+    private boolean offHeapTermsIndex;
+
+    private boolean intermediateCompoundFiles;
+
+    @Nullable
+    private Consumer<IOAccounting> ioAccountingListener;
+
+    /**
+     * Sets which upgrade steps write their output using direct I/O ({@code O_DIRECT}), bypassing
+     * the OS page cache. Each step is identified by the version it upgrades <em>to</em>.
+     * Where the file system doesn't support direct I/O, the step falls back to buffered I/O.
+     *
+     * @param versions the destination versions of the steps to use direct I/O for.
+     * @return this config.
+     */
+    public IndexUpgraderConfig setDirectIO(@Nonnull Set<LuceneVersion> versions) {
+        directIOVersions = versions.isEmpty() ? EnumSet.noneOf(LuceneVersion.class) : EnumSet.copyOf(versions);
+        return this;
+    }
+
+    /**
+     * Gets the destination versions of the steps which use direct I/O.
+     *
+     * @return the versions.
+     */
+    @Nonnull
+    public Set<LuceneVersion> getDirectIO() {
+        return Collections.unmodifiableSet(directIOVersions);
+    }
+
+    /**
+     * Tests whether the step upgrading to the given version uses direct I/O.
+     *
+     * @param version the destination version of the step.
+     * @return {@code true} if the step uses direct I/O, {@code false} otherwise.
+     */
+    public boolean isDirectIO(@Nonnull LuceneVersion version) {
+        return directIOVersions.contains(version);
+    }
+
+    /**
+     * Sets whether steps using direct I/O also read the source index using direct I/O.
+     * Off by default, since the reads tend to benefit from the page cache more than the writes do.
+     *
+     * @param directIOReads {@code true} to read using direct I/O as well.
+     * @return this config.
+     */
+    public IndexUpgraderConfig setDirectIOReads(boolean directIOReads) {
+        this.directIOReads = directIOReads;
+        return this;
+    }
+
+    /**
+     * Tests whether steps using direct I/O also read the source index using direct I/O.
+     *
+     * @return {@code true} if reads use direct I/O as well, {@code false} otherwise.
+     */
+    public boolean isDirectIOReads() {
+        return directIOReads;
+    }
+
+    /**
+     * Sets the amount of heap the upgrade may use to hold the index in memory. An index which fits
+     * within the budget, allowing for the several copies of it held at once during each step, is loaded
+     * once, upgraded through every step without going back to disk, then written out once at the end.
+     * Larger indexes are upgraded on disk as usual.
+     * The default of {@code 0} upgrades every index on disk.
+     *
+     * @param heapBudget the budget in bytes.
+     * @return this config.
+     */
+    public IndexUpgraderConfig setHeapBudget(long heapBudget) {
+        if (heapBudget < 0) {
+            throw new IllegalArgumentException("Heap budget cannot be negative: " + heapBudget);
+        }
+        this.heapBudget = heapBudget;
+        return this;
+    }
+
+    /**
+     * Gets the amount of heap the upgrade may use to hold the index in memory.
+     *
+     * @return the budget in bytes.
+     */
+    public long getHeapBudget() {
+        return heapBudget;
+    }
+
+    /**
+     * Sets whether to take a snapshot of the index before the first step, so that the upgrade can be
+     * rolled back using {@link IndexUpgrader#rollback()}. The snapshot is kept until
+     * {@link IndexUpgrader#confirmUpgrade()} is called.
+     *
+     * @param snapshot {@code true} to take a snapshot.
+     * @return this config.
+     */
+    public IndexUpgraderConfig setSnapshot(boolean snapshot) {
+        this.snapshot = snapshot;
+        return this;
+    }
+
+    /**
+     * Tests whether a snapshot is taken before the first step.
+     *
+     * @return {@code true} if a snapshot is taken, {@code false} otherwise.
+     */
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Sets whether the steps to Lucene 7 onwards verify the checksums of the source index as part of
+     * reading it for the merge, rather than reading every file once to verify it and then again to merge it.
+     * A mismatch still fails the step before anything is committed.
+     *
+     * @param fusedChecksums {@code true} to verify checksums while merging.
+     * @return this config.
+     */
+    public IndexUpgraderConfig setFusedChecksums(boolean fusedChecksums) {
+        this.fusedChecksums = fusedChecksums;
+        return this;
+    }
+
+    /**
+     * Tests whether checksums are verified while merging.
+     *
+     * @return {@code true} if checksums are verified while merging, {@code false} otherwise.
+     */
+    public boolean isFusedChecksums() {
+        return fusedChecksums;
+    }
+
+    /**
+     * Sets whether to check that the upgrade kept all the content of the index, by comparing
+     * a fingerprint of the index taken before the first step with one taken after the last.
+     * A mismatch fails the upgrade with a {@link ContentMismatchException}.
+     * This costs two extra reads of the index, spread across all processors.
+     *
+     * @param verifyContent {@code true} to check the content.
+     * @return this config.
+     * @see IndexFingerprint
+     */
+    public IndexUpgraderConfig setVerifyContent(boolean verifyContent) {
+        this.verifyContent = verifyContent;
+        return this;
+    }
+
+    /**
+     * Tests whether the content of the index is checked after the upgrade.
+     *
+     * @return {@code true} if the content is checked, {@code false} otherwise.
+     */
+    public boolean isVerifyContent() {
+        return verifyContent;
+    }
+
+    /**
+     * Sets the rate the upgrade writes the new index at, to leave some disk bandwidth for everything else.
+     * The default of {@code 0} doesn't limit it. It can be changed while an upgrade runs through
+     * {@link UpgradeMonitor#setThrottleRate(long)}.
+     *
+     * @param throttleRate the rate in bytes per second, or {@code 0} for no limit.
+     * @return this config.
+     */
+    public IndexUpgraderConfig setThrottleRate(long throttleRate) {
+        if (throttleRate < 0) {
+            throw new IllegalArgumentException("Throttle rate must not be negative: " + throttleRate);
+        }
+        this.throttleRate = throttleRate;
+        return this;
+    }
+
+    /**
+     * Gets the rate the upgrade writes the new index at.
+     *
+     * @return the rate in bytes per second, or {@code 0} for no limit.
+     */
+    public long getThrottleRate() {
+        return throttleRate;
+    }
+
+    /**
+     * Sets the number of threads for the parts of the upgrade which can be done in parallel, such as
+     * computing the fingerprints for {@link #setVerifyContent(boolean)}, or merging the stored fields,
+     * postings, doc values, points and so on of each segment side by side in the steps to Lucene 7 through 9.
+     * The default is the number of processors. It can be changed while an upgrade runs through
+     * {@link UpgradeMonitor#setThreadCount(int)}, which merges pick up from the next step.
+     *
+     * @param threadCount the number of threads. {@code 1} does everything sequentially.
+     * @return this config.
+     */
+    public IndexUpgraderConfig setThreadCount(int threadCount) {
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("Thread count must be at least 1: " + threadCount);
+        }
+        this.threadCount = threadCount;
+        return this;
+    }
+
+    /**
+     * Gets the number of threads for the parts of the upgrade which can be done in parallel.
+     *
+     * @return the number of threads.
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets a governor to keep the heap used by upgrade steps within a budget. Each step waits to be admitted
+     * before it starts, and a step estimated to need more than the whole budget spills to disk sooner.
+     * Sharing one governor between the configs of several upgraders keeps them all within the one budget.
+     * The default of {@code null} admits every step straight away.
+     *
+     * @param heapGovernor the governor, or {@code null} for none.
+     * @return this config.
+     */
+    public IndexUpgraderConfig setHeapGovernor(@Nullable HeapGovernor heapGovernor) {
+        this.heapGovernor = heapGovernor;
+        return this;
+    }
+
+    /**
+     * Gets the governor keeping the heap used by upgrade steps within a budget.
+     *
+     * @return the governor, or {@code null} for none.
+     */
+    @Nullable
+    public HeapGovernor getHeapGovernor() {
+        return heapGovernor;
+    }
+
+    /**
+     * Sets whether the steps to Lucene 8 onwards build the terms index of each field off the heap, writing
+     * it out node by node instead of holding the whole of it until the field is done. This keeps fields with
+     * huge numbers of terms from needing a heap to match, at the cost of a slightly larger index. Steps which
+     * a {@link #setHeapGovernor heap governor} admits short of their estimate do this regardless.
+     *
+     * @param offHeapTermsIndex {@code true} to build the terms index off the heap.
+     * @return this config.
+     */
+    public IndexUpgraderConfig setOffHeapTermsIndex(boolean offHeapTermsIndex) {
+        this.offHeapTermsIndex = offHeapTermsIndex;
+        return this;
+    }
+
+    /**
+     * Tests whether the terms index is built off the heap.
+     *
+     * @return {@code true} if the terms index is built off the heap, {@code false} otherwise.
+     */
+    public boolean isOffHeapTermsIndex() {
+        return offHeapTermsIndex;
+    }
+
+    /**
+     * Sets whether the steps may pack the segments of their intermediate merges into compound files. Forcing
+     * an index of many small segments down to one goes through merges of a few segments at a time, and those
+     * merged segments are small enough that the merge policy would pack them, copying each of them a second
+     * time only for the next merge to read them back out. The segment the upgrade ends with is never packed,
+     * so the upgraded index is the same either way. Defaults to {@code false}.
+     *
+     * @param intermediateCompoundFiles {@code true} to leave it to the merge policy, {@code false} to keep
+     *                                  every segment out of compound files.
+     * @return this config.
+     */
+    public IndexUpgraderConfig setIntermediateCompoundFiles(boolean intermediateCompoundFiles) {
+        this.intermediateCompoundFiles = intermediateCompoundFiles;
+        return this;
+    }
+
+    /**
+     * Tests whether the steps may pack the segments of their intermediate merges into compound files.
+     *
+     * @return {@code true} if they may, {@code false} otherwise.
+     */
+    public boolean isIntermediateCompoundFiles() {
+        return intermediateCompoundFiles;
+    }
+
+    /**
+     * Sets a listener to be given a count of the bytes each step read and wrote, once the step is done.
+     * Counting adds a little to every read and write, so it's only done while a listener is set.
+     * The default of {@code null} counts nothing.
+     *
+     * @param ioAccountingListener the listener, or {@code null} to stop counting.
+     * @return this config.
+     * @see IOAccounting
+     */
+    public IndexUpgraderConfig setIOAccountingListener(@Nullable Consumer<IOAccounting> ioAccountingListener) {
+        this.ioAccountingListener = ioAccountingListener;
+        return this;
+    }
+
+    /**
+     * Gets the listener given the count of the bytes each step read and wrote.
+     *
+     * @return the listener, or {@code null} if nothing is counted.
+     */
+    @Nullable
+    public Consumer<IOAccounting> getIOAccountingListener() {
+        return ioAccountingListener;
+    }
+}
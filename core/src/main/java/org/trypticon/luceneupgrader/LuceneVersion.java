@@ -0,0 +1,207 @@
+package org.trypticon.luceneupgrader;
+
+import javax.annotation.Nonnull;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/**
+ * Enumeration of versions of Lucene.
+ * <p>
+ * Each version from Lucene 3 on is supported by its own module, which embeds that version of Lucene
+ * and is found through {@link VersionSupport}. None of a module's copy of Lucene is loaded until an
+ * index of that version is actually checked or upgraded.
+ */
+public enum LuceneVersion {
+
+    VERSION_1(1) {
+        @Override
+        protected VersionUpgrader createUpgrader(@Nonnull IndexStorage storage, @Nonnull InfoStream infoStream,
+                                                 @Nonnull IndexUpgraderConfig config) {
+            throw new UnsupportedOperationException("Upgrade from what?");
+        }
+
+        @Override
+        protected VersionChecker createChecker(@Nonnull IndexStorage storage) {
+            throw new UnsupportedOperationException("Check what?");
+        }
+
+        @Override
+        public boolean isSupported() {
+            return false;
+        }
+    },
+
+    VERSION_2(2) {
+        @Override
+        protected VersionUpgrader createUpgrader(@Nonnull IndexStorage storage, @Nonnull InfoStream infoStream,
+                                                 @Nonnull IndexUpgraderConfig config) {
+            throw new UnsupportedOperationException("TODO");
+        }
+
+        @Override
+        protected VersionChecker createChecker(@Nonnull IndexStorage storage) {
+            // Lucene 3 reads Lucene 2 indexes
+            return VERSION_3.createChecker(storage);
+        }
+
+        @Override
+        public boolean isSupported() {
+            return VERSION_3.isSupported();
+        }
+    },
+
+    VERSION_3(3),
+
+    VERSION_4(4),
+
+    VERSION_5(5),
+
+    VERSION_6(6),
+
+    VERSION_7(7),
+
+    VERSION_8(8),
+
+    VERSION_9(9);
+
+    private final int number;
+
+    LuceneVersion(int number) {
+        this.number = number;
+    }
+
+    /**
+     * Gets the number for this version.
+     *
+     * @return the version number.
+     */
+    public int getNumber() {
+        return number;
+    }
+
+    /**
+     * Tries to find a Lucene version by its number.
+     *
+     * @param number the version number.
+     * @return the Lucene version enum value. Returns {@code null} if not found.
+     */
+    public static LuceneVersion findByNumber(int number) {
+        for (LuceneVersion version : values()) {
+            if (version.number == number) {
+                return version;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Tests whether this version is older than the given version.
+     * 
+     * @param version the version to compare against.
+     * @return {@code true} if this version is older than the given version,
+     *         {@code false} otherwise.
+     */
+    public boolean isOlderThan(LuceneVersion version) {
+        return compareTo(version) < 0; // because we order them in the enum
+    }
+
+    /**
+     * Tests whether indexes in this version can be checked, and upgraded to it where that's possible at all,
+     * which depends on the module for the version being on the classpath.
+     *
+     * @return {@code true} if the version is supported, {@code false} otherwise.
+     */
+    public boolean isSupported() {
+        return Supports.BY_VERSION.containsKey(this);
+    }
+
+    /**
+     * Creates an upgrader suitable for upgrading to this version.
+     *
+     * @param storage the storage containing the index.
+     * @param infoStream an info stream to log to.
+     * @param config the config for the upgrade.
+     * @return the upgrader.
+     * @throws IllegalStateException if the version is not supported.
+     */
+    protected VersionUpgrader createUpgrader(@Nonnull IndexStorage storage, @Nonnull InfoStream infoStream,
+                                             @Nonnull IndexUpgraderConfig config) {
+        return getSupport().createUpgrader(storage, infoStream, config);
+    }
+
+    /**
+     * Creates a checker for an index in this version.
+     *
+     * @param storage the storage containing the index.
+     * @return the checker.
+     * @throws IllegalStateException if the version is not supported.
+     */
+    protected VersionChecker createChecker(@Nonnull IndexStorage storage) {
+        return getSupport().createChecker(storage);
+    }
+
+    /**
+     * Gets the support for this version.
+     *
+     * @return the support.
+     * @throws IllegalStateException if the module for this version is not on the classpath.
+     */
+    @Nonnull
+    VersionSupport getSupport() {
+        VersionSupport support = Supports.BY_VERSION.get(this);
+        if (support == null) {
+            throw new IllegalStateException("Lucene " + number + " is not supported without " +
+                                            "luceneupgrader-lucene" + number + " on the classpath");
+        }
+        return support;
+    }
+
+    /**
+     * Gets the support for the newest version whose module is on the classpath, for jobs
+     * which any version can do.
+     *
+     * @return the support.
+     * @throws IllegalStateException if no version is supported.
+     */
+    @Nonnull
+    static VersionSupport getNewestSupport() {
+        VersionSupport newest = null;
+        for (VersionSupport support : Supports.BY_VERSION.values()) {
+            newest = support;
+        }
+        if (newest == null) {
+            throw new IllegalStateException("No luceneupgrader-luceneN modules are on the classpath");
+        }
+        return newest;
+    }
+
+    /**
+     * Finds the support for the version whose {@code Directory} class is the given one.
+     *
+     * @param directoryType the directory class.
+     * @return the support, or {@code null} if no supported version uses that directory class.
+     */
+    static VersionSupport findSupport(@Nonnull Class<?> directoryType) {
+        for (VersionSupport support : Supports.BY_VERSION.values()) {
+            if (support.getDirectoryType() == directoryType) {
+                return support;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Holds the support found on the classpath, which is only looked for once it's first needed.
+     */
+    private static class Supports {
+        // An EnumMap, so that the values come out oldest first.
+        private static final Map<LuceneVersion, VersionSupport> BY_VERSION = new EnumMap<>(LuceneVersion.class);
+
+        static {
+            for (VersionSupport support : ServiceLoader.load(VersionSupport.class)) {
+                BY_VERSION.putIfAbsent(support.getVersion(), support);
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.trypticon.luceneupgrader;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the parts of a merge which can be done side by side, for the steps to Lucene 7 and later.
+ * The merging thread takes one part of each merge itself, so the rest of the threads are in a pool here.
+ * <p>
+ * The number of threads can be changed while a step runs, through {@link UpgradeMonitor#setThreadCount}.
+ * Parts already waiting for a thread are picked up by any threads added, and threads taken away finish
+ * the part they're on first. With one thread, parts run on the thread handing them over, one after another.
+ */
+public class MergePartExecutor implements Executor, Closeable {
+
+    @Nonnull
+    private final ThreadPoolExecutor pool;
+
+    private volatile int threadCount;
+
+    /**
+     * Constructs the executor.
+     *
+     * @param threadCount the number of threads to merge with, including the merging thread.
+     */
+    public MergePartExecutor(int threadCount) {
+        pool = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                                      new NamedThreadFactory("merge-parts"));
+        pool.allowCoreThreadTimeOut(true);
+        setThreadCount(threadCount);
+    }
+
+    /**
+     * Gets the number of threads to merge with.
+     *
+     * @return the number of threads, including the merging thread.
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets the number of threads to merge with, taking effect from the next part to start.
+     *
+     * @param threadCount the number of threads, including the merging thread.
+     */
+    public synchronized void setThreadCount(int threadCount) {
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("Thread count must be at least 1: " + threadCount);
+        }
+        // The pool keeps a thread even when there's only the merging thread, for the parts already queued.
+        int poolSize = Math.max(1, threadCount - 1);
+        if (poolSize > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(poolSize);
+            pool.setCorePoolSize(poolSize);
+        } else {
+            pool.setCorePoolSize(poolSize);
+            pool.setMaximumPoolSize(poolSize);
+        }
+        this.threadCount = threadCount;
+    }
+
+    @Override
+    public void execute(@Nonnull Runnable command) {
+        if (threadCount == 1) {
+            command.run();
+        } else {
+            pool.execute(command);
+        }
+    }
+
+    /**
+     * Stops the threads, interrupting any parts still running.
+     */
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,29 @@
+package org.trypticon.luceneupgrader;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Makes threads named after what they're for, so that they can be told apart in a thread dump.
+ */
+class NamedThreadFactory implements ThreadFactory {
+    private static final AtomicInteger poolNumber = new AtomicInteger(1);
+
+    private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+    @Nonnull
+    private final String prefix;
+
+    NamedThreadFactory(@Nonnull String prefix) {
+        this.prefix = prefix + "-" + poolNumber.getAndIncrement() + "-thread-";
+    }
+
+    @Override
+    public Thread newThread(@Nonnull Runnable runnable) {
+        Thread thread = new Thread(runnable, prefix + threadNumber.getAndIncrement());
+        thread.setDaemon(false);
+        thread.setPriority(Thread.NORM_PRIORITY);
+        return thread;
+    }
+}
@@ -0,0 +1,225 @@
+package org.trypticon.luceneupgrader;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * The made-up documents for a {@link SyntheticIndexGenerator} to write, one at a time. All the content
+ * comes from one seeded random sequence, so every version of Lucene is given the same documents.
+ * <p>
+ * The module writing the index calls {@link #next()} before each document and stops when it returns
+ * {@code false}, then adds the fields for whichever {@linkplain SyntheticIndexConfig.Feature features}
+ * its version has.
+ */
+public final class SyntheticDocuments {
+
+    /**
+     * How many documents to write between looking at how much is on disk.
+     */
+    private static final int SIZE_CHECK_INTERVAL = 1000;
+
+    private static final int WORDS_PER_TITLE = 5;
+
+    private static final int CATEGORY_COUNT = 100;
+
+    @Nonnull
+    private final SyntheticIndexConfig config;
+
+    @Nonnull
+    private final Path directory;
+
+    @Nonnull
+    private final Random random;
+
+    @Nonnull
+    private final String[] vocabulary;
+
+    @Nonnull
+    private final StringBuilder text = new StringBuilder();
+
+    private int documentNumber = -1;
+
+    private String title;
+
+    private String body;
+
+    private long number;
+
+    private String category;
+
+    private float[] vector;
+
+    private boolean deleted;
+
+    SyntheticDocuments(@Nonnull SyntheticIndexConfig config, @Nonnull Path directory) {
+        this.config = config;
+        this.directory = directory;
+
+        random = new Random(config.getSeed());
+        vocabulary = new String[config.getVocabularySize()];
+        for (int i = 0; i < vocabulary.length; i++) {
+            vocabulary[i] = Integer.toString(random.nextInt(Integer.MAX_VALUE), Character.MAX_RADIX);
+        }
+    }
+
+    /**
+     * Gets the config the documents are made from.
+     *
+     * @return the config.
+     */
+    @Nonnull
+    public SyntheticIndexConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Tests whether a kind of content is to be added to each document.
+     *
+     * @param feature the feature.
+     * @return {@code true} if it's to be added, {@code false} otherwise.
+     */
+    public boolean hasFeature(@Nonnull SyntheticIndexConfig.Feature feature) {
+        return config.hasFeature(feature);
+    }
+
+    /**
+     * Moves on to the next document.
+     *
+     * @return {@code true} if there is another document, {@code false} if the index is big enough.
+     * @throws IOException if an error occurs looking at how much has been written.
+     */
+    public boolean next() throws IOException {
+        int nextNumber = documentNumber + 1;
+        if (config.getDocumentCount() > 0 && nextNumber >= config.getDocumentCount()) {
+            return false;
+        }
+        if (config.getTargetSize() > 0 && nextNumber % SIZE_CHECK_INTERVAL == 0 && nextNumber > 0 &&
+            sizeOnDisk() >= config.getTargetSize()) {
+            return false;
+        }
+        documentNumber = nextNumber;
+
+        title = words(WORDS_PER_TITLE);
+        body = words(config.getWordsPerDocument());
+        number = random.nextLong();
+        category = vocabulary[random.nextInt(Math.min(CATEGORY_COUNT, vocabulary.length))];
+        if (config.hasFeature(SyntheticIndexConfig.Feature.VECTORS)) {
+            // A new array each time, since writers may hold on to the one they're given.
+            vector = new float[config.getVectorDimension()];
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = random.nextFloat();
+            }
+        }
+        deleted = config.getDeletionRatio() > 0 && random.nextDouble() < config.getDeletionRatio();
+        return true;
+    }
+
+    /**
+     * Gets the number of the current document, counting from 0.
+     *
+     * @return the document number.
+     */
+    public int getDocumentNumber() {
+        return documentNumber;
+    }
+
+    /**
+     * Gets the id of the current document, to be indexed as a single term in {@code id}.
+     *
+     * @return the id.
+     */
+    @Nonnull
+    public String getId() {
+        return Integer.toString(documentNumber);
+    }
+
+    /**
+     * Gets the title of the current document, a few words separated by spaces.
+     *
+     * @return the title.
+     */
+    @Nonnull
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Gets the body of the current document, words separated by spaces.
+     *
+     * @return the body.
+     */
+    @Nonnull
+    public String getBody() {
+        return body;
+    }
+
+    /**
+     * Gets the number for the current document, for the numeric features.
+     *
+     * @return the number.
+     */
+    public long getNumber() {
+        return number;
+    }
+
+    /**
+     * Gets the category of the current document, one of a small set of words.
+     *
+     * @return the category.
+     */
+    @Nonnull
+    public String getCategory() {
+        return category;
+    }
+
+    /**
+     * Gets the vector for the current document, if {@link SyntheticIndexConfig.Feature#VECTORS} is on.
+     *
+     * @return the vector.
+     */
+    @Nonnull
+    public float[] getVector() {
+        return vector;
+    }
+
+    /**
+     * Tests whether the current document should be deleted again after it's written.
+     *
+     * @return {@code true} if it should be deleted, {@code false} otherwise.
+     */
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    private String words(int count) {
+        text.setLength(0);
+        for (int word = 0; word < count; word++) {
+            if (word > 0) {
+                text.append(' ');
+            }
+            // Multiplying two uniform choices skews them towards the start of the vocabulary, like real text.
+            double skewed = random.nextDouble() * random.nextDouble();
+            text.append(vocabulary[(int) (skewed * vocabulary.length)]);
+        }
+        return text.toString();
+    }
+
+    private long sizeOnDisk() throws IOException {
+        long size = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                try {
+                    size += Files.size(file);
+                } catch (NoSuchFileException e) {
+                    // Deleted by a merge while we were looking.
+                }
+            }
+        }
+        return size;
+    }
+}
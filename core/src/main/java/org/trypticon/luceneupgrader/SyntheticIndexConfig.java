@@ -0,0 +1,292 @@
+package org.trypticon.luceneupgrader;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Holds the options controlling what a {@link SyntheticIndexGenerator} puts in an index.
+ * Setters return the config itself so that calls can be chained.
+ * <p>
+ * Every document gets an {@code id} and some text in {@code title} and {@code body}, and the rest is
+ * chosen with {@link #setFeatures(Set)}. The same config always gives the same documents.
+ */
+public class SyntheticIndexConfig {
+
+    /**
+     * Kinds of content which can be added to each document. A version of Lucene which doesn't have
+     * one leaves it out, so one config can be used to generate an index for every version.
+     */
+    public enum Feature {
+
+        /**
+         * Stores the id and text, so that there's something in the stored fields files.
+         */
+        STORED_FIELDS,
+
+        /**
+         * Adds term vectors with positions and offsets to the text.
+         */
+        TERM_VECTORS,
+
+        /**
+         * Adds a number indexed as a trie of terms in {@code number_trie}. Only Lucene 3 to 6 have these.
+         */
+        TRIE_FIELDS,
+
+        /**
+         * Adds the number as numeric doc values in {@code number_dv}, and a word as sorted doc values
+         * in {@code category}. Lucene 4 on.
+         */
+        DOC_VALUES,
+
+        /**
+         * Adds the number as a point in {@code number_point}. Lucene 6 on.
+         */
+        POINTS,
+
+        /**
+         * Adds a vector of {@link #getVectorDimension()} floats in {@code vector}. Lucene 9 on.
+         */
+        VECTORS,
+    }
+
+    @Nonnull
+    private Set<Feature> features = EnumSet.of(Feature.STORED_FIELDS, Feature.TRIE_FIELDS,
+                                               Feature.DOC_VALUES, Feature.POINTS);
+
+    private long seed;
+
+    private int documentCount;
+
+    private long targetSize;
+
+    private int wordsPerDocument = 200;
+
+    private int vocabularySize = 50_000;
+
+    private int vectorDimension = 32;
+
+    private double deletionRatio;
+
+    private int documentsPerSegment;
+
+    /**
+     * Sets the kinds of content to add to each document, on top of the id and text.
+     * Defaults to stored fields, trie fields, doc values and points.
+     *
+     * @param features the features.
+     * @return this config.
+     */
+    public SyntheticIndexConfig setFeatures(@Nonnull Set<Feature> features) {
+        this.features = features.isEmpty() ? EnumSet.noneOf(Feature.class) : EnumSet.copyOf(features);
+        return this;
+    }
+
+    /**
+     * Gets the kinds of content added to each document.
+     *
+     * @return the features.
+     */
+    @Nonnull
+    public Set<Feature> getFeatures() {
+        return Collections.unmodifiableSet(features);
+    }
+
+    /**
+     * Tests whether a kind of content is added to each document.
+     *
+     * @param feature the feature.
+     * @return {@code true} if it's added, {@code false} otherwise.
+     */
+    public boolean hasFeature(@Nonnull Feature feature) {
+        return features.contains(feature);
+    }
+
+    /**
+     * Sets the seed for the random content. Defaults to 0.
+     *
+     * @param seed the seed.
+     * @return this config.
+     */
+    public SyntheticIndexConfig setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Gets the seed for the random content.
+     *
+     * @return the seed.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Sets how many documents to write. If a target size is also set, writing stops at whichever
+     * comes first.
+     *
+     * @param documentCount the number of documents, or 0 for no limit.
+     * @return this config.
+     */
+    public SyntheticIndexConfig setDocumentCount(int documentCount) {
+        if (documentCount < 0) {
+            throw new IllegalArgumentException("Document count cannot be negative: " + documentCount);
+        }
+        this.documentCount = documentCount;
+        return this;
+    }
+
+    /**
+     * Gets how many documents to write.
+     *
+     * @return the number of documents, or 0 for no limit.
+     */
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    /**
+     * Sets roughly how big the index should get on disk. Writing stops once the files written so far
+     * reach the size, so the index ends up within a flush or a merge of it.
+     *
+     * @param targetSize the size in bytes, or 0 for no limit.
+     * @return this config.
+     */
+    public SyntheticIndexConfig setTargetSize(long targetSize) {
+        if (targetSize < 0) {
+            throw new IllegalArgumentException("Target size cannot be negative: " + targetSize);
+        }
+        this.targetSize = targetSize;
+        return this;
+    }
+
+    /**
+     * Gets roughly how big the index should get on disk.
+     *
+     * @return the size in bytes, or 0 for no limit.
+     */
+    public long getTargetSize() {
+        return targetSize;
+    }
+
+    /**
+     * Sets how many words of text go in the body of each document. Defaults to 200.
+     *
+     * @param wordsPerDocument the number of words.
+     * @return this config.
+     */
+    public SyntheticIndexConfig setWordsPerDocument(int wordsPerDocument) {
+        if (wordsPerDocument <= 0) {
+            throw new IllegalArgumentException("Words per document must be at least 1: " + wordsPerDocument);
+        }
+        this.wordsPerDocument = wordsPerDocument;
+        return this;
+    }
+
+    /**
+     * Gets how many words of text go in the body of each document.
+     *
+     * @return the number of words.
+     */
+    public int getWordsPerDocument() {
+        return wordsPerDocument;
+    }
+
+    /**
+     * Sets how many different words the text is made of. Defaults to 50,000.
+     *
+     * @param vocabularySize the number of words.
+     * @return this config.
+     */
+    public SyntheticIndexConfig setVocabularySize(int vocabularySize) {
+        if (vocabularySize <= 0) {
+            throw new IllegalArgumentException("Vocabulary size must be at least 1: " + vocabularySize);
+        }
+        this.vocabularySize = vocabularySize;
+        return this;
+    }
+
+    /**
+     * Gets how many different words the text is made of.
+     *
+     * @return the number of words.
+     */
+    public int getVocabularySize() {
+        return vocabularySize;
+    }
+
+    /**
+     * Sets how many floats each vector has, for {@link Feature#VECTORS}. Defaults to 32.
+     *
+     * @param vectorDimension the number of floats.
+     * @return this config.
+     */
+    public SyntheticIndexConfig setVectorDimension(int vectorDimension) {
+        if (vectorDimension <= 0) {
+            throw new IllegalArgumentException("Vector dimension must be at least 1: " + vectorDimension);
+        }
+        this.vectorDimension = vectorDimension;
+        return this;
+    }
+
+    /**
+     * Gets how many floats each vector has.
+     *
+     * @return the number of floats.
+     */
+    public int getVectorDimension() {
+        return vectorDimension;
+    }
+
+    /**
+     * Sets the share of documents which are deleted again after being written, so that the index
+     * has deletions to purge. Defaults to 0.
+     *
+     * @param deletionRatio the share, from 0 up to but not including 1.
+     * @return this config.
+     */
+    public SyntheticIndexConfig setDeletionRatio(double deletionRatio) {
+        if (!(deletionRatio >= 0 && deletionRatio < 1)) {
+            throw new IllegalArgumentException("Deletion ratio must be at least 0 and less than 1: " + deletionRatio);
+        }
+        this.deletionRatio = deletionRatio;
+        return this;
+    }
+
+    /**
+     * Gets the share of documents which are deleted again after being written.
+     *
+     * @return the share.
+     */
+    public double getDeletionRatio() {
+        return deletionRatio;
+    }
+
+    /**
+     * Sets how many documents go in each segment. The writer then flushes a segment every that many
+     * documents and never merges them, which gives an index of many small segments. Defaults to 0,
+     * which leaves flushing and merging to the writer.
+     *
+     * @param documentsPerSegment the number of documents, or 0 to leave it to the writer.
+     * @return this config.
+     */
+    public SyntheticIndexConfig setDocumentsPerSegment(int documentsPerSegment) {
+        if (documentsPerSegment < 0) {
+            throw new IllegalArgumentException("Documents per segment cannot be negative: " + documentsPerSegment);
+        }
+        this.documentsPerSegment = documentsPerSegment;
+        return this;
+    }
+
+    /**
+     * Gets how many documents go in each segment.
+     *
+     * @return the number of documents, or 0 if it's left to the writer.
+     */
+    public int getDocumentsPerSegment() {
+        return documentsPerSegment;
+    }
+}
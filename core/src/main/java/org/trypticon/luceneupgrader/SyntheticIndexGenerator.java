@@ -0,0 +1,58 @@
+package org.trypticon.luceneupgrader;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Generates made-up indexes of any size using the embedded copies of Lucene, for measuring how long
+ * upgrades take without needing real indexes or a network connection.
+ * <p>
+ * The same config always gives the same documents, whichever version the index is written in. The files
+ * themselves aren't byte-for-byte the same from run to run, since newer versions of Lucene put random
+ * ids and timestamps in them, and merges happen in the background.
+ */
+public class SyntheticIndexGenerator {
+
+    @Nonnull
+    private final SyntheticIndexConfig config;
+
+    public SyntheticIndexGenerator(@Nonnull SyntheticIndexConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Writes a new index.
+     *
+     * @param directory the directory to write it in, which must not exist or be empty.
+     * @param version the version of Lucene to write it with.
+     * @throws IOException if an error occurs writing the index.
+     * @throws FileAlreadyExistsException if the directory has something in it already.
+     * @throws IllegalArgumentException if nothing can write indexes of that version, or if the config
+     *         sets neither a document count nor a target size.
+     * @throws IllegalStateException if the module for the version is not on the classpath.
+     */
+    public void generate(@Nonnull Path directory, @Nonnull LuceneVersion version) throws IOException {
+        if (version.isOlderThan(LuceneVersion.VERSION_3)) {
+            throw new IllegalArgumentException("Indexes can't be generated for Lucene " + version.getNumber());
+        }
+        if (config.getDocumentCount() == 0 && config.getTargetSize() == 0) {
+            throw new IllegalArgumentException("Neither a document count nor a target size is set");
+        }
+        VersionSupport support = version.getSupport();
+
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                if (stream.iterator().hasNext()) {
+                    throw new FileAlreadyExistsException(directory.toString(), null, "Directory is not empty");
+                }
+            }
+        }
+        Files.createDirectories(directory);
+
+        support.writeSyntheticIndex(directory, new SyntheticDocuments(config, directory));
+    }
+}
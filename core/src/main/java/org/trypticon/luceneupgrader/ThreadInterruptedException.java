@@ -0,0 +1,12 @@
+package org.trypticon.luceneupgrader;
+
+/**
+ * Thrown when a thread is interrupted while waiting on work spread over other threads.
+ */
+public class ThreadInterruptedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public ThreadInterruptedException(InterruptedException cause) {
+        super(cause);
+    }
+}
@@ -1,11 +1,11 @@
 package org.trypticon.luceneupgrader;
 
-import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.CorruptIndexException;
+import java.io.IOException;
 
 /**
  * Specific exception thrown when the upgrade tool figure the index is too old to migrate.
  */
-public class UnknownFormatException extends CorruptIndexException {
+public class UnknownFormatException extends IOException {
     public UnknownFormatException(String message) {
         super(message);
     }
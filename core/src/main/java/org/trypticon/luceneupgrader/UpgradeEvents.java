@@ -0,0 +1,147 @@
+package org.trypticon.luceneupgrader;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The events the upgrader records for Java Flight Recorder, so that a recording shows where an upgrade
+ * spends its time alongside GC, I/O and the rest of the JVM's own events.
+ * <p>
+ * Every event is enabled by default, with no threshold, so {@code -XX:StartFlightRecording} with the
+ * default settings records them all. The events nest: each step has a merge per new segment, each merge
+ * has a part per codec format, and the compound file and syncs come after the merge within the step.
+ */
+public final class UpgradeEvents {
+    private static final String CATEGORY = "Lucene Upgrader";
+
+    private UpgradeEvents() {
+    }
+
+    /**
+     * One step of an upgrade, from one version of Lucene to the next.
+     */
+    @Name("org.trypticon.luceneupgrader.Step")
+    @Label("Upgrade Step")
+    @Description("Upgrading an index from one version of Lucene to the next")
+    @Category(CATEGORY)
+    public static final class Step extends Event {
+        @Label("From Version")
+        public int fromVersion;
+
+        @Label("To Version")
+        public int toVersion;
+
+        @Label("In Memory")
+        @Description("Whether the step was done on a copy of the index in memory")
+        public boolean inMemory;
+
+        @Label("Size Before")
+        @DataAmount
+        public long sizeBefore;
+
+        @Label("Size After")
+        @DataAmount
+        public long sizeAfter;
+    }
+
+    /**
+     * Merging segments into a new one.
+     */
+    @Name("org.trypticon.luceneupgrader.SegmentMerge")
+    @Label("Segment Merge")
+    @Description("Merging one or more segments into a new segment")
+    @Category(CATEGORY)
+    public static final class SegmentMerge extends Event {
+        @Label("Segment")
+        public String segment;
+
+        @Label("Source Segments")
+        public int sourceSegmentCount;
+
+        @Label("Documents")
+        public int documentCount;
+
+        @Label("Bytes Written")
+        @DataAmount
+        public long bytesWritten;
+    }
+
+    /**
+     * Merging one part of the codec, e.g. the postings or the stored fields, within a segment merge.
+     */
+    @Name("org.trypticon.luceneupgrader.MergePart")
+    @Label("Merge Part")
+    @Description("Merging one codec format, such as postings or stored fields, into a new segment")
+    @Category(CATEGORY)
+    public static final class MergePart extends Event {
+        @Label("Segment")
+        public String segment;
+
+        @Label("Part")
+        @Description("The codec format: postings, stored fields, doc values, points, numeric vectors, norms, " +
+                     "term vectors or field infos")
+        public String part;
+
+        @Label("Documents")
+        public int documentCount;
+
+        @Label("Bytes Written")
+        @DataAmount
+        public long bytesWritten;
+    }
+
+    /**
+     * Packing the files of a new segment into a compound file.
+     */
+    @Name("org.trypticon.luceneupgrader.CompoundFile")
+    @Label("Compound File")
+    @Description("Packing the files of a new segment into a compound file")
+    @Category(CATEGORY)
+    public static final class CompoundFile extends Event {
+        @Label("Segment")
+        public String segment;
+
+        @Label("Files")
+        public int fileCount;
+
+        @Label("Bytes Written")
+        @DataAmount
+        public long bytesWritten;
+    }
+
+    /**
+     * Forcing files, or a directory's entries, to stable storage.
+     */
+    @Name("org.trypticon.luceneupgrader.Sync")
+    @Label("Sync")
+    @Description("Forcing files, or the entries of a directory, to stable storage")
+    @Category(CATEGORY)
+    public static final class Sync extends Event {
+        @Label("Directory")
+        public String directory;
+
+        @Label("Files")
+        @Description("The number of files synced, or 0 when syncing the directory's entries")
+        public int fileCount;
+
+        @Label("Bytes")
+        @DataAmount
+        public long bytes;
+    }
+
+    /**
+     * Swapping the upgraded copy of an index into place.
+     */
+    @Name("org.trypticon.luceneupgrader.DirectorySwap")
+    @Label("Directory Swap")
+    @Description("Moving the upgraded copy of an index into place and deleting the old one")
+    @Category(CATEGORY)
+    public static final class DirectorySwap extends Event {
+        @Label("Directory")
+        public String directory;
+    }
+}
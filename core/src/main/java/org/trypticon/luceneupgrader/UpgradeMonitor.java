@@ -0,0 +1,315 @@
+package org.trypticon.luceneupgrader;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Live state of the upgrades done by an {@link IndexUpgrader}, along with the settings which can be
+ * changed while one runs.
+ * <p>
+ * While an upgrade runs, the upgrader registers this with the platform MBean server as
+ * {@code org.trypticon.luceneupgrader:type=IndexUpgrader,index=<index>}, so it can be watched and
+ * tuned from JConsole or any other JMX client. Each step writes the new index through a directory
+ * which reports to it, which is also where the throttle is applied.
+ */
+public class UpgradeMonitor implements UpgradeMonitorMBean {
+
+    /**
+     * How much a file is written between reports. Throttling pauses the writer at most this often.
+     */
+    static final int REPORT_BYTES = 64 * 1024;
+
+    private final AtomicLong bytesProcessed = new AtomicLong();
+
+    /** the number of files each thread has open for writing */
+    private final Map<Thread, Integer> writingThreads = new ConcurrentHashMap<>();
+
+    @Nullable
+    private volatile String currentHop;
+
+    @Nullable
+    private volatile String currentSegment;
+
+    @Nullable
+    private volatile LongSupplier mergeHeap;
+
+    @Nullable
+    private volatile MergePartExecutor partExecutor;
+
+    private volatile long startNanos;
+
+    private volatile long finishNanos;
+
+    private volatile long expectedBytes;
+
+    private volatile long throttleRate;
+
+    private volatile int threadCount;
+
+    /** when the writes so far are due to have finished at the throttle rate, in {@link System#nanoTime()} terms */
+    private long throttleNanos = System.nanoTime();
+
+    UpgradeMonitor(@Nonnull IndexUpgraderConfig config) {
+        throttleRate = config.getThrottleRate();
+        threadCount = config.getThreadCount();
+    }
+
+    @Override
+    @Nullable
+    public String getCurrentHop() {
+        return currentHop;
+    }
+
+    @Override
+    @Nullable
+    public String getCurrentSegment() {
+        return currentSegment;
+    }
+
+    @Override
+    public long getBytesProcessed() {
+        return bytesProcessed.get();
+    }
+
+    @Override
+    public long getThroughput() {
+        long elapsedNanos = (currentHop != null ? System.nanoTime() : finishNanos) - startNanos;
+        if (elapsedNanos <= 0) {
+            return 0;
+        }
+        return (long) (bytesProcessed.get() * 1e9 / elapsedNanos);
+    }
+
+    @Override
+    public long getEstimatedSecondsRemaining() {
+        long throughput = getThroughput();
+        if (currentHop == null || throughput == 0) {
+            return -1;
+        }
+        return Math.max(0, expectedBytes - bytesProcessed.get()) / throughput;
+    }
+
+    @Override
+    public int getActiveMergeThreads() {
+        return writingThreads.size();
+    }
+
+    @Override
+    public long getMergeHeapBytes() {
+        LongSupplier mergeHeap = this.mergeHeap;
+        if (mergeHeap == null) {
+            return -1;
+        }
+        try {
+            return mergeHeap.getAsLong();
+        } catch (RuntimeException e) {
+            // the merge finished and closed its readers in the meantime
+            return -1;
+        }
+    }
+
+    @Override
+    public long getThrottleRate() {
+        return throttleRate;
+    }
+
+    @Override
+    public void setThrottleRate(long throttleRate) {
+        if (throttleRate < 0) {
+            throw new IllegalArgumentException("Throttle rate must not be negative: " + throttleRate);
+        }
+        synchronized (this) {
+            // Writes already paced at the old rate shouldn't hold back those at the new one.
+            throttleNanos = System.nanoTime();
+            this.throttleRate = throttleRate;
+        }
+    }
+
+    @Override
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    @Override
+    public void setThreadCount(int threadCount) {
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("Thread count must be at least 1: " + threadCount);
+        }
+        synchronized (this) {
+            // Under the lock, so that an executor set in the meantime can't miss the change.
+            this.threadCount = threadCount;
+            MergePartExecutor partExecutor = this.partExecutor;
+            if (partExecutor != null) {
+                partExecutor.setThreadCount(threadCount);
+            }
+        }
+    }
+
+    /**
+     * Sets where the heap held by the merge in progress can be found, for the steps which can see it.
+     *
+     * @param mergeHeap gives the number of bytes when asked, or {@code null} once the merge is done.
+     */
+    public void setMergeHeap(@Nullable LongSupplier mergeHeap) {
+        this.mergeHeap = mergeHeap;
+    }
+
+    /**
+     * Sets the executor the parts of the merges in progress run on, for the steps which merge them side by side,
+     * so that changes to the thread count reach it straight away.
+     *
+     * @param partExecutor the executor, or {@code null} once the step is done.
+     */
+    public void setPartExecutor(@Nullable MergePartExecutor partExecutor) {
+        synchronized (this) {
+            if (partExecutor != null) {
+                partExecutor.setThreadCount(threadCount);
+            }
+            this.partExecutor = partExecutor;
+        }
+    }
+
+    /**
+     * Called by the directories the upgrade steps write through as they start writing a file.
+     *
+     * @param fileName the name of the file.
+     * @return an object to report the writing of the file to.
+     */
+    @Nonnull
+    public Output outputOpened(@Nonnull String fileName) {
+        String segment = segmentOf(fileName);
+        if (segment != null) {
+            currentSegment = segment;
+        }
+        return new Output();
+    }
+
+    void upgradeStarted(long sizeInBytes, int stepCount) {
+        bytesProcessed.set(0);
+        currentSegment = null;
+        expectedBytes = sizeInBytes * stepCount;
+        startNanos = System.nanoTime();
+    }
+
+    void stepStarted(@Nonnull LuceneVersion fromVersion, @Nonnull LuceneVersion toVersion) {
+        currentHop = fromVersion.getNumber() + "->" + toVersion.getNumber();
+    }
+
+    void upgradeFinished() {
+        finishNanos = System.nanoTime();
+        currentHop = null;
+        mergeHeap = null;
+        partExecutor = null;
+    }
+
+    /**
+     * Gets the segment a file belongs to from its name, e.g. {@code _3} for {@code _3_Lucene90_0.doc}.
+     *
+     * @param fileName the name of the file.
+     * @return the segment name, or {@code null} if the file isn't part of a segment.
+     */
+    @Nullable
+    static String segmentOf(@Nonnull String fileName) {
+        if (!fileName.startsWith("_")) {
+            return null;
+        }
+        int end = fileName.length();
+        int underscore = fileName.indexOf('_', 1);
+        if (underscore > 0) {
+            end = underscore;
+        }
+        int dot = fileName.indexOf('.', 1);
+        if (dot > 0 && dot < end) {
+            end = dot;
+        }
+        return fileName.substring(0, end);
+    }
+
+    /**
+     * Counts bytes written towards the total and the throttle.
+     *
+     * @return how long the writer should pause for to keep to the throttle rate, in nanoseconds.
+     */
+    private long count(long bytes) {
+        bytesProcessed.addAndGet(bytes);
+        if (throttleRate == 0) {
+            return 0;
+        }
+        synchronized (this) {
+            long now = System.nanoTime();
+            // Time spent under the rate doesn't build up credit for a burst later.
+            if (throttleNanos - now < 0) {
+                throttleNanos = now;
+            }
+            throttleNanos += (long) (bytes * 1e9 / throttleRate);
+            return throttleNanos - now;
+        }
+    }
+
+    /**
+     * Tracks the writing of one file, collecting the bytes written to report them in batches.
+     * Each output is only written by one thread at a time, as with Lucene's own outputs.
+     */
+    public final class Output {
+        @Nonnull
+        private final Thread thread = Thread.currentThread();
+
+        private long pending;
+
+        private boolean closed;
+
+        private Output() {
+            writingThreads.merge(thread, 1, Integer::sum);
+        }
+
+        /**
+         * Called as bytes are written to the file. Pauses if the throttle calls for it.
+         *
+         * @param bytes the number of bytes.
+         * @throws InterruptedIOException if interrupted while paused.
+         */
+        public void written(long bytes) throws InterruptedIOException {
+            pending += bytes;
+            if (pending >= REPORT_BYTES) {
+                long pauseNanos = count(pending);
+                pending = 0;
+                pause(pauseNanos);
+            }
+        }
+
+        /**
+         * Called when the file is closed. Pauses for the last few bytes if the throttle calls for it,
+         * since an upgrade writing only small files would otherwise never be held back.
+         *
+         * @throws InterruptedIOException if interrupted while paused.
+         */
+        public void closed() throws InterruptedIOException {
+            if (!closed) {
+                closed = true;
+                long pauseNanos = count(pending);
+                pending = 0;
+                writingThreads.computeIfPresent(thread, (t, count) -> count == 1 ? null : count - 1);
+                pause(pauseNanos);
+            }
+        }
+
+        private void pause(long pauseNanos) throws InterruptedIOException {
+            if (pauseNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(pauseNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    InterruptedIOException exception = new InterruptedIOException("Interrupted while throttled");
+                    exception.initCause(e);
+                    throw exception;
+                }
+            }
+        }
+    }
+}
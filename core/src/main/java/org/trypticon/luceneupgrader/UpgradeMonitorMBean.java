@@ -0,0 +1,87 @@
+package org.trypticon.luceneupgrader;
+
+/**
+ * The management interface of {@link UpgradeMonitor}, as seen over JMX.
+ */
+public interface UpgradeMonitorMBean {
+
+    /**
+     * Gets the step the upgrade is on.
+     *
+     * @return the step, such as {@code "8->9"}, or {@code null} if no upgrade is running.
+     */
+    String getCurrentHop();
+
+    /**
+     * Gets the segment the upgrade last started writing a file for.
+     *
+     * @return the segment name, or {@code null} if nothing has been written yet.
+     */
+    String getCurrentSegment();
+
+    /**
+     * Gets how much of the new index the current or last upgrade has written, over all its steps.
+     *
+     * @return the number of bytes.
+     */
+    long getBytesProcessed();
+
+    /**
+     * Gets how fast the current or last upgrade has written the new index, on average since it started.
+     *
+     * @return the throughput in bytes per second.
+     */
+    long getThroughput();
+
+    /**
+     * Estimates how long the current upgrade will take to finish, assuming each step writes about as
+     * much as the index held to begin with and the throughput stays as it has been.
+     *
+     * @return the estimate in seconds, or {@code -1} if there is nothing to go on yet.
+     */
+    long getEstimatedSecondsRemaining();
+
+    /**
+     * Gets the number of threads currently writing the new index.
+     *
+     * @return the number of threads.
+     */
+    int getActiveMergeThreads();
+
+    /**
+     * Gets the heap held by the readers and writer of the merge in progress, as they account for it.
+     * Only the steps to Lucene 7 and later merge through readers the upgrader can see.
+     *
+     * @return the number of bytes, or {@code -1} if unknown.
+     */
+    long getMergeHeapBytes();
+
+    /**
+     * Gets the rate the new index is written at.
+     *
+     * @return the rate in bytes per second, or {@code 0} for no limit.
+     */
+    long getThrottleRate();
+
+    /**
+     * Sets the rate the new index is written at, taking effect straight away.
+     *
+     * @param throttleRate the rate in bytes per second, or {@code 0} for no limit.
+     */
+    void setThrottleRate(long throttleRate);
+
+    /**
+     * Gets the number of threads for the parts of the upgrade which can be done in parallel.
+     *
+     * @return the number of threads.
+     */
+    int getThreadCount();
+
+    /**
+     * Sets the number of threads for the parts of the upgrade which can be done in parallel,
+     * taking effect from the next of those parts to start, including within the step in progress.
+     *
+     * @param threadCount the number of threads.
+     */
+    void setThreadCount(int threadCount);
+}
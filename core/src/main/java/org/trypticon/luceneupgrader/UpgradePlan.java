@@ -0,0 +1,281 @@
+package org.trypticon.luceneupgrader;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The predicted cost of upgrading an index, step by step, as worked out by an {@link UpgradePlanner}.
+ * Nothing is upgraded to produce it, and every figure in it is an estimate.
+ */
+public final class UpgradePlan {
+
+    @Nonnull
+    private final LuceneVersion version;
+
+    @Nonnull
+    private final LuceneVersion destinationVersion;
+
+    private final long sizeInBytes;
+
+    private final int segmentCount;
+
+    @Nonnull
+    private final List<Step> steps;
+
+    private final int recommendedThreadCount;
+
+    private final long recommendedHeapBudget;
+
+    private final int recommendedConcurrentUpgrades;
+
+    UpgradePlan(@Nonnull LuceneVersion version, @Nonnull LuceneVersion destinationVersion, long sizeInBytes,
+                int segmentCount, @Nonnull List<Step> steps, int recommendedThreadCount,
+                long recommendedHeapBudget, int recommendedConcurrentUpgrades) {
+        this.version = version;
+        this.destinationVersion = destinationVersion;
+        this.sizeInBytes = sizeInBytes;
+        this.segmentCount = segmentCount;
+        this.steps = Collections.unmodifiableList(steps);
+        this.recommendedThreadCount = recommendedThreadCount;
+        this.recommendedHeapBudget = recommendedHeapBudget;
+        this.recommendedConcurrentUpgrades = recommendedConcurrentUpgrades;
+    }
+
+    /**
+     * Gets the current version of the index.
+     *
+     * @return the version.
+     */
+    @Nonnull
+    public LuceneVersion getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets the version the index would be upgraded to.
+     *
+     * @return the version.
+     */
+    @Nonnull
+    public LuceneVersion getDestinationVersion() {
+        return destinationVersion;
+    }
+
+    /**
+     * Gets the current size of the index.
+     *
+     * @return the size in bytes.
+     */
+    public long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    /**
+     * Gets the current number of segments in the index.
+     *
+     * @return the number of segments.
+     */
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * Gets the steps of the upgrade, oldest first. Empty if the index is already at the destination version.
+     *
+     * @return the steps.
+     */
+    @Nonnull
+    public List<Step> getSteps() {
+        return steps;
+    }
+
+    /**
+     * Gets the total number of bytes read over every step.
+     *
+     * @return the number of bytes.
+     */
+    public long getBytesRead() {
+        return steps.stream().mapToLong(Step::getBytesRead).sum();
+    }
+
+    /**
+     * Gets the total number of bytes written over every step.
+     *
+     * @return the number of bytes.
+     */
+    public long getBytesWritten() {
+        return steps.stream().mapToLong(Step::getBytesWritten).sum();
+    }
+
+    /**
+     * Gets the most extra disk space needed at any point, over and above the index itself.
+     *
+     * @return the number of bytes.
+     */
+    public long getPeakTempBytes() {
+        return steps.stream().mapToLong(Step::getPeakTempBytes).max().orElse(0);
+    }
+
+    /**
+     * Gets the most heap needed at any point.
+     *
+     * @return the number of bytes.
+     */
+    public long getPeakHeapBytes() {
+        return steps.stream().mapToLong(Step::getPeakHeapBytes).max().orElse(0);
+    }
+
+    /**
+     * Gets how long the whole upgrade is expected to take.
+     *
+     * @return the duration.
+     */
+    @Nonnull
+    public Duration getEstimatedDuration() {
+        return steps.stream().map(Step::getEstimatedDuration).reduce(Duration.ZERO, Duration::plus);
+    }
+
+    /**
+     * Gets the number of threads to check, verify or fingerprint this index with. Those spread
+     * segments across threads, so more threads than segments don't help.
+     *
+     * @return the number of threads.
+     */
+    public int getRecommendedThreadCount() {
+        return recommendedThreadCount;
+    }
+
+    /**
+     * Gets a heap budget which would let every step run in memory, if this JVM has the heap to spare
+     * and the plan doesn't already run in memory.
+     *
+     * @return the budget in bytes, or {@code 0} if there's nothing to recommend.
+     */
+    public long getRecommendedHeapBudget() {
+        return recommendedHeapBudget;
+    }
+
+    /**
+     * Gets how many indexes of this size could be upgraded side by side in this JVM. Each step
+     * merges on a single thread, so this is limited by the number of processors and by the heap.
+     *
+     * @return the number of upgrades.
+     */
+    public int getRecommendedConcurrentUpgrades() {
+        return recommendedConcurrentUpgrades;
+    }
+
+    /**
+     * The predicted cost of a single upgrade step.
+     */
+    public static final class Step {
+        @Nonnull
+        private final LuceneVersion fromVersion;
+
+        @Nonnull
+        private final LuceneVersion toVersion;
+
+        private final boolean inMemory;
+
+        private final long bytesRead;
+
+        private final long bytesWritten;
+
+        private final long peakTempBytes;
+
+        private final long peakHeapBytes;
+
+        @Nonnull
+        private final Duration estimatedDuration;
+
+        Step(@Nonnull LuceneVersion fromVersion, @Nonnull LuceneVersion toVersion, boolean inMemory,
+             long bytesRead, long bytesWritten, long peakTempBytes, long peakHeapBytes,
+             @Nonnull Duration estimatedDuration) {
+            this.fromVersion = fromVersion;
+            this.toVersion = toVersion;
+            this.inMemory = inMemory;
+            this.bytesRead = bytesRead;
+            this.bytesWritten = bytesWritten;
+            this.peakTempBytes = peakTempBytes;
+            this.peakHeapBytes = peakHeapBytes;
+            this.estimatedDuration = estimatedDuration;
+        }
+
+        /**
+         * Gets the version the step upgrades from.
+         *
+         * @return the version.
+         */
+        @Nonnull
+        public LuceneVersion getFromVersion() {
+            return fromVersion;
+        }
+
+        /**
+         * Gets the version the step upgrades to.
+         *
+         * @return the version.
+         */
+        @Nonnull
+        public LuceneVersion getToVersion() {
+            return toVersion;
+        }
+
+        /**
+         * Checks whether the step runs on a copy of the index held in memory.
+         *
+         * @return {@code true} if it does, {@code false} if it runs on disk.
+         */
+        public boolean isInMemory() {
+            return inMemory;
+        }
+
+        /**
+         * Gets the number of bytes the step reads from disk.
+         *
+         * @return the number of bytes.
+         */
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        /**
+         * Gets the number of bytes the step writes to disk.
+         *
+         * @return the number of bytes.
+         */
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        /**
+         * Gets the most extra disk space the step needs, over and above the index itself.
+         *
+         * @return the number of bytes.
+         */
+        public long getPeakTempBytes() {
+            return peakTempBytes;
+        }
+
+        /**
+         * Gets the most heap the step needs.
+         *
+         * @return the number of bytes.
+         */
+        public long getPeakHeapBytes() {
+            return peakHeapBytes;
+        }
+
+        /**
+         * Gets how long the step is expected to take.
+         *
+         * @return the duration.
+         */
+        @Nonnull
+        public Duration getEstimatedDuration() {
+            return estimatedDuration;
+        }
+    }
+}
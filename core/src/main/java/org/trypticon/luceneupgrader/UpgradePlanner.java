@@ -0,0 +1,244 @@
+package org.trypticon.luceneupgrader;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Works out what upgrading an index would cost without upgrading it: for each step, how much would be
+ * read and written, how much extra disk space and heap it would need, and how long it would take.
+ * <p>
+ * Sizes come from the segment metadata of the index, so planning is quick. Durations come from a
+ * throughput for each step, which starts out as a rough default and can be measured on the local
+ * machine with {@link #calibrate()}.
+ */
+public class UpgradePlanner {
+
+    /**
+     * The throughput assumed for a step until it's calibrated or set, in bytes per second.
+     */
+    static final long DEFAULT_THROUGHPUT = 20L * 1024 * 1024;
+
+    /**
+     * The disk throughput assumed until it's set, in bytes per second.
+     */
+    static final long DEFAULT_DISK_THROUGHPUT = 200L * 1024 * 1024;
+
+    /**
+     * The size of the index timed by {@link #calibrate()}. It's big enough for the fixed cost of
+     * each step to be small next to the cost of the content, and small enough to time in seconds.
+     */
+    private static final int CALIBRATION_DOCUMENT_COUNT = 5000;
+
+    /**
+     * The shape of the documents in the index timed by {@link #calibrate()}, shorter than the generator's
+     * default so that calibrating stays quick.
+     */
+    private static final int CALIBRATION_WORDS_PER_DOCUMENT = 50;
+
+    private static final int CALIBRATION_VOCABULARY_SIZE = 5000;
+
+    @Nonnull
+    private final IndexStorage storage;
+
+    @Nonnull
+    private final IndexUpgraderConfig config;
+
+    @Nonnull
+    private final Map<LuceneVersion, Long> throughputs = new EnumMap<>(LuceneVersion.class);
+
+    private long diskThroughput = DEFAULT_DISK_THROUGHPUT;
+
+    public UpgradePlanner(@Nonnull Path directory) {
+        this(directory, new IndexUpgraderConfig());
+    }
+
+    public UpgradePlanner(@Nonnull Path directory, @Nonnull IndexUpgraderConfig config) {
+        this(new FileSystemIndexStorage(directory, config), config);
+    }
+
+    /**
+     * Constructs a planner for an index in some other kind of storage.
+     *
+     * @param storage the storage containing the index.
+     * @param config the config the upgrade would be performed with.
+     */
+    public UpgradePlanner(@Nonnull IndexStorage storage, @Nonnull IndexUpgraderConfig config) {
+        this.storage = storage;
+        this.config = config;
+    }
+
+    /**
+     * Sets the rate at which a step rewrites an index, not counting the time spent on disk I/O.
+     *
+     * @param version the version the step upgrades to.
+     * @param bytesPerSecond the throughput in bytes per second.
+     * @return this planner.
+     */
+    public UpgradePlanner setThroughput(@Nonnull LuceneVersion version, long bytesPerSecond) {
+        if (bytesPerSecond <= 0) {
+            throw new IllegalArgumentException("Throughput must be positive: " + bytesPerSecond);
+        }
+        throughputs.put(version, bytesPerSecond);
+        return this;
+    }
+
+    /**
+     * Gets the rate at which a step rewrites an index.
+     *
+     * @param version the version the step upgrades to.
+     * @return the throughput in bytes per second.
+     */
+    public long getThroughput(@Nonnull LuceneVersion version) {
+        return throughputs.getOrDefault(version, DEFAULT_THROUGHPUT);
+    }
+
+    /**
+     * Sets the rate at which the disk holding the index can be read and written.
+     * Defaults to a figure typical of an SSD.
+     *
+     * @param bytesPerSecond the throughput in bytes per second.
+     * @return this planner.
+     */
+    public UpgradePlanner setDiskThroughput(long bytesPerSecond) {
+        if (bytesPerSecond <= 0) {
+            throw new IllegalArgumentException("Throughput must be positive: " + bytesPerSecond);
+        }
+        diskThroughput = bytesPerSecond;
+        return this;
+    }
+
+    /**
+     * Measures the throughput of each step on this machine by upgrading a generated index in memory,
+     * from Lucene 3 as far up as the versions on the classpath go. The chain is first run on a tenth of the
+     * index to warm up. Nothing writes the formats before Lucene 3, so the step to Lucene 3 is given the
+     * throughput of the step after it.
+     *
+     * @return this planner.
+     * @throws IOException if an error occurs upgrading the generated index.
+     * @throws IllegalStateException if Lucene 3 is not supported.
+     */
+    public UpgradePlanner calibrate() throws IOException {
+        // Whoever is listening for I/O accounting is interested in their own index, not the generated one.
+        IndexUpgraderConfig calibrationConfig = new IndexUpgraderConfig()
+            .setFusedChecksums(config.isFusedChecksums());
+        for (int documentCount : new int[] { CALIBRATION_DOCUMENT_COUNT / 10, CALIBRATION_DOCUMENT_COUNT }) {
+            InMemoryIndex index = generateCalibrationIndex(documentCount);
+            LuceneVersion version = LuceneVersion.VERSION_3;
+            while (version != LuceneVersion.values()[LuceneVersion.values().length - 1] &&
+                   versionAfter(version).isSupported()) {
+                LuceneVersion nextVersion = versionAfter(version);
+                long sizeInBytes = index.sizeInBytes();
+                long start = System.nanoTime();
+                nextVersion.createUpgrader(storage, InfoStream.NO_OUTPUT, calibrationConfig).upgrade(index);
+                long nanos = Math.max(1, System.nanoTime() - start);
+                setThroughput(nextVersion, Math.max(1, Math.round(sizeInBytes * 1e9 / nanos)));
+                version = nextVersion;
+            }
+        }
+        if (LuceneVersion.VERSION_4.isSupported()) {
+            setThroughput(LuceneVersion.VERSION_3, getThroughput(LuceneVersion.VERSION_4));
+        }
+        return this;
+    }
+
+    /**
+     * Generates the index the steps are timed against, in Lucene 3 format, and loads it into memory.
+     *
+     * @param documentCount the number of documents to write.
+     * @return the index.
+     * @throws IOException if an error occurs writing or reading the index.
+     */
+    @Nonnull
+    private static InMemoryIndex generateCalibrationIndex(int documentCount) throws IOException {
+        SyntheticIndexConfig syntheticConfig = new SyntheticIndexConfig()
+            .setDocumentCount(documentCount)
+            .setWordsPerDocument(CALIBRATION_WORDS_PER_DOCUMENT)
+            .setVocabularySize(CALIBRATION_VOCABULARY_SIZE)
+            .setSeed(0);
+        Path directory = Files.createTempDirectory("luceneupgrader-calibration");
+        try {
+            new SyntheticIndexGenerator(syntheticConfig).generate(directory, LuceneVersion.VERSION_3);
+            return InMemoryIndex.load(new FileSystemIndexStorage(directory));
+        } finally {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path file : stream) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    /**
+     * Works out the plan for upgrading the index.
+     *
+     * @param destinationVersion the version the index would be upgraded to.
+     * @return the plan.
+     * @throws IOException if an error occurs reading the index.
+     */
+    @Nonnull
+    public UpgradePlan plan(@Nonnull LuceneVersion destinationVersion) throws IOException {
+        LuceneVersion version = new VersionGuesser().guess(storage);
+        int processors = Runtime.getRuntime().availableProcessors();
+        IndexStatistics statistics = version.createChecker(storage).statistics(processors);
+        long sizeInBytes = InMemoryIndex.sizeOf(storage);
+        int segmentCount = statistics.getSegments().size();
+
+        long mergeHeapBytes = HeapGovernor.estimate(statistics);
+
+        long heapBudget = config.getHeapBudget();
+        boolean inMemory = heapBudget > 0 && sizeInBytes <= heapBudget / IndexUpgrader.IN_MEMORY_OVERHEAD;
+
+        List<UpgradePlan.Step> steps = new ArrayList<>();
+        LuceneVersion currentVersion = version;
+        while (currentVersion.isOlderThan(destinationVersion)) {
+            LuceneVersion nextVersion = versionAfter(currentVersion);
+            boolean first = currentVersion == version;
+            boolean last = nextVersion == destinationVersion;
+
+            // On disk, every step reads the whole index and writes a whole new one beside it before
+            // the old one is deleted. In memory, the index is only read before the first step and
+            // written after the last.
+            long bytesRead = inMemory && !first ? 0 : sizeInBytes;
+            long bytesWritten = inMemory && !last ? 0 : sizeInBytes;
+            long peakTempBytes = bytesWritten;
+            long peakHeapBytes = inMemory
+                    ? sizeInBytes * IndexUpgrader.IN_MEMORY_OVERHEAD
+                    : mergeHeapBytes;
+            if (config.isVerifyContent()) {
+                // The index is read once more for the fingerprint before the first step and after the last.
+                bytesRead += (first ? sizeInBytes : 0) + (last ? sizeInBytes : 0);
+            }
+
+            double seconds = (double) sizeInBytes / getThroughput(nextVersion) +
+                             (double) (bytesRead + bytesWritten) / diskThroughput;
+            Duration duration = Duration.ofMillis(Math.round(seconds * 1000));
+            steps.add(new UpgradePlan.Step(currentVersion, nextVersion, inMemory, bytesRead, bytesWritten,
+                                           peakTempBytes, peakHeapBytes, duration));
+            currentVersion = nextVersion;
+        }
+
+        long maxHeap = Runtime.getRuntime().maxMemory();
+        long inMemoryHeap = sizeInBytes * IndexUpgrader.IN_MEMORY_OVERHEAD;
+        long recommendedHeapBudget = !inMemory && !steps.isEmpty() && inMemoryHeap <= maxHeap / 2
+                ? inMemoryHeap : 0;
+        long peakHeapBytes = steps.stream().mapToLong(UpgradePlan.Step::getPeakHeapBytes).max().orElse(HeapGovernor.WRITER_HEAP);
+        int concurrentUpgrades = (int) Math.max(1, Math.min(processors, maxHeap / Math.max(1, peakHeapBytes)));
+
+        return new UpgradePlan(version, destinationVersion, sizeInBytes, segmentCount, steps,
+                               Math.max(1, Math.min(processors, segmentCount)), recommendedHeapBudget,
+                               concurrentUpgrades);
+    }
+
+    private static LuceneVersion versionAfter(LuceneVersion version) {
+        return LuceneVersion.values()[version.ordinal() + 1];
+    }
+}
@@ -0,0 +1,49 @@
+package org.trypticon.luceneupgrader;
+
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * A checker which looks for corruption in an index of a single version.
+ */
+public interface VersionChecker {
+
+    /**
+     * Checks the index.
+     *
+     * @param threadCount the number of threads to check with. {@code 1} checks sequentially.
+     * @param output a stream to print the details of the check to, or {@code null} to print nothing.
+     * @return {@code true} if no problems were found, {@code false} otherwise.
+     * @throws IOException if an error occurs reading the index.
+     */
+    boolean check(int threadCount, PrintStream output) throws IOException;
+
+    /**
+     * Verifies the checksum of every file in the latest commit, without decoding anything.
+     * Files written before Lucene 4.8 have no checksum, so those are only checked to be readable.
+     *
+     * @param threadCount the number of threads to verify with.
+     * @param output a stream to print the result for each file to, or {@code null} to print nothing.
+     * @return {@code true} if no problems were found, {@code false} otherwise.
+     * @throws IOException if an error occurs reading the commit.
+     */
+    boolean verify(int threadCount, PrintStream output) throws IOException;
+
+    /**
+     * Computes a fingerprint of the content of the index, one segment per thread.
+     *
+     * @param threadCount the number of threads to read the index with.
+     * @return the fingerprint.
+     * @throws IOException if an error occurs reading the index.
+     */
+    IndexFingerprint fingerprint(int threadCount) throws IOException;
+
+    /**
+     * Gathers statistics about each segment in the latest commit, one segment per thread.
+     *
+     * @param threadCount the number of threads to read the segments with.
+     * @return the statistics.
+     * @throws IOException if an error occurs reading the index.
+     */
+    IndexStatistics statistics(int threadCount) throws IOException;
+}
@@ -0,0 +1,380 @@
+package org.trypticon.luceneupgrader;
+
+import javax.annotation.Nonnull;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Tries to guess the version of a Lucene text index with minimal effort.
+ */
+public class VersionGuesser {
+
+    /**
+     * The prefix of the name of every segments file.
+     */
+    static final String SEGMENTS = "segments";
+
+    /**
+     * Tries to guess the version of a Lucene text index with minimal effort.
+     * 
+     * @param path the directory containing the index.
+     * @return the determined version.
+     * @throws IOException if an I/O error occurs reading data.
+     */
+    public LuceneVersion guess(@Nonnull Path path) throws IOException {
+        // Reading the segments file straight off disk skips setting up a Directory, which costs
+        // several times more than the read itself and adds up when guessing many indexes in turn.
+        List<String> fileNames = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+            for (Path file : stream) {
+                fileNames.add(file.getFileName().toString());
+            }
+        } catch (NoSuchFileException | NotDirectoryException e) {
+            // Reported below the same way as a directory without a segments file.
+        }
+        long generation = IndexInventory.latestGeneration(path, fileNames);
+        return IndexInventory.readCommitHeader(path, generation).version;
+    }
+
+    /**
+     * Tries to guess the version of a Lucene text index with minimal effort.
+     *
+     * @param storage the storage containing the index.
+     * @return the determined version.
+     * @throws IOException if an I/O error occurs reading data.
+     */
+    public LuceneVersion guess(@Nonnull IndexStorage storage) throws IOException {
+        // Any version of Lucene can read the bytes of the segments file.
+        try (IndexFiles indexFiles = LuceneVersion.getNewestSupport().openFiles(storage, IndexStorage.Area.INDEX)) {
+            String segmentsFileName = segmentsFileName(getLastCommitGeneration(indexFiles.listAll()));
+            return readCommitHeader(ByteBuffer.wrap(indexFiles.readFile(segmentsFileName))).version;
+        }
+    }
+
+    /**
+     * Tries to guess the version of a Lucene text index held in memory.
+     *
+     * @param index the in-memory index.
+     * @return the determined version.
+     * @throws IOException if an I/O error occurs reading data.
+     */
+    public LuceneVersion guess(@Nonnull InMemoryIndex index) throws IOException {
+        String segmentsFileName = segmentsFileName(getLastCommitGeneration(index.getFileNames()));
+        byte[] content = index.getFile(segmentsFileName);
+        if (content == null) {
+            throw new NoSuchFileException(segmentsFileName);
+        }
+        return readCommitHeader(ByteBuffer.wrap(content)).version;
+    }
+
+    /**
+     * Finds the generation of the latest commit from the names of the files in an index, the same way
+     * every version of Lucene does it.
+     *
+     * Names which only start like a segments file, such as {@code segments_1.bak}, are skipped.
+     *
+     * @param fileNames the names of the files.
+     * @return the generation, or {@code -1} if there is no segments file.
+     */
+    static long getLastCommitGeneration(@Nonnull Collection<String> fileNames) {
+        long max = -1;
+        for (String fileName : fileNames) {
+            if (fileName.equals(SEGMENTS)) {
+                max = Math.max(max, 0);
+            } else if (fileName.startsWith(SEGMENTS + "_")) {
+                try {
+                    long generation = Long.parseLong(fileName.substring(SEGMENTS.length() + 1), Character.MAX_RADIX);
+                    max = Math.max(max, generation);
+                } catch (NumberFormatException e) {
+                    // Not a segments file after all.
+                }
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Gets the name of the segments file of a generation.
+     *
+     * @param generation the generation.
+     * @return the file name.
+     */
+    @Nonnull
+    static String segmentsFileName(long generation) {
+        if (generation <= 0) {
+            return SEGMENTS;
+        } else {
+            return SEGMENTS + "_" + Long.toString(generation, Character.MAX_RADIX);
+        }
+    }
+
+    /**
+     * Reads as far into a segments file as it takes to get the version and the number of segments.
+     *
+     * @param buffer the content of the segments file, or at least its start.
+     * @return the header.
+     * @throws EOFException if the header runs past the end of the content.
+     * @throws IOException if an I/O error occurs reading data.
+     */
+    static CommitHeader readCommitHeader(@Nonnull ByteBuffer buffer) throws IOException {
+        SegmentsInput segments = new SegmentsInput(buffer.duplicate());
+        // Read segments_N, first 4 bytes contain the format as an int
+        int format = segments.readInt();
+        if (format == 0x3fd76c17) { // == CodecUtil.CODEC_MAGIC
+
+            // This string and the int version are read by checkHeaderNoMagic.
+            // Read the next string containing the codec name (discard it?)
+            segments.readString();
+
+            // Read the next int containing the actual format version.
+            int actualVersion = segments.readInt();
+            // - If the value is 0..3, then it's Lucene 4.x
+            // - If the value is >= 4, then it's Lucene 5.x
+            LuceneVersion version;
+            if (actualVersion >= 0 && actualVersion <= 3) {             // VERSION_40 thru VERSION_49
+                version = LuceneVersion.VERSION_4;
+            } else if (actualVersion >= 4 && actualVersion < 6) {       // VERSION_50 thru VERSION_52
+                // Skip over 16-byte ID.
+                segments.skipBytes(16);
+
+                // Skip over "index header suffix"
+                int suffixLength = segments.readByte() & 255;
+                segments.skipBytes(suffixLength);
+
+                version = LuceneVersion.VERSION_5;
+            } else if (actualVersion == 6) {                            // VERSION_53
+                // Skip over 16-byte ID.
+                segments.skipBytes(16);
+
+                // Skip over "index header suffix"
+                int suffixLength = segments.readByte() & 255;
+                segments.skipBytes(suffixLength);
+
+                int majorVersion = segments.readVInt();
+                switch (majorVersion) {
+                    case 5:
+                        version = LuceneVersion.VERSION_5;
+                        break;
+                    case 6:
+                        version = LuceneVersion.VERSION_6;
+                        break;
+                    default:
+                        throw new UnknownFormatException("Appears to be like version 5-6 but major version " +
+                                "is unrecognised: " + majorVersion);
+                }
+                segments.readVInt(); // minor
+                segments.readVInt(); // patch
+            } else if (actualVersion >= 7 && actualVersion <= 10) {      // VERSION_70 thru VERSION_97
+                // Skip over 16-byte ID.
+                segments.skipBytes(16);
+
+                // Skip over "index header suffix"
+                int suffixLength = segments.readByte() & 255;
+                segments.skipBytes(suffixLength);
+
+                // Skip over last saved Lucene version -
+                // The created version is what Lucene now uses to determine compatibility.
+                segments.readVInt(); // major
+                segments.readVInt(); // minor
+                segments.readVInt(); // patch
+
+                int createdVersion = segments.readVInt();
+                switch (createdVersion) {
+                    case 6:
+                        version = LuceneVersion.VERSION_6;
+                        break;
+                    case 7:
+                        version = LuceneVersion.VERSION_7;
+                        break;
+                    case 8:
+                        version = LuceneVersion.VERSION_8;
+                        break;
+                    case 9:
+                        version = LuceneVersion.VERSION_9;
+                        break;
+                    default:
+                        throw new UnknownFormatException("Appears to be like version 6-8 but major version " +
+                                "is unrecognised: " + createdVersion);
+                }
+            } else {
+                throw new UnknownFormatException("Appears to be like version 4+ but actual version " +
+                        "is unrecognised: " + actualVersion);
+            }
+
+            segments.readLong(); // version
+            if (actualVersion > 7) {                                    // VERSION_72 onwards
+                segments.readVLong(); // counter
+            } else {
+                segments.readInt(); // counter
+            }
+            return new CommitHeader(version, segments.readInt());
+
+        } else if (format < 0) {
+
+            // Negative versioning used by v2-3
+            //- If it's >= -8, then it's Lucene 2.x
+            //- If it's == -9 (FORMAT_DIAGNOSTICS), then it's Lucene 2.9 or 3.0.
+            //  The docs aren't clear on how to distinguish the two, so we have to treat 3.0 as if it's version 2.
+            //- If it's <= -10, then it must be a later 3.x.
+            LuceneVersion version;
+            if (format >= -9) {                     // FORMAT_USER_DATA, last format of 2.x, I think.
+                version = LuceneVersion.VERSION_2;
+            } else if (format >= -11) {             // FORMAT_3_1, last format of 3.x
+                version = LuceneVersion.VERSION_3;
+            } else {
+                throw new UnknownFormatException("Appears to be like version 2-3 but format " +
+                        "is unrecognised: " + format);
+            }
+
+            segments.readLong(); // version
+            segments.readInt(); // counter
+            return new CommitHeader(version, segments.readInt());
+
+        } else {
+            //- when it's some other positive number, it's an even older format. I guess we just hope that
+            //  the magic number 0x3fd76c17 never occurs?
+
+            // The value we already read is the counter.
+            // Next is the SegmentInfo array.
+            int segmentCount = segments.readInt();
+            for (int i = segmentCount; i > 0; i--) {
+                segments.readString();  // segment filename
+                segments.readInt();     // segment doc count
+            }
+
+            // 1.2 and 1.3 had slightly different formats - 1.3 includes an additional version number at the end.
+            // But 1.3 can read 1.2 indices, so we'll consider them the same.
+            if (segments.getFilePointer() == segments.length() ||
+                    segments.getFilePointer() == segments.length() - 8) {
+                return new CommitHeader(LuceneVersion.VERSION_1, segmentCount);
+            }
+
+            throw new UnknownFormatException("Appears to be like version 1 but file length is unusual");
+        }
+    }
+
+    /**
+     * Digs further into the file to get the major version.
+     * 
+     * @param segments the segments file.
+     * @return the major version found.
+     * @throws IOException if an I/O error occurs reading data.
+     */
+    private static int digForMajorVersion(SegmentsInput segments) throws IOException {
+        // Skip over 16-byte ID.
+        segments.skipBytes(16);
+
+        // Skip over "index header suffix"
+        int suffixLength = segments.readByte() & 255;
+        segments.skipBytes(suffixLength);
+
+        return segments.readVInt();
+    }
+
+    /**
+     * Reads the big-endian values a segments file header is made of, which every version writes the same way.
+     */
+    private static class SegmentsInput {
+        private final ByteBuffer buffer;
+
+        SegmentsInput(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        byte readByte() throws EOFException {
+            try {
+                return buffer.get();
+            } catch (BufferUnderflowException e) {
+                throw eof();
+            }
+        }
+
+        int readInt() throws EOFException {
+            try {
+                return buffer.getInt();
+            } catch (BufferUnderflowException e) {
+                throw eof();
+            }
+        }
+
+        long readLong() throws EOFException {
+            try {
+                return buffer.getLong();
+            } catch (BufferUnderflowException e) {
+                throw eof();
+            }
+        }
+
+        int readVInt() throws IOException {
+            int result = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                byte b = readByte();
+                result |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return result;
+                }
+            }
+            throw new IOException("Invalid vInt detected (too many bits)");
+        }
+
+        long readVLong() throws IOException {
+            long result = 0;
+            for (int shift = 0; shift <= 56; shift += 7) {
+                byte b = readByte();
+                result |= (b & 0x7FL) << shift;
+                if (b >= 0) {
+                    return result;
+                }
+            }
+            throw new IOException("Invalid vLong detected (negative values disallowed)");
+        }
+
+        void readString() throws IOException {
+            skipBytes(readVInt());
+        }
+
+        void skipBytes(int count) throws EOFException {
+            if (count < 0 || count > buffer.remaining()) {
+                throw eof();
+            }
+            buffer.position(buffer.position() + count);
+        }
+
+        long getFilePointer() {
+            return buffer.position();
+        }
+
+        long length() {
+            return buffer.limit();
+        }
+
+        private EOFException eof() {
+            return new EOFException("Read past the end of the segments file at " + buffer.position());
+        }
+    }
+
+    /**
+     * The parts of the header of a segments file which are common to all versions.
+     */
+    static class CommitHeader {
+        @Nonnull
+        final LuceneVersion version;
+
+        final int segmentCount;
+
+        CommitHeader(@Nonnull LuceneVersion version, int segmentCount) {
+            this.version = version;
+            this.segmentCount = segmentCount;
+        }
+    }
+}
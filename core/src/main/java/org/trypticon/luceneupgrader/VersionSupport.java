@@ -0,0 +1,91 @@
+package org.trypticon.luceneupgrader;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Support for one version of Lucene, provided by the module which embeds that version.
+ * <p>
+ * Implementations are found with {@link java.util.ServiceLoader}, so only the versions whose modules are
+ * on the classpath can be checked or upgraded to. Each implementation should only refer to its embedded
+ * copy of Lucene from inside its methods, so that finding it doesn't load that copy.
+ */
+public interface VersionSupport {
+
+    /**
+     * Gets the version this supports.
+     *
+     * @return the version.
+     */
+    @Nonnull
+    LuceneVersion getVersion();
+
+    /**
+     * Creates an upgrader for upgrading an index to this version.
+     *
+     * @param storage the storage containing the index.
+     * @param infoStream an info stream to log to.
+     * @param config the config for the upgrade.
+     * @return the upgrader.
+     */
+    @Nonnull
+    VersionUpgrader createUpgrader(@Nonnull IndexStorage storage, @Nonnull InfoStream infoStream,
+                                   @Nonnull IndexUpgraderConfig config);
+
+    /**
+     * Creates a checker for an index in this version.
+     *
+     * @param storage the storage containing the index.
+     * @return the checker.
+     */
+    @Nonnull
+    VersionChecker createChecker(@Nonnull IndexStorage storage);
+
+    /**
+     * Gets the {@code Directory} class of the embedded version of Lucene, as passed to
+     * {@link IndexStorage#openDirectory(IndexStorage.Area, Class)}.
+     *
+     * @return the directory class.
+     */
+    @Nonnull
+    Class<?> getDirectoryType();
+
+    /**
+     * Opens a directory on the file system for {@link FileSystemIndexStorage}.
+     *
+     * @param path the path to the directory.
+     * @param area the area of storage the directory is for.
+     * @param config the config, which determines whether to use direct I/O.
+     * @return the directory, an instance of {@link #getDirectoryType()}.
+     * @throws IOException if an error occurs opening the directory.
+     */
+    @Nonnull
+    Object openFileSystemDirectory(@Nonnull Path path, @Nonnull IndexStorage.Area area,
+                                   @Nonnull IndexUpgraderConfig config) throws IOException;
+
+    /**
+     * Opens an area of storage as plain files, using this version's directory.
+     *
+     * @param storage the storage.
+     * @param area the area to open.
+     * @return the files. The caller closes them.
+     * @throws IOException if an error occurs opening the directory.
+     */
+    @Nonnull
+    IndexFiles openFiles(@Nonnull IndexStorage storage, @Nonnull IndexStorage.Area area) throws IOException;
+
+    /**
+     * Writes a made-up index of any size in this version's format, for {@link SyntheticIndexGenerator}.
+     * Features this version doesn't have are left out.
+     *
+     * @param path the directory to write the index in, which exists and is empty.
+     * @param documents the documents to write.
+     * @throws IOException if an error occurs writing the index.
+     * @throws UnsupportedOperationException if this version can't write a synthetic index.
+     */
+    default void writeSyntheticIndex(@Nonnull Path path, @Nonnull SyntheticDocuments documents) throws IOException {
+        throw new UnsupportedOperationException("Lucene " + getVersion().getNumber() +
+                                                " support can't write a synthetic index");
+    }
+}
@@ -0,0 +1,63 @@
+package org.trypticon.luceneupgrader;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * An upgrader which handles an upgrade to a single version.
+ */
+public interface VersionUpgrader {
+
+    /**
+     * Sets a monitor to report the progress of the upgrade to, which also throttles the writing of
+     * the new index. Without one, nothing is reported or throttled.
+     *
+     * @param monitor the monitor.
+     */
+    default void setMonitor(@Nonnull UpgradeMonitor monitor) {
+    }
+
+    /**
+     * Sets the grant the upgrade was admitted with by a {@link HeapGovernor}, so that the parts of the merge
+     * which can spill to disk can do so sooner when it's short. Without one, they use their defaults.
+     *
+     * @param grant the grant.
+     */
+    default void setHeapGrant(@Nonnull HeapGovernor.Grant grant) {
+    }
+
+    /**
+     * Sets whether the upgrade may pack the segments it writes into compound files. Without this, it leaves
+     * that to the merge policy.
+     *
+     * @param compoundFiles {@code false} to never write compound files.
+     */
+    default void setCompoundFiles(boolean compoundFiles) {
+    }
+
+    /**
+     * Performs the upgrade.
+     *
+     * @throws IOException if an error occurs performing the upgrade.
+     */
+    void upgrade() throws IOException;
+
+    /**
+     * Performs the upgrade on an index held in memory instead of the one on disk.
+     * On return, the in-memory index holds the files of the upgraded index.
+     *
+     * @param index the in-memory index.
+     * @throws IOException if an error occurs performing the upgrade.
+     */
+    void upgrade(@Nonnull InMemoryIndex index) throws IOException;
+
+    /**
+     * Lists the files making up the latest commit of the index as it is before the upgrade.
+     *
+     * @return the file names.
+     * @throws IOException if an error occurs reading the index.
+     */
+    @Nonnull
+    Collection<String> listCommitFiles() throws IOException;
+}
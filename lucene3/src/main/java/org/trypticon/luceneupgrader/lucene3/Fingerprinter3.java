@@ -0,0 +1,136 @@
+package org.trypticon.luceneupgrader.lucene3;
+
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.document.Document;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.document.Fieldable;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.document.NumericField;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.index.FieldInfo.IndexOptions;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.index.FieldInfos;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.index.IndexReader;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.index.Term;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.index.TermDocs;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.index.TermEnum;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.index.TermPositions;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.util.ReaderUtil;
+import org.trypticon.luceneupgrader.IndexFingerprint;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Computes the fingerprint of an index in Lucene 3 format.
+ */
+final class Fingerprinter3 {
+
+    /**
+     * The field infos of the whole index. Postings are hashed as far as every segment indexes them,
+     * which is as far as a merge of the segments would keep them.
+     */
+    @Nonnull
+    private final FieldInfos mergedFieldInfos;
+
+    @Nonnull
+    private final IndexFingerprint fingerprint = new IndexFingerprint();
+
+    @Nonnull
+    private final IndexFingerprint.Hasher hasher = new IndexFingerprint.Hasher();
+
+    private byte[] payload = new byte[16];
+
+    private Fingerprinter3(@Nonnull FieldInfos mergedFieldInfos) {
+        this.mergedFieldInfos = mergedFieldInfos;
+    }
+
+    @Nonnull
+    static IndexFingerprint fingerprint(@Nonnull IndexReader reader, int threadCount) throws IOException {
+        FieldInfos mergedFieldInfos = ReaderUtil.getMergedFieldInfos(reader);
+        List<IndexReader> segments = new ArrayList<>();
+        ReaderUtil.gatherSubReaders(segments, reader);
+        return IndexFingerprint.compute(segments, threadCount,
+                                        segment -> new Fingerprinter3(mergedFieldInfos).fingerprint(segment));
+    }
+
+    @Nonnull
+    private IndexFingerprint fingerprint(@Nonnull IndexReader reader) throws IOException {
+        addTerms(reader);
+        addStoredFields(reader);
+        return fingerprint;
+    }
+
+    private void addTerms(@Nonnull IndexReader reader) throws IOException {
+        // Both of these skip deleted documents by themselves.
+        TermEnum termEnum = reader.terms();
+        TermDocs termDocs = reader.termDocs();
+        TermPositions termPositions = reader.termPositions();
+        try {
+            while (termEnum.next()) {
+                Term term = termEnum.term();
+                IndexOptions indexOptions = mergedFieldInfos.fieldInfo(term.field()).indexOptions;
+                boolean hasFreqs = indexOptions != IndexOptions.DOCS_ONLY;
+                boolean hasPositions = indexOptions == IndexOptions.DOCS_AND_FREQS_AND_POSITIONS;
+
+                IndexFingerprint.Digest digest = fingerprint.digest(IndexFingerprint.Part.TERMS, term.field());
+                long termHash = hasher.reset().putString(term.text()).hash();
+                TermDocs docs = hasPositions ? termPositions : termDocs;
+                docs.seek(termEnum);
+                while (docs.next()) {
+                    hasher.reset().putLong(termHash);
+                    if (hasFreqs) {
+                        int freq = docs.freq();
+                        hasher.putInt(freq);
+                        for (int i = 0; hasPositions && i < freq; i++) {
+                            hasher.putInt(termPositions.nextPosition());
+                            int payloadLength = termPositions.isPayloadAvailable() ? termPositions.getPayloadLength() : 0;
+                            if (payloadLength > 0) {
+                                payload = termPositions.getPayload(payload, 0);
+                                hasher.putBytes(payload, 0, payloadLength);
+                            } else {
+                                hasher.putInt(-1);
+                            }
+                        }
+                    }
+                    digest.add(hasher.hash());
+                }
+            }
+        } finally {
+            termEnum.close();
+            termDocs.close();
+            termPositions.close();
+        }
+    }
+
+    private void addStoredFields(@Nonnull IndexReader reader) throws IOException {
+        IndexFingerprint.StoredFieldsDigester digester = new IndexFingerprint.StoredFieldsDigester(fingerprint);
+        for (int doc = 0; doc < reader.maxDoc(); doc++) {
+            if (reader.isDeleted(doc)) {
+                continue;
+            }
+            Document document = reader.document(doc);
+            digester.startDocument();
+            for (Fieldable field : document.getFields()) {
+                if (field instanceof NumericField) {
+                    Number value = ((NumericField) field).getNumericValue();
+                    if (value instanceof Integer) {
+                        digester.startValue(IndexFingerprint.StoredType.INT).putInt(value.intValue());
+                    } else if (value instanceof Long) {
+                        digester.startValue(IndexFingerprint.StoredType.LONG).putLong(value.longValue());
+                    } else if (value instanceof Float) {
+                        digester.startValue(IndexFingerprint.StoredType.FLOAT)
+                                .putInt(Float.floatToIntBits(value.floatValue()));
+                    } else {
+                        digester.startValue(IndexFingerprint.StoredType.DOUBLE)
+                                .putLong(Double.doubleToLongBits(value.doubleValue()));
+                    }
+                } else if (field.isBinary()) {
+                    digester.startValue(IndexFingerprint.StoredType.BINARY)
+                            .putBytes(field.getBinaryValue(), field.getBinaryOffset(), field.getBinaryLength());
+                } else {
+                    digester.startValue(IndexFingerprint.StoredType.STRING).putString(field.stringValue());
+                }
+                digester.finishValue(field.name());
+            }
+            digester.finishDocument();
+        }
+    }
+}
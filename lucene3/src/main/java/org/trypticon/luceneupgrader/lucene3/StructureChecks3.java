@@ -0,0 +1,238 @@
+package org.trypticon.luceneupgrader.lucene3;
+
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.index.CorruptIndexException;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.index.IndexFileNames;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.index.SegmentInfo;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.store.Directory;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.store.IndexInput;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.util.BitVector;
+import org.trypticon.luceneupgrader.FileVerifier;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Checks the structure of the files of a segment in Lucene 3 format, for {@link VersionChecker3#verify}.
+ * None of these files have checksums, so this catches what reading them through alone wouldn't: compound
+ * files whose entries don't fit, and files whose length doesn't match the segment's document count.
+ */
+final class StructureChecks3 {
+
+    /**
+     * The first format of compound file with a version, whose entries aren't prefixed with the segment name.
+     */
+    private static final int COMPOUND_FORMAT_NO_SEGMENT_PREFIX = -1;
+
+    /**
+     * The first format of term vectors index to hold two pointers per document, rather than one.
+     */
+    private static final int VECTORS_FORMAT_VERSION2 = 3;
+
+    private StructureChecks3() {
+    }
+
+    /**
+     * Adds the checks for the files of a segment. Segments sharing doc store files each add a check for them.
+     *
+     * @param directory the directory of the index.
+     * @param info the segment.
+     * @param checks the checks so far, by file name.
+     * @throws IOException if an error occurs reading the segment metadata.
+     */
+    static void addChecks(@Nonnull Directory directory, @Nonnull SegmentInfo info,
+                          @Nonnull Map<String, FileVerifier.FileCheck> checks) throws IOException {
+        if (info.hasDeletions()) {
+            int docCount = info.docCount;
+            int delCount = info.getDelCount();
+            checks.merge(info.getDelFileName(),
+                         fileName -> checkDeletions(directory, fileName, docCount, delCount),
+                         FileVerifier.FileCheck::andThen);
+        }
+
+        if (info.getUseCompoundFile()) {
+            checks.merge(IndexFileNames.segmentFileName(info.name, IndexFileNames.COMPOUND_FILE_EXTENSION),
+                         fileName -> readCompoundEntries(directory, fileName),
+                         FileVerifier.FileCheck::andThen);
+        }
+
+        // Stored fields and term vectors are either the segment's own or part of a doc store shared with
+        // other segments, in which case this segment's documents come after those of the segments before it.
+        String docStoreSegment;
+        String compoundFileName;
+        int docStoreEnd;
+        boolean shared;
+        if (info.getDocStoreOffset() == -1) {
+            docStoreSegment = info.name;
+            compoundFileName = info.getUseCompoundFile()
+                    ? IndexFileNames.segmentFileName(info.name, IndexFileNames.COMPOUND_FILE_EXTENSION)
+                    : null;
+            docStoreEnd = info.docCount;
+            shared = false;
+        } else {
+            docStoreSegment = info.getDocStoreSegment();
+            compoundFileName = info.getDocStoreIsCompoundFile()
+                    ? IndexFileNames.segmentFileName(docStoreSegment, IndexFileNames.COMPOUND_FILE_STORE_EXTENSION)
+                    : null;
+            docStoreEnd = info.getDocStoreOffset() + info.docCount;
+            shared = true;
+        }
+        addDocStoreIndexCheck(directory, docStoreSegment, compoundFileName, IndexFileNames.FIELDS_INDEX_EXTENSION,
+                              docStoreEnd, shared, checks);
+        if (info.getHasVectors()) {
+            addDocStoreIndexCheck(directory, docStoreSegment, compoundFileName,
+                                  IndexFileNames.VECTORS_INDEX_EXTENSION, docStoreEnd, shared, checks);
+        }
+    }
+
+    /**
+     * Adds the check of the length of a stored fields or term vectors index, to the index itself or, if it's
+     * in a compound file, to that.
+     */
+    private static void addDocStoreIndexCheck(@Nonnull Directory directory, @Nonnull String docStoreSegment,
+                                              String compoundFileName, @Nonnull String extension,
+                                              int docStoreEnd, boolean shared,
+                                              @Nonnull Map<String, FileVerifier.FileCheck> checks) {
+        if (compoundFileName == null) {
+            checks.merge(IndexFileNames.segmentFileName(docStoreSegment, extension), fileName -> {
+                try (IndexInput input = directory.openInput(fileName)) {
+                    checkDocStoreIndex(input, fileName, 0, input.length(), extension, docStoreEnd, shared);
+                }
+            }, FileVerifier.FileCheck::andThen);
+        } else {
+            checks.merge(compoundFileName, fileName -> {
+                Map<String, CompoundEntry> entries = readCompoundEntries(directory, fileName);
+                CompoundEntry entry = entries.get('.' + extension);
+                if (entry == null) {
+                    throw new CorruptIndexException("Compound file " + fileName + " has no ." + extension + " entry");
+                }
+                try (IndexInput input = directory.openInput(fileName)) {
+                    checkDocStoreIndex(input, fileName + " ." + extension + " entry", entry.offset, entry.length,
+                                       extension, docStoreEnd, shared);
+                }
+            }, FileVerifier.FileCheck::andThen);
+        }
+    }
+
+    /**
+     * Checks the length of a stored fields or term vectors index, which has a fixed size entry for each
+     * document. A shared index has to have the entries up to the end of the segment, and an index of the
+     * segment's own has to have exactly those.
+     */
+    private static void checkDocStoreIndex(@Nonnull IndexInput input, @Nonnull String description,
+                                           long start, long length, @Nonnull String extension,
+                                           int docStoreEnd, boolean shared) throws IOException {
+        if (length < 4) {
+            throw new CorruptIndexException(description + " is too short to hold a format: " + length + " bytes");
+        }
+        input.seek(start);
+        int format = input.readInt();
+
+        int headerLength;
+        int entryLength;
+        if (IndexFileNames.FIELDS_INDEX_EXTENSION.equals(extension)) {
+            // The first stored fields index had no format, but its first pointer is always 0.
+            headerLength = format == 0 ? 0 : 4;
+            entryLength = 8;
+        } else {
+            headerLength = 4;
+            entryLength = format >= VECTORS_FORMAT_VERSION2 ? 16 : 8;
+        }
+
+        long expectedLength = headerLength + (long) entryLength * docStoreEnd;
+        if (shared ? length < expectedLength : length != expectedLength) {
+            throw new CorruptIndexException(description + " should be " + (shared ? "at least " : "")
+                                            + expectedLength + " bytes for " + docStoreEnd + " documents, but is "
+                                            + length + " bytes");
+        }
+    }
+
+    /**
+     * Checks that the deleted documents of a segment are as many as its metadata says, out of a bit for
+     * each of its documents.
+     */
+    private static void checkDeletions(@Nonnull Directory directory, @Nonnull String fileName,
+                                       int docCount, int delCount) throws IOException {
+        BitVector deletedDocs = new BitVector(directory, fileName);
+        if (deletedDocs.size() != docCount) {
+            throw new CorruptIndexException(fileName + " has " + deletedDocs.size()
+                                            + " bits, but the segment has " + docCount + " documents");
+        }
+        if (deletedDocs.count() != delCount) {
+            throw new CorruptIndexException(fileName + " has " + deletedDocs.count()
+                                            + " deletions, but the segment has " + delCount);
+        }
+    }
+
+    /**
+     * Reads the table at the start of a compound file, checking that its entries follow it in order, up to
+     * the end of the file.
+     *
+     * @return the entries, by name without the segment.
+     */
+    @Nonnull
+    private static Map<String, CompoundEntry> readCompoundEntries(@Nonnull Directory directory,
+                                                                  @Nonnull String fileName) throws IOException {
+        try (IndexInput input = directory.openInput(fileName)) {
+            long fileLength = input.length();
+            int firstInt = input.readVInt();
+            int count;
+            if (firstInt < 0) {
+                if (firstInt != COMPOUND_FORMAT_NO_SEGMENT_PREFIX) {
+                    throw new CorruptIndexException("Unknown format of compound file " + fileName + ": " + firstInt);
+                }
+                count = input.readVInt();
+            } else {
+                // Before 3.1, the first int was the count and there was no format.
+                count = firstInt;
+            }
+            // Each entry takes at least a long offset and a byte for the length of its name.
+            if (count < 0 || count > fileLength / 9) {
+                throw new CorruptIndexException("Compound file " + fileName + " of " + fileLength
+                                                + " bytes can't have " + count + " entries");
+            }
+
+            long[] offsets = new long[count];
+            String[] names = new String[count];
+            for (int i = 0; i < count; i++) {
+                offsets[i] = input.readLong();
+                names[i] = IndexFileNames.stripSegmentName(input.readString());
+            }
+
+            // The entries are written one after the other, straight after the table.
+            Map<String, CompoundEntry> entries = new HashMap<>(count);
+            long tableEnd = input.getFilePointer();
+            if (count == 0 ? fileLength != tableEnd : offsets[0] != tableEnd) {
+                throw new CorruptIndexException("Compound file " + fileName + " has its entry table end at "
+                                                + tableEnd + ", but its entries start at "
+                                                + (count == 0 ? fileLength : offsets[0]));
+            }
+            for (int i = 0; i < count; i++) {
+                long end = i + 1 < count ? offsets[i + 1] : fileLength;
+                if (end < offsets[i] || end > fileLength) {
+                    throw new CorruptIndexException("Compound file " + fileName + " entry " + names[i]
+                                                    + " from " + offsets[i] + " to " + end
+                                                    + " doesn't fit in the file of " + fileLength + " bytes");
+                }
+                if (entries.put(names[i], new CompoundEntry(offsets[i], end - offsets[i])) != null) {
+                    throw new CorruptIndexException("Compound file " + fileName + " has entry " + names[i] + " twice");
+                }
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * Where an entry of a compound file is.
+     */
+    private static final class CompoundEntry {
+        private final long offset;
+        private final long length;
+
+        private CompoundEntry(long offset, long length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package org.trypticon.luceneupgrader.lucene3;
+
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.analysis.TokenStream;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.document.Document;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.document.Field;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.document.NumericField;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.index.IndexWriter;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.index.IndexWriterConfig;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.index.NoMergePolicy;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.index.Term;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.store.Directory;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.util.Version;
+import org.trypticon.luceneupgrader.SyntheticDocuments;
+import org.trypticon.luceneupgrader.SyntheticIndexConfig.Feature;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+
+/**
+ * Writes a made-up index of any size in Lucene 3 format. Lucene 3 has no doc values, points or vectors.
+ */
+final class SyntheticIndex3 {
+
+    private static final double RAM_BUFFER_SIZE_MB = 64;
+
+    private SyntheticIndex3() {
+    }
+
+    /**
+     * Writes the documents into the directory.
+     *
+     * @param directory the directory.
+     * @param documents the documents.
+     * @throws IOException if an error occurs writing the index.
+     */
+    static void write(@Nonnull Directory directory, @Nonnull SyntheticDocuments documents) throws IOException {
+        // The text is given to the fields already split into words, so no analyzer is needed.
+        IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_36, null);
+        config.setRAMBufferSizeMB(RAM_BUFFER_SIZE_MB);
+        int documentsPerSegment = documents.getConfig().getDocumentsPerSegment();
+        if (documentsPerSegment > 0) {
+            config.setMaxBufferedDocs(documentsPerSegment);
+            config.setMergePolicy(NoMergePolicy.NO_COMPOUND_FILES);
+        }
+
+        Field.Store store = documents.hasFeature(Feature.STORED_FIELDS) ? Field.Store.YES : Field.Store.NO;
+        Field.TermVector termVector = documents.hasFeature(Feature.TERM_VECTORS)
+                ? Field.TermVector.WITH_POSITIONS_OFFSETS
+                : Field.TermVector.NO;
+
+        try (IndexWriter writer = new IndexWriter(directory, config)) {
+            while (documents.next()) {
+                Document document = new Document();
+                document.add(new Field("id", documents.getId(), store, Field.Index.NOT_ANALYZED_NO_NORMS));
+                addText(document, "title", documents.getTitle(), store, termVector);
+                addText(document, "body", documents.getBody(), store, termVector);
+                if (documents.hasFeature(Feature.TRIE_FIELDS)) {
+                    document.add(new NumericField("number_trie", Field.Store.NO, true)
+                                         .setLongValue(documents.getNumber()));
+                }
+                writer.addDocument(document);
+
+                if (documents.isDeleted()) {
+                    writer.deleteDocuments(new Term("id", documents.getId()));
+                }
+            }
+            writer.commit();
+        }
+    }
+
+    private static void addText(Document document, String name, String text,
+                                Field.Store store, Field.TermVector termVector) {
+        document.add(new Field(name, new WordTokenStream(text), termVector));
+        if (store == Field.Store.YES) {
+            document.add(new Field(name, text, Field.Store.YES, Field.Index.NO));
+        }
+    }
+
+    /**
+     * Splits text into words at spaces, which is all the generated text needs.
+     */
+    private static final class WordTokenStream extends TokenStream {
+        private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
+        private final OffsetAttribute offsetAttribute = addAttribute(OffsetAttribute.class);
+        private final String text;
+        private int position;
+
+        WordTokenStream(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public boolean incrementToken() {
+            clearAttributes();
+            while (position < text.length() && text.charAt(position) == ' ') {
+                position++;
+            }
+            if (position == text.length()) {
+                return false;
+            }
+            int end = text.indexOf(' ', position);
+            if (end < 0) {
+                end = text.length();
+            }
+            termAttribute.append(text, position, end);
+            offsetAttribute.setOffset(position, end);
+            position = end;
+            return true;
+        }
+
+        @Override
+        public void end() throws IOException {
+            super.end();
+            offsetAttribute.setOffset(text.length(), text.length());
+        }
+
+        @Override
+        public void reset() throws IOException {
+            super.reset();
+            position = 0;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.trypticon.luceneupgrader.lucene3;
+
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.index.CheckIndex;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.index.IndexReader;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.index.SegmentInfo;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.index.SegmentInfos;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.store.Directory;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.store.IndexInput;
+import org.trypticon.luceneupgrader.FileVerifier;
+import org.trypticon.luceneupgrader.IndexFingerprint;
+import org.trypticon.luceneupgrader.IndexStatistics;
+import org.trypticon.luceneupgrader.IndexStorage;
+import org.trypticon.luceneupgrader.VersionChecker;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Checks an index in Lucene 3 format, which also covers Lucene 2 indexes.
+ */
+public class VersionChecker3 implements VersionChecker {
+
+    @Nonnull
+    private final IndexStorage storage;
+
+    public VersionChecker3(@Nonnull IndexStorage storage) {
+        this.storage = storage;
+    }
+
+    @Override
+    public boolean check(int threadCount, PrintStream output) throws IOException {
+        try (Directory directory = storage.openDirectory(IndexStorage.Area.INDEX, Directory.class)) {
+            CheckIndex checker = new CheckIndex(directory);
+            checker.setThreadCount(threadCount);
+            checker.setInfoStream(output);
+            return checker.checkIndex().clean;
+        }
+    }
+
+    @Override
+    public boolean verify(int threadCount, PrintStream output) throws IOException {
+        try (Directory directory = storage.openDirectory(IndexStorage.Area.INDEX, Directory.class)) {
+            // Reading the segments file checks its checksum, but nothing else in this format has one,
+            // so the rest only get their structure checked and are read through.
+            SegmentInfos segmentInfos = new SegmentInfos();
+            segmentInfos.read(directory);
+            Collection<String> fileNames = segmentInfos.files(directory, true);
+
+            Map<String, FileVerifier.FileCheck> structureChecks = new HashMap<>();
+            for (SegmentInfo info : segmentInfos) {
+                StructureChecks3.addChecks(directory, info, structureChecks);
+            }
+
+            return FileVerifier.verify(fileNames, directory::fileLength, threadCount, output, fileName -> {
+                FileVerifier.FileCheck structureCheck = structureChecks.get(fileName);
+                if (structureCheck != null) {
+                    structureCheck.verify(fileName);
+                }
+                try (IndexInput input = directory.openInput(fileName)) {
+                    FileVerifier.readFully(input.length(), input::readBytes);
+                }
+            });
+        }
+    }
+
+    @Override
+    public IndexFingerprint fingerprint(int threadCount) throws IOException {
+        try (Directory directory = storage.openDirectory(IndexStorage.Area.INDEX, Directory.class);
+             IndexReader reader = IndexReader.open(directory)) {
+            return Fingerprinter3.fingerprint(reader, threadCount);
+        }
+    }
+
+    @Override
+    public IndexStatistics statistics(int threadCount) throws IOException {
+        try (Directory directory = storage.openDirectory(IndexStorage.Area.INDEX, Directory.class)) {
+            SegmentInfos segmentInfos = new SegmentInfos();
+            segmentInfos.read(directory);
+            return IndexStatistics.compute(segmentInfos.getGeneration(), segmentInfos.asList(), threadCount,
+                                           info -> describe(directory, info));
+        }
+    }
+
+    /**
+     * Gathers the statistics of a segment from its metadata. This format has no codecs, doc values or
+     * points, and the segment metadata already says whether there are term vectors.
+     */
+    @Nonnull
+    private static IndexStatistics.Segment describe(@Nonnull Directory directory, @Nonnull SegmentInfo info)
+            throws IOException {
+        IndexStatistics.Segment segment = new IndexStatistics.Segment(info.name)
+                .setLuceneVersion(info.getVersion())
+                .setMaxDoc(info.docCount)
+                .setDeletedDocCount(info.getDelCount())
+                .setCompoundFile(info.getUseCompoundFile())
+                .setHasTermVectors(info.getHasVectors());
+        for (String fileName : info.files()) {
+            segment.addFile(fileName, directory.fileLength(fileName));
+        }
+        return segment;
+    }
+}
@@ -0,0 +1,74 @@
+package org.trypticon.luceneupgrader.lucene3;
+
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.store.Directory;
+import org.trypticon.luceneupgrader.lucene3.internal.lucenesupport.PathDirectIODirectory3;
+import org.trypticon.luceneupgrader.lucene3.internal.lucenesupport.PathFSDirectory3;
+import org.trypticon.luceneupgrader.IndexFiles;
+import org.trypticon.luceneupgrader.IndexStorage;
+import org.trypticon.luceneupgrader.IndexUpgraderConfig;
+import org.trypticon.luceneupgrader.InfoStream;
+import org.trypticon.luceneupgrader.LuceneVersion;
+import org.trypticon.luceneupgrader.SyntheticDocuments;
+import org.trypticon.luceneupgrader.VersionChecker;
+import org.trypticon.luceneupgrader.VersionSupport;
+import org.trypticon.luceneupgrader.VersionUpgrader;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Support for Lucene 3, which also checks Lucene 2 indexes.
+ */
+public class VersionSupport3 implements VersionSupport {
+
+    @Nonnull
+    @Override
+    public LuceneVersion getVersion() {
+        return LuceneVersion.VERSION_3;
+    }
+
+    @Nonnull
+    @Override
+    public VersionUpgrader createUpgrader(@Nonnull IndexStorage storage, @Nonnull InfoStream infoStream,
+                                          @Nonnull IndexUpgraderConfig config) {
+        return new VersionUpgrader3(storage, infoStream, config);
+    }
+
+    @Nonnull
+    @Override
+    public VersionChecker createChecker(@Nonnull IndexStorage storage) {
+        return new VersionChecker3(storage);
+    }
+
+    @Nonnull
+    @Override
+    public Class<?> getDirectoryType() {
+        return Directory.class;
+    }
+
+    @Nonnull
+    @Override
+    public Object openFileSystemDirectory(@Nonnull Path path, @Nonnull IndexStorage.Area area,
+                                          @Nonnull IndexUpgraderConfig config) throws IOException {
+        // Reading the index with direct I/O is optional, the scratch area is only ever written.
+        boolean directReads = area == IndexStorage.Area.INDEX && config.isDirectIOReads();
+        return config.isDirectIO(LuceneVersion.VERSION_3)
+                ? new PathDirectIODirectory3(path, null, directReads)
+                : PathFSDirectory3.open(path);
+    }
+
+    @Nonnull
+    @Override
+    public IndexFiles openFiles(@Nonnull IndexStorage storage, @Nonnull IndexStorage.Area area) throws IOException {
+        return new IndexFiles3(storage.openDirectory(area, Directory.class));
+    }
+
+    @Override
+    public void writeSyntheticIndex(@Nonnull Path path, @Nonnull SyntheticDocuments documents) throws IOException {
+        try (Directory directory = (Directory) openFileSystemDirectory(path, IndexStorage.Area.INDEX,
+                                                                       new IndexUpgraderConfig())) {
+            SyntheticIndex3.write(directory, documents);
+        }
+    }
+}
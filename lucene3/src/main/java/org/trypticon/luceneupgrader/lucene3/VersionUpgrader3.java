@@ -0,0 +1,191 @@
+package org.trypticon.luceneupgrader.lucene3;
+
+import org.trypticon.luceneupgrader.FileSystemIndexStorage;
+import org.trypticon.luceneupgrader.IOAccounting;
+import org.trypticon.luceneupgrader.InMemoryIndex;
+import org.trypticon.luceneupgrader.IndexStorage;
+import org.trypticon.luceneupgrader.IndexUpgraderConfig;
+import org.trypticon.luceneupgrader.InfoStream;
+import org.trypticon.luceneupgrader.LuceneVersion;
+import org.trypticon.luceneupgrader.UpgradeMonitor;
+import org.trypticon.luceneupgrader.VersionUpgrader;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.index.IndexFileNames;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.index.IndexUpgrader;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.index.IndexWriterConfig;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.index.LogByteSizeMergePolicy;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.index.SegmentInfos;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.index.SerialMergeScheduler;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.store.AccountingDirectory;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.store.Directory;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.store.IndexInput;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.store.IndexOutput;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.store.MonitoredDirectory;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.store.RAMDirectory;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.util.Version;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Upgrades an index to Lucene 3 format.
+ */
+public class VersionUpgrader3 implements VersionUpgrader {
+
+    @Nonnull
+    private final IndexStorage storage;
+
+    @Nonnull
+    private final InfoStream infoStream;
+
+    @Nonnull
+    private final IndexUpgraderConfig config;
+
+    @Nullable
+    private UpgradeMonitor monitor;
+
+    private boolean compoundFiles = true;
+
+    public VersionUpgrader3(@Nonnull Path path, @Nonnull InfoStream infoStream) {
+        this(new FileSystemIndexStorage(path), infoStream);
+    }
+
+    public VersionUpgrader3(@Nonnull IndexStorage storage, @Nonnull InfoStream infoStream) {
+        this(storage, infoStream, new IndexUpgraderConfig());
+    }
+
+    public VersionUpgrader3(@Nonnull IndexStorage storage, @Nonnull InfoStream infoStream,
+                            @Nonnull IndexUpgraderConfig config) {
+        this.storage = storage;
+        this.infoStream = infoStream;
+        this.config = config;
+    }
+
+    @Override
+    public void setMonitor(@Nonnull UpgradeMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    @Override
+    public void setCompoundFiles(boolean compoundFiles) {
+        this.compoundFiles = compoundFiles;
+    }
+
+    @Override
+    public void upgrade() throws IOException {
+        try (Directory directory = storage.openDirectory(IndexStorage.Area.INDEX, Directory.class)) {
+            upgrade(directory);
+        }
+    }
+
+    @Override
+    public void upgrade(@Nonnull InMemoryIndex index) throws IOException {
+        try (Directory directory = new RAMDirectory()) {
+            copyIn(index, directory);
+            upgrade(directory);
+            copyOut(directory, index);
+        }
+    }
+
+    @Nonnull
+    @Override
+    public Collection<String> listCommitFiles() throws IOException {
+        try (Directory directory = storage.openDirectory(IndexStorage.Area.INDEX, Directory.class)) {
+            SegmentInfos segmentInfos = new SegmentInfos();
+            segmentInfos.read(directory);
+            Set<String> files = new HashSet<>(segmentInfos.files(directory, true));
+            if (directory.fileExists(IndexFileNames.SEGMENTS_GEN)) {
+                files.add(IndexFileNames.SEGMENTS_GEN);
+            }
+            return files;
+        }
+    }
+
+    private void upgrade(Directory directory) throws IOException {
+        Consumer<IOAccounting> accountingListener = config.getIOAccountingListener();
+        IOAccounting accounting = new IOAccounting(LuceneVersion.VERSION_3);
+        AccountingDirectory accountingDirectory = null;
+        if (accountingListener != null) {
+            accountingDirectory = new AccountingDirectory(directory, accounting);
+            accounting.setSizeBefore(accountingDirectory.sizeInBytes());
+            // Lucene's own upgrader opens, merges and commits in one go.
+            accounting.setPhase(IOAccounting.Phase.MERGE);
+            directory = accountingDirectory;
+        }
+        if (monitor != null) {
+            directory = new MonitoredDirectory(directory, monitor);
+        }
+
+        PrintStream printStream = new PrintStream(new InfoStreamOutputStream(infoStream));
+        IndexWriterConfig indexWriterConfig = new IndexWriterConfig(Version.LUCENE_36, null);
+        LogByteSizeMergePolicy mergePolicy = new LogByteSizeMergePolicy();
+        mergePolicy.setUseCompoundFile(compoundFiles);
+        indexWriterConfig.setMergePolicy(mergePolicy);
+        indexWriterConfig.setMergeScheduler(new SerialMergeScheduler());
+        IndexUpgrader upgrader = new IndexUpgrader(directory, indexWriterConfig, printStream, true);
+        upgrader.upgrade();
+
+        if (accountingDirectory != null) {
+            accounting.setSizeAfter(accountingDirectory.sizeInBytes());
+            accountingListener.accept(accounting);
+        }
+    }
+
+    /**
+     * Moves the files of the in-memory index into the directory.
+     */
+    private static void copyIn(InMemoryIndex index, Directory directory) throws IOException {
+        for (String name : new ArrayList<>(index.getFileNames())) {
+            byte[] content = index.removeFile(name);
+            try (IndexOutput output = directory.createOutput(name)) {
+                output.writeBytes(content, content.length);
+            }
+        }
+    }
+
+    /**
+     * Replaces the files of the in-memory index with those in the directory.
+     */
+    private static void copyOut(Directory directory, InMemoryIndex index) throws IOException {
+        index.clear();
+        for (String name : directory.listAll()) {
+            try (IndexInput input = directory.openInput(name)) {
+                byte[] content = new byte[Math.toIntExact(input.length())];
+                input.readBytes(content, 0, content.length);
+                index.putFile(name, content);
+            }
+        }
+    }
+
+    /**
+     * Poor adapter to redirect a stream to the info stream.
+     */
+    private static class InfoStreamOutputStream extends OutputStream {
+        private final InfoStream infoStream;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        private InfoStreamOutputStream(InfoStream infoStream) {
+            this.infoStream = infoStream;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (b == '\n') {
+                infoStream.message("-", buffer.toString(StandardCharsets.UTF_8.name()));
+                buffer.reset();
+            } else {
+                buffer.write(b);
+            }
+        }
+    }
+}
@@ -23,16 +23,26 @@ import org.trypticon.luceneupgrader.lucene3.internal.lucene.store.Directory;
 import org.trypticon.luceneupgrader.lucene3.internal.lucene.store.FSDirectory;
 import org.trypticon.luceneupgrader.lucene3.internal.lucene.store.IndexInput;
 import org.trypticon.luceneupgrader.lucene3.internal.lucene.util.CommandLineUtil;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.util.IOUtils;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.util.NamedThreadFactory;
 import org.trypticon.luceneupgrader.lucene3.internal.lucene.util.StringHelper;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.util.ThreadInterruptedException;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 
 public class CheckIndex {
 
@@ -106,6 +116,10 @@ public class CheckIndex {
 
       public boolean openReaderPassed;
 
+      public int toLoseDocCount;
+
+      public Throwable error;
+
       int numFields;
 
 
@@ -167,9 +181,18 @@ public class CheckIndex {
     infoStream = out;
   }
 
-  private void msg(String msg) {
-    if (infoStream != null)
-      infoStream.println(msg);
+  public void setThreadCount(int tc) {
+    if (tc <= 0) {
+      throw new IllegalArgumentException("setThreadCount requires a number larger than 0, but got: " + tc);
+    }
+    threadCount = tc;
+  }
+
+  private int threadCount = Runtime.getRuntime().availableProcessors();
+
+  private static void msg(PrintStream out, String msg) {
+    if (out != null)
+      out.println(msg);
   }
 
   private static class MySegmentTermDocs extends SegmentTermDocs {
@@ -199,6 +222,33 @@ public class CheckIndex {
 
 
   public Status checkIndex(List<String> onlySegments) throws IOException {
+    ExecutorService executorService = null;
+
+    // if threadCount == 1, then no executor is created and use the main thread to do index checking sequentially
+    if (threadCount > 1) {
+      executorService = Executors.newFixedThreadPool(threadCount, new NamedThreadFactory("async-check-index"));
+    }
+
+    msg(infoStream, "Checking index with threadCount: " + threadCount);
+    try {
+      return checkIndex(onlySegments, executorService);
+    } finally {
+      if (executorService != null) {
+        executorService.shutdown();
+        try {
+          executorService.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          msg(infoStream, "ERROR: Interrupted exception occurred when shutting down executor service");
+          if (infoStream != null)
+            e.printStackTrace(infoStream);
+        } finally {
+          executorService.shutdownNow();
+        }
+      }
+    }
+  }
+
+  public Status checkIndex(List<String> onlySegments, ExecutorService executorService) throws IOException {
     NumberFormat nf = NumberFormat.getInstance();
     SegmentInfos sis = new SegmentInfos();
     Status result = new Status();
@@ -206,7 +256,7 @@ public class CheckIndex {
     try {
       sis.read(dir);
     } catch (Throwable t) {
-      msg("ERROR: could not read any segments file in directory");
+      msg(infoStream, "ERROR: could not read any segments file in directory");
       result.missingSegments = true;
       if (infoStream != null)
         t.printStackTrace(infoStream);
@@ -243,7 +293,7 @@ public class CheckIndex {
     try {
       input = dir.openInput(segmentsFileName);
     } catch (Throwable t) {
-      msg("ERROR: could not open segments file in directory");
+      msg(infoStream, "ERROR: could not open segments file in directory");
       if (infoStream != null)
         t.printStackTrace(infoStream);
       result.cantOpenSegments = true;
@@ -253,7 +303,7 @@ public class CheckIndex {
     try {
       format = input.readInt();
     } catch (Throwable t) {
-      msg("ERROR: could not read segment file version in directory");
+      msg(infoStream, "ERROR: could not read segment file version in directory");
       if (infoStream != null)
         t.printStackTrace(infoStream);
       result.missingSegmentVersion = true;
@@ -321,7 +371,7 @@ public class CheckIndex {
       versionString = oldest.equals(newest) ? ( "version=" + oldest ) : ("versions=[" + oldest + " .. " + newest + "]");
     }
     
-    msg("Segments file=" + segmentsFileName + " numSegments=" + numSegments
+    msg(infoStream, "Segments file=" + segmentsFileName + " numSegments=" + numSegments
         + " " + versionString + " format=" + sFormat + userDataString);
 
     if (onlySegments != null) {
@@ -333,11 +383,11 @@ public class CheckIndex {
           infoStream.print(" " + s);
       }
       result.segmentsChecked.addAll(onlySegments);
-      msg(":");
+      msg(infoStream, ":");
     }
 
     if (skip) {
-      msg("\nERROR: this index appears to be created by a newer version of Lucene than this tool was compiled on; please re-compile this tool on the matching version of Lucene; exiting");
+      msg(infoStream, "\nERROR: this index appears to be created by a newer version of Lucene than this tool was compiled on; please re-compile this tool on the matching version of Lucene; exiting");
       result.toolOutOfDate = true;
       return result;
     }
@@ -347,176 +397,350 @@ public class CheckIndex {
     result.newSegments.clear();
     result.maxSegmentName = -1;
 
-    for(int i=0;i<numSegments;i++) {
-      final SegmentInfo info = sis.info(i);
-      int segmentName = Integer.parseInt(info.name.substring(1), Character.MAX_RADIX);
-      if (segmentName > result.maxSegmentName) {
-        result.maxSegmentName = segmentName;
+    // checks segments sequentially
+    if (executorService == null) {
+      for(int i=0;i<numSegments;i++) {
+        final SegmentInfo info = sis.info(i);
+        updateMaxSegmentName(result, info);
+        if (onlySegments != null && !onlySegments.contains(info.name))
+          continue;
+        msg(infoStream, "  " + (1+i) + " of " + numSegments + ": name=" + info.name + " docCount=" + info.docCount);
+        Status.SegmentInfoStatus segInfoStat = testSegment(info, infoStream, null);
+        processSegmentInfoStatusResult(result, info, segInfoStat);
+      }
+    } else {
+      // checks segments concurrently, each writing to its own output which is printed in segment order
+      ByteArrayOutputStream[] outputs = new ByteArrayOutputStream[numSegments];
+      @SuppressWarnings({"unchecked", "rawtypes"})
+      FutureTask<Status.SegmentInfoStatus>[] futures = new FutureTask[numSegments];
+
+      List<SegmentInfo> segmentInfos = new ArrayList<SegmentInfo>(sis.asList());
+
+      // sort by segment size, as smaller segments tend to finish faster and hence their output can be printed sooner
+      Collections.sort(segmentInfos, (info1, info2) -> {
+        try {
+          return Long.compare(info1.sizeInBytes(true), info2.sizeInBytes(true));
+        } catch (IOException e) {
+          msg(infoStream, "ERROR: IOException occurred when comparing SegmentInfo file sizes");
+          if (infoStream != null)
+            e.printStackTrace(infoStream);
+          return 0;
+        }
+      });
+
+      // start larger segments earlier
+      for (int i = numSegments - 1; i >= 0; i--) {
+        final SegmentInfo info = segmentInfos.get(i);
+        updateMaxSegmentName(result, info);
+        if (onlySegments != null && !onlySegments.contains(info.name))
+          continue;
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream stream = infoStream == null ? null : new PrintStream(output, true, IOUtils.UTF_8);
+        msg(stream, "  " + (1+i) + " of " + numSegments + ": name=" + info.name + " docCount=" + info.docCount);
+
+        outputs[i] = output;
+        futures[i] = new FutureTask<Status.SegmentInfoStatus>(() -> testSegment(info, stream, executorService));
+        executorService.execute(futures[i]);
       }
-      if (onlySegments != null && !onlySegments.contains(info.name))
-        continue;
-      Status.SegmentInfoStatus segInfoStat = new Status.SegmentInfoStatus();
-      result.segmentInfos.add(segInfoStat);
-      msg("  " + (1+i) + " of " + numSegments + ": name=" + info.name + " docCount=" + info.docCount);
-      segInfoStat.name = info.name;
-      segInfoStat.docCount = info.docCount;
 
-      int toLoseDocCount = info.docCount;
+      for (int i = 0; i < numSegments; i++) {
+        SegmentInfo info = segmentInfos.get(i);
+        if (onlySegments != null && !onlySegments.contains(info.name))
+          continue;
 
-      SegmentReader reader = null;
+        // print segment results in order
+        Status.SegmentInfoStatus segInfoStat = awaitCheck(futures[i], outputs[i]);
+        processSegmentInfoStatusResult(result, info, segInfoStat);
+      }
+    }
 
+    if (0 == result.numBadSegments) {
+      result.clean = true;
+    } else
+      msg(infoStream, "WARNING: " + result.numBadSegments + " broken segments (containing " + result.totLoseDocCount + " documents) detected");
+
+    if ( ! (result.validCounter = (result.maxSegmentName < sis.counter))) {
+      result.clean = false;
+      result.newSegments.counter = result.maxSegmentName + 1; 
+      msg(infoStream, "ERROR: Next segment name counter " + sis.counter + " is not greater than max segment name " + result.maxSegmentName);
+    }
+    
+    if (result.clean) {
+      msg(infoStream, "No problems were detected with this index.\n");
+    }
+
+    return result;
+  }
+
+  private void updateMaxSegmentName(Status result, SegmentInfo info) {
+    int segmentName = Integer.parseInt(info.name.substring(1), Character.MAX_RADIX);
+    if (segmentName > result.maxSegmentName) {
+      result.maxSegmentName = segmentName;
+    }
+  }
+
+  private void processSegmentInfoStatusResult(Status result, SegmentInfo info, Status.SegmentInfoStatus segInfoStat) {
+    result.segmentInfos.add(segInfoStat);
+    if (segInfoStat.error != null) {
+      result.totLoseDocCount += segInfoStat.toLoseDocCount;
+      result.numBadSegments++;
+    } else {
+      // Keeper
+      result.newSegments.add((SegmentInfo) info.clone());
+    }
+  }
+
+  // Waits for a check started on the executor, then prints its output.
+  private <T> T awaitCheck(FutureTask<T> future, ByteArrayOutputStream output) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      throw new ThreadInterruptedException(e);
+    } catch (ExecutionException e) {
+      throw rethrow(e);
+    } finally {
+      if (infoStream != null)
+        infoStream.print(output.toString(IOUtils.UTF_8));
+    }
+  }
+
+  private static RuntimeException rethrow(ExecutionException e) throws IOException {
+    Throwable cause = e.getCause();
+    if (cause instanceof IOException) {
+      throw (IOException) cause;
+    } else if (cause instanceof RuntimeException) {
+      throw (RuntimeException) cause;
+    } else if (cause instanceof Error) {
+      throw (Error) cause;
+    } else {
+      throw new RuntimeException(cause);
+    }
+  }
+
+  private interface PartTest<T> {
+    T test(PrintStream infoStream) throws IOException;
+  }
+
+  // One part of a segment check, run on the executor with its own output.
+  private static final class PartCheck<T> {
+    private final FutureTask<T> task;
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private volatile boolean abandoned;
+
+    private PartCheck(PartTest<T> test, PrintStream infoStream) throws IOException {
+      PrintStream stream = infoStream == null ? null : new PrintStream(output, true, IOUtils.UTF_8);
+      task = new FutureTask<T>(() -> abandoned ? null : test.test(stream));
+    }
+
+    // Runs the part on this thread if no pool thread has started it yet, so that a segment check never waits on a
+    // part queued behind other segment checks, then prints its output.
+    private T finish(PrintStream infoStream) throws IOException {
+      task.run();
       try {
-        msg("    compound=" + info.getUseCompoundFile());
-        segInfoStat.compound = info.getUseCompoundFile();
-        msg("    hasProx=" + info.getHasProx());
-        segInfoStat.hasProx = info.getHasProx();
-        msg("    numFiles=" + info.files().size());
-        segInfoStat.numFiles = info.files().size();
-        segInfoStat.sizeMB = info.sizeInBytes(true)/(1024.*1024.);
-        msg("    size (MB)=" + nf.format(segInfoStat.sizeMB));
-        Map<String,String> diagnostics = info.getDiagnostics();
-        segInfoStat.diagnostics = diagnostics;
-        if (diagnostics.size() > 0) {
-          msg("    diagnostics = " + diagnostics);
-        }
+        return task.get();
+      } catch (InterruptedException e) {
+        throw new ThreadInterruptedException(e);
+      } catch (ExecutionException e) {
+        throw rethrow(e);
+      } finally {
+        if (infoStream != null)
+          infoStream.print(output.toString(IOUtils.UTF_8));
+      }
+    }
 
-        final int docStoreOffset = info.getDocStoreOffset();
-        if (docStoreOffset != -1) {
-          msg("    docStoreOffset=" + docStoreOffset);
-          segInfoStat.docStoreOffset = docStoreOffset;
-          msg("    docStoreSegment=" + info.getDocStoreSegment());
-          segInfoStat.docStoreSegment = info.getDocStoreSegment();
-          msg("    docStoreIsCompoundFile=" + info.getDocStoreIsCompoundFile());
-          segInfoStat.docStoreCompoundFile = info.getDocStoreIsCompoundFile();
+    // Skips the part if it hasn't started yet, otherwise waits for it to finish.
+    private void abandon() {
+      abandoned = true;
+      task.run();
+      try {
+        task.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+        // the segment has already failed, this is at most a consequence of that
+      }
+    }
+  }
+
+  private static <T> PartCheck<T> startPart(ExecutorService executorService, PrintStream infoStream,
+                                            List<PartCheck<?>> parts, PartTest<T> test) throws IOException {
+    PartCheck<T> part = new PartCheck<T>(test, infoStream);
+    parts.add(part);
+    executorService.execute(part.task);
+    return part;
+  }
+
+  private Status.SegmentInfoStatus testSegment(SegmentInfo info, PrintStream infoStream,
+                                               ExecutorService executorService) throws IOException {
+    NumberFormat nf = NumberFormat.getInstance();
+    Status.SegmentInfoStatus segInfoStat = new Status.SegmentInfoStatus();
+    segInfoStat.name = info.name;
+    segInfoStat.docCount = info.docCount;
+
+    int toLoseDocCount = info.docCount;
+
+    SegmentReader reader = null;
+
+    try {
+      msg(infoStream, "    compound=" + info.getUseCompoundFile());
+      segInfoStat.compound = info.getUseCompoundFile();
+      msg(infoStream, "    hasProx=" + info.getHasProx());
+      segInfoStat.hasProx = info.getHasProx();
+      msg(infoStream, "    numFiles=" + info.files().size());
+      segInfoStat.numFiles = info.files().size();
+      segInfoStat.sizeMB = info.sizeInBytes(true)/(1024.*1024.);
+      msg(infoStream, "    size (MB)=" + nf.format(segInfoStat.sizeMB));
+      Map<String,String> diagnostics = info.getDiagnostics();
+      segInfoStat.diagnostics = diagnostics;
+      if (diagnostics.size() > 0) {
+        msg(infoStream, "    diagnostics = " + diagnostics);
+      }
+
+      final int docStoreOffset = info.getDocStoreOffset();
+      if (docStoreOffset != -1) {
+        msg(infoStream, "    docStoreOffset=" + docStoreOffset);
+        segInfoStat.docStoreOffset = docStoreOffset;
+        msg(infoStream, "    docStoreSegment=" + info.getDocStoreSegment());
+        segInfoStat.docStoreSegment = info.getDocStoreSegment();
+        msg(infoStream, "    docStoreIsCompoundFile=" + info.getDocStoreIsCompoundFile());
+        segInfoStat.docStoreCompoundFile = info.getDocStoreIsCompoundFile();
+      }
+      final String delFileName = info.getDelFileName();
+      if (delFileName == null){
+        msg(infoStream, "    no deletions");
+        segInfoStat.hasDeletions = false;
+      }
+      else{
+        msg(infoStream, "    has deletions [delFileName=" + delFileName + "]");
+        segInfoStat.hasDeletions = true;
+        segInfoStat.deletionsFileName = delFileName;
+      }
+      if (infoStream != null)
+        infoStream.print("    test: open reader.........");
+      reader = SegmentReader.get(true, info, IndexReader.DEFAULT_TERMS_INDEX_DIVISOR);
+
+      segInfoStat.openReaderPassed = true;
+
+      final int numDocs = reader.numDocs();
+      toLoseDocCount = numDocs;
+      if (reader.hasDeletions()) {
+        if (reader.deletedDocs.count() != info.getDelCount()) {
+          throw new RuntimeException("delete count mismatch: info=" + info.getDelCount() + " vs deletedDocs.count()=" + reader.deletedDocs.count());
         }
-        final String delFileName = info.getDelFileName();
-        if (delFileName == null){
-          msg("    no deletions");
-          segInfoStat.hasDeletions = false;
+        if (reader.deletedDocs.count() > reader.maxDoc()) {
+          throw new RuntimeException("too many deleted docs: maxDoc()=" + reader.maxDoc() + " vs deletedDocs.count()=" + reader.deletedDocs.count());
         }
-        else{
-          msg("    has deletions [delFileName=" + delFileName + "]");
-          segInfoStat.hasDeletions = true;
-          segInfoStat.deletionsFileName = delFileName;
+        if (info.docCount - numDocs != info.getDelCount()){
+          throw new RuntimeException("delete count mismatch: info=" + info.getDelCount() + " vs reader=" + (info.docCount - numDocs));
         }
-        if (infoStream != null)
-          infoStream.print("    test: open reader.........");
-        reader = SegmentReader.get(true, info, IndexReader.DEFAULT_TERMS_INDEX_DIVISOR);
 
-        segInfoStat.openReaderPassed = true;
-
-        final int numDocs = reader.numDocs();
-        toLoseDocCount = numDocs;
-        if (reader.hasDeletions()) {
-          if (reader.deletedDocs.count() != info.getDelCount()) {
-            throw new RuntimeException("delete count mismatch: info=" + info.getDelCount() + " vs deletedDocs.count()=" + reader.deletedDocs.count());
-          }
-          if (reader.deletedDocs.count() > reader.maxDoc()) {
-            throw new RuntimeException("too many deleted docs: maxDoc()=" + reader.maxDoc() + " vs deletedDocs.count()=" + reader.deletedDocs.count());
-          }
-          if (info.docCount - numDocs != info.getDelCount()){
-            throw new RuntimeException("delete count mismatch: info=" + info.getDelCount() + " vs reader=" + (info.docCount - numDocs));
-          }
-
-          int numLive = 0;    
-          for (int j = 0; j < reader.maxDoc(); j++) {
-            if (!reader.isDeleted(j)) {
-              numLive++;
-            }
-          }
-          if (numLive != numDocs) {
-            throw new RuntimeException("liveDocs count mismatch: info=" + numDocs + ", vs bits=" + numLive);
-          }
-          segInfoStat.numDeleted = info.docCount - numDocs;
-          msg("OK [" + (segInfoStat.numDeleted) + " deleted docs]");
-        } else {
-          if (info.getDelCount() != 0) {
-            throw new RuntimeException("delete count mismatch: info=" + info.getDelCount() + " vs reader=" + (info.docCount - numDocs));
+        int numLive = 0;    
+        for (int j = 0; j < reader.maxDoc(); j++) {
+          if (!reader.isDeleted(j)) {
+            numLive++;
           }
+        }
+        if (numLive != numDocs) {
+          throw new RuntimeException("liveDocs count mismatch: info=" + numDocs + ", vs bits=" + numLive);
+        }
+        segInfoStat.numDeleted = info.docCount - numDocs;
+        msg(infoStream, "OK [" + (segInfoStat.numDeleted) + " deleted docs]");
+      } else {
+        if (info.getDelCount() != 0) {
+          throw new RuntimeException("delete count mismatch: info=" + info.getDelCount() + " vs reader=" + (info.docCount - numDocs));
+        }
 
-          for (int j = 0; j < reader.maxDoc(); j++) {
-            if (reader.isDeleted(j)) {
-              throw new RuntimeException("liveDocs mismatch: info says no deletions but doc " + j + " is deleted.");
-            }
+        for (int j = 0; j < reader.maxDoc(); j++) {
+          if (reader.isDeleted(j)) {
+            throw new RuntimeException("liveDocs mismatch: info says no deletions but doc " + j + " is deleted.");
           }
-          msg("OK");
         }
-        if (reader.maxDoc() != info.docCount)
-          throw new RuntimeException("SegmentReader.maxDoc() " + reader.maxDoc() + " != SegmentInfos.docCount " + info.docCount);
-
-        // Test getFieldInfos()
-        if (infoStream != null) {
-          infoStream.print("    test: fields..............");
-        }         
-        FieldInfos fieldInfos = reader.getFieldInfos();
-        msg("OK [" + fieldInfos.size() + " fields]");
-        segInfoStat.numFields = fieldInfos.size();
-        
+        msg(infoStream, "OK");
+      }
+      if (reader.maxDoc() != info.docCount)
+        throw new RuntimeException("SegmentReader.maxDoc() " + reader.maxDoc() + " != SegmentInfos.docCount " + info.docCount);
+
+      // Test getFieldInfos()
+      if (infoStream != null) {
+        infoStream.print("    test: fields..............");
+      }         
+      FieldInfos fieldInfos = reader.getFieldInfos();
+      msg(infoStream, "OK [" + fieldInfos.size() + " fields]");
+      segInfoStat.numFields = fieldInfos.size();
+      
+      if (executorService == null) {
         // Test Field Norms
-        segInfoStat.fieldNormStatus = testFieldNorms(fieldInfos, reader);
+        segInfoStat.fieldNormStatus = testFieldNorms(fieldInfos, reader, infoStream);
 
         // Test the Term Index
-        segInfoStat.termIndexStatus = testTermIndex(info, fieldInfos, reader);
+        segInfoStat.termIndexStatus = testTermIndex(info, fieldInfos, reader, infoStream);
 
         // Test Stored Fields
-        segInfoStat.storedFieldStatus = testStoredFields(info, reader, nf);
+        segInfoStat.storedFieldStatus = testStoredFields(info, reader, nf, infoStream);
 
         // Test Term Vectors
-        segInfoStat.termVectorStatus = testTermVectors(info, reader, nf);
-
-        // Rethrow the first exception we encountered
-        //  This will cause stats for failed segments to be incremented properly
-        if (segInfoStat.fieldNormStatus.error != null) {
-          throw new RuntimeException("Field Norm test failed");
-        } else if (segInfoStat.termIndexStatus.error != null) {
-          throw new RuntimeException("Term Index test failed");
-        } else if (segInfoStat.storedFieldStatus.error != null) {
-          throw new RuntimeException("Stored Field test failed");
-        } else if (segInfoStat.termVectorStatus.error != null) {
-          throw new RuntimeException("Term Vector test failed");
+        segInfoStat.termVectorStatus = testTermVectors(info, reader, nf, infoStream);
+      } else {
+        // Check the parts concurrently, printing their output in the same order as above
+        final SegmentReader segmentReader = reader;
+        List<PartCheck<?>> parts = new ArrayList<PartCheck<?>>();
+        PartCheck<Status.FieldNormStatus> fieldNorms = startPart(executorService, infoStream, parts,
+            stream -> testFieldNorms(fieldInfos, segmentReader, stream));
+        PartCheck<Status.TermIndexStatus> termIndex = startPart(executorService, infoStream, parts,
+            stream -> testTermIndex(info, fieldInfos, segmentReader, stream));
+        // NumberFormat isn't thread-safe, so each part running at the same time needs its own
+        PartCheck<Status.StoredFieldStatus> storedFields = startPart(executorService, infoStream, parts,
+            stream -> testStoredFields(info, segmentReader, NumberFormat.getInstance(), stream));
+        PartCheck<Status.TermVectorStatus> termVectors = startPart(executorService, infoStream, parts,
+            stream -> testTermVectors(info, segmentReader, NumberFormat.getInstance(), stream));
+
+        try {
+          segInfoStat.fieldNormStatus = fieldNorms.finish(infoStream);
+          segInfoStat.termIndexStatus = termIndex.finish(infoStream);
+          segInfoStat.storedFieldStatus = storedFields.finish(infoStream);
+          segInfoStat.termVectorStatus = termVectors.finish(infoStream);
+        } finally {
+          // a failed part leaves the others unfinished, and they must not outlive the reader
+          for (PartCheck<?> part : parts) {
+            part.abandon();
+          }
         }
-
-        msg("");
-
-      } catch (Throwable t) {
-        msg("FAILED");
-        String comment;
-        comment = "fixIndex() would remove reference to this segment";
-        msg("    WARNING: " + comment + "; full exception:");
-        if (infoStream != null)
-          t.printStackTrace(infoStream);
-        msg("");
-        result.totLoseDocCount += toLoseDocCount;
-        result.numBadSegments++;
-        continue;
-      } finally {
-        if (reader != null)
-          reader.close();
       }
 
-      // Keeper
-      result.newSegments.add((SegmentInfo) info.clone());
-    }
+      // Rethrow the first exception we encountered
+      //  This will cause stats for failed segments to be incremented properly
+      if (segInfoStat.fieldNormStatus.error != null) {
+        throw new RuntimeException("Field Norm test failed");
+      } else if (segInfoStat.termIndexStatus.error != null) {
+        throw new RuntimeException("Term Index test failed");
+      } else if (segInfoStat.storedFieldStatus.error != null) {
+        throw new RuntimeException("Stored Field test failed");
+      } else if (segInfoStat.termVectorStatus.error != null) {
+        throw new RuntimeException("Term Vector test failed");
+      }
 
-    if (0 == result.numBadSegments) {
-      result.clean = true;
-    } else
-      msg("WARNING: " + result.numBadSegments + " broken segments (containing " + result.totLoseDocCount + " documents) detected");
+      msg(infoStream, "");
 
-    if ( ! (result.validCounter = (result.maxSegmentName < sis.counter))) {
-      result.clean = false;
-      result.newSegments.counter = result.maxSegmentName + 1; 
-      msg("ERROR: Next segment name counter " + sis.counter + " is not greater than max segment name " + result.maxSegmentName);
-    }
-    
-    if (result.clean) {
-      msg("No problems were detected with this index.\n");
+    } catch (Throwable t) {
+      msg(infoStream, "FAILED");
+      String comment;
+      comment = "fixIndex() would remove reference to this segment";
+      msg(infoStream, "    WARNING: " + comment + "; full exception:");
+      if (infoStream != null)
+        t.printStackTrace(infoStream);
+      msg(infoStream, "");
+      segInfoStat.error = t;
+      segInfoStat.toLoseDocCount = toLoseDocCount;
+    } finally {
+      if (reader != null)
+        reader.close();
     }
 
-    return result;
+    return segInfoStat;
   }
 
-  private Status.FieldNormStatus testFieldNorms(FieldInfos fieldInfos, SegmentReader reader) {
+  private Status.FieldNormStatus testFieldNorms(FieldInfos fieldInfos, SegmentReader reader, PrintStream infoStream) {
     final Status.FieldNormStatus status = new Status.FieldNormStatus();
 
     try {
@@ -532,9 +756,9 @@ public class CheckIndex {
         }
       }
 
-      msg("OK [" + status.totFields + " fields]");
+      msg(infoStream, "OK [" + status.totFields + " fields]");
     } catch (Throwable e) {
-      msg("ERROR [" + String.valueOf(e.getMessage()) + "]");
+      msg(infoStream, "ERROR [" + String.valueOf(e.getMessage()) + "]");
       status.error = e;
       if (infoStream != null) {
         e.printStackTrace(infoStream);
@@ -544,7 +768,7 @@ public class CheckIndex {
     return status;
   }
 
-  private Status.TermIndexStatus testTermIndex(SegmentInfo info, FieldInfos fieldInfos, SegmentReader reader) {
+  private Status.TermIndexStatus testTermIndex(SegmentInfo info, FieldInfos fieldInfos, SegmentReader reader, PrintStream infoStream) {
     final Status.TermIndexStatus status = new Status.TermIndexStatus();
 
     final IndexSearcher is = new IndexSearcher(reader);
@@ -698,10 +922,10 @@ public class CheckIndex {
         // not supported
       }
       
-      msg("OK [" + status.termCount + " terms; " + status.totFreq + " terms/docs pairs; " + status.totPos + " tokens]");
+      msg(infoStream, "OK [" + status.termCount + " terms; " + status.totFreq + " terms/docs pairs; " + status.totPos + " tokens]");
 
     } catch (Throwable e) {
-      msg("ERROR [" + String.valueOf(e.getMessage()) + "]");
+      msg(infoStream, "ERROR [" + String.valueOf(e.getMessage()) + "]");
       status.error = e;
       if (infoStream != null) {
         e.printStackTrace(infoStream);
@@ -711,7 +935,7 @@ public class CheckIndex {
     return status;
   }
   
-  private Status.StoredFieldStatus testStoredFields(SegmentInfo info, SegmentReader reader, NumberFormat format) {
+  private Status.StoredFieldStatus testStoredFields(SegmentInfo info, SegmentReader reader, NumberFormat format, PrintStream infoStream) {
     final Status.StoredFieldStatus status = new Status.StoredFieldStatus();
 
     try {
@@ -733,10 +957,10 @@ public class CheckIndex {
         throw new RuntimeException("docCount=" + status.docCount + " but saw " + status.docCount + " undeleted docs");
       }
 
-      msg("OK [" + status.totFields + " total field count; avg " + 
+      msg(infoStream, "OK [" + status.totFields + " total field count; avg " + 
           format.format((((float) status.totFields)/status.docCount)) + " fields per doc]");      
     } catch (Throwable e) {
-      msg("ERROR [" + String.valueOf(e.getMessage()) + "]");
+      msg(infoStream, "ERROR [" + String.valueOf(e.getMessage()) + "]");
       status.error = e;
       if (infoStream != null) {
         e.printStackTrace(infoStream);
@@ -746,7 +970,7 @@ public class CheckIndex {
     return status;
   }
 
-  private Status.TermVectorStatus testTermVectors(SegmentInfo info, SegmentReader reader, NumberFormat format) {
+  private Status.TermVectorStatus testTermVectors(SegmentInfo info, SegmentReader reader, NumberFormat format, PrintStream infoStream) {
     final Status.TermVectorStatus status = new Status.TermVectorStatus();
     
     try {
@@ -764,10 +988,10 @@ public class CheckIndex {
         }
       }
       
-      msg("OK [" + status.totVectors + " total vector count; avg " + 
+      msg(infoStream, "OK [" + status.totVectors + " total vector count; avg " + 
           format.format((((float) status.totVectors) / status.docCount)) + " term/freq vector fields per doc]");
     } catch (Throwable e) {
-      msg("ERROR [" + String.valueOf(e.getMessage()) + "]");
+      msg(infoStream, "ERROR [" + String.valueOf(e.getMessage()) + "]");
       status.error = e;
       if (infoStream != null) {
         e.printStackTrace(infoStream);
@@ -803,6 +1027,7 @@ public class CheckIndex {
     List<String> onlySegments = new ArrayList<String>();
     String indexPath = null;
     String dirImpl = null;
+    int threadCount = 0;
     int i = 0;
     while(i < args.length) {
       String arg = args[i];
@@ -823,6 +1048,17 @@ public class CheckIndex {
         }
         i++;
         dirImpl = args[i];
+      } else if ("-threadCount".equals(arg)) {
+        if (i == args.length - 1) {
+          System.out.println("ERROR: -threadCount requires a following number");
+          System.exit(1);
+        }
+        i++;
+        threadCount = Integer.parseInt(args[i]);
+        if (threadCount <= 0) {
+          System.out.println("ERROR: -threadCount requires a number larger than 0, but got: " + threadCount);
+          System.exit(1);
+        }
       } else {
         if (indexPath != null) {
           System.out.println("ERROR: unexpected extra argument '" + args[i] + "'");
@@ -835,12 +1071,15 @@ public class CheckIndex {
 
     if (indexPath == null) {
       System.out.println("\nERROR: index path not specified");
-      System.out.println("\nUsage: java org.trypticon.luceneupgrader.lucene3.internal.lucene.index.CheckIndex pathToIndex [-fix] [-segment X] [-segment Y] [-dir-impl X]\n" +
+      System.out.println("\nUsage: java org.trypticon.luceneupgrader.lucene3.internal.lucene.index.CheckIndex pathToIndex [-fix] [-segment X] [-segment Y] [-threadCount X] [-dir-impl X]\n" +
                          "\n" +
                          "  -fix: actually write a new segments_N file, removing any problematic segments\n" +
                          "  -segment X: only check the specified segments.  This can be specified multiple\n" + 
                          "              times, to check more than one segment, eg '-segment _2 -segment _a'.\n" +
                          "              You can't use this with the -fix option\n" +
+                         "  -threadCount X: number of threads used to check index concurrently.\n" +
+                         "                  When not specified, this will default to the number of CPU cores.\n" +
+                         "                  When '-threadCount 1' is used, index checking will be performed sequentially.\n" +
                          "  -dir-impl X: use a specific " + FSDirectory.class.getSimpleName() + " implementation. " +
                          		"If no package is specified the " + FSDirectory.class.getPackage().getName() + " package will be used.\n" +
                          "**WARNING**: -fix should only be used on an emergency basis as it will cause\n" +
@@ -885,6 +1124,9 @@ public class CheckIndex {
 
     CheckIndex checker = new CheckIndex(dir);
     checker.setInfoStream(System.out);
+    if (threadCount > 0) {
+      checker.setThreadCount(threadCount);
+    }
 
     Status result = checker.checkIndex(onlySegments);
     if (result.missingSegments) {
@@ -86,7 +86,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
   // it too much because there are quite a few
   // BufferedIndexInputs created during merging.  See
   // LUCENE-888 for details.
-  private final static int MERGE_READ_BUFFER_SIZE = 4096;
+  private final static int MERGE_READ_BUFFER_SIZE = BufferedIndexInput.MERGE_BUFFER_SIZE;
 
   // Used for printing messages
   private static final AtomicInteger MESSAGE_ID = new AtomicInteger();
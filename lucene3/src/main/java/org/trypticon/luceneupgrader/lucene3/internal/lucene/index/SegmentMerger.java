@@ -16,6 +16,7 @@
 */
 package org.trypticon.luceneupgrader.lucene3.internal.lucene.index;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -30,6 +31,7 @@ import org.trypticon.luceneupgrader.lucene3.internal.lucene.store.IndexInput;
 import org.trypticon.luceneupgrader.lucene3.internal.lucene.store.IndexOutput;
 import org.trypticon.luceneupgrader.lucene3.internal.lucene.util.IOUtils;
 import org.trypticon.luceneupgrader.lucene3.internal.lucene.util.ReaderUtil;
+import org.trypticon.luceneupgrader.UpgradeEvents;
 
 final class SegmentMerger {
   private Directory directory;
@@ -83,20 +85,80 @@ final class SegmentMerger {
     // IndexWriter.close(false) takes to actually stop the
     // threads.
 
+    UpgradeEvents.SegmentMerge mergeEvent = new UpgradeEvents.SegmentMerge();
+    mergeEvent.begin();
+
+    UpgradeEvents.MergePart part = beginPart();
     mergedDocs = mergeFields();
+    endPart(part, "stored fields");
+    part = beginPart();
     mergeTerms();
+    endPart(part, "postings");
+    part = beginPart();
     mergeNorms();
+    endPart(part, "norms");
 
-    if (fieldInfos.hasVectors())
+    if (fieldInfos.hasVectors()) {
+      part = beginPart();
       mergeVectors();
+      endPart(part, "term vectors");
+    }
+
+    mergeEvent.end();
+    if (mergeEvent.shouldCommit()) {
+      mergeEvent.segment = segment;
+      mergeEvent.sourceSegmentCount = readers.size();
+      mergeEvent.documentCount = mergedDocs;
+      mergeEvent.bytesWritten = segmentSizeInBytes();
+      mergeEvent.commit();
+    }
 
     return mergedDocs;
   }
 
+  /** Starts a Flight Recorder event for merging one part of the segment. */
+  private UpgradeEvents.MergePart beginPart() throws IOException {
+    UpgradeEvents.MergePart event = new UpgradeEvents.MergePart();
+    if (event.isEnabled()) {
+      // whatever the segment has gained by the end of the part was written by it
+      event.bytesWritten = -segmentSizeInBytes();
+    }
+    event.begin();
+    return event;
+  }
+
+  private void endPart(UpgradeEvents.MergePart event, String part) throws IOException {
+    event.end();
+    if (event.shouldCommit()) {
+      event.segment = segment;
+      event.part = part;
+      event.documentCount = mergedDocs;
+      event.bytesWritten += segmentSizeInBytes();
+      event.commit();
+    }
+  }
+
+  /** Adds up the sizes of the new segment's files written so far, for Flight Recorder events. */
+  private long segmentSizeInBytes() throws IOException {
+    long size = 0;
+    for (String file : directory.listAll()) {
+      if (file.startsWith(segment + ".") || file.startsWith(segment + "_")) {
+        try {
+          size += directory.fileLength(file);
+        } catch (FileNotFoundException e) {
+          // a temporary file, deleted since it was listed
+        }
+      }
+    }
+    return size;
+  }
+
   final Collection<String> createCompoundFile(String fileName, final SegmentInfo info)
           throws IOException {
     // Now merge all added files
     Collection<String> files = info.files();
+    UpgradeEvents.CompoundFile event = new UpgradeEvents.CompoundFile();
+    event.begin();
     CompoundFileWriter cfsWriter = new CompoundFileWriter(directory, fileName, checkAbort);
     for (String file : files) {
       assert !IndexFileNames.matchesExtension(file, IndexFileNames.DELETES_EXTENSION) 
@@ -108,6 +170,13 @@ final class SegmentMerger {
     
     // Perform the merge
     cfsWriter.close();
+    event.end();
+    if (event.shouldCommit()) {
+      event.segment = info.name;
+      event.fileCount = files.size();
+      event.bytesWritten = directory.fileLength(fileName);
+      event.commit();
+    }
    
     return files;
   }
@@ -0,0 +1,268 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trypticon.luceneupgrader.lucene3.internal.lucene.store;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.trypticon.luceneupgrader.IOAccounting;
+
+/**
+ * A {@link Directory} which passes everything through to another, counting the bytes read from and
+ * written to its files towards an {@link IOAccounting}.
+ *
+ * <p>Reads are counted as they are pulled through a buffer, and writes when each output is closed.
+ * The bytes written to a file which is deleted again, such as one packed into a compound file, are
+ * also counted as discarded. This version has no {@code IOContext}, so every file is counted under
+ * {@code DEFAULT}.
+ */
+public final class AccountingDirectory extends Directory {
+  private static final String CONTEXT = "DEFAULT";
+
+  private final Directory in;
+  private final IOAccounting accounting;
+
+  /** bytes written to each file created through this directory which still exists */
+  private final Map<String, Long> bytesWritten = new ConcurrentHashMap<>();
+
+  public AccountingDirectory(Directory in, IOAccounting accounting) {
+    this.in = in;
+    this.accounting = accounting;
+  }
+
+  /** Adds up the sizes of the files in the directory, without counting anything. */
+  public long sizeInBytes() throws IOException {
+    long size = 0;
+    for (String name : in.listAll()) {
+      try {
+        size += in.fileLength(name);
+      } catch (FileNotFoundException e) {
+        // deleted since it was listed
+      }
+    }
+    return size;
+  }
+
+  @Override
+  public String[] listAll() throws IOException {
+    return in.listAll();
+  }
+
+  @Override
+  public boolean fileExists(String name) throws IOException {
+    return in.fileExists(name);
+  }
+
+  @Override
+  @Deprecated
+  public long fileModified(String name) throws IOException {
+    return in.fileModified(name);
+  }
+
+  @Override
+  @Deprecated
+  public void touchFile(String name) throws IOException {
+    in.touchFile(name);
+  }
+
+  @Override
+  public void deleteFile(String name) throws IOException {
+    in.deleteFile(name);
+    Long written = bytesWritten.remove(name);
+    if (written != null) {
+      accounting.addDiscarded(written);
+    }
+  }
+
+  @Override
+  public long fileLength(String name) throws IOException {
+    return in.fileLength(name);
+  }
+
+  @Override
+  public IndexOutput createOutput(String name) throws IOException {
+    return new AccountingIndexOutput(name, in.createOutput(name), accounting.counter(name, CONTEXT));
+  }
+
+  @Override
+  @Deprecated
+  public void sync(String name) throws IOException {
+    in.sync(name);
+  }
+
+  @Override
+  public void sync(Collection<String> names) throws IOException {
+    in.sync(names);
+  }
+
+  @Override
+  public IndexInput openInput(String name) throws IOException {
+    return openInput(name, BufferedIndexInput.BUFFER_SIZE);
+  }
+
+  @Override
+  public IndexInput openInput(String name, int bufferSize) throws IOException {
+    return new AccountingIndexInput(
+        in.openInput(name, bufferSize), accounting.counter(name, CONTEXT), bufferSize);
+  }
+
+  @Override
+  public Lock makeLock(String name) {
+    return in.makeLock(name);
+  }
+
+  @Override
+  public void clearLock(String name) throws IOException {
+    in.clearLock(name);
+  }
+
+  @Override
+  public void setLockFactory(LockFactory lockFactory) throws IOException {
+    in.setLockFactory(lockFactory);
+  }
+
+  @Override
+  public LockFactory getLockFactory() {
+    return in.getLockFactory();
+  }
+
+  @Override
+  public String getLockID() {
+    return in.getLockID();
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  @Override
+  public String toString() {
+    return "AccountingDirectory(" + in + ")";
+  }
+
+  /** Reads through a buffer, counting each time it is filled. */
+  private static final class AccountingIndexInput extends BufferedIndexInput {
+    private IndexInput in;
+    private final IOAccounting.Counter counter;
+
+    AccountingIndexInput(IndexInput in, IOAccounting.Counter counter, int bufferSize) {
+      super("AccountingIndexInput(" + in + ")", bufferSize);
+      this.in = in;
+      this.counter = counter;
+    }
+
+    @Override
+    protected void readInternal(byte[] b, int offset, int length) throws IOException {
+      long position = getFilePointer();
+      if (in.getFilePointer() != position) {
+        in.seek(position);
+      }
+      in.readBytes(b, offset, length);
+      counter.addRead(length);
+    }
+
+    @Override
+    protected void seekInternal(long pos) {
+      // the next read seeks if it needs to
+    }
+
+    @Override
+    public Object clone() {
+      AccountingIndexInput clone = (AccountingIndexInput) super.clone();
+      clone.in = (IndexInput) in.clone();
+      return clone;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+
+    @Override
+    public long length() {
+      return in.length();
+    }
+  }
+
+  /**
+   * Passes writes straight through, counting them when closed. Outputs in this version can seek back
+   * to patch what they've written, so the count is of the furthest they got.
+   */
+  private final class AccountingIndexOutput extends IndexOutput {
+    private final String name;
+    private final IndexOutput out;
+    private final IOAccounting.Counter counter;
+    private long end;
+    private boolean closed;
+
+    AccountingIndexOutput(String name, IndexOutput out, IOAccounting.Counter counter) {
+      this.name = name;
+      this.out = out;
+      this.counter = counter;
+    }
+
+    @Override
+    public void writeByte(byte b) throws IOException {
+      out.writeByte(b);
+    }
+
+    @Override
+    public void writeBytes(byte[] b, int offset, int length) throws IOException {
+      out.writeBytes(b, offset, length);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    @Override
+    public long getFilePointer() {
+      return out.getFilePointer();
+    }
+
+    @Override
+    public void seek(long pos) throws IOException {
+      end = Math.max(end, out.getFilePointer());
+      out.seek(pos);
+    }
+
+    @Override
+    public long length() throws IOException {
+      return out.length();
+    }
+
+    @Override
+    public void setLength(long length) throws IOException {
+      out.setLength(length);
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!closed) {
+        closed = true;
+        long written = Math.max(end, out.getFilePointer());
+        counter.addWritten(written);
+        bytesWritten.merge(name, written, Long::sum);
+      }
+      out.close();
+    }
+  }
+}
@@ -23,6 +23,8 @@ public abstract class BufferedIndexInput extends IndexInput {
 
   public static final int BUFFER_SIZE = 1024;
 
+  public static final int MERGE_BUFFER_SIZE = 4096;
+
   private int bufferSize = BUFFER_SIZE;
   
   protected byte[] buffer;
@@ -32,6 +32,7 @@ import java.util.concurrent.Future;
 
 import org.trypticon.luceneupgrader.lucene3.internal.lucene.util.ThreadInterruptedException;
 import org.trypticon.luceneupgrader.lucene3.internal.lucene.util.Constants;
+import org.trypticon.luceneupgrader.UpgradeEvents;
 
 public abstract class FSDirectory extends Directory {
 
@@ -206,12 +207,32 @@ public abstract class FSDirectory extends Directory {
     Set<String> toSync = new HashSet<String>(names);
     toSync.retainAll(staleFiles);
 
+    UpgradeEvents.Sync event = new UpgradeEvents.Sync();
+    event.begin();
     for (String name : toSync)
       fsync(name);
+    event.end();
+    if (event.shouldCommit()) {
+      commitSyncEvent(event, toSync);
+    }
 
     staleFiles.removeAll(toSync);
   }
 
+  /** Fills in and commits a Flight Recorder event for syncing files, or the directory when there are none. */
+  private void commitSyncEvent(UpgradeEvents.Sync event, Collection<String> names) {
+    event.directory = directory.toString();
+    event.fileCount = names.size();
+    for (String name : names) {
+      try {
+        event.bytes += fileLength(name);
+      } catch (IOException e) {
+        // deleted since it was synced
+      }
+    }
+    event.commit();
+  }
+
   // Inherit javadoc
   @Override
   public IndexInput openInput(String name) throws IOException {
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trypticon.luceneupgrader.lucene3.internal.lucene.store;
+
+import java.io.IOException;
+import java.util.Collection;
+import org.trypticon.luceneupgrader.UpgradeMonitor;
+
+/**
+ * A {@link Directory} which passes everything through to another, reporting the bytes written to
+ * its files to an {@link UpgradeMonitor} as they are written, so that the monitor can show the
+ * progress of an upgrade and throttle it.
+ */
+public final class MonitoredDirectory extends Directory {
+  private final Directory in;
+  private final UpgradeMonitor monitor;
+
+  public MonitoredDirectory(Directory in, UpgradeMonitor monitor) {
+    this.in = in;
+    this.monitor = monitor;
+  }
+
+  @Override
+  public String[] listAll() throws IOException {
+    return in.listAll();
+  }
+
+  @Override
+  public boolean fileExists(String name) throws IOException {
+    return in.fileExists(name);
+  }
+
+  @Override
+  @Deprecated
+  public long fileModified(String name) throws IOException {
+    return in.fileModified(name);
+  }
+
+  @Override
+  @Deprecated
+  public void touchFile(String name) throws IOException {
+    in.touchFile(name);
+  }
+
+  @Override
+  public void deleteFile(String name) throws IOException {
+    in.deleteFile(name);
+  }
+
+  @Override
+  public long fileLength(String name) throws IOException {
+    return in.fileLength(name);
+  }
+
+  @Override
+  public IndexOutput createOutput(String name) throws IOException {
+    return new MonitoredIndexOutput(in.createOutput(name), monitor.outputOpened(name));
+  }
+
+  @Override
+  @Deprecated
+  public void sync(String name) throws IOException {
+    in.sync(name);
+  }
+
+  @Override
+  public void sync(Collection<String> names) throws IOException {
+    in.sync(names);
+  }
+
+  @Override
+  public IndexInput openInput(String name) throws IOException {
+    return in.openInput(name);
+  }
+
+  @Override
+  public IndexInput openInput(String name, int bufferSize) throws IOException {
+    return in.openInput(name, bufferSize);
+  }
+
+  @Override
+  public Lock makeLock(String name) {
+    return in.makeLock(name);
+  }
+
+  @Override
+  public void clearLock(String name) throws IOException {
+    in.clearLock(name);
+  }
+
+  @Override
+  public void setLockFactory(LockFactory lockFactory) throws IOException {
+    in.setLockFactory(lockFactory);
+  }
+
+  @Override
+  public LockFactory getLockFactory() {
+    return in.getLockFactory();
+  }
+
+  @Override
+  public String getLockID() {
+    return in.getLockID();
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  @Override
+  public String toString() {
+    return "MonitoredDirectory(" + in + ")";
+  }
+
+  /**
+   * Passes writes straight through, reporting them as it goes. Bytes rewritten after seeking back
+   * to patch a header are reported again, which is a few bytes per file at most.
+   */
+  private static final class MonitoredIndexOutput extends IndexOutput {
+    private final IndexOutput out;
+    private final UpgradeMonitor.Output output;
+
+    MonitoredIndexOutput(IndexOutput out, UpgradeMonitor.Output output) {
+      this.out = out;
+      this.output = output;
+    }
+
+    @Override
+    public void writeByte(byte b) throws IOException {
+      out.writeByte(b);
+      output.written(1);
+    }
+
+    @Override
+    public void writeBytes(byte[] b, int offset, int length) throws IOException {
+      out.writeBytes(b, offset, length);
+      output.written(length);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    @Override
+    public long getFilePointer() {
+      return out.getFilePointer();
+    }
+
+    @Override
+    public void seek(long pos) throws IOException {
+      out.seek(pos);
+    }
+
+    @Override
+    public long length() throws IOException {
+      return out.length();
+    }
+
+    @Override
+    public void setLength(long length) throws IOException {
+      out.setLength(length);
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        out.close();
+      } finally {
+        output.closed();
+      }
+    }
+  }
+}
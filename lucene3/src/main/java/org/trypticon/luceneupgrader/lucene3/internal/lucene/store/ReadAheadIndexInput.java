@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trypticon.luceneupgrader.lucene3.internal.lucene.store;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.util.ThreadInterruptedException;
+
+// Prefetches the next window of a merge-context input on a background thread while the current one is decoded.
+// Windows are only allocated once the input is seen reading sequentially, so clones which seek around stay cheap.
+public final class ReadAheadIndexInput extends BufferedIndexInput {
+  public static final int BUFFER_SIZE = 16384;
+
+  public static final int WINDOW_SIZE = 1 << 20;
+
+  private static final ExecutorService PREFETCH_EXECUTOR = Executors.newCachedThreadPool(r -> {
+    Thread thread = new Thread(r, "ReadAheadIndexInput-prefetch");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final FileChannel channel;
+  private boolean isClone;
+  private final long off;
+  private final long end;
+
+  // the window currently being consumed, positions are absolute in the channel
+  private ByteBuffer window;
+  private long windowStart;
+  private int windowLength;
+
+  // the window being filled in the background, or the spare one once consumed
+  private ByteBuffer nextWindow;
+  private Future<Integer> pending;
+  private long pendingStart;
+
+  // the position at which the next read would be sequential
+  private long nextSequentialPos = -1;
+
+  public ReadAheadIndexInput(String resourceDesc, FileChannel channel) throws IOException {
+    super(resourceDesc, BUFFER_SIZE);
+    this.channel = channel;
+    this.off = 0L;
+    this.end = channel.size();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      discardPending();
+    } finally {
+      if (!isClone) {
+        channel.close();
+      }
+    }
+  }
+
+  @Override
+  public Object clone() {
+    ReadAheadIndexInput clone = (ReadAheadIndexInput)super.clone();
+    clone.isClone = true;
+    // Windows are per-instance state, the clone starts with none of its own.
+    clone.window = null;
+    clone.nextWindow = null;
+    clone.pending = null;
+    clone.nextSequentialPos = -1;
+    return clone;
+  }
+
+  @Override
+  public long length() {
+    return end - off;
+  }
+
+  @Override
+  protected void readInternal(byte[] bytes, int offset, int len) throws IOException {
+    final ByteBuffer b = ByteBuffer.wrap(bytes, offset, len);
+    long pos = getFilePointer() + off;
+
+    if (pos + b.remaining() > end) {
+      throw new EOFException("read past EOF: " + this);
+    }
+
+    boolean sequential = pos == nextSequentialPos;
+    nextSequentialPos = pos + b.remaining();
+
+    try {
+      while (b.hasRemaining()) {
+        if (window != null && pos >= windowStart && pos < windowStart + windowLength) {
+          int from = (int) (pos - windowStart);
+          int count = Math.min(b.remaining(), windowLength - from);
+          window.limit(from + count);
+          window.position(from);
+          b.put(window);
+          pos += count;
+        } else if (pending != null && pos == pendingStart) {
+          swapWindows();
+        } else if (sequential) {
+          fillWindow(pos);
+        } else {
+          // Random access - read straight through and leave the windows alone.
+          readFully(b, pos);
+          return;
+        }
+      }
+    } catch (IOException ioe) {
+      throw new IOException(ioe.getMessage() + ": " + this, ioe);
+    }
+  }
+
+  @Override
+  protected void seekInternal(long pos) throws IOException {
+    if (pos > length()) {
+      throw new EOFException("read past EOF: pos=" + pos + " vs length=" + length() + ": " + this);
+    }
+  }
+
+  private void swapWindows() throws IOException {
+    long start = pendingStart;
+    int length = awaitPending();
+    ByteBuffer spare = window;
+    window = nextWindow;
+    windowStart = start;
+    windowLength = length;
+    nextWindow = spare;
+    prefetch(windowStart + windowLength);
+  }
+
+  private void fillWindow(long pos) throws IOException {
+    discardPending();
+    int length = (int) Math.min(WINDOW_SIZE, end - pos);
+    if (window == null) {
+      window = ByteBuffer.allocate(windowCapacity());
+    }
+    window.clear();
+    window.limit(length);
+    readFully(window, pos);
+    windowStart = pos;
+    windowLength = length;
+    prefetch(pos + length);
+  }
+
+  private int windowCapacity() {
+    return (int) Math.min(WINDOW_SIZE, length());
+  }
+
+  private void prefetch(long pos) {
+    if (pos >= end) {
+      return;
+    }
+    if (nextWindow == null) {
+      nextWindow = ByteBuffer.allocate(windowCapacity());
+    }
+    final ByteBuffer target = nextWindow;
+    final int length = (int) Math.min(WINDOW_SIZE, end - pos);
+    pendingStart = pos;
+    pending = PREFETCH_EXECUTOR.submit(() -> {
+      target.clear();
+      target.limit(length);
+      readFully(target, pos);
+      return length;
+    });
+  }
+
+  private int awaitPending() throws IOException {
+    if (pending == null) {
+      return 0;
+    }
+    Future<Integer> future = pending;
+    pending = null;
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      throw new ThreadInterruptedException(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  private void discardPending() {
+    if (pending == null) {
+      return;
+    }
+    Future<Integer> future = pending;
+    pending = null;
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      throw new ThreadInterruptedException(e);
+    } catch (ExecutionException e) {
+      // The data is not wanted, if the failure matters then the synchronous read will hit it too.
+    }
+  }
+
+  private void readFully(ByteBuffer b, long pos) throws IOException {
+    while (b.hasRemaining()) {
+      final int i = channel.read(b, pos);
+      if (i < 0) { // be defensive here, even though we checked before hand, something could have changed
+        throw new EOFException("read past EOF: " + this + " pos: " + pos + " end: " + end);
+      }
+      pos += i;
+    }
+  }
+}
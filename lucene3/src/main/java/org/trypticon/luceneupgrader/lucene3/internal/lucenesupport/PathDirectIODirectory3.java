@@ -0,0 +1,364 @@
+package org.trypticon.luceneupgrader.lucene3.internal.lucenesupport;
+
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.store.BufferedIndexInput;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.store.IndexInput;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.store.IndexOutput;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.store.LockFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes outputs (and optionally reads merge inputs) with O_DIRECT so upgrade traffic bypasses the page cache.
+ * If the file system rejects direct I/O, the failing file is retried buffered and direct I/O is not attempted again.
+ */
+public class PathDirectIODirectory3 extends PathNIOFSDirectory3 {
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    // The JDK's O_DIRECT open option, looked up reflectively because it's in a JDK-internal package.
+    private static final OpenOption DIRECT_OPEN_OPTION = getDirectOpenOption();
+
+    private final boolean directReads;
+    private final int blockSize;
+    private volatile boolean directSupported;
+
+    public PathDirectIODirectory3(Path path, LockFactory lockFactory, boolean directReads) throws IOException {
+        super(path, lockFactory);
+        this.directReads = directReads;
+        int size;
+        try {
+            size = Math.toIntExact(Files.getFileStore(getDirectory()).getBlockSize());
+        } catch (UnsupportedOperationException | ArithmeticException e) {
+            size = 0;
+        }
+        this.blockSize = size;
+        this.directSupported = size > 0 && DIRECT_OPEN_OPTION != null;
+    }
+
+    public boolean isDirectSupported() {
+        return directSupported;
+    }
+
+    private static OpenOption getDirectOpenOption() {
+        try {
+            final Class<? extends OpenOption> clazz =
+                    Class.forName("com.sun.nio.file.ExtendedOpenOption").asSubclass(OpenOption.class);
+            for (OpenOption option : clazz.getEnumConstants()) {
+                if (option.toString().equalsIgnoreCase("DIRECT")) {
+                    return option;
+                }
+            }
+            return null;
+        } catch (ClassNotFoundException | ClassCastException e) {
+            return null;
+        }
+    }
+
+    // Lucene 3 has no IOContext to tell merges apart, so every output goes direct.
+    @Override
+    public IndexOutput createOutput(String name) throws IOException {
+        if (!directSupported) {
+            return super.createOutput(name);
+        }
+        ensureOpen();
+        ensureCanWrite(name);
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(getDirectory().resolve(name), StandardOpenOption.READ, StandardOpenOption.WRITE,
+                                       StandardOpenOption.CREATE, DIRECT_OPEN_OPTION);
+        } catch (IOException | UnsupportedOperationException e) {
+            // If buffered I/O works where direct I/O didn't, it's direct I/O which isn't supported.
+            IndexOutput output = super.createOutput(name);
+            directSupported = false;
+            return output;
+        }
+        return new DirectIOIndexOutput(name, channel);
+    }
+
+    @Override
+    public IndexInput openInput(String name, int bufferSize) throws IOException {
+        if (!directReads || bufferSize != BufferedIndexInput.MERGE_BUFFER_SIZE || !directSupported) {
+            return super.openInput(name, bufferSize);
+        }
+        ensureOpen();
+        Path path = getDirectory().resolve(name);
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ, DIRECT_OPEN_OPTION);
+        } catch (IOException | UnsupportedOperationException e) {
+            IndexInput input = super.openInput(name, bufferSize);
+            directSupported = false;
+            return input;
+        }
+        boolean success = false;
+        try {
+            final DirectIOIndexInput indexInput = new DirectIOIndexInput("DirectIOIndexInput(path=\"" + path + "\")", channel, blockSize);
+            success = true;
+            return indexInput;
+        } finally {
+            if (!success) {
+                try {
+                    channel.close();
+                } catch (Throwable t) {
+                    // Suppress so we don't mask original exception
+                }
+            }
+        }
+    }
+
+    private static ByteBuffer allocateAligned(int capacity, int blockSize) {
+        return ByteBuffer.allocateDirect(capacity + blockSize - 1).alignedSlice(blockSize);
+    }
+
+    private static int roundUp(int length, int blockSize) {
+        return (length + blockSize - 1) / blockSize * blockSize;
+    }
+
+    /**
+     * Lucene 3 seeks back to patch headers, so unlike the later versions this can't be a plain stream.
+     * The buffer always covers a block-aligned region of the file; moving outside it writes the region back
+     * (padded to whole blocks) and loads whatever is already on disk for the new region.
+     */
+    final class DirectIOIndexOutput extends IndexOutput {
+        private final String name;
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+
+        private long bufferStart;      // aligned file position of buffer[0]
+        private int bufferPosition;    // position in buffer of the file pointer
+        private int bufferLength;      // end of valid data in buffer
+        private boolean dirty;
+        private long fileLength;       // logical length of what has been written back so far
+        private boolean isOpen = true;
+
+        DirectIOIndexOutput(String name, FileChannel channel) {
+            this.name = name;
+            this.channel = channel;
+            this.buffer = allocateAligned(roundUp(DEFAULT_BUFFER_SIZE, blockSize), blockSize);
+        }
+
+        @Override
+        public void writeByte(byte b) throws IOException {
+            if (bufferPosition == buffer.capacity()) {
+                moveTo(bufferStart + bufferPosition);
+            }
+            fillGap();
+            buffer.put(bufferPosition++, b);
+            bufferLength = Math.max(bufferLength, bufferPosition);
+            dirty = true;
+        }
+
+        @Override
+        public void writeBytes(byte[] b, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (bufferPosition == buffer.capacity()) {
+                    moveTo(bufferStart + bufferPosition);
+                }
+                fillGap();
+                int chunk = Math.min(length, buffer.capacity() - bufferPosition);
+                buffer.position(bufferPosition);
+                buffer.put(b, offset, chunk);
+                bufferPosition += chunk;
+                bufferLength = Math.max(bufferLength, bufferPosition);
+                dirty = true;
+                offset += chunk;
+                length -= chunk;
+            }
+        }
+
+        @Override
+        public long getFilePointer() {
+            return bufferStart + bufferPosition;
+        }
+
+        @Override
+        public void seek(long pos) throws IOException {
+            if (pos >= bufferStart && pos < bufferStart + buffer.capacity()) {
+                bufferPosition = (int) (pos - bufferStart);
+            } else {
+                moveTo(pos);
+            }
+        }
+
+        @Override
+        public long length() {
+            return Math.max(fileLength, bufferStart + bufferLength);
+        }
+
+        @Override
+        public void setLength(long length) throws IOException {
+            long pointer = getFilePointer();
+            writeBack();
+            channel.truncate(length);
+            fileLength = Math.min(fileLength, length);
+            load(bufferStart);
+            bufferPosition = (int) (pointer - bufferStart);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writeBack();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!isOpen) {
+                return;
+            }
+            isOpen = false;
+            try (FileChannel channel = this.channel) {
+                writeBack();
+                channel.truncate(fileLength);
+            }
+            staleFiles.add(name);
+        }
+
+        // Never-written regions read back as zeros, as they would from a sparse file.
+        private void fillGap() {
+            for (int i = bufferLength; i < bufferPosition; i++) {
+                buffer.put(i, (byte) 0);
+            }
+        }
+
+        private void moveTo(long pos) throws IOException {
+            writeBack();
+            long start = pos / blockSize * blockSize;
+            load(start);
+            bufferPosition = (int) (pos - start);
+        }
+
+        private void writeBack() throws IOException {
+            if (!dirty) {
+                return;
+            }
+            // Whatever is in the buffer past the valid data gets written as padding, then truncated off again.
+            int padded = roundUp(bufferLength, blockSize);
+            buffer.limit(padded);
+            buffer.position(0);
+            long pos = bufferStart;
+            while (buffer.hasRemaining()) {
+                pos += channel.write(buffer, pos);
+            }
+            buffer.clear();
+            fileLength = Math.max(fileLength, bufferStart + bufferLength);
+            if (bufferStart + padded > fileLength) {
+                // Keep the on-disk size honest for anyone looking at the file before it's closed.
+                channel.truncate(fileLength);
+            }
+            dirty = false;
+        }
+
+        private void load(long start) throws IOException {
+            bufferStart = start;
+            buffer.clear();
+            int valid = (int) Math.max(0, Math.min(buffer.capacity(), fileLength - start));
+            if (valid > 0) {
+                buffer.limit(roundUp(valid, blockSize));
+                long pos = start;
+                while (buffer.hasRemaining() && pos % blockSize == 0) {
+                    int i = channel.read(buffer, pos);
+                    if (i <= 0) {
+                        break;
+                    }
+                    pos += i;
+                }
+                if (buffer.position() < valid) {
+                    throw new EOFException("read past EOF: " + name + " pos: " + pos + " length: " + fileLength);
+                }
+                buffer.clear();
+            }
+            bufferLength = valid;
+            bufferPosition = 0;
+        }
+    }
+
+    static final class DirectIOIndexInput extends BufferedIndexInput {
+        private final FileChannel channel;
+        private boolean isClone;
+        private final long end;
+
+        private final int blockSize;
+        private ByteBuffer alignedBuffer;
+
+        DirectIOIndexInput(String resourceDesc, FileChannel channel, int blockSize) throws IOException {
+            super(resourceDesc, DEFAULT_BUFFER_SIZE);
+            this.channel = channel;
+            this.end = channel.size();
+            this.blockSize = blockSize;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!isClone) {
+                channel.close();
+            }
+        }
+
+        @Override
+        public Object clone() {
+            DirectIOIndexInput clone = (DirectIOIndexInput) super.clone();
+            clone.isClone = true;
+            clone.alignedBuffer = null;
+            return clone;
+        }
+
+        @Override
+        public long length() {
+            return end;
+        }
+
+        @Override
+        protected void readInternal(byte[] bytes, int offset, int len) throws IOException {
+            final ByteBuffer b = ByteBuffer.wrap(bytes, offset, len);
+            long pos = getFilePointer();
+
+            if (pos + len > end) {
+                throw new EOFException("read past EOF: " + this);
+            }
+
+            if (alignedBuffer == null) {
+                alignedBuffer = allocateAligned(roundUp(getBufferSize(), blockSize) + blockSize, blockSize);
+            }
+
+            try {
+                while (b.hasRemaining()) {
+                    long alignedPos = pos / blockSize * blockSize;
+                    int delta = (int) (pos - alignedPos);
+                    alignedBuffer.clear();
+                    alignedBuffer.limit(Math.min(alignedBuffer.capacity(), roundUp(delta + b.remaining(), blockSize)));
+                    long readPos = alignedPos;
+                    // A short read which leaves us unaligned can only mean we hit the end of the file.
+                    while (alignedBuffer.hasRemaining() && readPos % blockSize == 0) {
+                        int i = channel.read(alignedBuffer, readPos);
+                        if (i <= 0) {
+                            break;
+                        }
+                        readPos += i;
+                    }
+                    int available = alignedBuffer.position() - delta;
+                    if (available <= 0) {
+                        throw new EOFException("read past EOF: " + this + " pos: " + pos + " end: " + end);
+                    }
+                    int count = Math.min(b.remaining(), available);
+                    alignedBuffer.limit(delta + count);
+                    alignedBuffer.position(delta);
+                    b.put(alignedBuffer);
+                    pos += count;
+                }
+            } catch (IOException ioe) {
+                IOException newIOE = new IOException(ioe.getMessage() + ": " + this);
+                newIOE.initCause(ioe);
+                throw newIOE;
+            }
+        }
+
+        @Override
+        protected void seekInternal(long pos) throws IOException {}
+    }
+}
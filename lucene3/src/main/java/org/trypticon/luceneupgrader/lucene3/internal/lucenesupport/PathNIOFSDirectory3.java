@@ -1,8 +1,10 @@
 package org.trypticon.luceneupgrader.lucene3.internal.lucenesupport;
 
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.store.BufferedIndexInput;
 import org.trypticon.luceneupgrader.lucene3.internal.lucene.store.IndexInput;
 import org.trypticon.luceneupgrader.lucene3.internal.lucene.store.LockFactory;
 import org.trypticon.luceneupgrader.lucene3.internal.lucene.store.NIOFSDirectory;
+import org.trypticon.luceneupgrader.lucene3.internal.lucene.store.ReadAheadIndexInput;
 
 import java.io.EOFException;
 import java.io.File;
@@ -10,6 +12,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 public class PathNIOFSDirectory3 extends PathFSDirectory3 {
 
@@ -20,6 +23,10 @@ public class PathNIOFSDirectory3 extends PathFSDirectory3 {
     @Override
     public IndexInput openInput(String name, int bufferSize) throws IOException {
         ensureOpen();
+        if (bufferSize == BufferedIndexInput.MERGE_BUFFER_SIZE) {
+            Path path = getDirectory().resolve(name);
+            return new ReadAheadIndexInput("ReadAheadIndexInput(path=\"" + path + "\")", FileChannel.open(path, StandardOpenOption.READ));
+        }
         return new NIOFSIndexInput(getDirectory().resolve(name), bufferSize, getReadChunkSize());
     }
 
@@ -0,0 +1,11 @@
+description = "Lucene Index Upgrader - Lucene 4 support"
+
+plugins {
+    `luceneupgrader-publishing`
+}
+
+dependencies {
+    api(project(":core"))
+
+    testImplementation("junit:junit:4.13.2")
+}
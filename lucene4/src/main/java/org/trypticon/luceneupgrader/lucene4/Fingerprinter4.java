@@ -0,0 +1,246 @@
+package org.trypticon.luceneupgrader.lucene4;
+
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.AtomicReader;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.BinaryDocValues;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.DirectoryReader;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.DocsAndPositionsEnum;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.DocsEnum;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.FieldInfo;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.FieldInfo.DocValuesType;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.FieldInfo.IndexOptions;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.FieldInfos;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.MultiFields;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.NumericDocValues;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.SortedNumericDocValues;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.SortedSetDocValues;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.StoredFieldVisitor;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.Terms;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.TermsEnum;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.search.DocIdSetIterator;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.util.Bits;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.util.BytesRef;
+import org.trypticon.luceneupgrader.IndexFingerprint;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+
+/**
+ * Computes the fingerprint of an index in Lucene 4 format.
+ */
+final class Fingerprinter4 {
+
+    /**
+     * The field infos of the whole index. Postings are hashed as far as every segment indexes them,
+     * which is as far as a merge of the segments would keep them.
+     */
+    @Nonnull
+    private final FieldInfos mergedFieldInfos;
+
+    @Nonnull
+    private final IndexFingerprint fingerprint = new IndexFingerprint();
+
+    @Nonnull
+    private final IndexFingerprint.Hasher hasher = new IndexFingerprint.Hasher();
+
+    private Fingerprinter4(@Nonnull FieldInfos mergedFieldInfos) {
+        this.mergedFieldInfos = mergedFieldInfos;
+    }
+
+    @Nonnull
+    static IndexFingerprint fingerprint(@Nonnull DirectoryReader reader, int threadCount) throws IOException {
+        FieldInfos mergedFieldInfos = MultiFields.getMergedFieldInfos(reader);
+        return IndexFingerprint.compute(reader.leaves(), threadCount,
+                                        context -> new Fingerprinter4(mergedFieldInfos).fingerprint(context.reader()));
+    }
+
+    @Nonnull
+    private IndexFingerprint fingerprint(@Nonnull AtomicReader reader) throws IOException {
+        Bits liveDocs = reader.getLiveDocs();
+        addTerms(reader, liveDocs);
+        addStoredFields(reader, liveDocs);
+        addDocValues(reader, liveDocs);
+        return fingerprint;
+    }
+
+    private void addTerms(@Nonnull AtomicReader reader, Bits liveDocs) throws IOException {
+        for (FieldInfo fieldInfo : mergedFieldInfos) {
+            Terms terms = fieldInfo.isIndexed() ? reader.terms(fieldInfo.name) : null;
+            if (terms == null) {
+                continue;
+            }
+            IndexOptions indexOptions = fieldInfo.getIndexOptions();
+            boolean hasFreqs = indexOptions.compareTo(IndexOptions.DOCS_AND_FREQS) >= 0;
+            boolean hasPositions = indexOptions.compareTo(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS) >= 0;
+            boolean hasOffsets = indexOptions.compareTo(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS) >= 0;
+
+            IndexFingerprint.Digest digest = fingerprint.digest(IndexFingerprint.Part.TERMS, fieldInfo.name);
+            TermsEnum termsEnum = terms.iterator(null);
+            DocsEnum docs = null;
+            DocsAndPositionsEnum positions = null;
+            BytesRef term;
+            while ((term = termsEnum.next()) != null) {
+                long termHash = hasher.reset().putBytes(term.bytes, term.offset, term.length).hash();
+                if (hasPositions) {
+                    positions = termsEnum.docsAndPositions(liveDocs, positions,
+                                                           DocsAndPositionsEnum.FLAG_OFFSETS | DocsAndPositionsEnum.FLAG_PAYLOADS);
+                    docs = positions;
+                } else {
+                    docs = termsEnum.docs(liveDocs, docs, hasFreqs ? DocsEnum.FLAG_FREQS : DocsEnum.FLAG_NONE);
+                }
+                while (docs.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+                    hasher.reset().putLong(termHash);
+                    if (hasFreqs) {
+                        int freq = docs.freq();
+                        hasher.putInt(freq);
+                        for (int i = 0; hasPositions && i < freq; i++) {
+                            hasher.putInt(positions.nextPosition());
+                            if (hasOffsets) {
+                                hasher.putInt(positions.startOffset()).putInt(positions.endOffset());
+                            }
+                            BytesRef payload = positions.getPayload();
+                            if (payload != null && payload.length > 0) {
+                                hasher.putBytes(payload.bytes, payload.offset, payload.length);
+                            } else {
+                                hasher.putInt(-1);
+                            }
+                        }
+                    }
+                    digest.add(hasher.hash());
+                }
+            }
+        }
+    }
+
+    private void addStoredFields(@Nonnull AtomicReader reader, Bits liveDocs) throws IOException {
+        IndexFingerprint.StoredFieldsDigester digester = new IndexFingerprint.StoredFieldsDigester(fingerprint);
+        StoredFieldsVisitor visitor = new StoredFieldsVisitor(digester);
+        for (int doc = 0; doc < reader.maxDoc(); doc++) {
+            if (liveDocs != null && !liveDocs.get(doc)) {
+                continue;
+            }
+            digester.startDocument();
+            reader.document(doc, visitor);
+            digester.finishDocument();
+        }
+    }
+
+    private void addDocValues(@Nonnull AtomicReader reader, Bits liveDocs) throws IOException {
+        for (FieldInfo fieldInfo : reader.getFieldInfos()) {
+            String field = fieldInfo.name;
+            if (!fieldInfo.hasDocValues()) {
+                continue;
+            }
+            IndexFingerprint.Digest digest = fingerprint.digest(IndexFingerprint.Part.DOC_VALUES, field);
+            Bits docsWithField = reader.getDocsWithField(field);
+            switch (fieldInfo.getDocValuesType()) {
+                case NUMERIC: {
+                    NumericDocValues values = reader.getNumericDocValues(field);
+                    for (int doc = 0; doc < reader.maxDoc(); doc++) {
+                        if (docsWithField.get(doc) && (liveDocs == null || liveDocs.get(doc))) {
+                            digest.add(hasher.reset().putLong(values.get(doc)).hash());
+                        }
+                    }
+                    break;
+                }
+                case BINARY:
+                case SORTED: {
+                    // Sorted values read through the binary API come back as the value for each document's ord.
+                    BinaryDocValues values = fieldInfo.getDocValuesType() == DocValuesType.BINARY
+                        ? reader.getBinaryDocValues(field)
+                        : reader.getSortedDocValues(field);
+                    for (int doc = 0; doc < reader.maxDoc(); doc++) {
+                        if (docsWithField.get(doc) && (liveDocs == null || liveDocs.get(doc))) {
+                            BytesRef value = values.get(doc);
+                            digest.add(hasher.reset().putBytes(value.bytes, value.offset, value.length).hash());
+                        }
+                    }
+                    break;
+                }
+                case SORTED_SET: {
+                    SortedSetDocValues values = reader.getSortedSetDocValues(field);
+                    for (int doc = 0; doc < reader.maxDoc(); doc++) {
+                        if (docsWithField.get(doc) && (liveDocs == null || liveDocs.get(doc))) {
+                            hasher.reset();
+                            values.setDocument(doc);
+                            for (long ord = values.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = values.nextOrd()) {
+                                BytesRef value = values.lookupOrd(ord);
+                                hasher.putBytes(value.bytes, value.offset, value.length);
+                            }
+                            digest.add(hasher.hash());
+                        }
+                    }
+                    break;
+                }
+                case SORTED_NUMERIC: {
+                    SortedNumericDocValues values = reader.getSortedNumericDocValues(field);
+                    for (int doc = 0; doc < reader.maxDoc(); doc++) {
+                        if (docsWithField.get(doc) && (liveDocs == null || liveDocs.get(doc))) {
+                            hasher.reset();
+                            values.setDocument(doc);
+                            for (int i = 0; i < values.count(); i++) {
+                                hasher.putLong(values.valueAt(i));
+                            }
+                            digest.add(hasher.hash());
+                        }
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Passes each stored value of a document to the digester.
+     */
+    private static class StoredFieldsVisitor extends StoredFieldVisitor {
+        @Nonnull
+        private final IndexFingerprint.StoredFieldsDigester digester;
+
+        StoredFieldsVisitor(@Nonnull IndexFingerprint.StoredFieldsDigester digester) {
+            this.digester = digester;
+        }
+
+        @Override
+        public Status needsField(FieldInfo fieldInfo) {
+            return Status.YES;
+        }
+
+        @Override
+        public void binaryField(FieldInfo fieldInfo, byte[] value) {
+            digester.startValue(IndexFingerprint.StoredType.BINARY).putBytes(value, 0, value.length);
+            digester.finishValue(fieldInfo.name);
+        }
+
+        @Override
+        public void stringField(FieldInfo fieldInfo, String value) {
+            digester.startValue(IndexFingerprint.StoredType.STRING).putString(value);
+            digester.finishValue(fieldInfo.name);
+        }
+
+        @Override
+        public void intField(FieldInfo fieldInfo, int value) {
+            digester.startValue(IndexFingerprint.StoredType.INT).putInt(value);
+            digester.finishValue(fieldInfo.name);
+        }
+
+        @Override
+        public void longField(FieldInfo fieldInfo, long value) {
+            digester.startValue(IndexFingerprint.StoredType.LONG).putLong(value);
+            digester.finishValue(fieldInfo.name);
+        }
+
+        @Override
+        public void floatField(FieldInfo fieldInfo, float value) {
+            digester.startValue(IndexFingerprint.StoredType.FLOAT).putInt(Float.floatToIntBits(value));
+            digester.finishValue(fieldInfo.name);
+        }
+
+        @Override
+        public void doubleField(FieldInfo fieldInfo, double value) {
+            digester.startValue(IndexFingerprint.StoredType.DOUBLE).putLong(Double.doubleToLongBits(value));
+            digester.finishValue(fieldInfo.name);
+        }
+    }
+}
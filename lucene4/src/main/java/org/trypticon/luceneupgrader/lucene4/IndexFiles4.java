@@ -0,0 +1,65 @@
+package org.trypticon.luceneupgrader.lucene4;
+
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.store.Directory;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.store.IOContext;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.store.IndexInput;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.store.IndexOutput;
+import org.trypticon.luceneupgrader.IndexFiles;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Reads and writes whole files through a Lucene 4 directory.
+ */
+class IndexFiles4 implements IndexFiles {
+
+    @Nonnull
+    private final Directory directory;
+
+    IndexFiles4(@Nonnull Directory directory) {
+        this.directory = directory;
+    }
+
+    @Nonnull
+    @Override
+    public List<String> listAll() throws IOException {
+        return Arrays.asList(directory.listAll());
+    }
+
+    @Override
+    public long fileLength(@Nonnull String name) throws IOException {
+        return directory.fileLength(name);
+    }
+
+    @Nonnull
+    @Override
+    public byte[] readFile(@Nonnull String name) throws IOException {
+        try (IndexInput input = directory.openInput(name, IOContext.READONCE)) {
+            byte[] content = new byte[Math.toIntExact(input.length())];
+            input.readBytes(content, 0, content.length);
+            return content;
+        }
+    }
+
+    @Override
+    public void writeFile(@Nonnull String name, @Nonnull byte[] content) throws IOException {
+        try (IndexOutput output = directory.createOutput(name, IOContext.DEFAULT)) {
+            output.writeBytes(content, content.length);
+        }
+    }
+
+    @Override
+    public void sync(@Nonnull Collection<String> names) throws IOException {
+        // Lucene 4 has no way to sync the directory listing itself.
+        directory.sync(names);
+    }
+
+    @Override
+    public void close() throws IOException {
+        directory.close();
+    }
+}
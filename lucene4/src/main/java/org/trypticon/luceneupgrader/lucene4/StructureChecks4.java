@@ -0,0 +1,185 @@
+package org.trypticon.luceneupgrader.lucene4;
+
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.codecs.Codec;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.codecs.CodecUtil;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.CorruptIndexException;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.IndexFileNames;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.SegmentCommitInfo;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.store.CompoundFileDirectory;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.store.Directory;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.store.IOContext;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.store.IndexInput;
+import org.trypticon.luceneupgrader.FileVerifier;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Checks the structure of the files of a segment written before Lucene 4.8, for {@link VersionChecker4#verify}.
+ * These files have no checksums, so this catches what reading them through alone wouldn't: files without a
+ * codec header, compound files whose entries don't add up to their length, and files whose length doesn't
+ * match the segment's document count.
+ */
+final class StructureChecks4 {
+
+    /**
+     * The codec of the header of a compound file, which before 4.8 is the only thing in it before the entries.
+     */
+    private static final String COMPOUND_DATA_CODEC = "CompoundFileWriterData";
+
+    /**
+     * The header lengths of the stored fields and term vectors indexes of Lucene 4.0, which hold fixed size
+     * entries for each document after them, and the codecs which still use them.
+     */
+    private static final long STORED_FIELDS_INDEX_HEADER_LENGTH =
+            CodecUtil.headerLength("Lucene40StoredFieldsIndex");
+    private static final long TERM_VECTORS_INDEX_HEADER_LENGTH =
+            CodecUtil.headerLength("Lucene40TermVectorsIndex");
+    private static final Set<String> STORED_FIELDS_INDEX_CODECS = Collections.singleton("Lucene40");
+    private static final Set<String> TERM_VECTORS_INDEX_CODECS = new HashSet<>(Arrays.asList("Lucene40", "Lucene41"));
+
+    private StructureChecks4() {
+    }
+
+    /**
+     * Adds the checks for the files of a segment.
+     *
+     * @param directory the directory of the index.
+     * @param info the segment.
+     * @param checks the checks so far, by file name.
+     * @throws IOException if an error occurs reading the segment metadata.
+     */
+    static void addChecks(@Nonnull Directory directory, @Nonnull SegmentCommitInfo info,
+                          @Nonnull Map<String, FileVerifier.FileCheck> checks) throws IOException {
+        Codec codec = info.info.getCodec();
+        Set<String> liveDocsFiles = new HashSet<>();
+        if (info.hasDeletions()) {
+            // Reading the live docs checks them against the document and deletion counts of the segment.
+            codec.liveDocsFormat().files(info, liveDocsFiles);
+            for (String fileName : liveDocsFiles) {
+                checks.merge(fileName, name -> codec.liveDocsFormat().readLiveDocs(directory, info, IOContext.READONCE),
+                             FileVerifier.FileCheck::andThen);
+            }
+        }
+
+        // Segments from 3.x keep their old files, which have no codec header, and no fixed size indexes to check.
+        boolean lucene3x = "Lucene3x".equals(codec.getName());
+        int docCount = info.info.getDocCount();
+        for (String fileName : info.files()) {
+            if (liveDocsFiles.contains(fileName)) {
+                continue;
+            }
+            FileVerifier.FileCheck check = null;
+            if (!lucene3x) {
+                check = name -> checkCodecHeader(directory, name);
+            }
+            if (fileName.endsWith('.' + IndexFileNames.COMPOUND_FILE_EXTENSION)) {
+                FileVerifier.FileCheck compoundCheck = name -> checkCompoundFile(directory, name, !lucene3x);
+                check = check == null ? compoundCheck : check.andThen(compoundCheck);
+            }
+            if (check != null) {
+                checks.merge(fileName, check, FileVerifier.FileCheck::andThen);
+            }
+        }
+        if (lucene3x) {
+            return;
+        }
+
+        String compoundFileName = info.info.getUseCompoundFile()
+                ? IndexFileNames.segmentFileName(info.info.name, "", IndexFileNames.COMPOUND_FILE_EXTENSION)
+                : null;
+        if (STORED_FIELDS_INDEX_CODECS.contains(codec.getName())) {
+            addIndexLengthCheck(directory, info, compoundFileName, "fdx",
+                                STORED_FIELDS_INDEX_HEADER_LENGTH + 8L * docCount, checks);
+        }
+        if (TERM_VECTORS_INDEX_CODECS.contains(codec.getName())) {
+            addIndexLengthCheck(directory, info, compoundFileName, "tvx",
+                                TERM_VECTORS_INDEX_HEADER_LENGTH + 16L * docCount, checks);
+        }
+    }
+
+    /**
+     * Adds the check of the length of a stored fields or term vectors index, to the index itself or, if it's
+     * in a compound file, to that. Term vectors are left out of segments without any.
+     */
+    private static void addIndexLengthCheck(@Nonnull Directory directory, @Nonnull SegmentCommitInfo info,
+                                            String compoundFileName, @Nonnull String extension,
+                                            long expectedLength,
+                                            @Nonnull Map<String, FileVerifier.FileCheck> checks) throws IOException {
+        String indexFileName = IndexFileNames.segmentFileName(info.info.name, "", extension);
+        if (compoundFileName == null) {
+            if (info.files().contains(indexFileName)) {
+                checks.merge(indexFileName, name -> checkLength(name, directory.fileLength(name), expectedLength),
+                             FileVerifier.FileCheck::andThen);
+            }
+        } else {
+            checks.merge(compoundFileName, name -> {
+                try (Directory compoundDirectory = new CompoundFileDirectory(directory, name,
+                                                                             IOContext.READONCE, false)) {
+                    if (Arrays.asList(compoundDirectory.listAll()).contains(indexFileName)) {
+                        checkLength(name + " entry " + indexFileName, compoundDirectory.fileLength(indexFileName),
+                                    expectedLength);
+                    }
+                }
+            }, FileVerifier.FileCheck::andThen);
+        }
+    }
+
+    private static void checkLength(@Nonnull String description, long length, long expectedLength)
+            throws CorruptIndexException {
+        if (length != expectedLength) {
+            throw new CorruptIndexException(description + " should be " + expectedLength
+                                            + " bytes for the documents in the segment, but is " + length + " bytes");
+        }
+    }
+
+    /**
+     * Checks that a file starts with the codec header every file has from 4.0 on.
+     */
+    private static void checkCodecHeader(@Nonnull Directory directory, @Nonnull String fileName) throws IOException {
+        try (IndexInput input = directory.openInput(fileName, IOContext.READONCE)) {
+            int magic = input.length() < 4 ? 0 : input.readInt();
+            if (magic != CodecUtil.CODEC_MAGIC) {
+                throw new CorruptIndexException("codec header mismatch: actual header=" + magic
+                                                + " vs expected header=" + CodecUtil.CODEC_MAGIC
+                                                + " (resource: " + input + ")");
+            }
+        }
+    }
+
+    /**
+     * Checks that the entries of a compound file fit in it. Opening it reads the entry table. From 4.0 on,
+     * the entries are written one after the other after a header, so they add up to the rest of the file.
+     * Before that, the entry table is at the start of the file, with each entry ending where the next starts.
+     */
+    private static void checkCompoundFile(@Nonnull Directory directory, @Nonnull String fileName,
+                                          boolean hasHeader) throws IOException {
+        long expectedLength = 0;
+        if (hasHeader) {
+            try (IndexInput input = directory.openInput(fileName, IOContext.READONCE)) {
+                CodecUtil.checkHeader(input, COMPOUND_DATA_CODEC, 0, 0);
+                expectedLength = input.getFilePointer();
+            }
+        }
+        try (Directory compoundDirectory = new CompoundFileDirectory(directory, fileName, IOContext.READONCE, false)) {
+            for (String entryName : compoundDirectory.listAll()) {
+                long entryLength = compoundDirectory.fileLength(entryName);
+                if (entryLength < 0) {
+                    throw new CorruptIndexException(fileName + " entry " + entryName + " has a negative length: "
+                                                    + entryLength);
+                }
+                expectedLength += entryLength;
+            }
+        }
+        long length = directory.fileLength(fileName);
+        if (hasHeader ? length != expectedLength : length < expectedLength) {
+            throw new CorruptIndexException(fileName + " should be " + (hasHeader ? "" : "at least ")
+                                            + expectedLength + " bytes for its entries, but is " + length + " bytes");
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package org.trypticon.luceneupgrader.lucene4;
+
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.codecs.CodecUtil;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.codecs.FieldInfosReader;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.CheckIndex;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.DirectoryReader;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.FieldInfos;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.IndexFileNames;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.SegmentCommitInfo;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.SegmentInfos;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.store.CompoundFileDirectory;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.store.Directory;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.store.IOContext;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.store.IndexInput;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.util.Version;
+import org.trypticon.luceneupgrader.FileVerifier;
+import org.trypticon.luceneupgrader.IndexFingerprint;
+import org.trypticon.luceneupgrader.IndexStatistics;
+import org.trypticon.luceneupgrader.IndexStorage;
+import org.trypticon.luceneupgrader.VersionChecker;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Checks an index in Lucene 4 format.
+ */
+public class VersionChecker4 implements VersionChecker {
+
+    @Nonnull
+    private final IndexStorage storage;
+
+    public VersionChecker4(@Nonnull IndexStorage storage) {
+        this.storage = storage;
+    }
+
+    @Override
+    public boolean check(int threadCount, PrintStream output) throws IOException {
+        try (Directory directory = storage.openDirectory(IndexStorage.Area.INDEX, Directory.class)) {
+            CheckIndex checker = new CheckIndex(directory);
+            checker.setThreadCount(threadCount);
+            checker.setInfoStream(output);
+            return checker.checkIndex().clean;
+        }
+    }
+
+    @Override
+    public boolean verify(int threadCount, PrintStream output) throws IOException {
+        try (Directory directory = storage.openDirectory(IndexStorage.Area.INDEX, Directory.class)) {
+            // Reading the segments file checks its checksum.
+            SegmentInfos segmentInfos = new SegmentInfos();
+            segmentInfos.read(directory);
+            Collection<String> fileNames = segmentInfos.files(directory, true);
+
+            // Only segments written by 4.8 onwards have checksum footers. The files of older segments only
+            // get their structure checked and are read through.
+            Set<String> filesWithFooters = new HashSet<>();
+            Map<String, FileVerifier.FileCheck> structureChecks = new HashMap<>();
+            for (SegmentCommitInfo info : segmentInfos) {
+                if (hasFooters(info.info.getVersion())) {
+                    filesWithFooters.addAll(info.files());
+                } else {
+                    StructureChecks4.addChecks(directory, info, structureChecks);
+                }
+            }
+
+            return FileVerifier.verify(fileNames, directory::fileLength, threadCount, output, fileName -> {
+                FileVerifier.FileCheck structureCheck = structureChecks.get(fileName);
+                if (structureCheck != null) {
+                    structureCheck.verify(fileName);
+                }
+                try (IndexInput input = directory.openInput(fileName, IOContext.READONCE)) {
+                    if (filesWithFooters.contains(fileName)) {
+                        CodecUtil.checksumEntireFile(input);
+                    } else {
+                        FileVerifier.readFully(input.length(), input::readBytes);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Tells whether a segment was written by 4.8 or later, which added checksum footers to every file.
+     */
+    private static boolean hasFooters(Version version) {
+        return version != null && (version.major > 4 || version.major == 4 && version.minor >= 8);
+    }
+
+    @Override
+    public IndexFingerprint fingerprint(int threadCount) throws IOException {
+        try (Directory directory = storage.openDirectory(IndexStorage.Area.INDEX, Directory.class);
+             DirectoryReader reader = DirectoryReader.open(directory)) {
+            return Fingerprinter4.fingerprint(reader, threadCount);
+        }
+    }
+
+    @Override
+    public IndexStatistics statistics(int threadCount) throws IOException {
+        try (Directory directory = storage.openDirectory(IndexStorage.Area.INDEX, Directory.class)) {
+            SegmentInfos segmentInfos = new SegmentInfos();
+            segmentInfos.read(directory);
+            return IndexStatistics.compute(segmentInfos.getGeneration(), segmentInfos.asList(), threadCount,
+                                           info -> describe(directory, info));
+        }
+    }
+
+    /**
+     * Gathers the statistics of a segment from its metadata and field infos.
+     */
+    @Nonnull
+    private static IndexStatistics.Segment describe(@Nonnull Directory directory, @Nonnull SegmentCommitInfo info)
+            throws IOException {
+        FieldInfos fieldInfos = readFieldInfos(directory, info);
+        Version version = info.info.getVersion();
+        IndexStatistics.Segment segment = new IndexStatistics.Segment(info.info.name)
+                .setCodec(info.info.getCodec().getName())
+                .setLuceneVersion(version == null ? null : version.toString())
+                .setMaxDoc(info.info.getDocCount())
+                .setDeletedDocCount(info.getDelCount())
+                .setCompoundFile(info.info.getUseCompoundFile())
+                .setHasDocValues(fieldInfos.hasDocValues())
+                .setHasTermVectors(fieldInfos.hasVectors());
+        for (String fileName : info.files()) {
+            segment.addFile(fileName, directory.fileLength(fileName));
+        }
+        return segment;
+    }
+
+    /**
+     * Reads the field infos of a segment the way a segment reader would, taking updates into account.
+     */
+    @Nonnull
+    private static FieldInfos readFieldInfos(@Nonnull Directory directory, @Nonnull SegmentCommitInfo info)
+            throws IOException {
+        FieldInfosReader reader = info.info.getCodec().fieldInfosFormat().getFieldInfosReader();
+        if (info.hasFieldUpdates()) {
+            // Updated field infos are always written outside the compound file.
+            String segmentSuffix = Long.toString(info.getFieldInfosGen(), Character.MAX_RADIX);
+            return reader.read(directory, info.info.name, segmentSuffix, IOContext.READONCE);
+        } else if (info.info.getUseCompoundFile()) {
+            String fileName = IndexFileNames.segmentFileName(info.info.name, "",
+                                                             IndexFileNames.COMPOUND_FILE_EXTENSION);
+            try (Directory compoundDirectory = new CompoundFileDirectory(directory, fileName,
+                                                                         IOContext.READONCE, false)) {
+                return reader.read(compoundDirectory, info.info.name, "", IOContext.READONCE);
+            }
+        } else {
+            return reader.read(directory, info.info.name, "", IOContext.READONCE);
+        }
+    }
+}
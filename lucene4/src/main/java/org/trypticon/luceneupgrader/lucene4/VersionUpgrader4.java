@@ -0,0 +1,197 @@
+package org.trypticon.luceneupgrader.lucene4;
+
+import org.trypticon.luceneupgrader.FileSystemIndexStorage;
+import org.trypticon.luceneupgrader.IOAccounting;
+import org.trypticon.luceneupgrader.InMemoryIndex;
+import org.trypticon.luceneupgrader.IndexStorage;
+import org.trypticon.luceneupgrader.IndexUpgraderConfig;
+import org.trypticon.luceneupgrader.InfoStream;
+import org.trypticon.luceneupgrader.LuceneVersion;
+import org.trypticon.luceneupgrader.UpgradeMonitor;
+import org.trypticon.luceneupgrader.VersionUpgrader;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.IndexFileNames;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.IndexUpgrader;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.IndexWriterConfig;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.LogByteSizeMergePolicy;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.SegmentInfos;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.SerialMergeScheduler;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.store.AccountingDirectory;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.store.Directory;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.store.IOContext;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.store.IndexInput;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.store.IndexOutput;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.store.MonitoredDirectory;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.store.RAMDirectory;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.util.Version;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Upgrades an index to Lucene 4 format.
+ */
+public class VersionUpgrader4 implements VersionUpgrader {
+
+    @Nonnull
+    private final IndexStorage storage;
+
+    @Nonnull
+    private final InfoStream infoStream;
+
+    @Nonnull
+    private final IndexUpgraderConfig config;
+
+    @Nullable
+    private UpgradeMonitor monitor;
+
+    private boolean compoundFiles = true;
+
+    public VersionUpgrader4(@Nonnull Path path, @Nonnull InfoStream infoStream) {
+        this(new FileSystemIndexStorage(path), infoStream);
+    }
+
+    public VersionUpgrader4(@Nonnull IndexStorage storage, @Nonnull InfoStream infoStream) {
+        this(storage, infoStream, new IndexUpgraderConfig());
+    }
+
+    public VersionUpgrader4(@Nonnull IndexStorage storage, @Nonnull InfoStream infoStream,
+                            @Nonnull IndexUpgraderConfig config) {
+        this.storage = storage;
+        this.infoStream = infoStream;
+        this.config = config;
+    }
+
+    @Override
+    public void setMonitor(@Nonnull UpgradeMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    @Override
+    public void setCompoundFiles(boolean compoundFiles) {
+        this.compoundFiles = compoundFiles;
+    }
+
+    @Override
+    public void upgrade() throws IOException {
+        try (Directory directory = storage.openDirectory(IndexStorage.Area.INDEX, Directory.class)) {
+            upgrade(directory);
+        }
+    }
+
+    @Override
+    public void upgrade(@Nonnull InMemoryIndex index) throws IOException {
+        try (Directory directory = new RAMDirectory()) {
+            copyIn(index, directory);
+            upgrade(directory);
+            copyOut(directory, index);
+        }
+    }
+
+    @Nonnull
+    @Override
+    public Collection<String> listCommitFiles() throws IOException {
+        try (Directory directory = storage.openDirectory(IndexStorage.Area.INDEX, Directory.class)) {
+            SegmentInfos segmentInfos = new SegmentInfos();
+            segmentInfos.read(directory);
+            Set<String> files = new HashSet<>(segmentInfos.files(directory, true));
+            if (Arrays.asList(directory.listAll()).contains(IndexFileNames.SEGMENTS_GEN)) {
+                files.add(IndexFileNames.SEGMENTS_GEN);
+            }
+            return files;
+        }
+    }
+
+    private void upgrade(Directory directory) throws IOException {
+        Consumer<IOAccounting> accountingListener = config.getIOAccountingListener();
+        IOAccounting accounting = new IOAccounting(LuceneVersion.VERSION_4);
+        AccountingDirectory accountingDirectory = null;
+        if (accountingListener != null) {
+            accountingDirectory = new AccountingDirectory(directory, accounting);
+            accounting.setSizeBefore(accountingDirectory.sizeInBytes());
+            // Lucene's own upgrader opens, merges and commits in one go.
+            accounting.setPhase(IOAccounting.Phase.MERGE);
+            directory = accountingDirectory;
+        }
+        if (monitor != null) {
+            directory = new MonitoredDirectory(directory, monitor);
+        }
+
+        org.trypticon.luceneupgrader.lucene4.internal.lucene.util.InfoStream adaptedInfoStream =
+                new AdaptedInfoStream(infoStream);
+        IndexWriterConfig indexWriterConfig = new IndexWriterConfig(Version.LUCENE_4_10_4, null);
+        LogByteSizeMergePolicy mergePolicy = new LogByteSizeMergePolicy();
+        if (!compoundFiles) {
+            mergePolicy.setNoCFSRatio(0.0);
+        }
+        indexWriterConfig.setMergePolicy(mergePolicy);
+        indexWriterConfig.setMergeScheduler(new SerialMergeScheduler());
+        indexWriterConfig.setInfoStream(adaptedInfoStream);
+        IndexUpgrader upgrader = new IndexUpgrader(directory, indexWriterConfig, true);
+        upgrader.upgrade();
+
+        if (accountingDirectory != null) {
+            accounting.setSizeAfter(accountingDirectory.sizeInBytes());
+            accountingListener.accept(accounting);
+        }
+    }
+
+    /**
+     * Moves the files of the in-memory index into the directory.
+     */
+    private static void copyIn(InMemoryIndex index, Directory directory) throws IOException {
+        for (String name : new ArrayList<>(index.getFileNames())) {
+            byte[] content = index.removeFile(name);
+            try (IndexOutput output = directory.createOutput(name, IOContext.DEFAULT)) {
+                output.writeBytes(content, content.length);
+            }
+        }
+    }
+
+    /**
+     * Replaces the files of the in-memory index with those in the directory.
+     */
+    private static void copyOut(Directory directory, InMemoryIndex index) throws IOException {
+        index.clear();
+        for (String name : directory.listAll()) {
+            try (IndexInput input = directory.openInput(name, IOContext.READONCE)) {
+                byte[] content = new byte[Math.toIntExact(input.length())];
+                input.readBytes(content, 0, content.length);
+                index.putFile(name, content);
+            }
+        }
+    }
+
+    /**
+     * Adapts Lucene's info stream to pass messages to ours.
+     */
+    private static class AdaptedInfoStream extends org.trypticon.luceneupgrader.lucene4.internal.lucene.util.InfoStream {
+        private final InfoStream infoStream;
+
+        private AdaptedInfoStream(InfoStream infoStream) {
+            this.infoStream = infoStream;
+        }
+
+        @Override
+        public void message(String component, String message) {
+            infoStream.message(component, message);
+        }
+
+        @Override
+        public boolean isEnabled(String component) {
+            return infoStream.isEnabled(component);
+        }
+
+        @Override
+        public void close() throws IOException {
+            //
+        }
+    }
+}
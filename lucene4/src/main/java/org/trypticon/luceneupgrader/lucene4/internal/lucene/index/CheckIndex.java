@@ -29,12 +29,21 @@ import org.trypticon.luceneupgrader.lucene4.internal.lucene.store.FSDirectory;
 import org.trypticon.luceneupgrader.lucene4.internal.lucene.store.IOContext;
 import org.trypticon.luceneupgrader.lucene4.internal.lucene.store.IndexInput;
 import org.trypticon.luceneupgrader.lucene4.internal.lucene.util.*;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.util.NamedThreadFactory;
+import org.trypticon.luceneupgrader.lucene4.internal.lucene.util.ThreadInterruptedException;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.text.NumberFormat;
 import java.util.*;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 
 
 public class CheckIndex {
@@ -116,6 +125,10 @@ public class CheckIndex {
 
       public boolean openReaderPassed;
 
+      public int toLoseDocCount;
+
+      public Throwable error;
+
       int numFields;
 
 
@@ -235,6 +248,15 @@ public class CheckIndex {
   private boolean verbose;
 
 
+  public void setThreadCount(int tc) {
+    if (tc <= 0) {
+      throw new IllegalArgumentException("setThreadCount requires a number larger than 0, but got: " + tc);
+    }
+    threadCount = tc;
+  }
+
+  private int threadCount = Runtime.getRuntime().availableProcessors();
+
   public void setInfoStream(PrintStream out, boolean verbose) {
     infoStream = out;
     this.verbose = verbose;
@@ -256,7 +278,33 @@ public class CheckIndex {
   
 
   public Status checkIndex(List<String> onlySegments) throws IOException {
-    NumberFormat nf = NumberFormat.getInstance(Locale.ROOT);
+    ExecutorService executorService = null;
+
+    // if threadCount == 1, then no executor is created and use the main thread to do index checking sequentially
+    if (threadCount > 1) {
+      executorService = Executors.newFixedThreadPool(threadCount, new NamedThreadFactory("async-check-index"));
+    }
+
+    msg(infoStream, "Checking index with threadCount: " + threadCount);
+    try {
+      return checkIndex(onlySegments, executorService);
+    } finally {
+      if (executorService != null) {
+        executorService.shutdown();
+        try {
+          executorService.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          msg(infoStream, "ERROR: Interrupted exception occurred when shutting down executor service");
+          if (infoStream != null)
+            e.printStackTrace(infoStream);
+        } finally {
+          executorService.shutdownNow();
+        }
+      }
+    }
+  }
+
+  public Status checkIndex(List<String> onlySegments, ExecutorService executorService) throws IOException {
     SegmentInfos sis = new SegmentInfos();
     Status result = new Status();
     result.dir = dir;
@@ -375,129 +423,292 @@ public class CheckIndex {
     result.newSegments.clear();
     result.maxSegmentName = -1;
 
-    for(int i=0;i<numSegments;i++) {
-      final SegmentCommitInfo info = sis.info(i);
-      int segmentName = Integer.parseInt(info.info.name.substring(1), Character.MAX_RADIX);
-      if (segmentName > result.maxSegmentName) {
-        result.maxSegmentName = segmentName;
+    // checks segments sequentially
+    if (executorService == null) {
+      for(int i=0;i<numSegments;i++) {
+        final SegmentCommitInfo info = sis.info(i);
+        updateMaxSegmentName(result, info);
+        if (onlySegments != null && !onlySegments.contains(info.info.name)) {
+          continue;
+        }
+        msg(infoStream, "  " + (1+i) + " of " + numSegments + ": name=" + info.info.name + " docCount=" + info.info.getDocCount());
+        Status.SegmentInfoStatus segInfoStat = testSegment(sis, info, infoStream, null);
+        processSegmentInfoStatusResult(result, info, segInfoStat);
       }
-      if (onlySegments != null && !onlySegments.contains(info.info.name)) {
-        continue;
+    } else {
+      // checks segments concurrently, each writing to its own output which is printed in segment order
+      ByteArrayOutputStream[] outputs = new ByteArrayOutputStream[numSegments];
+      @SuppressWarnings({"unchecked", "rawtypes"})
+      FutureTask<Status.SegmentInfoStatus>[] futures = new FutureTask[numSegments];
+
+      List<SegmentCommitInfo> segmentCommitInfos = new ArrayList<>();
+      for (SegmentCommitInfo sci : sis) {
+        segmentCommitInfos.add(sci);
       }
-      Status.SegmentInfoStatus segInfoStat = new Status.SegmentInfoStatus();
-      result.segmentInfos.add(segInfoStat);
-      msg(infoStream, "  " + (1+i) + " of " + numSegments + ": name=" + info.info.name + " docCount=" + info.info.getDocCount());
-      segInfoStat.name = info.info.name;
-      segInfoStat.docCount = info.info.getDocCount();
-      
-      final Version version = info.info.getVersion();
-      if (info.info.getDocCount() <= 0 && version != null && version.onOrAfter(Version.LUCENE_4_5_0)) {
-        throw new RuntimeException("illegal number of documents: maxDoc=" + info.info.getDocCount());
+
+      // sort by segment size, as smaller segments tend to finish faster and hence their output can be printed sooner
+      Collections.sort(segmentCommitInfos, (info1, info2) -> {
+        try {
+          return Long.compare(info1.sizeInBytes(), info2.sizeInBytes());
+        } catch (IOException e) {
+          msg(infoStream, "ERROR: IOException occurred when comparing SegmentCommitInfo file sizes");
+          if (infoStream != null)
+            e.printStackTrace(infoStream);
+          return 0;
+        }
+      });
+
+      // start larger segments earlier
+      for (int i = numSegments - 1; i >= 0; i--) {
+        final SegmentCommitInfo info = segmentCommitInfos.get(i);
+        updateMaxSegmentName(result, info);
+        if (onlySegments != null && !onlySegments.contains(info.info.name)) {
+          continue;
+        }
+
+        final SegmentInfos finalSis = sis;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream stream = infoStream == null ? null : new PrintStream(output, true, IOUtils.UTF_8);
+        msg(stream, "  " + (1+i) + " of " + numSegments + ": name=" + info.info.name + " docCount=" + info.info.getDocCount());
+
+        outputs[i] = output;
+        futures[i] = new FutureTask<>(() -> testSegment(finalSis, info, stream, executorService));
+        executorService.execute(futures[i]);
+      }
+
+      for (int i = 0; i < numSegments; i++) {
+        SegmentCommitInfo info = segmentCommitInfos.get(i);
+        if (onlySegments != null && !onlySegments.contains(info.info.name)) {
+          continue;
+        }
+
+        // print segment results in order
+        Status.SegmentInfoStatus segInfoStat = awaitCheck(futures[i], outputs[i]);
+        processSegmentInfoStatusResult(result, info, segInfoStat);
       }
+    }
+
+    if (0 == result.numBadSegments) {
+      result.clean = true;
+    } else
+      msg(infoStream, "WARNING: " + result.numBadSegments + " broken segments (containing " + result.totLoseDocCount + " documents) detected");
+
+    if ( ! (result.validCounter = (result.maxSegmentName < sis.counter))) {
+      result.clean = false;
+      result.newSegments.counter = result.maxSegmentName + 1; 
+      msg(infoStream, "ERROR: Next segment name counter " + sis.counter + " is not greater than max segment name " + result.maxSegmentName);
+    }
+    
+    if (result.clean) {
+      msg(infoStream, "No problems were detected with this index.\n");
+    }
+
+    return result;
+  }
+
+  private void updateMaxSegmentName(Status result, SegmentCommitInfo info) {
+    int segmentName = Integer.parseInt(info.info.name.substring(1), Character.MAX_RADIX);
+    if (segmentName > result.maxSegmentName) {
+      result.maxSegmentName = segmentName;
+    }
+  }
+
+  private void processSegmentInfoStatusResult(Status result, SegmentCommitInfo info, Status.SegmentInfoStatus segInfoStat) {
+    result.segmentInfos.add(segInfoStat);
+    if (segInfoStat.error != null) {
+      result.totLoseDocCount += segInfoStat.toLoseDocCount;
+      result.numBadSegments++;
+    } else {
+      // Keeper
+      result.newSegments.add(info.clone());
+    }
+  }
 
-      int toLoseDocCount = info.info.getDocCount();
+  // Waits for a check started on the executor, then prints its output.
+  private <T> T awaitCheck(FutureTask<T> future, ByteArrayOutputStream output) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      throw new ThreadInterruptedException(e);
+    } catch (ExecutionException e) {
+        IOUtils.reThrow(e.getCause());
+        throw new AssertionError(e);
+    } finally {
+      if (infoStream != null)
+        infoStream.print(output.toString(IOUtils.UTF_8));
+    }
+  }
 
-      AtomicReader reader = null;
+  private interface PartTest<T> {
+    T test(PrintStream infoStream) throws IOException;
+  }
 
+  // One part of a segment check, run on the executor with its own output.
+  private static final class PartCheck<T> {
+    private final FutureTask<T> task;
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private volatile boolean abandoned;
+
+    private PartCheck(PartTest<T> test, PrintStream infoStream) throws IOException {
+      PrintStream stream = infoStream == null ? null : new PrintStream(output, true, IOUtils.UTF_8);
+      task = new FutureTask<>(() -> abandoned ? null : test.test(stream));
+    }
+
+    // Runs the part on this thread if no pool thread has started it yet, so that a segment check never waits on a
+    // part queued behind other segment checks, then prints its output.
+    private T finish(PrintStream infoStream) throws IOException {
+      task.run();
       try {
-        msg(infoStream, "    version=" + (version == null ? "3.0" : version));
-        final Codec codec = info.info.getCodec();
-        msg(infoStream, "    codec=" + codec);
-        segInfoStat.codec = codec;
-        msg(infoStream, "    compound=" + info.info.getUseCompoundFile());
-        segInfoStat.compound = info.info.getUseCompoundFile();
-        msg(infoStream, "    numFiles=" + info.files().size());
-        segInfoStat.numFiles = info.files().size();
-        segInfoStat.sizeMB = info.sizeInBytes()/(1024.*1024.);
-        if (info.info.getAttribute(Lucene3xSegmentInfoFormat.DS_OFFSET_KEY) == null) {
-          // don't print size in bytes if its a 3.0 segment with shared docstores
-          msg(infoStream, "    size (MB)=" + nf.format(segInfoStat.sizeMB));
-        }
-        Map<String,String> diagnostics = info.info.getDiagnostics();
-        segInfoStat.diagnostics = diagnostics;
-        if (diagnostics.size() > 0) {
-          msg(infoStream, "    diagnostics = " + diagnostics);
-        }
-
-        if (!info.hasDeletions()) {
-          msg(infoStream, "    no deletions");
-          segInfoStat.hasDeletions = false;
-        }
-        else{
-          msg(infoStream, "    has deletions [delGen=" + info.getDelGen() + "]");
-          segInfoStat.hasDeletions = true;
-          segInfoStat.deletionsGen = info.getDelGen();
-        }
+        return task.get();
+      } catch (InterruptedException e) {
+        throw new ThreadInterruptedException(e);
+      } catch (ExecutionException e) {
+          IOUtils.reThrow(e.getCause());
+          throw new AssertionError(e);
+      } finally {
         if (infoStream != null)
-          infoStream.print("    test: open reader.........");
-        reader = new SegmentReader(info, DirectoryReader.DEFAULT_TERMS_INDEX_DIVISOR, IOContext.DEFAULT);
-        msg(infoStream, "OK");
+          infoStream.print(output.toString(IOUtils.UTF_8));
+      }
+    }
 
-        segInfoStat.openReaderPassed = true;
-        
-        if (infoStream != null)
-          infoStream.print("    test: check integrity.....");
-        reader.checkIntegrity();
-        msg(infoStream, "OK");
+    // Skips the part if it hasn't started yet, otherwise waits for it to finish.
+    private void abandon() {
+      abandoned = true;
+      task.run();
+      try {
+        task.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+        // the segment has already failed, this is at most a consequence of that
+      }
+    }
+  }
 
-        if (infoStream != null)
-          infoStream.print("    test: check live docs.....");
-        final int numDocs = reader.numDocs();
-        toLoseDocCount = numDocs;
-        if (reader.hasDeletions()) {
-          if (reader.numDocs() != info.info.getDocCount() - info.getDelCount()) {
-            throw new RuntimeException("delete count mismatch: info=" + (info.info.getDocCount() - info.getDelCount()) + " vs reader=" + reader.numDocs());
-          }
-          if ((info.info.getDocCount()-reader.numDocs()) > reader.maxDoc()) {
-            throw new RuntimeException("too many deleted docs: maxDoc()=" + reader.maxDoc() + " vs del count=" + (info.info.getDocCount()-reader.numDocs()));
-          }
-          if (info.info.getDocCount() - numDocs != info.getDelCount()) {
-            throw new RuntimeException("delete count mismatch: info=" + info.getDelCount() + " vs reader=" + (info.info.getDocCount() - numDocs));
-          }
-          Bits liveDocs = reader.getLiveDocs();
-          if (liveDocs == null) {
-            throw new RuntimeException("segment should have deletions, but liveDocs is null");
-          } else {
-            int numLive = 0;
-            for (int j = 0; j < liveDocs.length(); j++) {
-              if (liveDocs.get(j)) {
-                numLive++;
-              }
-            }
-            if (numLive != numDocs) {
-              throw new RuntimeException("liveDocs count mismatch: info=" + numDocs + ", vs bits=" + numLive);
+  private static <T> PartCheck<T> startPart(ExecutorService executorService, PrintStream infoStream,
+                                            List<PartCheck<?>> parts, PartTest<T> test) throws IOException {
+    PartCheck<T> part = new PartCheck<>(test, infoStream);
+    parts.add(part);
+    executorService.execute(part.task);
+    return part;
+  }
+
+  private Status.SegmentInfoStatus testSegment(SegmentInfos sis, SegmentCommitInfo info, PrintStream infoStream,
+                                               ExecutorService executorService) throws IOException {
+    NumberFormat nf = NumberFormat.getInstance(Locale.ROOT);
+    Status.SegmentInfoStatus segInfoStat = new Status.SegmentInfoStatus();
+    segInfoStat.name = info.info.name;
+    segInfoStat.docCount = info.info.getDocCount();
+    
+    final Version version = info.info.getVersion();
+    if (info.info.getDocCount() <= 0 && version != null && version.onOrAfter(Version.LUCENE_4_5_0)) {
+      throw new RuntimeException("illegal number of documents: maxDoc=" + info.info.getDocCount());
+    }
+
+    int toLoseDocCount = info.info.getDocCount();
+
+    AtomicReader reader = null;
+
+    try {
+      msg(infoStream, "    version=" + (version == null ? "3.0" : version));
+      final Codec codec = info.info.getCodec();
+      msg(infoStream, "    codec=" + codec);
+      segInfoStat.codec = codec;
+      msg(infoStream, "    compound=" + info.info.getUseCompoundFile());
+      segInfoStat.compound = info.info.getUseCompoundFile();
+      msg(infoStream, "    numFiles=" + info.files().size());
+      segInfoStat.numFiles = info.files().size();
+      segInfoStat.sizeMB = info.sizeInBytes()/(1024.*1024.);
+      if (info.info.getAttribute(Lucene3xSegmentInfoFormat.DS_OFFSET_KEY) == null) {
+        // don't print size in bytes if its a 3.0 segment with shared docstores
+        msg(infoStream, "    size (MB)=" + nf.format(segInfoStat.sizeMB));
+      }
+      Map<String,String> diagnostics = info.info.getDiagnostics();
+      segInfoStat.diagnostics = diagnostics;
+      if (diagnostics.size() > 0) {
+        msg(infoStream, "    diagnostics = " + diagnostics);
+      }
+
+      if (!info.hasDeletions()) {
+        msg(infoStream, "    no deletions");
+        segInfoStat.hasDeletions = false;
+      }
+      else{
+        msg(infoStream, "    has deletions [delGen=" + info.getDelGen() + "]");
+        segInfoStat.hasDeletions = true;
+        segInfoStat.deletionsGen = info.getDelGen();
+      }
+      if (infoStream != null)
+        infoStream.print("    test: open reader.........");
+      reader = new SegmentReader(info, DirectoryReader.DEFAULT_TERMS_INDEX_DIVISOR, IOContext.DEFAULT);
+      msg(infoStream, "OK");
+
+      segInfoStat.openReaderPassed = true;
+      
+      if (infoStream != null)
+        infoStream.print("    test: check integrity.....");
+      reader.checkIntegrity();
+      msg(infoStream, "OK");
+
+      if (infoStream != null)
+        infoStream.print("    test: check live docs.....");
+      final int numDocs = reader.numDocs();
+      toLoseDocCount = numDocs;
+      if (reader.hasDeletions()) {
+        if (reader.numDocs() != info.info.getDocCount() - info.getDelCount()) {
+          throw new RuntimeException("delete count mismatch: info=" + (info.info.getDocCount() - info.getDelCount()) + " vs reader=" + reader.numDocs());
+        }
+        if ((info.info.getDocCount()-reader.numDocs()) > reader.maxDoc()) {
+          throw new RuntimeException("too many deleted docs: maxDoc()=" + reader.maxDoc() + " vs del count=" + (info.info.getDocCount()-reader.numDocs()));
+        }
+        if (info.info.getDocCount() - numDocs != info.getDelCount()) {
+          throw new RuntimeException("delete count mismatch: info=" + info.getDelCount() + " vs reader=" + (info.info.getDocCount() - numDocs));
+        }
+        Bits liveDocs = reader.getLiveDocs();
+        if (liveDocs == null) {
+          throw new RuntimeException("segment should have deletions, but liveDocs is null");
+        } else {
+          int numLive = 0;
+          for (int j = 0; j < liveDocs.length(); j++) {
+            if (liveDocs.get(j)) {
+              numLive++;
             }
           }
-          
-          segInfoStat.numDeleted = info.info.getDocCount() - numDocs;
-          msg(infoStream, "OK [" + (segInfoStat.numDeleted) + " deleted docs]");
-        } else {
-          if (info.getDelCount() != 0) {
-            throw new RuntimeException("delete count mismatch: info=" + info.getDelCount() + " vs reader=" + (info.info.getDocCount() - numDocs));
+          if (numLive != numDocs) {
+            throw new RuntimeException("liveDocs count mismatch: info=" + numDocs + ", vs bits=" + numLive);
           }
-          Bits liveDocs = reader.getLiveDocs();
-          if (liveDocs != null) {
-            // its ok for it to be non-null here, as long as none are set right?
-            for (int j = 0; j < liveDocs.length(); j++) {
-              if (!liveDocs.get(j)) {
-                throw new RuntimeException("liveDocs mismatch: info says no deletions but doc " + j + " is deleted.");
-              }
+        }
+        
+        segInfoStat.numDeleted = info.info.getDocCount() - numDocs;
+        msg(infoStream, "OK [" + (segInfoStat.numDeleted) + " deleted docs]");
+      } else {
+        if (info.getDelCount() != 0) {
+          throw new RuntimeException("delete count mismatch: info=" + info.getDelCount() + " vs reader=" + (info.info.getDocCount() - numDocs));
+        }
+        Bits liveDocs = reader.getLiveDocs();
+        if (liveDocs != null) {
+          // its ok for it to be non-null here, as long as none are set right?
+          for (int j = 0; j < liveDocs.length(); j++) {
+            if (!liveDocs.get(j)) {
+              throw new RuntimeException("liveDocs mismatch: info says no deletions but doc " + j + " is deleted.");
             }
           }
-          msg(infoStream, "OK");
-        }
-        if (reader.maxDoc() != info.info.getDocCount()) {
-          throw new RuntimeException("SegmentReader.maxDoc() " + reader.maxDoc() + " != SegmentInfos.docCount " + info.info.getDocCount());
         }
+        msg(infoStream, "OK");
+      }
+      if (reader.maxDoc() != info.info.getDocCount()) {
+        throw new RuntimeException("SegmentReader.maxDoc() " + reader.maxDoc() + " != SegmentInfos.docCount " + info.info.getDocCount());
+      }
 
-        // Test getFieldInfos()
-        if (infoStream != null) {
-          infoStream.print("    test: fields..............");
-        }         
-        FieldInfos fieldInfos = reader.getFieldInfos();
-        msg(infoStream, "OK [" + fieldInfos.size() + " fields]");
-        segInfoStat.numFields = fieldInfos.size();
-        
+      // Test getFieldInfos()
+      if (infoStream != null) {
+        infoStream.print("    test: fields..............");
+      }         
+      FieldInfos fieldInfos = reader.getFieldInfos();
+      msg(infoStream, "OK [" + fieldInfos.size() + " fields]");
+      segInfoStat.numFields = fieldInfos.size();
+      
+      if (executorService == null) {
         // Test Field Norms
         segInfoStat.fieldNormStatus = testFieldNorms(reader, infoStream, failFast);
 
@@ -511,62 +722,70 @@ public class CheckIndex {
         segInfoStat.termVectorStatus = testTermVectors(reader, infoStream, verbose, crossCheckTermVectors, failFast);
 
         segInfoStat.docValuesStatus = testDocValues(reader, infoStream, failFast);
-
-        // Rethrow the first exception we encountered
-        //  This will cause stats for failed segments to be incremented properly
-        if (segInfoStat.fieldNormStatus.error != null) {
-          throw new RuntimeException("Field Norm test failed");
-        } else if (segInfoStat.termIndexStatus.error != null) {
-          throw new RuntimeException("Term Index test failed");
-        } else if (segInfoStat.storedFieldStatus.error != null) {
-          throw new RuntimeException("Stored Field test failed");
-        } else if (segInfoStat.termVectorStatus.error != null) {
-          throw new RuntimeException("Term Vector test failed");
-        }  else if (segInfoStat.docValuesStatus.error != null) {
-          throw new RuntimeException("DocValues test failed");
-        }
-
-        msg(infoStream, "");
-
-      } catch (Throwable t) {
-        if (failFast) {
-          IOUtils.reThrow(t);
-        }
-        msg(infoStream, "FAILED");
-        String comment;
-        comment = "fixIndex() would remove reference to this segment";
-        msg(infoStream, "    WARNING: " + comment + "; full exception:");
-        if (infoStream != null)
-          t.printStackTrace(infoStream);
-        msg(infoStream, "");
-        result.totLoseDocCount += toLoseDocCount;
-        result.numBadSegments++;
-        continue;
-      } finally {
-        if (reader != null)
-          reader.close();
+      } else {
+        // Check the parts concurrently, printing their output in the same order as above
+        final AtomicReader segmentReader = reader;
+        List<PartCheck<?>> parts = new ArrayList<>();
+        PartCheck<Status.FieldNormStatus> fieldNorms = startPart(executorService, infoStream, parts,
+            stream -> testFieldNorms(segmentReader, stream, failFast));
+        PartCheck<Status.TermIndexStatus> postings = startPart(executorService, infoStream, parts,
+            stream -> testPostings(segmentReader, stream, verbose, failFast));
+        PartCheck<Status.StoredFieldStatus> storedFields = startPart(executorService, infoStream, parts,
+            stream -> testStoredFields(segmentReader, stream, failFast));
+        PartCheck<Status.TermVectorStatus> termVectors = startPart(executorService, infoStream, parts,
+            stream -> testTermVectors(segmentReader, stream, verbose, crossCheckTermVectors, failFast));
+        PartCheck<Status.DocValuesStatus> docValues = startPart(executorService, infoStream, parts,
+            stream -> testDocValues(segmentReader, stream, failFast));
+
+        try {
+          segInfoStat.fieldNormStatus = fieldNorms.finish(infoStream);
+          segInfoStat.termIndexStatus = postings.finish(infoStream);
+          segInfoStat.storedFieldStatus = storedFields.finish(infoStream);
+          segInfoStat.termVectorStatus = termVectors.finish(infoStream);
+          segInfoStat.docValuesStatus = docValues.finish(infoStream);
+        } finally {
+          // a failed part leaves the others unfinished, and they must not outlive the reader
+          for (PartCheck<?> part : parts) {
+            part.abandon();
+          }
+        }
       }
 
-      // Keeper
-      result.newSegments.add(info.clone());
-    }
+      // Rethrow the first exception we encountered
+      //  This will cause stats for failed segments to be incremented properly
+      if (segInfoStat.fieldNormStatus.error != null) {
+        throw new RuntimeException("Field Norm test failed");
+      } else if (segInfoStat.termIndexStatus.error != null) {
+        throw new RuntimeException("Term Index test failed");
+      } else if (segInfoStat.storedFieldStatus.error != null) {
+        throw new RuntimeException("Stored Field test failed");
+      } else if (segInfoStat.termVectorStatus.error != null) {
+        throw new RuntimeException("Term Vector test failed");
+      }  else if (segInfoStat.docValuesStatus.error != null) {
+        throw new RuntimeException("DocValues test failed");
+      }
 
-    if (0 == result.numBadSegments) {
-      result.clean = true;
-    } else
-      msg(infoStream, "WARNING: " + result.numBadSegments + " broken segments (containing " + result.totLoseDocCount + " documents) detected");
+      msg(infoStream, "");
 
-    if ( ! (result.validCounter = (result.maxSegmentName < sis.counter))) {
-      result.clean = false;
-      result.newSegments.counter = result.maxSegmentName + 1; 
-      msg(infoStream, "ERROR: Next segment name counter " + sis.counter + " is not greater than max segment name " + result.maxSegmentName);
-    }
-    
-    if (result.clean) {
-      msg(infoStream, "No problems were detected with this index.\n");
+    } catch (Throwable t) {
+      if (failFast) {
+        IOUtils.reThrow(t);
+      }
+      msg(infoStream, "FAILED");
+      String comment;
+      comment = "fixIndex() would remove reference to this segment";
+      msg(infoStream, "    WARNING: " + comment + "; full exception:");
+      if (infoStream != null)
+        t.printStackTrace(infoStream);
+      msg(infoStream, "");
+      segInfoStat.error = t;
+      segInfoStat.toLoseDocCount = toLoseDocCount;
+    } finally {
+      if (reader != null)
+        reader.close();
     }
 
-    return result;
+    return segInfoStat;
   }
 
   public static Status.FieldNormStatus testFieldNorms(AtomicReader reader, PrintStream infoStream, boolean failFast) throws IOException {
@@ -1776,6 +1995,7 @@ public class CheckIndex {
     List<String> onlySegments = new ArrayList<>();
     String indexPath = null;
     String dirImpl = null;
+    int threadCount = 0;
     int i = 0;
     while(i < args.length) {
       String arg = args[i];
@@ -1799,6 +2019,17 @@ public class CheckIndex {
         }
         i++;
         dirImpl = args[i];
+      } else if ("-threadCount".equals(arg)) {
+        if (i == args.length - 1) {
+          System.out.println("ERROR: -threadCount requires a following number");
+          System.exit(1);
+        }
+        i++;
+        threadCount = Integer.parseInt(args[i]);
+        if (threadCount <= 0) {
+          System.out.println("ERROR: -threadCount requires a number larger than 0, but got: " + threadCount);
+          System.exit(1);
+        }
       } else {
         if (indexPath != null) {
           System.out.println("ERROR: unexpected extra argument '" + args[i] + "'");
@@ -1811,7 +2042,7 @@ public class CheckIndex {
 
     if (indexPath == null) {
       System.out.println("\nERROR: index path not specified");
-      System.out.println("\nUsage: java org.trypticon.luceneupgrader.lucene4.internal.lucene.index.CheckIndex pathToIndex [-fix] [-crossCheckTermVectors] [-segment X] [-segment Y] [-dir-impl X]\n" +
+      System.out.println("\nUsage: java org.trypticon.luceneupgrader.lucene4.internal.lucene.index.CheckIndex pathToIndex [-fix] [-crossCheckTermVectors] [-segment X] [-segment Y] [-threadCount X] [-dir-impl X]\n" +
                          "\n" +
                          "  -fix: actually write a new segments_N file, removing any problematic segments\n" +
                          "  -crossCheckTermVectors: verifies that term vectors match postings; THIS IS VERY SLOW!\n" +
@@ -1820,6 +2051,9 @@ public class CheckIndex {
                          "  -segment X: only check the specified segments.  This can be specified multiple\n" + 
                          "              times, to check more than one segment, eg '-segment _2 -segment _a'.\n" +
                          "              You can't use this with the -fix option\n" +
+                         "  -threadCount X: number of threads used to check index concurrently.\n" +
+                         "                  When not specified, this will default to the number of CPU cores.\n" +
+                         "                  When '-threadCount 1' is used, index checking will be performed sequentially.\n" +
                          "  -dir-impl X: use a specific " + FSDirectory.class.getSimpleName() + " implementation. " +
                          "If no package is specified the " + FSDirectory.class.getPackage().getName() + " package will be used.\n" +
                          "\n" +
@@ -1866,6 +2100,9 @@ public class CheckIndex {
     CheckIndex checker = new CheckIndex(dir);
     checker.setCrossCheckTermVectors(doCrossCheckTermVectors);
     checker.setInfoStream(System.out, verbose);
+    if (threadCount > 0) {
+      checker.setThreadCount(threadCount);
+    }
 
     Status result = checker.checkIndex(onlySegments);
     if (result.missingSegments) {
@@ -30,6 +30,7 @@ import org.trypticon.luceneupgrader.lucene4.internal.lucene.index.MergeState.Che
 import org.trypticon.luceneupgrader.lucene4.internal.lucene.search.Query;
 import org.trypticon.luceneupgrader.lucene4.internal.lucene.store.*;
 import org.trypticon.luceneupgrader.lucene4.internal.lucene.util.*;
+import org.trypticon.luceneupgrader.UpgradeEvents;
 
 import java.io.Closeable;
 import java.io.FileNotFoundException;
@@ -3727,6 +3728,8 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
     assert Lucene3xSegmentInfoFormat.getDocStoreOffset(info) == -1;
     // Now merge all added files
     Collection<String> files = info.files();
+    UpgradeEvents.CompoundFile event = new UpgradeEvents.CompoundFile();
+    event.begin();
     CompoundFileDirectory cfsDir = new CompoundFileDirectory(directory, fileName, context, true);
     boolean success = false;
     try {
@@ -3757,6 +3760,16 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
     siFiles.add(IndexFileNames.segmentFileName(info.name, "", IndexFileNames.COMPOUND_FILE_ENTRIES_EXTENSION));
     info.setFiles(siFiles);
 
+    event.end();
+    if (event.shouldCommit()) {
+      event.segment = info.name;
+      event.fileCount = files.size();
+      for (String file : siFiles) {
+        event.bytesWritten += directory.fileLength(file);
+      }
+      event.commit();
+    }
+
     return files;
   }
   
@@ -16,7 +16,9 @@
 */
 package org.trypticon.luceneupgrader.lucene4.internal.lucene.index;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.NoSuchFileException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -32,6 +34,7 @@ import org.trypticon.luceneupgrader.lucene4.internal.lucene.store.IOContext;
 import org.trypticon.luceneupgrader.lucene4.internal.lucene.util.Bits;
 import org.trypticon.luceneupgrader.lucene4.internal.lucene.util.IOUtils;
 import org.trypticon.luceneupgrader.lucene4.internal.lucene.util.InfoStream;
+import org.trypticon.luceneupgrader.UpgradeEvents;
 
 final class SegmentMerger {
   private final Directory directory;
@@ -70,6 +73,9 @@ final class SegmentMerger {
     if (!shouldMerge()) {
       throw new IllegalStateException("Merge would result in 0 document segment");
     }
+    UpgradeEvents.SegmentMerge mergeEvent = new UpgradeEvents.SegmentMerge();
+    mergeEvent.begin();
+    UpgradeEvents.MergePart part;
     // NOTE: it's important to add calls to
     // checkAbort.work(...) if you make any changes to this
     // method that will spend alot of time.  The frequency
@@ -82,7 +88,9 @@ final class SegmentMerger {
     if (mergeState.infoStream.isEnabled("SM")) {
       t0 = System.nanoTime();
     }
+    part = beginPart();
     int numMerged = mergeFields();
+    endPart(part, "stored fields", numMerged);
     if (mergeState.infoStream.isEnabled("SM")) {
       long t1 = System.nanoTime();
       mergeState.infoStream.message("SM", ((t1-t0)/1000000) + " msec to merge stored fields [" + numMerged + " docs]");
@@ -94,7 +102,9 @@ final class SegmentMerger {
     if (mergeState.infoStream.isEnabled("SM")) {
       t0 = System.nanoTime();
     }
+    part = beginPart();
     mergeTerms(segmentWriteState);
+    endPart(part, "postings", numMerged);
     if (mergeState.infoStream.isEnabled("SM")) {
       long t1 = System.nanoTime();
       mergeState.infoStream.message("SM", ((t1-t0)/1000000) + " msec to merge postings [" + numMerged + " docs]");
@@ -104,7 +114,9 @@ final class SegmentMerger {
       t0 = System.nanoTime();
     }
     if (mergeState.fieldInfos.hasDocValues()) {
+      part = beginPart();
       mergeDocValues(segmentWriteState);
+      endPart(part, "doc values", numMerged);
     }
     if (mergeState.infoStream.isEnabled("SM")) {
       long t1 = System.nanoTime();
@@ -115,7 +127,9 @@ final class SegmentMerger {
       if (mergeState.infoStream.isEnabled("SM")) {
         t0 = System.nanoTime();
       }
+      part = beginPart();
       mergeNorms(segmentWriteState);
+      endPart(part, "norms", numMerged);
       if (mergeState.infoStream.isEnabled("SM")) {
         long t1 = System.nanoTime();
         mergeState.infoStream.message("SM", ((t1-t0)/1000000) + " msec to merge norms [" + numMerged + " docs]");
@@ -126,7 +140,9 @@ final class SegmentMerger {
       if (mergeState.infoStream.isEnabled("SM")) {
         t0 = System.nanoTime();
       }
+      part = beginPart();
       numMerged = mergeVectors();
+      endPart(part, "term vectors", numMerged);
       if (mergeState.infoStream.isEnabled("SM")) {
         long t1 = System.nanoTime();
         mergeState.infoStream.message("SM", ((t1-t0)/1000000) + " msec to merge vectors [" + numMerged + " docs]");
@@ -136,11 +152,59 @@ final class SegmentMerger {
     
     // write the merged infos
     FieldInfosWriter fieldInfosWriter = codec.fieldInfosFormat().getFieldInfosWriter();
+    part = beginPart();
     fieldInfosWriter.write(directory, mergeState.segmentInfo.name, "", mergeState.fieldInfos, context);
+    endPart(part, "field infos", numMerged);
+
+    mergeEvent.end();
+    if (mergeEvent.shouldCommit()) {
+      mergeEvent.segment = mergeState.segmentInfo.name;
+      mergeEvent.sourceSegmentCount = mergeState.readers.size();
+      mergeEvent.documentCount = mergeState.segmentInfo.getDocCount();
+      mergeEvent.bytesWritten = segmentSizeInBytes();
+      mergeEvent.commit();
+    }
 
     return mergeState;
   }
 
+  /** Starts a Flight Recorder event for merging one part of the codec. */
+  private UpgradeEvents.MergePart beginPart() throws IOException {
+    UpgradeEvents.MergePart event = new UpgradeEvents.MergePart();
+    if (event.isEnabled()) {
+      // whatever the segment has gained by the end of the part was written by it
+      event.bytesWritten = -segmentSizeInBytes();
+    }
+    event.begin();
+    return event;
+  }
+
+  private void endPart(UpgradeEvents.MergePart event, String part, int documentCount) throws IOException {
+    event.end();
+    if (event.shouldCommit()) {
+      event.segment = mergeState.segmentInfo.name;
+      event.part = part;
+      event.documentCount = documentCount;
+      event.bytesWritten += segmentSizeInBytes();
+      event.commit();
+    }
+  }
+
+  /** Adds up the sizes of the new segment's files written so far, for Flight Recorder events. */
+  private long segmentSizeInBytes() throws IOException {
+    long size = 0;
+    for (String file : directory.listAll()) {
+      if (IndexFileNames.parseSegmentName(file).equals(mergeState.segmentInfo.name)) {
+        try {
+          size += directory.fileLength(file);
+        } catch (FileNotFoundException | NoSuchFileException e) {
+          // a temporary file, deleted since it was listed
+        }
+      }
+    }
+    return size;
+  }
+
   private void mergeDocValues(SegmentWriteState segmentWriteState) throws IOException {
     DocValuesConsumer consumer = codec.docValuesFormat().fieldsConsumer(segmentWriteState);
     boolean success = false;
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trypticon.luceneupgrader.lucene4.internal.lucene.store;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.trypticon.luceneupgrader.IOAccounting;
+
+/**
+ * A {@link FilterDirectory} which counts the bytes read from and written to its files towards an
+ * {@link IOAccounting}, in the spirit of {@link TrackingDirectoryWrapper}.
+ *
+ * <p>Reads are counted as they are pulled through a buffer of the usual size for their context,
+ * and writes when each output is closed. The bytes written to a file which is deleted again, such
+ * as one packed into a compound file, are also counted as discarded.
+ */
+public final class AccountingDirectory extends FilterDirectory {
+  private final IOAccounting accounting;
+
+  /** bytes written to each file created through this directory which still exists */
+  private final Map<String, Long> bytesWritten = new ConcurrentHashMap<>();
+
+  public AccountingDirectory(Directory in, IOAccounting accounting) {
+    super(in);
+    this.accounting = accounting;
+  }
+
+  /** Adds up the sizes of the files in the directory, without counting anything. */
+  public long sizeInBytes() throws IOException {
+    long size = 0;
+    for (String name : in.listAll()) {
+      try {
+        size += in.fileLength(name);
+      } catch (@SuppressWarnings("unused") NoSuchFileException | FileNotFoundException e) {
+        // deleted since it was listed
+      }
+    }
+    return size;
+  }
+
+  @Override
+  public IndexInput openInput(String name, IOContext context) throws IOException {
+    return new AccountingIndexInput(
+        in.openInput(name, context),
+        accounting.counter(name, contextName(context)),
+        BufferedIndexInput.bufferSize(context));
+  }
+
+  @Override
+  public IndexOutput createOutput(String name, IOContext context) throws IOException {
+    return new AccountingIndexOutput(
+        name, in.createOutput(name, context), accounting.counter(name, contextName(context)));
+  }
+
+  @Override
+  public void deleteFile(String name) throws IOException {
+    in.deleteFile(name);
+    Long written = bytesWritten.remove(name);
+    if (written != null) {
+      accounting.addDiscarded(written);
+    }
+  }
+
+  private static String contextName(IOContext context) {
+    return context.readOnce ? "READONCE" : context.context.name();
+  }
+
+  /** Reads through a buffer, counting each time it is filled. */
+  private static final class AccountingIndexInput extends BufferedIndexInput {
+    private IndexInput in;
+    private final IOAccounting.Counter counter;
+
+    AccountingIndexInput(IndexInput in, IOAccounting.Counter counter, int bufferSize) {
+      super("AccountingIndexInput(" + in + ")", bufferSize);
+      this.in = in;
+      this.counter = counter;
+    }
+
+    @Override
+    protected void readInternal(byte[] b, int offset, int length) throws IOException {
+      long position = getFilePointer();
+      if (in.getFilePointer() != position) {
+        in.seek(position);
+      }
+      in.readBytes(b, offset, length);
+      counter.addRead(length);
+    }
+
+    @Override
+    protected void seekInternal(long pos) {
+      // the next read seeks if it needs to
+    }
+
+    @Override
+    public AccountingIndexInput clone() {
+      AccountingIndexInput clone = (AccountingIndexInput) super.clone();
+      clone.in = in.clone();
+      return clone;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+
+    @Override
+    public long length() {
+      return in.length();
+    }
+  }
+
+  /** Passes writes straight through, counting them when closed. */
+  private final class AccountingIndexOutput extends IndexOutput {
+    private final String name;
+    private final IndexOutput out;
+    private final IOAccounting.Counter counter;
+    private boolean closed;
+
+    AccountingIndexOutput(String name, IndexOutput out, IOAccounting.Counter counter) {
+      this.name = name;
+      this.out = out;
+      this.counter = counter;
+    }
+
+    @Override
+    public void writeByte(byte b) throws IOException {
+      out.writeByte(b);
+    }
+
+    @Override
+    public void writeBytes(byte[] b, int offset, int length) throws IOException {
+      out.writeBytes(b, offset, length);
+    }
+
+    @Override
+    public void writeShort(short i) throws IOException {
+      out.writeShort(i);
+    }
+
+    @Override
+    public void writeInt(int i) throws IOException {
+      out.writeInt(i);
+    }
+
+    @Override
+    public void writeLong(long i) throws IOException {
+      out.writeLong(i);
+    }
+
+    @Deprecated
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    @Override
+    public long getFilePointer() {
+      return out.getFilePointer();
+    }
+
+    @Override
+    public long getChecksum() throws IOException {
+      return out.getChecksum();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!closed) {
+        closed = true;
+        long written = out.getFilePointer();
+        counter.addWritten(written);
+        bytesWritten.merge(name, written, Long::sum);
+      }
+      out.close();
+    }
+  }
+}
@@ -18,6 +18,7 @@ package org.trypticon.luceneupgrader.lucene4.internal.lucene.store;
 
 import org.trypticon.luceneupgrader.lucene4.internal.lucene.util.Constants;
 import org.trypticon.luceneupgrader.lucene4.internal.lucene.util.IOUtils;
+import org.trypticon.luceneupgrader.UpgradeEvents;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -175,6 +176,8 @@ public abstract class FSDirectory extends BaseDirectory {
     Set<String> toSync = new HashSet<>(names);
     toSync.retainAll(staleFiles);
 
+    UpgradeEvents.Sync event = new UpgradeEvents.Sync();
+    event.begin();
     for (String name : toSync) {
       fsync(name);
     }
@@ -184,10 +187,28 @@ public abstract class FSDirectory extends BaseDirectory {
     if (!toSync.isEmpty()) {
       IOUtils.fsync(directory, true);
     }
+    event.end();
+    if (event.shouldCommit()) {
+      commitSyncEvent(event, toSync);
+    }
     
     staleFiles.removeAll(toSync);
   }
 
+  /** Fills in and commits a Flight Recorder event for syncing files, or the directory when there are none. */
+  private void commitSyncEvent(UpgradeEvents.Sync event, Collection<String> names) {
+    event.directory = directory.toString();
+    event.fileCount = names.size();
+    for (String name : names) {
+      try {
+        event.bytes += fileLength(name);
+      } catch (IOException e) {
+        // deleted since it was synced
+      }
+    }
+    event.commit();
+  }
+
   @Override
   public String getLockID() {
     ensureOpen();
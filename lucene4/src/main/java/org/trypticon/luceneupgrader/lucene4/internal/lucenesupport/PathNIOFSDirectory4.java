@@ -24,6 +24,9 @@ public class PathNIOFSDirectory4 extends PathFSDirectory4 {
         ensureOpen();
         Path path = getDirectory().resolve(name);
         FileChannel fc = FileChannel.open(path, StandardOpenOption.READ);
+        if (context.context == IOContext.Context.MERGE) {
+            return new ReadAheadIndexInput("ReadAheadIndexInput(path=\"" + path + "\")", fc);
+        }
         return new NIOFSIndexInput("NIOFSIndexInput(path=\"" + path + "\")", fc, context);
     }
 
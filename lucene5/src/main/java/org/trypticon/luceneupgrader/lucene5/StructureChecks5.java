@@ -0,0 +1,169 @@
+package org.trypticon.luceneupgrader.lucene5;
+
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.codecs.Codec;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.codecs.CodecUtil;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.index.CorruptIndexException;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.index.IndexFileNames;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.index.SegmentCommitInfo;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.store.Directory;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.store.IOContext;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.store.IndexInput;
+import org.trypticon.luceneupgrader.FileVerifier;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Checks the structure of the files of a segment written before Lucene 4.8, for {@link VersionChecker5#verify}.
+ * These files have no checksums, so this catches what reading them through alone wouldn't: files without a
+ * codec header, a compound file whose entries don't add up to its length, and files whose length doesn't
+ * match the segment's document count.
+ */
+final class StructureChecks5 {
+
+    /**
+     * The codec of the header of a compound file, which before 4.8 is the only thing in it before the entries.
+     */
+    private static final String COMPOUND_DATA_CODEC = "CompoundFileWriterData";
+
+    /**
+     * The header lengths of the stored fields and term vectors indexes of Lucene 4.0, which hold fixed size
+     * entries for each document after them, and the codecs which still use them.
+     */
+    private static final long STORED_FIELDS_INDEX_HEADER_LENGTH =
+            CodecUtil.headerLength("Lucene40StoredFieldsIndex");
+    private static final long TERM_VECTORS_INDEX_HEADER_LENGTH =
+            CodecUtil.headerLength("Lucene40TermVectorsIndex");
+    private static final Set<String> STORED_FIELDS_INDEX_CODECS = Collections.singleton("Lucene40");
+    private static final Set<String> TERM_VECTORS_INDEX_CODECS = new HashSet<>(Arrays.asList("Lucene40", "Lucene41"));
+
+    private StructureChecks5() {
+    }
+
+    /**
+     * Adds the checks for the files of a segment.
+     *
+     * @param directory the directory of the index.
+     * @param info the segment.
+     * @param checks the checks so far, by file name.
+     * @throws IOException if an error occurs reading the segment metadata.
+     */
+    static void addChecks(@Nonnull Directory directory, @Nonnull SegmentCommitInfo info,
+                          @Nonnull Map<String, FileVerifier.FileCheck> checks) throws IOException {
+        Codec codec = info.info.getCodec();
+        Set<String> liveDocsFiles = new HashSet<>();
+        if (info.hasDeletions()) {
+            // Reading the live docs checks them against the document and deletion counts of the segment.
+            codec.liveDocsFormat().files(info, liveDocsFiles);
+            for (String fileName : liveDocsFiles) {
+                checks.merge(fileName, name -> codec.liveDocsFormat().readLiveDocs(directory, info, IOContext.READONCE),
+                             FileVerifier.FileCheck::andThen);
+            }
+        }
+
+        int maxDoc = info.info.maxDoc();
+        for (String fileName : info.files()) {
+            if (!liveDocsFiles.contains(fileName)) {
+                checks.merge(fileName, name -> checkCodecHeader(directory, name), FileVerifier.FileCheck::andThen);
+            }
+        }
+
+        String compoundFileName = null;
+        if (info.info.getUseCompoundFile()) {
+            compoundFileName = IndexFileNames.segmentFileName(info.info.name, "", "cfs");
+            checks.merge(compoundFileName, name -> checkCompoundFile(directory, info, name),
+                         FileVerifier.FileCheck::andThen);
+        }
+        if (STORED_FIELDS_INDEX_CODECS.contains(codec.getName())) {
+            addIndexLengthCheck(directory, info, compoundFileName, "fdx",
+                                STORED_FIELDS_INDEX_HEADER_LENGTH + 8L * maxDoc, checks);
+        }
+        if (TERM_VECTORS_INDEX_CODECS.contains(codec.getName())) {
+            addIndexLengthCheck(directory, info, compoundFileName, "tvx",
+                                TERM_VECTORS_INDEX_HEADER_LENGTH + 16L * maxDoc, checks);
+        }
+    }
+
+    /**
+     * Adds the check of the length of a stored fields or term vectors index, to the index itself or, if it's
+     * in a compound file, to that. Term vectors are left out of segments without any.
+     */
+    private static void addIndexLengthCheck(@Nonnull Directory directory, @Nonnull SegmentCommitInfo info,
+                                            String compoundFileName, @Nonnull String extension,
+                                            long expectedLength,
+                                            @Nonnull Map<String, FileVerifier.FileCheck> checks) throws IOException {
+        String indexFileName = IndexFileNames.segmentFileName(info.info.name, "", extension);
+        if (compoundFileName == null) {
+            if (info.files().contains(indexFileName)) {
+                checks.merge(indexFileName, name -> checkLength(name, directory.fileLength(name), expectedLength),
+                             FileVerifier.FileCheck::andThen);
+            }
+        } else {
+            checks.merge(compoundFileName, name -> {
+                try (Directory compoundDirectory = info.info.getCodec().compoundFormat()
+                        .getCompoundReader(directory, info.info, IOContext.READONCE)) {
+                    if (Arrays.asList(compoundDirectory.listAll()).contains(indexFileName)) {
+                        checkLength(name + " entry " + indexFileName, compoundDirectory.fileLength(indexFileName),
+                                    expectedLength);
+                    }
+                }
+            }, FileVerifier.FileCheck::andThen);
+        }
+    }
+
+    private static void checkLength(@Nonnull String description, long length, long expectedLength)
+            throws CorruptIndexException {
+        if (length != expectedLength) {
+            throw new CorruptIndexException("should be " + expectedLength
+                                            + " bytes for the documents in the segment, but is " + length + " bytes",
+                                            description);
+        }
+    }
+
+    /**
+     * Checks that a file starts with the codec header every file has from 4.0 on.
+     */
+    private static void checkCodecHeader(@Nonnull Directory directory, @Nonnull String fileName) throws IOException {
+        try (IndexInput input = directory.openInput(fileName, IOContext.READONCE)) {
+            int magic = input.length() < 4 ? 0 : input.readInt();
+            if (magic != CodecUtil.CODEC_MAGIC) {
+                throw new CorruptIndexException("codec header mismatch: actual header=" + magic
+                                                + " vs expected header=" + CodecUtil.CODEC_MAGIC, input);
+            }
+        }
+    }
+
+    /**
+     * Checks that the entries of the compound file of a segment fit in it. Opening it reads the entry table.
+     * The entries are written one after the other after a header, so they add up to the rest of the file.
+     */
+    private static void checkCompoundFile(@Nonnull Directory directory, @Nonnull SegmentCommitInfo info,
+                                          @Nonnull String fileName) throws IOException {
+        long expectedLength;
+        try (IndexInput input = directory.openInput(fileName, IOContext.READONCE)) {
+            CodecUtil.checkHeader(input, COMPOUND_DATA_CODEC, 0, 0);
+            expectedLength = input.getFilePointer();
+        }
+        try (Directory compoundDirectory = info.info.getCodec().compoundFormat()
+                .getCompoundReader(directory, info.info, IOContext.READONCE)) {
+            for (String entryName : compoundDirectory.listAll()) {
+                long entryLength = compoundDirectory.fileLength(entryName);
+                if (entryLength < 0) {
+                    throw new CorruptIndexException("entry " + entryName + " has a negative length: " + entryLength,
+                                                    fileName);
+                }
+                expectedLength += entryLength;
+            }
+        }
+        long length = directory.fileLength(fileName);
+        if (length != expectedLength) {
+            throw new CorruptIndexException("should be " + expectedLength + " bytes for its entries, but is "
+                                            + length + " bytes", fileName);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package org.trypticon.luceneupgrader.lucene5;
+
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.analysis.TokenStream;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.document.Document;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.document.Field;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.document.FieldType;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.document.LongField;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.document.NumericDocValuesField;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.document.SortedDocValuesField;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.document.StoredField;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.document.StringField;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.document.TextField;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.index.IndexWriter;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.index.IndexWriterConfig;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.index.NoMergePolicy;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.index.Term;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.store.Directory;
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.util.BytesRef;
+import org.trypticon.luceneupgrader.SyntheticDocuments;
+import org.trypticon.luceneupgrader.SyntheticIndexConfig.Feature;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+
+/**
+ * Writes a made-up index of any size in Lucene 5 format. Lucene 5 has no points or vectors.
+ */
+final class SyntheticIndex5 {
+
+    private static final double RAM_BUFFER_SIZE_MB = 64;
+
+    private SyntheticIndex5() {
+    }
+
+    /**
+     * Writes the documents into the directory.
+     *
+     * @param directory the directory.
+     * @param documents the documents.
+     * @throws IOException if an error occurs writing the index.
+     */
+    static void write(@Nonnull Directory directory, @Nonnull SyntheticDocuments documents) throws IOException {
+        // The text is given to the fields already split into words, so no analyzer is needed.
+        IndexWriterConfig config = new IndexWriterConfig(null);
+        config.setRAMBufferSizeMB(RAM_BUFFER_SIZE_MB);
+        int documentsPerSegment = documents.getConfig().getDocumentsPerSegment();
+        if (documentsPerSegment > 0) {
+            config.setMaxBufferedDocs(documentsPerSegment);
+            config.setMergePolicy(NoMergePolicy.INSTANCE);
+        }
+
+        boolean stored = documents.hasFeature(Feature.STORED_FIELDS);
+        FieldType textType = new FieldType(TextField.TYPE_NOT_STORED);
+        if (documents.hasFeature(Feature.TERM_VECTORS)) {
+            textType.setStoreTermVectors(true);
+            textType.setStoreTermVectorPositions(true);
+            textType.setStoreTermVectorOffsets(true);
+        }
+        textType.freeze();
+
+        try (IndexWriter writer = new IndexWriter(directory, config)) {
+            while (documents.next()) {
+                Document document = new Document();
+                document.add(new StringField("id", documents.getId(), stored ? Field.Store.YES : Field.Store.NO));
+                addText(document, "title", documents.getTitle(), textType, stored);
+                addText(document, "body", documents.getBody(), textType, stored);
+                if (documents.hasFeature(Feature.TRIE_FIELDS)) {
+                    document.add(new LongField("number_trie", documents.getNumber(), Field.Store.NO));
+                }
+                if (documents.hasFeature(Feature.DOC_VALUES)) {
+                    document.add(new NumericDocValuesField("number_dv", documents.getNumber()));
+                    document.add(new SortedDocValuesField("category", new BytesRef(documents.getCategory())));
+                }
+                writer.addDocument(document);
+
+                if (documents.isDeleted()) {
+                    writer.deleteDocuments(new Term("id", documents.getId()));
+                }
+            }
+            writer.commit();
+        }
+    }
+
+    private static void addText(Document document, String name, String text, FieldType type, boolean stored) {
+        document.add(new Field(name, new WordTokenStream(text), type));
+        if (stored) {
+            document.add(new StoredField(name, text));
+        }
+    }
+
+    /**
+     * Splits text into words at spaces, which is all the generated text needs.
+     */
+    private static final class WordTokenStream extends TokenStream {
+        private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
+        private final OffsetAttribute offsetAttribute = addAttribute(OffsetAttribute.class);
+        private final String text;
+        private int position;
+
+        WordTokenStream(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public boolean incrementToken() {
+            clearAttributes();
+            while (position < text.length() && text.charAt(position) == ' ') {
+                position++;
+            }
+            if (position == text.length()) {
+                return false;
+            }
+            int end = text.indexOf(' ', position);
+            if (end < 0) {
+                end = text.length();
+            }
+            termAttribute.append(text, position, end);
+            offsetAttribute.setOffset(position, end);
+            position = end;
+            return true;
+        }
+
+        @Override
+        public void end() throws IOException {
+            super.end();
+            offsetAttribute.setOffset(text.length(), text.length());
+        }
+
+        @Override
+        public void reset() throws IOException {
+            super.reset();
+            position = 0;
+        }
+    }
+}
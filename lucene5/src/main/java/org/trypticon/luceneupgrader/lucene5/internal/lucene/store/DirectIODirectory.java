@@ -0,0 +1,302 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trypticon.luceneupgrader.lucene5.internal.lucene.store;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.trypticon.luceneupgrader.lucene5.internal.lucene.util.IOUtils;
+
+// Writes merge outputs (and optionally reads merge inputs) with O_DIRECT so upgrade traffic bypasses the page cache.
+// If the file system rejects direct I/O, the failing file is retried buffered and direct I/O is not attempted again.
+public class DirectIODirectory extends NIOFSDirectory {
+
+  public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+  // The JDK's O_DIRECT open option, looked up reflectively because it's in a JDK-internal package.
+  private static final OpenOption DIRECT_OPEN_OPTION = getDirectOpenOption();
+
+  private final boolean directReads;
+  private final int blockSize;
+  private volatile boolean directSupported;
+
+  public DirectIODirectory(Path path, boolean directReads) throws IOException {
+    super(path);
+    this.directReads = directReads;
+    int size;
+    try {
+      size = Math.toIntExact(Files.getFileStore(getDirectory()).getBlockSize());
+    } catch (UnsupportedOperationException | ArithmeticException e) {
+      size = 0;
+    }
+    this.blockSize = size;
+    this.directSupported = size > 0 && DIRECT_OPEN_OPTION != null;
+  }
+
+  public boolean isDirectSupported() {
+    return directSupported;
+  }
+
+  private static OpenOption getDirectOpenOption() {
+    try {
+      final Class<? extends OpenOption> clazz =
+          Class.forName("com.sun.nio.file.ExtendedOpenOption").asSubclass(OpenOption.class);
+      for (OpenOption option : clazz.getEnumConstants()) {
+        if (option.toString().equalsIgnoreCase("DIRECT")) {
+          return option;
+        }
+      }
+      return null;
+    } catch (ClassNotFoundException | ClassCastException e) {
+      return null;
+    }
+  }
+
+  @Override
+  public IndexOutput createOutput(String name, IOContext context) throws IOException {
+    if (context.context != IOContext.Context.MERGE || !directSupported) {
+      return super.createOutput(name, context);
+    }
+    ensureOpen();
+    Path path = getDirectory().resolve(name);
+    FileChannel channel;
+    try {
+      channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW, DIRECT_OPEN_OPTION);
+    } catch (IOException | UnsupportedOperationException e) {
+      // If buffered I/O works where direct I/O didn't, it's direct I/O which isn't supported.
+      IndexOutput output = super.createOutput(name, context);
+      directSupported = false;
+      return output;
+    }
+    return new DirectIOIndexOutput(path, name, channel, blockSize);
+  }
+
+  @Override
+  public IndexInput openInput(String name, IOContext context) throws IOException {
+    if (!directReads || context.context != IOContext.Context.MERGE || !directSupported) {
+      return super.openInput(name, context);
+    }
+    ensureOpen();
+    Path path = getDirectory().resolve(name);
+    FileChannel channel;
+    try {
+      channel = FileChannel.open(path, StandardOpenOption.READ, DIRECT_OPEN_OPTION);
+    } catch (IOException | UnsupportedOperationException e) {
+      IndexInput input = super.openInput(name, context);
+      directSupported = false;
+      return input;
+    }
+    boolean success = false;
+    try {
+      final DirectIOIndexInput indexInput = new DirectIOIndexInput("DirectIOIndexInput(path=\"" + path + "\")", channel, blockSize);
+      success = true;
+      return indexInput;
+    } finally {
+      if (success == false) {
+        IOUtils.closeWhileHandlingException(channel);
+      }
+    }
+  }
+
+  private static ByteBuffer allocateAligned(int capacity, int blockSize) {
+    return ByteBuffer.allocateDirect(capacity + blockSize - 1).alignedSlice(blockSize);
+  }
+
+  private static int roundUp(int length, int blockSize) {
+    return (length + blockSize - 1) / blockSize * blockSize;
+  }
+
+  static final class DirectIOIndexOutput extends OutputStreamIndexOutput {
+    DirectIOIndexOutput(Path path, String name, FileChannel channel, int blockSize) {
+      super("DirectIOIndexOutput(path=\"" + path + "\")", new DirectIOOutputStream(channel, blockSize), FSIndexOutput.CHUNK_SIZE);
+    }
+  }
+
+  // Writes whole blocks with direct I/O, padding the last one and truncating on close.
+  private static final class DirectIOOutputStream extends OutputStream {
+    private final FileChannel channel;
+    private final int blockSize;
+    private final ByteBuffer buffer;
+    private long filePos;
+    private boolean closed;
+
+    DirectIOOutputStream(FileChannel channel, int blockSize) {
+      this.channel = channel;
+      this.blockSize = blockSize;
+      this.buffer = allocateAligned(roundUp(DEFAULT_BUFFER_SIZE, blockSize), blockSize);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      buffer.put((byte) b);
+      if (!buffer.hasRemaining()) {
+        dump();
+      }
+    }
+
+    @Override
+    public void write(byte[] b, int offset, int length) throws IOException {
+      while (length > 0) {
+        int chunk = Math.min(length, buffer.remaining());
+        buffer.put(b, offset, chunk);
+        offset += chunk;
+        length -= chunk;
+        if (!buffer.hasRemaining()) {
+          dump();
+        }
+      }
+    }
+
+    private void dump() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        filePos += channel.write(buffer, filePos);
+      }
+      buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try (FileChannel channel = this.channel) {
+        int tail = buffer.position();
+        long length = filePos + tail;
+        if (tail > 0) {
+          // Whatever is left over past the tail in the buffer gets written as padding, then truncated off again.
+          buffer.position(roundUp(tail, blockSize));
+          dump();
+        }
+        channel.truncate(length);
+      }
+    }
+  }
+
+  static final class DirectIOIndexInput extends BufferedIndexInput {
+    private final FileChannel channel;
+    private boolean isClone;
+    private final long off;
+    private final long end;
+
+    private final int blockSize;
+    private ByteBuffer alignedBuffer;
+
+    DirectIOIndexInput(String resourceDesc, FileChannel channel, int blockSize) throws IOException {
+      super(resourceDesc, DEFAULT_BUFFER_SIZE);
+      this.channel = channel;
+      this.off = 0L;
+      this.end = channel.size();
+      this.blockSize = blockSize;
+    }
+
+    private DirectIOIndexInput(String resourceDesc, FileChannel channel, long off, long length, int bufferSize, int blockSize) {
+      super(resourceDesc, bufferSize);
+      this.channel = channel;
+      this.off = off;
+      this.end = off + length;
+      this.blockSize = blockSize;
+      this.isClone = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!isClone) {
+        channel.close();
+      }
+    }
+
+    @Override
+    public DirectIOIndexInput clone() {
+      DirectIOIndexInput clone = (DirectIOIndexInput)super.clone();
+      clone.isClone = true;
+      clone.alignedBuffer = null;
+      return clone;
+    }
+
+    @Override
+    public IndexInput slice(String sliceDescription, long offset, long length) throws IOException {
+      if (offset < 0 || length < 0 || offset + length > this.length()) {
+        throw new IllegalArgumentException("slice() " + sliceDescription + " out of bounds: offset=" + offset + ",length=" + length + ",fileLength="  + this.length() + ": "  + this);
+      }
+      return new DirectIOIndexInput(getFullSliceDescription(sliceDescription), channel, off + offset, length, getBufferSize(), blockSize);
+    }
+
+    @Override
+    public long length() {
+      return end - off;
+    }
+
+    @Override
+    protected void readInternal(byte[] bytes, int offset, int len) throws IOException {
+      final ByteBuffer b = ByteBuffer.wrap(bytes, offset, len);
+      long pos = getFilePointer() + off;
+
+      if (pos + b.remaining() > end) {
+        throw new EOFException("read past EOF: " + this);
+      }
+
+      if (alignedBuffer == null) {
+        alignedBuffer = allocateAligned(roundUp(getBufferSize(), blockSize) + blockSize, blockSize);
+      }
+
+      try {
+        while (b.hasRemaining()) {
+          long alignedPos = pos / blockSize * blockSize;
+          int delta = (int) (pos - alignedPos);
+          alignedBuffer.clear();
+          alignedBuffer.limit(Math.min(alignedBuffer.capacity(), roundUp(delta + b.remaining(), blockSize)));
+          long readPos = alignedPos;
+          // A short read which leaves us unaligned can only mean we hit the end of the file.
+          while (alignedBuffer.hasRemaining() && readPos % blockSize == 0) {
+            int i = channel.read(alignedBuffer, readPos);
+            if (i <= 0) {
+              break;
+            }
+            readPos += i;
+          }
+          int available = alignedBuffer.position() - delta;
+          if (available <= 0) {
+            throw new EOFException("read past EOF: " + this + " pos: " + pos + " end: " + end);
+          }
+          int count = Math.min(b.remaining(), available);
+          alignedBuffer.limit(delta + count);
+          alignedBuffer.position(delta);
+          b.put(alignedBuffer);
+          pos += count;
+        }
+      } catch (IOException ioe) {
+        throw new IOException(ioe.getMessage() + ": " + this, ioe);
+      }
+    }
+
+    @Override
+    protected void seekInternal(long pos) throws IOException {
+      if (pos > length()) {
+        throw new EOFException("read past EOF: pos=" + pos + " vs length=" + length() + ": " + this);
+      }
+    }
+  }
+}
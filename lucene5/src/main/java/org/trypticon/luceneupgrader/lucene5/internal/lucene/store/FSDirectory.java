@@ -32,6 +32,7 @@ import java.util.concurrent.Future;
 
 import org.trypticon.luceneupgrader.lucene5.internal.lucene.util.Constants;
 import org.trypticon.luceneupgrader.lucene5.internal.lucene.util.IOUtils;
+import org.trypticon.luceneupgrader.UpgradeEvents;
 
 public abstract class FSDirectory extends BaseDirectory {
 
@@ -103,9 +104,29 @@ public abstract class FSDirectory extends BaseDirectory {
   public void sync(Collection<String> names) throws IOException {
     ensureOpen();
 
+    UpgradeEvents.Sync event = new UpgradeEvents.Sync();
+    event.begin();
     for (String name : names) {
       fsync(name);
     }
+    event.end();
+    if (event.shouldCommit()) {
+      commitSyncEvent(event, names);
+    }
+  }
+
+  /** Fills in and commits a Flight Recorder event for syncing files, or the directory when there are none. */
+  private void commitSyncEvent(UpgradeEvents.Sync event, Collection<String> names) {
+    event.directory = directory.toString();
+    event.fileCount = names.size();
+    for (String name : names) {
+      try {
+        event.bytes += fileLength(name);
+      } catch (IOException e) {
+        // deleted since it was synced
+      }
+    }
+    event.commit();
   }
   
   @Override
@@ -17,6 +17,7 @@
 package org.trypticon.luceneupgrader.lucene6.internal.lucene.index;
 
 
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.PrintStream;
@@ -25,12 +26,18 @@ import java.nio.file.Paths;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 
 import org.trypticon.luceneupgrader.lucene6.internal.lucene.codecs.Codec;
 import org.trypticon.luceneupgrader.lucene6.internal.lucene.codecs.DocValuesProducer;
@@ -62,8 +69,10 @@ import org.trypticon.luceneupgrader.lucene6.internal.lucene.util.CommandLineUtil
 import org.trypticon.luceneupgrader.lucene6.internal.lucene.util.FixedBitSet;
 import org.trypticon.luceneupgrader.lucene6.internal.lucene.util.IOUtils;
 import org.trypticon.luceneupgrader.lucene6.internal.lucene.util.LongBitSet;
+import org.trypticon.luceneupgrader.lucene6.internal.lucene.util.NamedThreadFactory;
 import org.trypticon.luceneupgrader.lucene6.internal.lucene.util.StringHelper;
 import org.trypticon.luceneupgrader.lucene6.internal.lucene.util.SuppressForbidden;
+import org.trypticon.luceneupgrader.lucene6.internal.lucene.util.ThreadInterruptedException;
 import org.trypticon.luceneupgrader.lucene6.internal.lucene.util.Version;
 import org.trypticon.luceneupgrader.lucene6.internal.lucene.util.automaton.Automata;
 import org.trypticon.luceneupgrader.lucene6.internal.lucene.util.automaton.CompiledAutomaton;
@@ -140,6 +149,10 @@ public final class CheckIndex implements Closeable {
 
       public boolean openReaderPassed;
 
+      public int toLoseDocCount;
+
+      public Throwable error;
+
 
       public Map<String,String> diagnostics;
       
@@ -332,6 +345,15 @@ public final class CheckIndex implements Closeable {
   private boolean checksumsOnly;
 
 
+  public void setThreadCount(int tc) {
+    if (tc <= 0) {
+      throw new IllegalArgumentException("setThreadCount requires a number larger than 0, but got: " + tc);
+    }
+    threadCount = tc;
+  }
+
+  private int threadCount = Runtime.getRuntime().availableProcessors();
+
   public void setInfoStream(PrintStream out, boolean verbose) {
     infoStream = out;
     this.verbose = verbose;
@@ -353,9 +375,35 @@ public final class CheckIndex implements Closeable {
   
 
   public Status checkIndex(List<String> onlySegments) throws IOException {
+    ExecutorService executorService = null;
+
+    // if threadCount == 1, then no executor is created and use the main thread to do index checking sequentially
+    if (threadCount > 1) {
+      executorService = Executors.newFixedThreadPool(threadCount, new NamedThreadFactory("async-check-index"));
+    }
+
+    msg(infoStream, "Checking index with threadCount: " + threadCount);
+    try {
+      return checkIndex(onlySegments, executorService);
+    } finally {
+      if (executorService != null) {
+        executorService.shutdown();
+        try {
+          executorService.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          msg(infoStream, "ERROR: Interrupted exception occurred when shutting down executor service");
+          if (infoStream != null)
+            e.printStackTrace(infoStream);
+        } finally {
+          executorService.shutdownNow();
+        }
+      }
+    }
+  }
+
+  public Status checkIndex(List<String> onlySegments, ExecutorService executorService) throws IOException {
     ensureOpen();
     long startNS = System.nanoTime();
-    NumberFormat nf = NumberFormat.getInstance(Locale.ROOT);
     SegmentInfos sis = null;
     Status result = new Status();
     result.dir = dir;
@@ -474,113 +522,276 @@ public final class CheckIndex implements Closeable {
     result.newSegments.clear();
     result.maxSegmentName = -1;
 
-    for(int i=0;i<numSegments;i++) {
-      final SegmentCommitInfo info = sis.info(i);
-      int segmentName = Integer.parseInt(info.info.name.substring(1), Character.MAX_RADIX);
-      if (segmentName > result.maxSegmentName) {
-        result.maxSegmentName = segmentName;
+    // checks segments sequentially
+    if (executorService == null) {
+      for(int i=0;i<numSegments;i++) {
+        final SegmentCommitInfo info = sis.info(i);
+        updateMaxSegmentName(result, info);
+        if (onlySegments != null && !onlySegments.contains(info.info.name)) {
+          continue;
+        }
+        msg(infoStream, "  " + (1+i) + " of " + numSegments + ": name=" + info.info.name + " maxDoc=" + info.info.maxDoc());
+        Status.SegmentInfoStatus segInfoStat = testSegment(sis, info, infoStream, null);
+        processSegmentInfoStatusResult(result, info, segInfoStat);
       }
-      if (onlySegments != null && !onlySegments.contains(info.info.name)) {
-        continue;
+    } else {
+      // checks segments concurrently, each writing to its own output which is printed in segment order
+      ByteArrayOutputStream[] outputs = new ByteArrayOutputStream[numSegments];
+      @SuppressWarnings({"unchecked", "rawtypes"})
+      FutureTask<Status.SegmentInfoStatus>[] futures = new FutureTask[numSegments];
+
+      List<SegmentCommitInfo> segmentCommitInfos = new ArrayList<>();
+      for (SegmentCommitInfo sci : sis) {
+        segmentCommitInfos.add(sci);
       }
-      Status.SegmentInfoStatus segInfoStat = new Status.SegmentInfoStatus();
-      result.segmentInfos.add(segInfoStat);
-      msg(infoStream, "  " + (1+i) + " of " + numSegments + ": name=" + info.info.name + " maxDoc=" + info.info.maxDoc());
-      segInfoStat.name = info.info.name;
-      segInfoStat.maxDoc = info.info.maxDoc();
-      
-      final Version version = info.info.getVersion();
-      if (info.info.maxDoc() <= 0) {
-        throw new RuntimeException("illegal number of documents: maxDoc=" + info.info.maxDoc());
+
+      // sort by segment size, as smaller segments tend to finish faster and hence their output can be printed sooner
+      Collections.sort(segmentCommitInfos, (info1, info2) -> {
+        try {
+          return Long.compare(info1.sizeInBytes(), info2.sizeInBytes());
+        } catch (IOException e) {
+          msg(infoStream, "ERROR: IOException occurred when comparing SegmentCommitInfo file sizes");
+          if (infoStream != null)
+            e.printStackTrace(infoStream);
+          return 0;
+        }
+      });
+
+      // start larger segments earlier
+      for (int i = numSegments - 1; i >= 0; i--) {
+        final SegmentCommitInfo info = segmentCommitInfos.get(i);
+        updateMaxSegmentName(result, info);
+        if (onlySegments != null && !onlySegments.contains(info.info.name)) {
+          continue;
+        }
+
+        final SegmentInfos finalSis = sis;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream stream = infoStream == null ? null : new PrintStream(output, true, IOUtils.UTF_8);
+        msg(stream, "  " + (1+i) + " of " + numSegments + ": name=" + info.info.name + " maxDoc=" + info.info.maxDoc());
+
+        outputs[i] = output;
+        futures[i] = new FutureTask<>(() -> testSegment(finalSis, info, stream, executorService));
+        executorService.execute(futures[i]);
       }
 
-      int toLoseDocCount = info.info.maxDoc();
+      for (int i = 0; i < numSegments; i++) {
+        SegmentCommitInfo info = segmentCommitInfos.get(i);
+        if (onlySegments != null && !onlySegments.contains(info.info.name)) {
+          continue;
+        }
+
+        // print segment results in order
+        Status.SegmentInfoStatus segInfoStat = awaitCheck(futures[i], outputs[i]);
+        processSegmentInfoStatusResult(result, info, segInfoStat);
+      }
+    }
+
+    if (0 == result.numBadSegments) {
+      result.clean = true;
+    } else
+      msg(infoStream, "WARNING: " + result.numBadSegments + " broken segments (containing " + result.totLoseDocCount + " documents) detected");
+
+    if ( ! (result.validCounter = (result.maxSegmentName < sis.counter))) {
+      result.clean = false;
+      result.newSegments.counter = result.maxSegmentName + 1; 
+      msg(infoStream, "ERROR: Next segment name counter " + sis.counter + " is not greater than max segment name " + result.maxSegmentName);
+    }
+    
+    if (result.clean) {
+      msg(infoStream, "No problems were detected with this index.\n");
+    }
+
+    msg(infoStream, String.format(Locale.ROOT, "Took %.3f sec total.", nsToSec(System.nanoTime()-startNS)));
+
+    return result;
+  }
+
+  private void updateMaxSegmentName(Status result, SegmentCommitInfo info) {
+    int segmentName = Integer.parseInt(info.info.name.substring(1), Character.MAX_RADIX);
+    if (segmentName > result.maxSegmentName) {
+      result.maxSegmentName = segmentName;
+    }
+  }
 
-      SegmentReader reader = null;
-      Sort previousIndexSort = null;
+  private void processSegmentInfoStatusResult(Status result, SegmentCommitInfo info, Status.SegmentInfoStatus segInfoStat) {
+    result.segmentInfos.add(segInfoStat);
+    if (segInfoStat.error != null) {
+      result.totLoseDocCount += segInfoStat.toLoseDocCount;
+      result.numBadSegments++;
+    } else {
+      // Keeper
+      result.newSegments.add(info.clone());
+    }
+  }
 
+  // Waits for a check started on the executor, then prints its output.
+  private <T> T awaitCheck(FutureTask<T> future, ByteArrayOutputStream output) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      throw new ThreadInterruptedException(e);
+    } catch (ExecutionException e) {
+        throw IOUtils.rethrowAlways(e.getCause());
+    } finally {
+      if (infoStream != null)
+        infoStream.print(output.toString(IOUtils.UTF_8));
+    }
+  }
+
+  private interface PartTest<T> {
+    T test(PrintStream infoStream) throws IOException;
+  }
+
+  // One part of a segment check, run on the executor with its own output.
+  private static final class PartCheck<T> {
+    private final FutureTask<T> task;
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private volatile boolean abandoned;
+
+    private PartCheck(PartTest<T> test, PrintStream infoStream) throws IOException {
+      PrintStream stream = infoStream == null ? null : new PrintStream(output, true, IOUtils.UTF_8);
+      task = new FutureTask<>(() -> abandoned ? null : test.test(stream));
+    }
+
+    // Runs the part on this thread if no pool thread has started it yet, so that a segment check never waits on a
+    // part queued behind other segment checks, then prints its output.
+    private T finish(PrintStream infoStream) throws IOException {
+      task.run();
       try {
-        msg(infoStream, "    version=" + (version == null ? "3.0" : version));
-        msg(infoStream, "    id=" + StringHelper.idToString(info.info.getId()));
-        final Codec codec = info.info.getCodec();
-        msg(infoStream, "    codec=" + codec);
-        segInfoStat.codec = codec;
-        msg(infoStream, "    compound=" + info.info.getUseCompoundFile());
-        segInfoStat.compound = info.info.getUseCompoundFile();
-        msg(infoStream, "    numFiles=" + info.files().size());
-        Sort indexSort = info.info.getIndexSort();
-        if (indexSort != null) {
-          msg(infoStream, "    sort=" + indexSort);
-          if (previousIndexSort != null) {
-            if (previousIndexSort.equals(indexSort) == false) {
-              throw new RuntimeException("index sort changed from " + previousIndexSort + " to " + indexSort);
-            }
-          } else {
-            previousIndexSort = indexSort;
-          }
-        }
-        segInfoStat.numFiles = info.files().size();
-        segInfoStat.sizeMB = info.sizeInBytes()/(1024.*1024.);
-        msg(infoStream, "    size (MB)=" + nf.format(segInfoStat.sizeMB));
-        Map<String,String> diagnostics = info.info.getDiagnostics();
-        segInfoStat.diagnostics = diagnostics;
-        if (diagnostics.size() > 0) {
-          msg(infoStream, "    diagnostics = " + diagnostics);
-        }
+        return task.get();
+      } catch (InterruptedException e) {
+        throw new ThreadInterruptedException(e);
+      } catch (ExecutionException e) {
+          throw IOUtils.rethrowAlways(e.getCause());
+      } finally {
+        if (infoStream != null)
+          infoStream.print(output.toString(IOUtils.UTF_8));
+      }
+    }
+
+    // Skips the part if it hasn't started yet, otherwise waits for it to finish.
+    private void abandon() {
+      abandoned = true;
+      task.run();
+      try {
+        task.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+        // the segment has already failed, this is at most a consequence of that
+      }
+    }
+  }
+
+  private static <T> PartCheck<T> startPart(ExecutorService executorService, PrintStream infoStream,
+                                            List<PartCheck<?>> parts, PartTest<T> test) throws IOException {
+    PartCheck<T> part = new PartCheck<>(test, infoStream);
+    parts.add(part);
+    executorService.execute(part.task);
+    return part;
+  }
+
+  private Status.SegmentInfoStatus testSegment(SegmentInfos sis, SegmentCommitInfo info, PrintStream infoStream,
+                                               ExecutorService executorService) throws IOException {
+    NumberFormat nf = NumberFormat.getInstance(Locale.ROOT);
+    Status.SegmentInfoStatus segInfoStat = new Status.SegmentInfoStatus();
+    segInfoStat.name = info.info.name;
+    segInfoStat.maxDoc = info.info.maxDoc();
+    
+    final Version version = info.info.getVersion();
+    if (info.info.maxDoc() <= 0) {
+      throw new RuntimeException("illegal number of documents: maxDoc=" + info.info.maxDoc());
+    }
+
+    int toLoseDocCount = info.info.maxDoc();
 
-        if (!info.hasDeletions()) {
-          msg(infoStream, "    no deletions");
-          segInfoStat.hasDeletions = false;
+    SegmentReader reader = null;
+    Sort previousIndexSort = null;
+
+    try {
+      msg(infoStream, "    version=" + (version == null ? "3.0" : version));
+      msg(infoStream, "    id=" + StringHelper.idToString(info.info.getId()));
+      final Codec codec = info.info.getCodec();
+      msg(infoStream, "    codec=" + codec);
+      segInfoStat.codec = codec;
+      msg(infoStream, "    compound=" + info.info.getUseCompoundFile());
+      segInfoStat.compound = info.info.getUseCompoundFile();
+      msg(infoStream, "    numFiles=" + info.files().size());
+      Sort indexSort = info.info.getIndexSort();
+      if (indexSort != null) {
+        msg(infoStream, "    sort=" + indexSort);
+        if (previousIndexSort != null) {
+          if (previousIndexSort.equals(indexSort) == false) {
+            throw new RuntimeException("index sort changed from " + previousIndexSort + " to " + indexSort);
+          }
         } else {
-          msg(infoStream, "    has deletions [delGen=" + info.getDelGen() + "]");
-          segInfoStat.hasDeletions = true;
-          segInfoStat.deletionsGen = info.getDelGen();
+          previousIndexSort = indexSort;
         }
-        
-        long startOpenReaderNS = System.nanoTime();
-        if (infoStream != null)
-          infoStream.print("    test: open reader.........");
-        reader = new SegmentReader(info, IOContext.DEFAULT);
-        msg(infoStream, String.format(Locale.ROOT, "OK [took %.3f sec]", nsToSec(System.nanoTime()-startOpenReaderNS)));
+      }
+      segInfoStat.numFiles = info.files().size();
+      segInfoStat.sizeMB = info.sizeInBytes()/(1024.*1024.);
+      msg(infoStream, "    size (MB)=" + nf.format(segInfoStat.sizeMB));
+      Map<String,String> diagnostics = info.info.getDiagnostics();
+      segInfoStat.diagnostics = diagnostics;
+      if (diagnostics.size() > 0) {
+        msg(infoStream, "    diagnostics = " + diagnostics);
+      }
 
-        segInfoStat.openReaderPassed = true;
-        
-        long startIntegrityNS = System.nanoTime();
-        if (infoStream != null)
-          infoStream.print("    test: check integrity.....");
-        reader.checkIntegrity();
-        msg(infoStream, String.format(Locale.ROOT, "OK [took %.3f sec]", nsToSec(System.nanoTime()-startIntegrityNS)));
+      if (!info.hasDeletions()) {
+        msg(infoStream, "    no deletions");
+        segInfoStat.hasDeletions = false;
+      } else {
+        msg(infoStream, "    has deletions [delGen=" + info.getDelGen() + "]");
+        segInfoStat.hasDeletions = true;
+        segInfoStat.deletionsGen = info.getDelGen();
+      }
+      
+      long startOpenReaderNS = System.nanoTime();
+      if (infoStream != null)
+        infoStream.print("    test: open reader.........");
+      reader = new SegmentReader(info, IOContext.DEFAULT);
+      msg(infoStream, String.format(Locale.ROOT, "OK [took %.3f sec]", nsToSec(System.nanoTime()-startOpenReaderNS)));
+
+      segInfoStat.openReaderPassed = true;
+      
+      long startIntegrityNS = System.nanoTime();
+      if (infoStream != null)
+        infoStream.print("    test: check integrity.....");
+      reader.checkIntegrity();
+      msg(infoStream, String.format(Locale.ROOT, "OK [took %.3f sec]", nsToSec(System.nanoTime()-startIntegrityNS)));
 
-        if (reader.maxDoc() != info.info.maxDoc()) {
-          throw new RuntimeException("SegmentReader.maxDoc() " + reader.maxDoc() + " != SegmentInfo.maxDoc " + info.info.maxDoc());
+      if (reader.maxDoc() != info.info.maxDoc()) {
+        throw new RuntimeException("SegmentReader.maxDoc() " + reader.maxDoc() + " != SegmentInfo.maxDoc " + info.info.maxDoc());
+      }
+      
+      final int numDocs = reader.numDocs();
+      toLoseDocCount = numDocs;
+      
+      if (reader.hasDeletions()) {
+        if (reader.numDocs() != info.info.maxDoc() - info.getDelCount()) {
+          throw new RuntimeException("delete count mismatch: info=" + (info.info.maxDoc() - info.getDelCount()) + " vs reader=" + reader.numDocs());
         }
-        
-        final int numDocs = reader.numDocs();
-        toLoseDocCount = numDocs;
-        
-        if (reader.hasDeletions()) {
-          if (reader.numDocs() != info.info.maxDoc() - info.getDelCount()) {
-            throw new RuntimeException("delete count mismatch: info=" + (info.info.maxDoc() - info.getDelCount()) + " vs reader=" + reader.numDocs());
-          }
-          if ((info.info.maxDoc() - reader.numDocs()) > reader.maxDoc()) {
-            throw new RuntimeException("too many deleted docs: maxDoc()=" + reader.maxDoc() + " vs del count=" + (info.info.maxDoc() - reader.numDocs()));
-          }
-          if (info.info.maxDoc() - reader.numDocs() != info.getDelCount()) {
-            throw new RuntimeException("delete count mismatch: info=" + info.getDelCount() + " vs reader=" + (info.info.maxDoc() - reader.numDocs()));
-          }
-        } else {
-          if (info.getDelCount() != 0) {
-            throw new RuntimeException("delete count mismatch: info=" + info.getDelCount() + " vs reader=" + (info.info.maxDoc() - reader.numDocs()));
-          }
+        if ((info.info.maxDoc() - reader.numDocs()) > reader.maxDoc()) {
+          throw new RuntimeException("too many deleted docs: maxDoc()=" + reader.maxDoc() + " vs del count=" + (info.info.maxDoc() - reader.numDocs()));
         }
-        
-        if (checksumsOnly == false) {
+        if (info.info.maxDoc() - reader.numDocs() != info.getDelCount()) {
+          throw new RuntimeException("delete count mismatch: info=" + info.getDelCount() + " vs reader=" + (info.info.maxDoc() - reader.numDocs()));
+        }
+      } else {
+        if (info.getDelCount() != 0) {
+          throw new RuntimeException("delete count mismatch: info=" + info.getDelCount() + " vs reader=" + (info.info.maxDoc() - reader.numDocs()));
+        }
+      }
+      
+      if (checksumsOnly == false) {
+        if (executorService == null) {
           // Test Livedocs
           segInfoStat.liveDocStatus = testLiveDocs(reader, infoStream, failFast);
 
           // Test Fieldinfos
           segInfoStat.fieldInfoStatus = testFieldInfos(reader, infoStream, failFast);
-        
+      
           // Test Field Norms
           segInfoStat.fieldNormStatus = testFieldNorms(reader, infoStream, failFast);
 
@@ -601,76 +812,94 @@ public final class CheckIndex implements Closeable {
 
           // Test index sort
           segInfoStat.indexSortStatus = testSort(reader, indexSort, infoStream, failFast);
+        } else {
+          // Check the parts concurrently, printing their output in the same order as above
+          final SegmentReader segmentReader = reader;
+          List<PartCheck<?>> parts = new ArrayList<>();
+          PartCheck<Status.LiveDocStatus> liveDocs = startPart(executorService, infoStream, parts,
+              stream -> testLiveDocs(segmentReader, stream, failFast));
+          PartCheck<Status.FieldInfoStatus> fieldInfos = startPart(executorService, infoStream, parts,
+              stream -> testFieldInfos(segmentReader, stream, failFast));
+          PartCheck<Status.FieldNormStatus> fieldNorms = startPart(executorService, infoStream, parts,
+              stream -> testFieldNorms(segmentReader, stream, failFast));
+          PartCheck<Status.TermIndexStatus> postings = startPart(executorService, infoStream, parts,
+              stream -> testPostings(segmentReader, stream, verbose, failFast));
+          PartCheck<Status.StoredFieldStatus> storedFields = startPart(executorService, infoStream, parts,
+              stream -> testStoredFields(segmentReader, stream, failFast));
+          PartCheck<Status.TermVectorStatus> termVectors = startPart(executorService, infoStream, parts,
+              stream -> testTermVectors(segmentReader, stream, verbose, crossCheckTermVectors, failFast));
+          PartCheck<Status.DocValuesStatus> docValues = startPart(executorService, infoStream, parts,
+              stream -> testDocValues(segmentReader, stream, failFast));
+          PartCheck<Status.PointsStatus> points = startPart(executorService, infoStream, parts,
+              stream -> testPoints(segmentReader, stream, failFast));
+          PartCheck<Status.IndexSortStatus> sort = startPart(executorService, infoStream, parts,
+              stream -> testSort(segmentReader, indexSort, stream, failFast));
 
-          // Rethrow the first exception we encountered
-          //  This will cause stats for failed segments to be incremented properly
-          if (segInfoStat.liveDocStatus.error != null) {
-            throw new RuntimeException("Live docs test failed");
-          } else if (segInfoStat.fieldInfoStatus.error != null) {
-            throw new RuntimeException("Field Info test failed");
-          } else if (segInfoStat.fieldNormStatus.error != null) {
-            throw new RuntimeException("Field Norm test failed");
-          } else if (segInfoStat.termIndexStatus.error != null) {
-            throw new RuntimeException("Term Index test failed");
-          } else if (segInfoStat.storedFieldStatus.error != null) {
-            throw new RuntimeException("Stored Field test failed");
-          } else if (segInfoStat.termVectorStatus.error != null) {
-            throw new RuntimeException("Term Vector test failed");
-          } else if (segInfoStat.docValuesStatus.error != null) {
-            throw new RuntimeException("DocValues test failed");
-          } else if (segInfoStat.pointsStatus.error != null) {
-            throw new RuntimeException("Points test failed");
+          try {
+            segInfoStat.liveDocStatus = liveDocs.finish(infoStream);
+            segInfoStat.fieldInfoStatus = fieldInfos.finish(infoStream);
+            segInfoStat.fieldNormStatus = fieldNorms.finish(infoStream);
+            segInfoStat.termIndexStatus = postings.finish(infoStream);
+            segInfoStat.storedFieldStatus = storedFields.finish(infoStream);
+            segInfoStat.termVectorStatus = termVectors.finish(infoStream);
+            segInfoStat.docValuesStatus = docValues.finish(infoStream);
+            segInfoStat.pointsStatus = points.finish(infoStream);
+            segInfoStat.indexSortStatus = sort.finish(infoStream);
+          } finally {
+            // a failed part leaves the others unfinished, and they must not outlive the reader
+            for (PartCheck<?> part : parts) {
+              part.abandon();
+            }
           }
         }
 
-        msg(infoStream, "");
-        
-        if (verbose) {
-          msg(infoStream, "detailed segment RAM usage: ");
-          msg(infoStream, Accountables.toString(reader));
-        }
-
-      } catch (Throwable t) {
-        if (failFast) {
-          throw IOUtils.rethrowAlways(t);
-        }
-        msg(infoStream, "FAILED");
-        String comment;
-        comment = "exorciseIndex() would remove reference to this segment";
-        msg(infoStream, "    WARNING: " + comment + "; full exception:");
-        if (infoStream != null)
-          t.printStackTrace(infoStream);
-        msg(infoStream, "");
-        result.totLoseDocCount += toLoseDocCount;
-        result.numBadSegments++;
-        continue;
-      } finally {
-        if (reader != null)
-          reader.close();
+        // Rethrow the first exception we encountered
+        //  This will cause stats for failed segments to be incremented properly
+        if (segInfoStat.liveDocStatus.error != null) {
+          throw new RuntimeException("Live docs test failed");
+        } else if (segInfoStat.fieldInfoStatus.error != null) {
+          throw new RuntimeException("Field Info test failed");
+        } else if (segInfoStat.fieldNormStatus.error != null) {
+          throw new RuntimeException("Field Norm test failed");
+        } else if (segInfoStat.termIndexStatus.error != null) {
+          throw new RuntimeException("Term Index test failed");
+        } else if (segInfoStat.storedFieldStatus.error != null) {
+          throw new RuntimeException("Stored Field test failed");
+        } else if (segInfoStat.termVectorStatus.error != null) {
+          throw new RuntimeException("Term Vector test failed");
+        } else if (segInfoStat.docValuesStatus.error != null) {
+          throw new RuntimeException("DocValues test failed");
+        } else if (segInfoStat.pointsStatus.error != null) {
+          throw new RuntimeException("Points test failed");
+        }
+      }
+
+      msg(infoStream, "");
+      
+      if (verbose) {
+        msg(infoStream, "detailed segment RAM usage: ");
+        msg(infoStream, Accountables.toString(reader));
       }
 
-      // Keeper
-      result.newSegments.add(info.clone());
-    }
-
-    if (0 == result.numBadSegments) {
-      result.clean = true;
-    } else
-      msg(infoStream, "WARNING: " + result.numBadSegments + " broken segments (containing " + result.totLoseDocCount + " documents) detected");
-
-    if ( ! (result.validCounter = (result.maxSegmentName < sis.counter))) {
-      result.clean = false;
-      result.newSegments.counter = result.maxSegmentName + 1; 
-      msg(infoStream, "ERROR: Next segment name counter " + sis.counter + " is not greater than max segment name " + result.maxSegmentName);
-    }
-    
-    if (result.clean) {
-      msg(infoStream, "No problems were detected with this index.\n");
+    } catch (Throwable t) {
+      if (failFast) {
+        throw IOUtils.rethrowAlways(t);
+      }
+      msg(infoStream, "FAILED");
+      String comment;
+      comment = "exorciseIndex() would remove reference to this segment";
+      msg(infoStream, "    WARNING: " + comment + "; full exception:");
+      if (infoStream != null)
+        t.printStackTrace(infoStream);
+      msg(infoStream, "");
+      segInfoStat.error = t;
+      segInfoStat.toLoseDocCount = toLoseDocCount;
+    } finally {
+      if (reader != null)
+        reader.close();
     }
 
-    msg(infoStream, String.format(Locale.ROOT, "Took %.3f sec total.", nsToSec(System.nanoTime()-startNS)));
-
-    return result;
+    return segInfoStat;
   }
 
   public static Status.IndexSortStatus testSort(CodecReader reader, Sort sort, PrintStream infoStream, boolean failFast) throws IOException {
@@ -2345,6 +2574,7 @@ public final class CheckIndex implements Closeable {
     List<String> onlySegments = new ArrayList<>();
     String indexPath = null;
     String dirImpl = null;
+    int threadCount;
     PrintStream out = null;
 
     public Options() {}
@@ -2424,6 +2654,15 @@ public final class CheckIndex implements Closeable {
         }
         i++;
         opts.dirImpl = args[i];
+      } else if ("-threadCount".equals(arg)) {
+        if (i == args.length - 1) {
+          throw new IllegalArgumentException("-threadCount requires a following number");
+        }
+        i++;
+        opts.threadCount = Integer.parseInt(args[i]);
+        if (opts.threadCount <= 0) {
+          throw new IllegalArgumentException("-threadCount requires a number larger than 0, but got: " + opts.threadCount);
+        }
       } else {
         if (opts.indexPath != null) {
           throw new IllegalArgumentException("ERROR: unexpected extra argument '" + args[i] + "'");
@@ -2435,7 +2674,7 @@ public final class CheckIndex implements Closeable {
 
     if (opts.indexPath == null) {
       throw new IllegalArgumentException("\nERROR: index path not specified" +
-                         "\nUsage: java org.trypticon.luceneupgrader.lucene6.internal.lucene.index.CheckIndex pathToIndex [-exorcise] [-crossCheckTermVectors] [-segment X] [-segment Y] [-dir-impl X]\n" +
+                         "\nUsage: java org.trypticon.luceneupgrader.lucene6.internal.lucene.index.CheckIndex pathToIndex [-exorcise] [-crossCheckTermVectors] [-segment X] [-segment Y] [-threadCount X] [-dir-impl X]\n" +
                          "\n" +
                          "  -exorcise: actually write a new segments_N file, removing any problematic segments\n" +
                          "  -fast: just verify file checksums, omitting logical integrity checks\n" + 
@@ -2445,6 +2684,9 @@ public final class CheckIndex implements Closeable {
                          "  -segment X: only check the specified segments.  This can be specified multiple\n" + 
                          "              times, to check more than one segment, eg '-segment _2 -segment _a'.\n" +
                          "              You can't use this with the -exorcise option\n" +
+                         "  -threadCount X: number of threads used to check index concurrently.\n" +
+                         "                  When not specified, this will default to the number of CPU cores.\n" +
+                         "                  When '-threadCount 1' is used, index checking will be performed sequentially.\n" +
                          "  -dir-impl X: use a specific " + FSDirectory.class.getSimpleName() + " implementation. " +
                          "If no package is specified the " + FSDirectory.class.getPackage().getName() + " package will be used.\n" +
                          "\n" +
@@ -2480,6 +2722,10 @@ public final class CheckIndex implements Closeable {
     setCrossCheckTermVectors(opts.doCrossCheckTermVectors);
     setChecksumsOnly(opts.doChecksumsOnly);
     setInfoStream(opts.out, opts.verbose);
+    // user provided thread count via command line argument, overriding the default with user provided value
+    if (opts.threadCount > 0) {
+      setThreadCount(opts.threadCount);
+    }
 
     Status result = checkIndex(opts.onlySegments);
     if (result.missingSegments) {
@@ -70,6 +70,7 @@ import org.trypticon.luceneupgrader.lucene6.internal.lucene.util.StringHelper;
 import org.trypticon.luceneupgrader.lucene6.internal.lucene.util.ThreadInterruptedException;
 import org.trypticon.luceneupgrader.lucene6.internal.lucene.util.UnicodeUtil;
 import org.trypticon.luceneupgrader.lucene6.internal.lucene.util.Version;
+import org.trypticon.luceneupgrader.UpgradeEvents;
 
 /*
  * Clarification: Check Points (and commits)
@@ -3921,6 +3922,8 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
     if (infoStream.isEnabled("IW")) {
       infoStream.message("IW", "create compound file");
     }
+    UpgradeEvents.CompoundFile event = new UpgradeEvents.CompoundFile();
+    event.begin();
     // Now merge all added files    
     boolean success = false;
     try {
@@ -3933,6 +3936,16 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
       }
     }
 
+    event.end();
+    if (event.shouldCommit()) {
+      event.segment = info.name;
+      event.fileCount = info.files().size();
+      for (String file : directory.getCreatedFiles()) {
+        event.bytesWritten += directory.fileLength(file);
+      }
+      event.commit();
+    }
+
     // Replace all previous files with the CFS/CFE files:
     info.setFiles(new HashSet<>(directory.getCreatedFiles()));
   }
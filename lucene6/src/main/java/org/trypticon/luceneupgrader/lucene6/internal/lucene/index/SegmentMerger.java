@@ -17,7 +17,9 @@
 package org.trypticon.luceneupgrader.lucene6.internal.lucene.index;
 
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.NoSuchFileException;
 import java.util.List;
 
 import org.trypticon.luceneupgrader.lucene6.internal.lucene.codecs.Codec;
@@ -30,6 +32,7 @@ import org.trypticon.luceneupgrader.lucene6.internal.lucene.codecs.TermVectorsWr
 import org.trypticon.luceneupgrader.lucene6.internal.lucene.store.Directory;
 import org.trypticon.luceneupgrader.lucene6.internal.lucene.store.IOContext;
 import org.trypticon.luceneupgrader.lucene6.internal.lucene.util.InfoStream;
+import org.trypticon.luceneupgrader.UpgradeEvents;
 
 final class SegmentMerger {
   private final Directory directory;
@@ -67,12 +70,17 @@ final class SegmentMerger {
     if (!shouldMerge()) {
       throw new IllegalStateException("Merge would result in 0 document segment");
     }
+    UpgradeEvents.SegmentMerge mergeEvent = new UpgradeEvents.SegmentMerge();
+    mergeEvent.begin();
+    UpgradeEvents.MergePart part;
     mergeFieldInfos();
     long t0 = 0;
     if (mergeState.infoStream.isEnabled("SM")) {
       t0 = System.nanoTime();
     }
+    part = beginPart();
     int numMerged = mergeFields();
+    endPart(part, "stored fields", numMerged);
     if (mergeState.infoStream.isEnabled("SM")) {
       long t1 = System.nanoTime();
       mergeState.infoStream.message("SM", ((t1-t0)/1000000) + " msec to merge stored fields [" + numMerged + " docs]");
@@ -84,7 +92,9 @@ final class SegmentMerger {
     if (mergeState.infoStream.isEnabled("SM")) {
       t0 = System.nanoTime();
     }
+    part = beginPart();
     mergeTerms(segmentWriteState);
+    endPart(part, "postings", numMerged);
     if (mergeState.infoStream.isEnabled("SM")) {
       long t1 = System.nanoTime();
       mergeState.infoStream.message("SM", ((t1-t0)/1000000) + " msec to merge postings [" + numMerged + " docs]");
@@ -94,7 +104,9 @@ final class SegmentMerger {
       t0 = System.nanoTime();
     }
     if (mergeState.mergeFieldInfos.hasDocValues()) {
+      part = beginPart();
       mergeDocValues(segmentWriteState);
+      endPart(part, "doc values", numMerged);
     }
     if (mergeState.infoStream.isEnabled("SM")) {
       long t1 = System.nanoTime();
@@ -105,7 +117,9 @@ final class SegmentMerger {
       t0 = System.nanoTime();
     }
     if (mergeState.mergeFieldInfos.hasPointValues()) {
+      part = beginPart();
       mergePoints(segmentWriteState);
+      endPart(part, "points", numMerged);
     }
     if (mergeState.infoStream.isEnabled("SM")) {
       long t1 = System.nanoTime();
@@ -116,7 +130,9 @@ final class SegmentMerger {
       if (mergeState.infoStream.isEnabled("SM")) {
         t0 = System.nanoTime();
       }
+      part = beginPart();
       mergeNorms(segmentWriteState);
+      endPart(part, "norms", numMerged);
       if (mergeState.infoStream.isEnabled("SM")) {
         long t1 = System.nanoTime();
         mergeState.infoStream.message("SM", ((t1-t0)/1000000) + " msec to merge norms [" + numMerged + " docs]");
@@ -127,7 +143,9 @@ final class SegmentMerger {
       if (mergeState.infoStream.isEnabled("SM")) {
         t0 = System.nanoTime();
       }
+      part = beginPart();
       numMerged = mergeVectors();
+      endPart(part, "term vectors", numMerged);
       if (mergeState.infoStream.isEnabled("SM")) {
         long t1 = System.nanoTime();
         mergeState.infoStream.message("SM", ((t1-t0)/1000000) + " msec to merge vectors [" + numMerged + " docs]");
@@ -139,15 +157,63 @@ final class SegmentMerger {
     if (mergeState.infoStream.isEnabled("SM")) {
       t0 = System.nanoTime();
     }
+    part = beginPart();
     codec.fieldInfosFormat().write(directory, mergeState.segmentInfo, "", mergeState.mergeFieldInfos, context);
+    endPart(part, "field infos", numMerged);
     if (mergeState.infoStream.isEnabled("SM")) {
       long t1 = System.nanoTime();
       mergeState.infoStream.message("SM", ((t1-t0)/1000000) + " msec to write field infos [" + numMerged + " docs]");
     }
 
+    mergeEvent.end();
+    if (mergeEvent.shouldCommit()) {
+      mergeEvent.segment = mergeState.segmentInfo.name;
+      mergeEvent.sourceSegmentCount = mergeState.maxDocs.length;
+      mergeEvent.documentCount = mergeState.segmentInfo.maxDoc();
+      mergeEvent.bytesWritten = segmentSizeInBytes();
+      mergeEvent.commit();
+    }
+
     return mergeState;
   }
 
+  /** Starts a Flight Recorder event for merging one part of the codec. */
+  private UpgradeEvents.MergePart beginPart() throws IOException {
+    UpgradeEvents.MergePart event = new UpgradeEvents.MergePart();
+    if (event.isEnabled()) {
+      // whatever the segment has gained by the end of the part was written by it
+      event.bytesWritten = -segmentSizeInBytes();
+    }
+    event.begin();
+    return event;
+  }
+
+  private void endPart(UpgradeEvents.MergePart event, String part, int documentCount) throws IOException {
+    event.end();
+    if (event.shouldCommit()) {
+      event.segment = mergeState.segmentInfo.name;
+      event.part = part;
+      event.documentCount = documentCount;
+      event.bytesWritten += segmentSizeInBytes();
+      event.commit();
+    }
+  }
+
+  /** Adds up the sizes of the new segment's files written so far, for Flight Recorder events. */
+  private long segmentSizeInBytes() throws IOException {
+    long size = 0;
+    for (String file : directory.listAll()) {
+      if (IndexFileNames.parseSegmentName(file).equals(mergeState.segmentInfo.name)) {
+        try {
+          size += directory.fileLength(file);
+        } catch (FileNotFoundException | NoSuchFileException e) {
+          // a temporary file, deleted since it was listed
+        }
+      }
+    }
+    return size;
+  }
+
   private void mergeDocValues(SegmentWriteState segmentWriteState) throws IOException {
     try (DocValuesConsumer consumer = codec.docValuesFormat().fieldsConsumer(segmentWriteState)) {
       consumer.merge(mergeState);
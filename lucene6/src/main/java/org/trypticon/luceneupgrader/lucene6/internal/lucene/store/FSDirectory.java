@@ -44,6 +44,7 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.trypticon.luceneupgrader.lucene6.internal.lucene.index.IndexFileNames;
 import org.trypticon.luceneupgrader.lucene6.internal.lucene.util.Constants;
 import org.trypticon.luceneupgrader.lucene6.internal.lucene.util.IOUtils;
+import org.trypticon.luceneupgrader.UpgradeEvents;
 
 public abstract class FSDirectory extends BaseDirectory {
 
@@ -157,9 +158,15 @@ public abstract class FSDirectory extends BaseDirectory {
   public void sync(Collection<String> names) throws IOException {
     ensureOpen();
 
+    UpgradeEvents.Sync event = new UpgradeEvents.Sync();
+    event.begin();
     for (String name : names) {
       fsync(name);
     }
+    event.end();
+    if (event.shouldCommit()) {
+      commitSyncEvent(event, names);
+    }
     maybeDeletePendingFiles();
   }
 
@@ -178,10 +185,30 @@ public abstract class FSDirectory extends BaseDirectory {
   public void syncMetaData() throws IOException {
     // TODO: to improve listCommits(), IndexFileDeleter could call this after deleting segments_Ns
     ensureOpen();
+    UpgradeEvents.Sync event = new UpgradeEvents.Sync();
+    event.begin();
     IOUtils.fsync(directory, true);
+    event.end();
+    if (event.shouldCommit()) {
+      commitSyncEvent(event, Collections.emptyList());
+    }
     maybeDeletePendingFiles();
   }
 
+  /** Fills in and commits a Flight Recorder event for syncing files, or the directory when there are none. */
+  private void commitSyncEvent(UpgradeEvents.Sync event, Collection<String> names) {
+    event.directory = directory.toString();
+    event.fileCount = names.size();
+    for (String name : names) {
+      try {
+        event.bytes += fileLength(name);
+      } catch (IOException e) {
+        // deleted since it was synced
+      }
+    }
+    event.commit();
+  }
+
   @Override
   public synchronized void close() throws IOException {
     isOpen = false;
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trypticon.luceneupgrader.lucene6.internal.lucene.store;
+
+import java.io.IOException;
+import org.trypticon.luceneupgrader.UpgradeMonitor;
+
+/**
+ * A {@link FilterDirectory} which reports the bytes written to its files to an {@link UpgradeMonitor}
+ * as they are written, so that the monitor can show the progress of an upgrade and throttle it.
+ */
+public final class MonitoredDirectory extends FilterDirectory {
+  private final UpgradeMonitor monitor;
+
+  public MonitoredDirectory(Directory in, UpgradeMonitor monitor) {
+    super(in);
+    this.monitor = monitor;
+  }
+
+  @Override
+  public IndexOutput createOutput(String name, IOContext context) throws IOException {
+    return new MonitoredIndexOutput(in.createOutput(name, context), monitor.outputOpened(name));
+  }
+
+  @Override
+  public IndexOutput createTempOutput(String prefix, String suffix, IOContext context)
+      throws IOException {
+    IndexOutput output = in.createTempOutput(prefix, suffix, context);
+    return new MonitoredIndexOutput(output, monitor.outputOpened(output.getName()));
+  }
+
+  /** Passes writes straight through, reporting them as it goes. */
+  private static final class MonitoredIndexOutput extends IndexOutput {
+    private final IndexOutput out;
+    private final UpgradeMonitor.Output output;
+
+    MonitoredIndexOutput(IndexOutput out, UpgradeMonitor.Output output) {
+      super("MonitoredIndexOutput(" + out + ")", out.getName());
+      this.out = out;
+      this.output = output;
+    }
+
+    @Override
+    public void writeByte(byte b) throws IOException {
+      out.writeByte(b);
+      output.written(1);
+    }
+
+    @Override
+    public void writeBytes(byte[] b, int offset, int length) throws IOException {
+      out.writeBytes(b, offset, length);
+      output.written(length);
+    }
+
+    @Override
+    public void writeShort(short i) throws IOException {
+      out.writeShort(i);
+      output.written(Short.BYTES);
+    }
+
+    @Override
+    public void writeInt(int i) throws IOException {
+      out.writeInt(i);
+      output.written(Integer.BYTES);
+    }
+
+    @Override
+    public void writeLong(long i) throws IOException {
+      out.writeLong(i);
+      output.written(Long.BYTES);
+    }
+
+    @Override
+    public long getFilePointer() {
+      return out.getFilePointer();
+    }
+
+    @Override
+    public long getChecksum() throws IOException {
+      return out.getChecksum();
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        out.close();
+      } finally {
+        output.closed();
+      }
+    }
+  }
+}
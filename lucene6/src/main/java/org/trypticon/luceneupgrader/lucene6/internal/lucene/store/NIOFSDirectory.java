@@ -43,6 +43,9 @@ public class NIOFSDirectory extends FSDirectory {
     ensureCanRead(name);
     Path path = getDirectory().resolve(name);
     FileChannel fc = FileChannel.open(path, StandardOpenOption.READ);
+    if (context.context == IOContext.Context.MERGE) {
+      return new ReadAheadIndexInput("ReadAheadIndexInput(path=\"" + path + "\")", fc);
+    }
     return new NIOFSIndexInput("NIOFSIndexInput(path=\"" + path + "\")", fc, context);
   }
   
@@ -0,0 +1,65 @@
+package org.trypticon.luceneupgrader.lucene7;
+
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.store.Directory;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.store.IOContext;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.store.IndexInput;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.store.IndexOutput;
+import org.trypticon.luceneupgrader.IndexFiles;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Reads and writes whole files through a Lucene 7 directory.
+ */
+class IndexFiles7 implements IndexFiles {
+
+    @Nonnull
+    private final Directory directory;
+
+    IndexFiles7(@Nonnull Directory directory) {
+        this.directory = directory;
+    }
+
+    @Nonnull
+    @Override
+    public List<String> listAll() throws IOException {
+        return Arrays.asList(directory.listAll());
+    }
+
+    @Override
+    public long fileLength(@Nonnull String name) throws IOException {
+        return directory.fileLength(name);
+    }
+
+    @Nonnull
+    @Override
+    public byte[] readFile(@Nonnull String name) throws IOException {
+        try (IndexInput input = directory.openInput(name, IOContext.READONCE)) {
+            byte[] content = new byte[Math.toIntExact(input.length())];
+            input.readBytes(content, 0, content.length);
+            return content;
+        }
+    }
+
+    @Override
+    public void writeFile(@Nonnull String name, @Nonnull byte[] content) throws IOException {
+        try (IndexOutput output = directory.createOutput(name, IOContext.DEFAULT)) {
+            output.writeBytes(content, content.length);
+        }
+    }
+
+    @Override
+    public void sync(@Nonnull Collection<String> names) throws IOException {
+        directory.sync(names);
+        directory.syncMetaData();
+    }
+
+    @Override
+    public void close() throws IOException {
+        directory.close();
+    }
+}
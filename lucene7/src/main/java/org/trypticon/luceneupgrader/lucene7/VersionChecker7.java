@@ -0,0 +1,117 @@
+package org.trypticon.luceneupgrader.lucene7;
+
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.codecs.CodecUtil;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.codecs.FieldInfosFormat;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.index.CheckIndex;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.index.DirectoryReader;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.index.FieldInfos;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.index.SegmentCommitInfo;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.index.SegmentInfos;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.store.Directory;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.store.IOContext;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.store.IndexInput;
+import org.trypticon.luceneupgrader.FileVerifier;
+import org.trypticon.luceneupgrader.IndexFingerprint;
+import org.trypticon.luceneupgrader.IndexStatistics;
+import org.trypticon.luceneupgrader.IndexStorage;
+import org.trypticon.luceneupgrader.VersionChecker;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Collection;
+
+/**
+ * Checks an index in Lucene 7 format.
+ */
+public class VersionChecker7 implements VersionChecker {
+
+    @Nonnull
+    private final IndexStorage storage;
+
+    public VersionChecker7(@Nonnull IndexStorage storage) {
+        this.storage = storage;
+    }
+
+    @Override
+    public boolean check(int threadCount, PrintStream output) throws IOException {
+        try (Directory directory = storage.openDirectory(IndexStorage.Area.INDEX, Directory.class);
+             CheckIndex checker = new CheckIndex(directory)) {
+            checker.setThreadCount(threadCount);
+            checker.setInfoStream(output);
+            return checker.checkIndex().clean;
+        }
+    }
+
+    @Override
+    public boolean verify(int threadCount, PrintStream output) throws IOException {
+        try (Directory directory = storage.openDirectory(IndexStorage.Area.INDEX, Directory.class)) {
+            Collection<String> fileNames = SegmentInfos.readLatestCommit(directory).files(true);
+            return FileVerifier.verify(fileNames, directory::fileLength, threadCount, output, fileName -> {
+                try (IndexInput input = directory.openInput(fileName, IOContext.READONCE)) {
+                    CodecUtil.checksumEntireFile(input);
+                }
+            });
+        }
+    }
+
+    @Override
+    public IndexFingerprint fingerprint(int threadCount) throws IOException {
+        try (Directory directory = storage.openDirectory(IndexStorage.Area.INDEX, Directory.class);
+             DirectoryReader reader = DirectoryReader.open(directory)) {
+            return Fingerprinter7.fingerprint(reader, threadCount);
+        }
+    }
+
+    @Override
+    public IndexStatistics statistics(int threadCount) throws IOException {
+        try (Directory directory = storage.openDirectory(IndexStorage.Area.INDEX, Directory.class)) {
+            SegmentInfos segmentInfos = SegmentInfos.readLatestCommit(directory);
+            return IndexStatistics.compute(segmentInfos.getGeneration(), segmentInfos.asList(), threadCount,
+                                           info -> describe(directory, info));
+        }
+    }
+
+    /**
+     * Gathers the statistics of a segment from its metadata and field infos.
+     */
+    @Nonnull
+    private static IndexStatistics.Segment describe(@Nonnull Directory directory, @Nonnull SegmentCommitInfo info)
+            throws IOException {
+        FieldInfos fieldInfos = readFieldInfos(directory, info);
+        IndexStatistics.Segment segment = new IndexStatistics.Segment(info.info.name)
+                .setCodec(info.info.getCodec().getName())
+                .setLuceneVersion(info.info.getVersion().toString())
+                .setMaxDoc(info.info.maxDoc())
+                .setDeletedDocCount(info.getDelCount() + info.getSoftDelCount())
+                .setCompoundFile(info.info.getUseCompoundFile())
+                .setHasDocValues(fieldInfos.hasDocValues())
+                .setHasPoints(fieldInfos.hasPointValues())
+                .setHasTermVectors(fieldInfos.hasVectors());
+        for (String fileName : info.files()) {
+            segment.addFile(fileName, directory.fileLength(fileName));
+        }
+        return segment;
+    }
+
+    /**
+     * Reads the field infos of a segment the way a segment reader would, taking updates into account.
+     */
+    @Nonnull
+    private static FieldInfos readFieldInfos(@Nonnull Directory directory, @Nonnull SegmentCommitInfo info)
+            throws IOException {
+        FieldInfosFormat format = info.info.getCodec().fieldInfosFormat();
+        if (info.hasFieldUpdates()) {
+            // Updated field infos are always written outside the compound file.
+            String segmentSuffix = Long.toString(info.getFieldInfosGen(), Character.MAX_RADIX);
+            return format.read(directory, info.info, segmentSuffix, IOContext.READONCE);
+        } else if (info.info.getUseCompoundFile()) {
+            try (Directory compoundDirectory = info.info.getCodec().compoundFormat()
+                    .getCompoundReader(directory, info.info, IOContext.READONCE)) {
+                return format.read(compoundDirectory, info.info, "", IOContext.READONCE);
+            }
+        } else {
+            return format.read(directory, info.info, "", IOContext.READONCE);
+        }
+    }
+}
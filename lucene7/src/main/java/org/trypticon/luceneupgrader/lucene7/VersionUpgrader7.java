@@ -0,0 +1,383 @@
+package org.trypticon.luceneupgrader.lucene7;
+
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.analysis.Analyzer;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.codecs.Codec;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.codecs.FilterCodec;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.codecs.PointsFormat;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.codecs.PointsReader;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.codecs.PointsWriter;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.codecs.lucene60.Lucene60PointsReader;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.codecs.lucene60.Lucene60PointsWriter;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.index.*;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.store.AccountingDirectory;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.store.ByteBuffersDirectory;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.store.ChecksumVerifyingDirectory;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.store.Directory;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.store.FilterDirectory;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.store.IOContext;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.store.IndexInput;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.store.IndexOutput;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.store.MergeInfo;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.store.MonitoredDirectory;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.util.Version;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.util.bkd.BKDWriter;
+import org.trypticon.luceneupgrader.FileSystemIndexStorage;
+import org.trypticon.luceneupgrader.HeapGovernor;
+import org.trypticon.luceneupgrader.IOAccounting;
+import org.trypticon.luceneupgrader.InMemoryIndex;
+import org.trypticon.luceneupgrader.IndexStorage;
+import org.trypticon.luceneupgrader.IndexUpgraderConfig;
+import org.trypticon.luceneupgrader.InfoStream;
+import org.trypticon.luceneupgrader.LuceneVersion;
+import org.trypticon.luceneupgrader.MergePartExecutor;
+import org.trypticon.luceneupgrader.UpgradeMonitor;
+import org.trypticon.luceneupgrader.VersionUpgrader;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Upgrades an index to Lucene 7 format.
+ */
+public class VersionUpgrader7 implements VersionUpgrader {
+
+    @Nonnull
+    private final IndexStorage storage;
+
+    @Nonnull
+    private final InfoStream infoStream;
+
+    @Nonnull
+    private final IndexUpgraderConfig config;
+
+    @Nullable
+    private UpgradeMonitor monitor;
+
+    @Nullable
+    private HeapGovernor.Grant heapGrant;
+
+    private boolean compoundFiles = true;
+
+    public VersionUpgrader7(@Nonnull Path path, @Nonnull InfoStream infoStream) {
+        this(new FileSystemIndexStorage(path), infoStream);
+    }
+
+    public VersionUpgrader7(@Nonnull IndexStorage storage, @Nonnull InfoStream infoStream) {
+        this(storage, infoStream, new IndexUpgraderConfig());
+    }
+
+    public VersionUpgrader7(@Nonnull IndexStorage storage, @Nonnull InfoStream infoStream,
+                            @Nonnull IndexUpgraderConfig config) {
+        this.storage = storage;
+        this.infoStream = infoStream;
+        this.config = config;
+    }
+
+    @Override
+    public void setMonitor(@Nonnull UpgradeMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    @Override
+    public void setHeapGrant(@Nonnull HeapGovernor.Grant heapGrant) {
+        this.heapGrant = heapGrant;
+    }
+
+    @Override
+    public void setCompoundFiles(boolean compoundFiles) {
+        this.compoundFiles = compoundFiles;
+    }
+
+    @Override
+    public void upgrade() throws IOException {
+        storage.clearScratch();
+
+        try (Directory sourceDirectory = storage.openDirectory(IndexStorage.Area.INDEX, Directory.class);
+             Directory destinationDirectory = storage.openDirectory(IndexStorage.Area.SCRATCH, Directory.class)) {
+            upgrade(sourceDirectory, destinationDirectory);
+        }
+
+        storage.promoteScratch();
+    }
+
+    @Override
+    public void upgrade(@Nonnull InMemoryIndex index) throws IOException {
+        try (Directory sourceDirectory = new ByteBuffersDirectory();
+             Directory destinationDirectory = new ByteBuffersDirectory()) {
+            copyIn(index, sourceDirectory);
+            upgrade(sourceDirectory, destinationDirectory);
+            copyOut(destinationDirectory, index);
+        }
+    }
+
+    @Nonnull
+    @Override
+    public Collection<String> listCommitFiles() throws IOException {
+        try (Directory directory = storage.openDirectory(IndexStorage.Area.INDEX, Directory.class)) {
+            return SegmentInfos.readLatestCommit(directory).files(true);
+        }
+    }
+
+    private void upgrade(Directory sourceDirectory, Directory destinationDirectory) throws IOException {
+        int threadCount = monitor != null ? monitor.getThreadCount() : config.getThreadCount();
+        try (MergePartExecutor partExecutor = new MergePartExecutor(threadCount)) {
+            // Through the monitor, changes to the thread count reach the merge already in progress.
+            if (monitor != null) {
+                monitor.setPartExecutor(partExecutor);
+            }
+            try {
+                upgrade(sourceDirectory, destinationDirectory, partExecutor);
+            } finally {
+                if (monitor != null) {
+                    monitor.setPartExecutor(null);
+                }
+            }
+        }
+    }
+
+    private void upgrade(Directory sourceDirectory, Directory destinationDirectory,
+                         @Nonnull Executor partExecutor) throws IOException {
+        IndexWriterConfig indexWriterConfig = new IndexWriterConfig(new FailAnalyzer());
+        LogByteSizeMergePolicy mergePolicy = new LogByteSizeMergePolicy();
+        if (!compoundFiles) {
+            mergePolicy.setNoCFSRatio(0.0);
+        }
+        indexWriterConfig.setMergePolicy(mergePolicy);
+        indexWriterConfig.setMergeScheduler(new PartParallelMergeScheduler(partExecutor));
+        indexWriterConfig.setInfoStream(new AdaptedInfoStream(infoStream));
+        if (heapGrant != null && heapGrant.getShortfall() > 0) {
+            indexWriterConfig.setCodec(new PointsSortHeapCodec(indexWriterConfig.getCodec(),
+                                                               heapGrant.getPointsSortHeapMB()));
+        }
+        indexWriterConfig.setIndexCreatedVersionMajor(7);
+
+        Consumer<IOAccounting> accountingListener = config.getIOAccountingListener();
+        IOAccounting accounting = new IOAccounting(LuceneVersion.VERSION_7);
+        Directory readDirectory = new MergeSourceDirectory(sourceDirectory);
+        AccountingDirectory accountingDestination = null;
+        if (accountingListener != null) {
+            // Outside the merge source directory, so that reads are put down to the context the codec asked for.
+            AccountingDirectory accountingSource = new AccountingDirectory(readDirectory, accounting);
+            accounting.setSizeBefore(accountingSource.sizeInBytes());
+            readDirectory = accountingSource;
+            accountingDestination = new AccountingDirectory(destinationDirectory, accounting);
+            destinationDirectory = accountingDestination;
+        }
+        if (monitor != null) {
+            destinationDirectory = new MonitoredDirectory(destinationDirectory, monitor);
+        }
+
+        ChecksumVerifyingDirectory verifyingDirectory = null;
+        if (config.isFusedChecksums()) {
+            verifyingDirectory = new ChecksumVerifyingDirectory(readDirectory);
+            readDirectory = verifyingDirectory;
+        }
+
+        try (IndexReader reader = DirectoryReader.open(readDirectory);
+             IndexWriter writer = new IndexWriter(destinationDirectory, indexWriterConfig)) {
+
+            CodecReader[] codecReaders = reader.leaves().stream()
+                .map(context -> new VersionOverridingCodecReader((CodecReader) context.reader()))
+                .toArray(CodecReader[]::new);
+
+            accounting.setPhase(IOAccounting.Phase.MERGE);
+            if (monitor != null) {
+                monitor.setMergeHeap(() -> mergeHeapBytes(writer, codecReaders));
+            }
+            try {
+                writer.addIndexes(codecReaders);
+            } finally {
+                if (monitor != null) {
+                    monitor.setMergeHeap(null);
+                }
+            }
+
+            if (verifyingDirectory != null) {
+                accounting.setPhase(IOAccounting.Phase.VERIFY);
+                // The merge skipped its up-front integrity checks, so nothing can be committed until this passes.
+                try {
+                    verifyingDirectory.verifyChecksums();
+                } catch (IOException | RuntimeException e) {
+                    writer.rollback();
+                    throw e;
+                }
+            }
+
+            accounting.setPhase(IOAccounting.Phase.COMMIT);
+            writer.commit();
+        }
+
+        if (accountingDestination != null) {
+            accounting.setSizeAfter(accountingDestination.sizeInBytes());
+            accountingListener.accept(accounting);
+        }
+    }
+
+    /**
+     * Merges one merge at a time, as {@link SerialMergeScheduler} does, but with the parts of the codec
+     * within each merge side by side on the executor.
+     */
+    private static class PartParallelMergeScheduler extends SerialMergeScheduler {
+        @Nonnull
+        private final Executor partExecutor;
+
+        private PartParallelMergeScheduler(@Nonnull Executor partExecutor) {
+            this.partExecutor = partExecutor;
+        }
+
+        @Override
+        public Executor getIntraMergeExecutor(MergePolicy.OneMerge merge) {
+            return partExecutor;
+        }
+    }
+
+    /**
+     * Adds up the heap held by the merge, as the writer and the source readers account for it.
+     */
+    private static long mergeHeapBytes(IndexWriter writer, CodecReader[] readers) {
+        long size = writer.ramBytesUsed();
+        for (CodecReader reader : readers) {
+            size += reader.ramBytesUsed();
+        }
+        return size;
+    }
+
+    /**
+     * Moves the files of the in-memory index into the directory.
+     */
+    private static void copyIn(InMemoryIndex index, Directory directory) throws IOException {
+        for (String name : new ArrayList<>(index.getFileNames())) {
+            byte[] content = index.removeFile(name);
+            try (IndexOutput output = directory.createOutput(name, IOContext.DEFAULT)) {
+                output.writeBytes(content, content.length);
+            }
+        }
+    }
+
+    /**
+     * Replaces the files of the in-memory index with those in the directory.
+     */
+    private static void copyOut(Directory directory, InMemoryIndex index) throws IOException {
+        index.clear();
+        for (String name : directory.listAll()) {
+            try (IndexInput input = directory.openInput(name, IOContext.READONCE)) {
+                byte[] content = new byte[Math.toIntExact(input.length())];
+                input.readBytes(content, 0, content.length);
+                index.putFile(name, content);
+            }
+        }
+    }
+
+    /**
+     * Adapts Lucene's info stream to pass messages to ours.
+     */
+    private static class AdaptedInfoStream extends org.trypticon.luceneupgrader.lucene7.internal.lucene.util.InfoStream {
+        private final InfoStream infoStream;
+
+        private AdaptedInfoStream(InfoStream infoStream) {
+            this.infoStream = infoStream;
+        }
+
+        @Override
+        public void message(String component, String message) {
+            infoStream.message(component, message);
+        }
+
+        @Override
+        public boolean isEnabled(String component) {
+            return infoStream.isEnabled(component);
+        }
+
+        @Override
+        public void close() throws IOException {
+            //
+        }
+    }
+
+    /**
+     * Treats every read of the source index as a merge read, since the source is only ever read
+     * in order to be copied into the destination. This gets us the read-ahead inputs.
+     */
+    private static class MergeSourceDirectory extends FilterDirectory {
+        private static final IOContext MERGE_CONTEXT = new IOContext(new MergeInfo(-1, -1, false, -1));
+
+        private MergeSourceDirectory(Directory in) {
+            super(in);
+        }
+
+        @Override
+        public IndexInput openInput(String name, IOContext context) throws IOException {
+            return in.openInput(name, MERGE_CONTEXT);
+        }
+    }
+
+    private static class VersionOverridingCodecReader extends FilterCodecReader {
+        private final LeafMetaData metadata;
+
+        private VersionOverridingCodecReader(CodecReader in) {
+            super(in);
+
+            LeafMetaData superMetadata = super.getMetaData();
+            metadata = new LeafMetaData(7, Version.LUCENE_7_0_0, superMetadata.getSort());
+        }
+
+        @Override
+        public LeafMetaData getMetaData() {
+            return metadata;
+        }
+
+        @Override
+        public CacheHelper getReaderCacheHelper() {
+            return in.getReaderCacheHelper();
+        }
+
+        @Override
+        public CacheHelper getCoreCacheHelper() {
+            return in.getCoreCacheHelper();
+        }
+    }
+
+    /**
+     * Writes with the given codec, but sorts points in a smaller buffer so that they spill to disk sooner.
+     * It keeps the codec's name, and the format written is the same, so the index reads as usual.
+     */
+    private static class PointsSortHeapCodec extends FilterCodec {
+        private final PointsFormat pointsFormat;
+
+        private PointsSortHeapCodec(Codec delegate, double maxMBSortInHeap) {
+            super(delegate.getName(), delegate);
+            pointsFormat = new PointsFormat() {
+                @Override
+                public PointsWriter fieldsWriter(SegmentWriteState state) throws IOException {
+                    return new Lucene60PointsWriter(state, BKDWriter.DEFAULT_MAX_POINTS_IN_LEAF_NODE, maxMBSortInHeap);
+                }
+
+                @Override
+                public PointsReader fieldsReader(SegmentReadState state) throws IOException {
+                    return new Lucene60PointsReader(state);
+                }
+            };
+        }
+
+        @Override
+        public PointsFormat pointsFormat() {
+            return pointsFormat;
+        }
+    }
+
+    /**
+     * An analyser which deliberately fails, because we don't want to be analysing text at all.
+     */
+    private static class FailAnalyzer extends Analyzer {
+        @Override
+        protected TokenStreamComponents createComponents(String s) {
+            throw new UnsupportedOperationException("This analyser isn't supported for indexing");
+        }
+    }
+}
@@ -26,6 +26,7 @@ import org.trypticon.luceneupgrader.lucene7.internal.lucene.index.IndexFormatToo
 import org.trypticon.luceneupgrader.lucene7.internal.lucene.index.IndexFormatTooOldException;
 import org.trypticon.luceneupgrader.lucene7.internal.lucene.store.BufferedChecksumIndexInput;
 import org.trypticon.luceneupgrader.lucene7.internal.lucene.store.ChecksumIndexInput;
+import org.trypticon.luceneupgrader.lucene7.internal.lucene.store.ChecksumVerifyingIndexInput;
 import org.trypticon.luceneupgrader.lucene7.internal.lucene.store.DataInput;
 import org.trypticon.luceneupgrader.lucene7.internal.lucene.store.DataOutput;
 import org.trypticon.luceneupgrader.lucene7.internal.lucene.store.IndexInput;
@@ -271,6 +272,10 @@ public final class CodecUtil {
   }
   
   public static long checksumEntireFile(IndexInput input) throws IOException {
+    if (input instanceof ChecksumVerifyingIndexInput) {
+      // The bytes are checksummed as they are read and verified in one go by the directory.
+      return retrieveChecksum(input.clone());
+    }
     IndexInput clone = input.clone();
     clone.seek(0);
     ChecksumIndexInput in = new BufferedChecksumIndexInput(clone);
@@ -67,6 +67,27 @@ public class MergeState {
 
   public boolean needsIndexSort;
 
+  // a copy of existing state restricted to some of the fields, since the merges of different
+  // formats may be reading the original at the same time
+  public MergeState(MergeState in, FieldInfos mergeFieldInfos, FieldInfos[] fieldInfos,
+                    FieldsProducer[] fieldsProducers) {
+    this.docMaps = in.docMaps;
+    this.leafDocMaps = in.leafDocMaps;
+    this.segmentInfo = in.segmentInfo;
+    this.mergeFieldInfos = mergeFieldInfos;
+    this.storedFieldsReaders = in.storedFieldsReaders;
+    this.termVectorsReaders = in.termVectorsReaders;
+    this.normsProducers = in.normsProducers;
+    this.docValuesProducers = in.docValuesProducers;
+    this.fieldInfos = fieldInfos;
+    this.liveDocs = in.liveDocs;
+    this.fieldsProducers = fieldsProducers;
+    this.pointsReaders = in.pointsReaders;
+    this.maxDocs = in.maxDocs;
+    this.infoStream = in.infoStream;
+    this.needsIndexSort = in.needsIndexSort;
+  }
+
   MergeState(List<CodecReader> originalReaders, SegmentInfo segmentInfo, InfoStream infoStream) throws IOException {
 
     this.infoStream = infoStream;
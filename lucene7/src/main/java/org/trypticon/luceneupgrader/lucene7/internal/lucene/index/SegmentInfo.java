@@ -244,11 +244,12 @@ public final class SegmentInfo {
     return name + IndexFileNames.stripSegmentName(file);
   }
   
-  public String getAttribute(String key) {
+  public synchronized String getAttribute(String key) {
     return attributes.get(key);
   }
   
-  public String putAttribute(String key, String value) {
+  // formats merged side by side may put attributes at the same time
+  public synchronized String putAttribute(String key, String value) {
     return attributes.put(key, value);
   }
   
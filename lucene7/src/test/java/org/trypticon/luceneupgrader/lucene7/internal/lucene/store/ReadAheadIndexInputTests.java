@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trypticon.luceneupgrader.lucene7.internal.lucene.store;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.EOFException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for {@link ReadAheadIndexInput}. */
+public class ReadAheadIndexInputTests {
+  /** Long enough for two window swaps and a short last window. */
+  private static final int FILE_LENGTH = 2 * ReadAheadIndexInput.WINDOW_SIZE + 12345;
+
+  private Path temp;
+  private Path file;
+  private byte[] content;
+
+  @Before
+  public void setUp() throws Exception {
+    temp = Files.createTempDirectory("readahead");
+    file = temp.resolve("file");
+    content = new byte[FILE_LENGTH];
+    new Random(42).nextBytes(content);
+    Files.write(file, content);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    Files.deleteIfExists(file);
+    Files.deleteIfExists(temp);
+  }
+
+  private ReadAheadIndexInput open() throws Exception {
+    return new ReadAheadIndexInput("test", FileChannel.open(file, StandardOpenOption.READ));
+  }
+
+  @Test
+  public void testSequentialReadAcrossWindows() throws Exception {
+    try (ReadAheadIndexInput input = open()) {
+      // An odd chunk size, so that reads straddle the window boundaries.
+      byte[] read = new byte[FILE_LENGTH];
+      int pos = 0;
+      while (pos < FILE_LENGTH) {
+        int length = Math.min(7001, FILE_LENGTH - pos);
+        input.readBytes(read, pos, length);
+        pos += length;
+      }
+      assertArrayEquals(content, read);
+      assertEquals(FILE_LENGTH, input.getFilePointer());
+    }
+  }
+
+  @Test
+  public void testSequentialReadOfLargeBlocks() throws Exception {
+    try (ReadAheadIndexInput input = open()) {
+      // Larger than the buffer, so they bypass it and are served from the windows directly.
+      byte[] read = new byte[FILE_LENGTH];
+      int pos = 0;
+      while (pos < FILE_LENGTH) {
+        int length = Math.min(300000, FILE_LENGTH - pos);
+        input.readBytes(read, pos, length);
+        pos += length;
+      }
+      assertArrayEquals(content, read);
+    }
+  }
+
+  @Test
+  public void testSeekBetweenWindows() throws Exception {
+    try (ReadAheadIndexInput input = open()) {
+      byte[] read = new byte[ReadAheadIndexInput.BUFFER_SIZE * 4];
+      input.readBytes(read, 0, read.length);
+
+      // Back into the window being consumed, then forward past the one being prefetched.
+      long[] positions = {
+        100, ReadAheadIndexInput.WINDOW_SIZE - 1, 2L * ReadAheadIndexInput.WINDOW_SIZE + 5, 17
+      };
+      for (long position : positions) {
+        input.seek(position);
+        assertEquals(content[(int) position], input.readByte());
+        assertEquals(position + 1, input.getFilePointer());
+      }
+    }
+  }
+
+  @Test
+  public void testSlice() throws Exception {
+    long offset = ReadAheadIndexInput.WINDOW_SIZE - 1000;
+    int length = ReadAheadIndexInput.WINDOW_SIZE + 2000;
+    try (ReadAheadIndexInput input = open()) {
+      IndexInput slice = input.slice("slice", offset, length);
+      assertEquals(length, slice.length());
+      assertEquals(0, slice.getFilePointer());
+
+      byte[] read = new byte[length];
+      for (int pos = 0; pos < length; pos += 1000) {
+        slice.readBytes(read, pos, Math.min(1000, length - pos));
+      }
+      assertArrayEquals(
+          Arrays.copyOfRange(content, (int) offset, (int) offset + length), read);
+
+      slice.seek(10);
+      assertEquals(content[(int) offset + 10], slice.readByte());
+      assertEquals(11, slice.getFilePointer());
+
+      // The slice reads through the same channel without moving its parent.
+      assertEquals(0, input.getFilePointer());
+      assertEquals(content[0], input.readByte());
+    }
+  }
+
+  @Test
+  public void testClone() throws Exception {
+    try (ReadAheadIndexInput input = open()) {
+      byte[] read = new byte[50000];
+      input.readBytes(read, 0, read.length);
+
+      IndexInput clone = input.clone();
+      assertEquals(input.getFilePointer(), clone.getFilePointer());
+
+      byte[] fromClone = new byte[ReadAheadIndexInput.WINDOW_SIZE];
+      clone.readBytes(fromClone, 0, fromClone.length);
+      assertArrayEquals(
+          Arrays.copyOfRange(content, 50000, 50000 + fromClone.length), fromClone);
+
+      // The original carries on from where it was.
+      assertEquals(50000, input.getFilePointer());
+      byte[] fromInput = new byte[1000];
+      input.readBytes(fromInput, 0, fromInput.length);
+      assertArrayEquals(Arrays.copyOfRange(content, 50000, 51000), fromInput);
+    }
+  }
+
+  @Test
+  public void testEOFAtEnd() throws Exception {
+    try (ReadAheadIndexInput input = open()) {
+      input.seek(FILE_LENGTH - 1);
+      assertEquals(content[FILE_LENGTH - 1], input.readByte());
+      assertThrows(EOFException.class, input::readByte);
+
+      input.seek(FILE_LENGTH);
+      assertEquals(FILE_LENGTH, input.getFilePointer());
+      assertThrows(EOFException.class, input::readByte);
+    }
+  }
+
+  @Test
+  public void testEOFPastEnd() throws Exception {
+    try (ReadAheadIndexInput input = open()) {
+      assertThrows(EOFException.class, () -> input.seek(FILE_LENGTH + 1));
+
+      input.seek(FILE_LENGTH - 10);
+      byte[] read = new byte[20];
+      assertThrows(EOFException.class, () -> input.readBytes(read, 0, read.length));
+    }
+  }
+
+  @Test
+  public void testOnlyMergeReadsReadAhead() throws Exception {
+    try (Directory directory = new NIOFSDirectory(temp)) {
+      IOContext merge = new IOContext(new MergeInfo(1000, FILE_LENGTH, false, 1));
+      try (IndexInput input = directory.openInput("file", merge)) {
+        assertTrue(input instanceof ReadAheadIndexInput);
+        byte[] read = new byte[FILE_LENGTH];
+        input.readBytes(read, 0, read.length);
+        assertArrayEquals(content, read);
+      }
+      try (IndexInput input = directory.openInput("file", IOContext.DEFAULT)) {
+        assertFalse(input instanceof ReadAheadIndexInput);
+      }
+    }
+  }
+}
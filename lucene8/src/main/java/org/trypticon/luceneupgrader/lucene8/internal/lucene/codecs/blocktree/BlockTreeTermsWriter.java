@@ -17,9 +17,12 @@
 package org.trypticon.luceneupgrader.lucene8.internal.lucene.codecs.blocktree;
 
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.trypticon.luceneupgrader.lucene8.internal.lucene.codecs.BlockTermState;
 import org.trypticon.luceneupgrader.lucene8.internal.lucene.codecs.CodecUtil;
@@ -37,6 +40,9 @@ import org.trypticon.luceneupgrader.lucene8.internal.lucene.index.TermsEnum;
 import org.trypticon.luceneupgrader.lucene8.internal.lucene.store.ByteArrayDataOutput;
 import org.trypticon.luceneupgrader.lucene8.internal.lucene.store.ByteBuffersDataOutput;
 import org.trypticon.luceneupgrader.lucene8.internal.lucene.store.DataOutput;
+import org.trypticon.luceneupgrader.lucene8.internal.lucene.store.Directory;
+import org.trypticon.luceneupgrader.lucene8.internal.lucene.store.IOContext;
+import org.trypticon.luceneupgrader.lucene8.internal.lucene.store.IndexInput;
 import org.trypticon.luceneupgrader.lucene8.internal.lucene.store.IndexOutput;
 import org.trypticon.luceneupgrader.lucene8.internal.lucene.store.RAMOutputStream;
 import org.trypticon.luceneupgrader.lucene8.internal.lucene.util.ArrayUtil;
@@ -54,6 +60,7 @@ import org.trypticon.luceneupgrader.lucene8.internal.lucene.util.fst.Builder;
 import org.trypticon.luceneupgrader.lucene8.internal.lucene.util.fst.ByteSequenceOutputs;
 import org.trypticon.luceneupgrader.lucene8.internal.lucene.util.fst.BytesRefFSTEnum;
 import org.trypticon.luceneupgrader.lucene8.internal.lucene.util.fst.FST;
+import org.trypticon.luceneupgrader.lucene8.internal.lucene.util.fst.OffHeapFSTStore;
 import org.trypticon.luceneupgrader.lucene8.internal.lucene.util.fst.Util;
 
 /*
@@ -92,6 +99,10 @@ public final class BlockTreeTermsWriter extends FieldsConsumer {
 
   public final static int DEFAULT_MAX_BLOCK_SIZE = 48;
 
+  /** When the terms index is built off the heap, how large the indexes of a block's sub-blocks must be
+   *  between them for the block's own index to be built into a temporary file rather than on the heap. */
+  static final long OFF_HEAP_INDEX_MIN_BYTES = 256 * 1024;
+
   //public static boolean DEBUG = false;
   //public static boolean DEBUG2 = false;
 
@@ -109,11 +120,34 @@ public final class BlockTreeTermsWriter extends FieldsConsumer {
 
   private final List<ByteBuffersDataOutput> fields = new ArrayList<>();
 
+  private final Directory directory;
+  private final String segment;
+  private final IOContext context;
+  private final boolean offHeapIndex;
+
+  // Indexes of blocks which were built into temporary files, until their parent blocks copy them
+  private final Map<FST<BytesRef>, SpilledIndex> spilledIndices = new IdentityHashMap<>();
+
   public BlockTreeTermsWriter(SegmentWriteState state,
                               PostingsWriterBase postingsWriter,
                               int minItemsInBlock,
                               int maxItemsInBlock)
     throws IOException
+  {
+    this(state, postingsWriter, minItemsInBlock, maxItemsInBlock, false);
+  }
+
+  /** Create a new writer which, if {@code offHeapIndex} is true, keeps the terms index off the heap
+   *  as it's built. The index of each field is written to the index file node by node, and the index
+   *  of a block whose sub-blocks have large indexes goes to a temporary file until its parent block
+   *  copies it. Suffixes aren't shared in indexes built this way, so the index file is a little
+   *  larger, but the files are read exactly the same way. */
+  public BlockTreeTermsWriter(SegmentWriteState state,
+                              PostingsWriterBase postingsWriter,
+                              int minItemsInBlock,
+                              int maxItemsInBlock,
+                              boolean offHeapIndex)
+    throws IOException
   {
     validateSettings(minItemsInBlock,
                      maxItemsInBlock);
@@ -121,6 +155,11 @@ public final class BlockTreeTermsWriter extends FieldsConsumer {
     this.minItemsInBlock = minItemsInBlock;
     this.maxItemsInBlock = maxItemsInBlock;
 
+    this.directory = state.directory;
+    this.segment = state.segmentInfo.name;
+    this.context = state.context;
+    this.offHeapIndex = offHeapIndex;
+
     this.maxDoc = state.segmentInfo.maxDoc();
     this.fieldInfos = state.fieldInfos;
     this.postingsWriter = postingsWriter;
@@ -281,7 +320,11 @@ public final class BlockTreeTermsWriter extends FieldsConsumer {
       return "BLOCK: prefix=" + brToString(prefix);
     }
 
-    public void compileIndex(List<PendingBlock> blocks, RAMOutputStream scratchBytes, IntsRefBuilder scratchIntsRef) throws IOException {
+    /** Compiles the index of the given blocks, together with those of their sub-blocks. If {@code indexOutput}
+     *  isn't null, the nodes are written there as they're finished, and the index can only be read back from
+     *  wherever that output went. */
+    public void compileIndex(List<PendingBlock> blocks, RAMOutputStream scratchBytes, IntsRefBuilder scratchIntsRef,
+                             DataOutput indexOutput) throws IOException {
 
       assert (isFloor && blocks.size() > 1) || (isFloor == false && blocks.size() == 1): "isFloor=" + isFloor + " blocks=" + blocks;
       assert this == blocks.get(0);
@@ -307,9 +350,10 @@ public final class BlockTreeTermsWriter extends FieldsConsumer {
       }
 
       final ByteSequenceOutputs outputs = ByteSequenceOutputs.getSingleton();
+      // Suffixes can't be shared with nodes which have already left the heap
       final Builder<BytesRef> indexBuilder = new Builder<>(FST.INPUT_TYPE.BYTE1,
-                                                           0, 0, true, false, Integer.MAX_VALUE,
-                                                           outputs, true, 15);
+                                                           0, 0, indexOutput == null, false, Integer.MAX_VALUE,
+                                                           outputs, true, 15, indexOutput);
       //if (DEBUG) {
       //  System.out.println("  compile index for prefix=" + prefix);
       //}
@@ -512,7 +556,11 @@ public final class BlockTreeTermsWriter extends FieldsConsumer {
 
       assert firstBlock.isFloor || newBlocks.size() == 1;
 
-      firstBlock.compileIndex(newBlocks, scratchBytes, scratchIntsRef);
+      if (offHeapIndex) {
+        compileIndexOffHeap(firstBlock, prefixLength == 0);
+      } else {
+        firstBlock.compileIndex(newBlocks, scratchBytes, scratchIntsRef, null);
+      }
 
       // Remove slice from the top of the pending stack, that we just wrote:
       pending.subList(pending.size()-count, pending.size()).clear();
@@ -832,9 +880,69 @@ public final class BlockTreeTermsWriter extends FieldsConsumer {
       lastTerm.copyBytes(text);
     }
 
+    /** Compiles the index of the blocks just written without holding it on the heap where that's worth it.
+     *  The root block's index goes straight to the index file. A block whose sub-blocks have large indexes
+     *  between them has its own index built into a temporary file and read from there, and the others are
+     *  built on the heap as usual. */
+    private void compileIndexOffHeap(PendingBlock firstBlock, boolean isRoot) throws IOException {
+      List<FST<BytesRef>> subIndices = new ArrayList<>();
+      long subIndicesBytes = 0;
+      for (PendingBlock block : newBlocks) {
+        if (block.subIndices != null) {
+          for (FST<BytesRef> subIndex : block.subIndices) {
+            subIndices.add(subIndex);
+            SpilledIndex spilled = spilledIndices.get(subIndex);
+            subIndicesBytes += spilled != null ? spilled.numBytes : subIndex.ramBytesUsed();
+          }
+        }
+      }
+
+      if (isRoot) {
+        firstBlock.compileIndex(newBlocks, scratchBytes, scratchIntsRef, indexOut);
+      } else if (subIndicesBytes >= OFF_HEAP_INDEX_MIN_BYTES) {
+        spillIndex(firstBlock);
+      } else {
+        firstBlock.compileIndex(newBlocks, scratchBytes, scratchIntsRef, null);
+      }
+
+      // The sub-block indexes have been copied into this one, so their files can go
+      for (FST<BytesRef> subIndex : subIndices) {
+        SpilledIndex spilled = spilledIndices.remove(subIndex);
+        if (spilled != null) {
+          spilled.close();
+        }
+      }
+    }
+
+    private void spillIndex(PendingBlock firstBlock) throws IOException {
+      IndexOutput tempOut = directory.createTempOutput(segment, "tip", context);
+      IndexInput in = null;
+      boolean success = false;
+      try {
+        firstBlock.compileIndex(newBlocks, scratchBytes, scratchIntsRef, tempOut);
+        tempOut.close();
+
+        ByteBuffersDataOutput indexMeta = new ByteBuffersDataOutput();
+        firstBlock.index.saveMetadata(indexMeta);
+        in = directory.openInput(tempOut.getName(), IOContext.READ);
+        firstBlock.index = new FST<>(indexMeta.toDataInput(), in, ByteSequenceOutputs.getSingleton(),
+                                     new OffHeapFSTStore());
+        spilledIndices.put(firstBlock.index, new SpilledIndex(tempOut.getName(), in));
+        success = true;
+      } finally {
+        if (!success) {
+          IOUtils.closeWhileHandlingException(tempOut, in);
+          IOUtils.deleteFilesIgnoringExceptions(directory, tempOut.getName());
+        }
+      }
+    }
+
     // Finishes all terms in this field
     public void finish() throws IOException {
       if (numTerms > 0) {
+        // An index built off the heap is written as the root block is compiled
+        final long indexStartFP = indexOut.getFilePointer();
+
         // if (DEBUG) System.out.println("BTTW: finish prefixStarts=" + Arrays.toString(prefixStarts));
 
         // Add empty term to force closing of all final blocks:
@@ -868,9 +976,13 @@ public final class BlockTreeTermsWriter extends FieldsConsumer {
         metaOut.writeVInt(docsSeen.cardinality());
         writeBytesRef(metaOut, new BytesRef(firstPendingTerm.termBytes));
         writeBytesRef(metaOut, new BytesRef(lastPendingTerm.termBytes));
-        metaOut.writeVLong(indexOut.getFilePointer());
+        metaOut.writeVLong(indexStartFP);
         // Write FST to index
-        root.index.save(metaOut, indexOut);
+        if (offHeapIndex) {
+          root.index.saveMetadata(metaOut);
+        } else {
+          root.index.save(metaOut, indexOut);
+        }
         //System.out.println("  write FST " + indexStartFP + " field=" + fieldInfo.name);
 
         /*
@@ -921,6 +1033,9 @@ public final class BlockTreeTermsWriter extends FieldsConsumer {
       CodecUtil.writeFooter(metaOut);
       success = true;
     } finally {
+      // Only left over if a field failed part way through
+      IOUtils.closeWhileHandlingException(spilledIndices.values());
+      spilledIndices.clear();
       if (success) {
         IOUtils.close(metaOut, termsOut, indexOut, postingsWriter);
       } else {
@@ -929,6 +1044,28 @@ public final class BlockTreeTermsWriter extends FieldsConsumer {
     }
   }
 
+  /** The index of a block built into a temporary file, which is deleted once the index is closed. */
+  private final class SpilledIndex implements Closeable {
+    private final String fileName;
+    private final IndexInput in;
+    private final long numBytes;
+
+    SpilledIndex(String fileName, IndexInput in) {
+      this.fileName = fileName;
+      this.in = in;
+      this.numBytes = in.length();
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        in.close();
+      } finally {
+        directory.deleteFile(fileName);
+      }
+    }
+  }
+
   private static void writeBytesRef(DataOutput out, BytesRef bytes) throws IOException {
     out.writeVInt(bytes.length);
     out.writeBytes(bytes.bytes, bytes.offset, bytes.length);
@@ -62,16 +62,24 @@ public final class Lucene84PostingsFormat extends PostingsFormat {
 
   private final int minTermBlockSize;
   private final int maxTermBlockSize;
+  private final boolean offHeapTermsIndex;
 
   public Lucene84PostingsFormat() {
     this(BlockTreeTermsWriter.DEFAULT_MIN_BLOCK_SIZE, BlockTreeTermsWriter.DEFAULT_MAX_BLOCK_SIZE);
   }
 
   public Lucene84PostingsFormat(int minTermBlockSize, int maxTermBlockSize) {
+    this(minTermBlockSize, maxTermBlockSize, false);
+  }
+
+  /** Creates {@code Lucene84PostingsFormat} which, if {@code offHeapTermsIndex} is true, builds the
+   *  terms index without holding it on the heap. The files are read the same way either way. */
+  public Lucene84PostingsFormat(int minTermBlockSize, int maxTermBlockSize, boolean offHeapTermsIndex) {
     super("Lucene84");
     BlockTreeTermsWriter.validateSettings(minTermBlockSize, maxTermBlockSize);
     this.minTermBlockSize = minTermBlockSize;
     this.maxTermBlockSize = maxTermBlockSize;
+    this.offHeapTermsIndex = offHeapTermsIndex;
   }
 
   @Override
@@ -87,7 +95,8 @@ public final class Lucene84PostingsFormat extends PostingsFormat {
       FieldsConsumer ret = new BlockTreeTermsWriter(state, 
                                                     postingsWriter,
                                                     minTermBlockSize, 
-                                                    maxTermBlockSize);
+                                                    maxTermBlockSize,
+                                                    offHeapTermsIndex);
       success = true;
       return ret;
     } finally {
@@ -33,37 +33,23 @@ import org.trypticon.luceneupgrader.lucene8.internal.lucene.index.MergeState;
 import org.trypticon.luceneupgrader.lucene8.internal.lucene.index.Terms;
 
 final class PerFieldMergeState {
-  private final MergeState in;
-  private final FieldInfos orgMergeFieldInfos;
-  private final FieldInfos[] orgFieldInfos;
-  private final FieldsProducer[] orgFieldsProducers;
-
-  PerFieldMergeState(MergeState in) {
-    this.in = in;
-    this.orgMergeFieldInfos = in.mergeFieldInfos;
-    this.orgFieldInfos = new FieldInfos[in.fieldInfos.length];
-    this.orgFieldsProducers = new FieldsProducer[in.fieldsProducers.length];
-
-    System.arraycopy(in.fieldInfos, 0, this.orgFieldInfos, 0, this.orgFieldInfos.length);
-    System.arraycopy(in.fieldsProducers, 0, this.orgFieldsProducers, 0, this.orgFieldsProducers.length);
-  }
 
-  MergeState apply(Collection<String> fields) {
-    in.mergeFieldInfos = new FilterFieldInfos(orgMergeFieldInfos, fields);
-    for (int i = 0; i < orgFieldInfos.length; i++) {
-      in.fieldInfos[i] = new FilterFieldInfos(orgFieldInfos[i], fields);
+  private PerFieldMergeState() {}
+
+  // leaves the input as it is, since the other formats of the same merge may be reading it
+  static MergeState restrictFields(MergeState in, Collection<String> fields) {
+    FieldInfos[] fieldInfos = new FieldInfos[in.fieldInfos.length];
+    for (int i = 0; i < fieldInfos.length; i++) {
+      fieldInfos[i] = new FilterFieldInfos(in.fieldInfos[i], fields);
     }
-    for (int i = 0; i < orgFieldsProducers.length; i++) {
-      in.fieldsProducers[i] = new FilterFieldsProducer(orgFieldsProducers[i], fields);
+    FieldsProducer[] fieldsProducers = new FieldsProducer[in.fieldsProducers.length];
+    for (int i = 0; i < fieldsProducers.length; i++) {
+      fieldsProducers[i] = new FilterFieldsProducer(in.fieldsProducers[i], fields);
     }
-    return in;
-  }
-
-  MergeState reset() {
-    in.mergeFieldInfos = orgMergeFieldInfos;
-    System.arraycopy(orgFieldInfos, 0, in.fieldInfos, 0, in.fieldInfos.length);
-    System.arraycopy(orgFieldsProducers, 0, in.fieldsProducers, 0, in.fieldsProducers.length);
-    return in;
+    return new MergeState(in.docMaps, in.segmentInfo, new FilterFieldInfos(in.mergeFieldInfos, fields),
+                          in.storedFieldsReaders, in.termVectorsReaders, in.normsProducers,
+                          in.docValuesProducers, fieldInfos, in.liveDocs, fieldsProducers,
+                          in.pointsReaders, in.maxDocs, in.infoStream, in.needsIndexSort);
   }
 
   private static class FilterFieldInfos extends FieldInfos {
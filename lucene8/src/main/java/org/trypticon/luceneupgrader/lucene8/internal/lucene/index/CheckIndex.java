@@ -600,21 +600,21 @@ public final class CheckIndex implements Closeable {
         } catch (InterruptedException e) {
           // the segment test output should come before interrupted exception message that follows,
           // hence it's not emitted from finally clause
-          infoStream.println(output.toString(IOUtils.UTF_8));
+          msg(infoStream, output.toString(IOUtils.UTF_8));
           msg(
               infoStream,
               "ERROR: Interrupted exception occurred when getting segment check result for segment "
                   + info.info.name);
           if (infoStream != null) e.printStackTrace(infoStream);
         } catch (ExecutionException e) {
-          infoStream.println(output.toString(IOUtils.UTF_8));
+          msg(infoStream, output.toString(IOUtils.UTF_8));
 
           assert failFast;
           throw new CheckIndexException(
               "Segment " + info.info.name + " check failed.", e.getCause());
         }
 
-        infoStream.print(output.toString(IOUtils.UTF_8));
+        if (infoStream != null) infoStream.print(output.toString(IOUtils.UTF_8));
 
         processSegmentInfoStatusResult(result, info, segmentInfoStatus);
       }
@@ -287,11 +287,12 @@ public final class FieldInfo {
     return storeTermVector;
   }
   
-  public String getAttribute(String key) {
+  public synchronized String getAttribute(String key) {
     return attributes.get(key);
   }
   
-  public String putAttribute(String key, String value) {
+  // formats merged side by side may put attributes on the same field at the same time
+  public synchronized String putAttribute(String key, String value) {
     return attributes.put(key, value);
   }
   
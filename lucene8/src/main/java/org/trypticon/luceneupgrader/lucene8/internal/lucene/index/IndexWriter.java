@@ -80,6 +80,7 @@ import org.trypticon.luceneupgrader.lucene8.internal.lucene.util.StringHelper;
 import org.trypticon.luceneupgrader.lucene8.internal.lucene.util.ThreadInterruptedException;
 import org.trypticon.luceneupgrader.lucene8.internal.lucene.util.UnicodeUtil;
 import org.trypticon.luceneupgrader.lucene8.internal.lucene.util.Version;
+import org.trypticon.luceneupgrader.UpgradeEvents;
 
 import static org.trypticon.luceneupgrader.lucene8.internal.lucene.search.DocIdSetIterator.NO_MORE_DOCS;
 import static org.trypticon.luceneupgrader.lucene8.internal.lucene.util.ByteBlockPool.BYTE_BLOCK_SIZE;
@@ -2248,7 +2249,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable,
 
       SegmentMerger merger = new SegmentMerger(Arrays.asList(readers), info, infoStream, trackingDir,
                                                globalFieldNumberMap, 
-                                               context);
+                                               context, mergeScheduler.getIntraMergeExecutor(null));
 
       if (!merger.shouldMerge()) {
         return docWriter.getNextSequenceNumber();
@@ -3698,7 +3699,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable,
       final SegmentMerger merger = new SegmentMerger(mergeReaders,
                                                      merge.info.info, infoStream, dirWrapper,
                                                      globalFieldNumberMap,
-                                                     context);
+                                                     context, mergeScheduler.getIntraMergeExecutor(merge));
       merge.info.setSoftDelCount(Math.toIntExact(softDeleteCount.get()));
       merge.checkAborted();
 
@@ -4183,6 +4184,8 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable,
     if (infoStream.isEnabled("IW")) {
       infoStream.message("IW", "create compound file");
     }
+    UpgradeEvents.CompoundFile event = new UpgradeEvents.CompoundFile();
+    event.begin();
     // Now merge all added files    
     boolean success = false;
     try {
@@ -4195,6 +4198,16 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable,
       }
     }
 
+    event.end();
+    if (event.shouldCommit()) {
+      event.segment = info.name;
+      event.fileCount = info.files().size();
+      for (String file : directory.getCreatedFiles()) {
+        event.bytesWritten += directory.fileLength(file);
+      }
+      event.commit();
+    }
+
     // Replace all previous files with the CFS/CFE files:
     info.setFiles(new HashSet<>(directory.getCreatedFiles()));
   }
@@ -19,6 +19,7 @@ package org.trypticon.luceneupgrader.lucene8.internal.lucene.index;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.concurrent.Executor;
 
 import org.trypticon.luceneupgrader.lucene8.internal.lucene.index.MergePolicy.OneMerge;
 import org.trypticon.luceneupgrader.lucene8.internal.lucene.store.Directory;
@@ -37,6 +38,14 @@ public abstract class MergeScheduler implements Closeable {
     return in;
   }
 
+  // The executor to merge the parts of the codec within a merge on side by side, or null to merge them
+  // one after another. The merging thread takes one part itself, so this mustn't be one running merges.
+  // The merge is null for addIndexes.
+  public Executor getIntraMergeExecutor(OneMerge merge) {
+    // A no-op by default.
+    return null;
+  }
+
   @Override
   public abstract void close() throws IOException;
 
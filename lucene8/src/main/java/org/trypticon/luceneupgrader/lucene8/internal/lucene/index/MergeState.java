@@ -122,6 +122,30 @@ public class MergeState {
     this.docMaps = buildDocMaps(readers, segmentInfo.getIndexSort());
   }
 
+  // a copy of existing state, such as one restricted to some of the fields, since the merges of
+  // different formats may be reading the original at the same time
+  public MergeState(DocMap[] docMaps, SegmentInfo segmentInfo, FieldInfos mergeFieldInfos,
+                    StoredFieldsReader[] storedFieldsReaders, TermVectorsReader[] termVectorsReaders,
+                    NormsProducer[] normsProducers, DocValuesProducer[] docValuesProducers,
+                    FieldInfos[] fieldInfos, Bits[] liveDocs, FieldsProducer[] fieldsProducers,
+                    PointsReader[] pointsReaders, int[] maxDocs, InfoStream infoStream,
+                    boolean needsIndexSort) {
+    this.docMaps = docMaps;
+    this.segmentInfo = segmentInfo;
+    this.mergeFieldInfos = mergeFieldInfos;
+    this.storedFieldsReaders = storedFieldsReaders;
+    this.termVectorsReaders = termVectorsReaders;
+    this.normsProducers = normsProducers;
+    this.docValuesProducers = docValuesProducers;
+    this.fieldInfos = fieldInfos;
+    this.liveDocs = liveDocs;
+    this.fieldsProducers = fieldsProducers;
+    this.pointsReaders = pointsReaders;
+    this.maxDocs = maxDocs;
+    this.infoStream = infoStream;
+    this.needsIndexSort = needsIndexSort;
+  }
+
   // Remap docIDs around deletions
   private DocMap[] buildDeletionDocMaps(List<CodecReader> readers) {
 
@@ -245,11 +245,12 @@ public final class SegmentInfo {
     return name + IndexFileNames.stripSegmentName(file);
   }
   
-  public String getAttribute(String key) {
+  public synchronized String getAttribute(String key) {
     return attributes.get(key);
   }
   
-  public String putAttribute(String key, String value) {
+  // synchronized so that formats merged side by side can't lose each other's changes
+  public synchronized String putAttribute(String key, String value) {
     HashMap<String, String> newMap = new HashMap<>(attributes);
     String oldValue = newMap.put(key, value);
     // we make a full copy of this to prevent concurrent modifications to this in the toString method
@@ -0,0 +1,325 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trypticon.luceneupgrader.lucene8.internal.lucene.index;
+
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import org.trypticon.luceneupgrader.lucene8.internal.lucene.codecs.Codec;
+import org.trypticon.luceneupgrader.lucene8.internal.lucene.codecs.DocValuesConsumer;
+import org.trypticon.luceneupgrader.lucene8.internal.lucene.codecs.FieldsConsumer;
+import org.trypticon.luceneupgrader.lucene8.internal.lucene.codecs.NormsConsumer;
+import org.trypticon.luceneupgrader.lucene8.internal.lucene.codecs.NormsProducer;
+import org.trypticon.luceneupgrader.lucene8.internal.lucene.codecs.PointsWriter;
+import org.trypticon.luceneupgrader.lucene8.internal.lucene.codecs.StoredFieldsWriter;
+import org.trypticon.luceneupgrader.lucene8.internal.lucene.codecs.TermVectorsWriter;
+import org.trypticon.luceneupgrader.lucene8.internal.lucene.store.Directory;
+import org.trypticon.luceneupgrader.lucene8.internal.lucene.store.IOContext;
+import org.trypticon.luceneupgrader.lucene8.internal.lucene.store.TrackingDirectoryWrapper;
+import org.trypticon.luceneupgrader.lucene8.internal.lucene.util.IOUtils;
+import org.trypticon.luceneupgrader.lucene8.internal.lucene.util.InfoStream;
+import org.trypticon.luceneupgrader.lucene8.internal.lucene.util.ThreadInterruptedException;
+import org.trypticon.luceneupgrader.lucene8.internal.lucene.util.Version;
+import org.trypticon.luceneupgrader.UpgradeEvents;
+
+final class SegmentMerger {
+  private final Directory directory;
+
+  private final Codec codec;
+  
+  private final IOContext context;
+
+  // runs the parts of the codec side by side, or null to run them one after another
+  private final Executor intraMergeExecutor;
+  
+  final MergeState mergeState;
+  private final FieldInfos.Builder fieldInfosBuilder;
+
+  // note, just like in codec apis Directory 'dir' is NOT the same as segmentInfo.dir!!
+  SegmentMerger(List<CodecReader> readers, SegmentInfo segmentInfo, InfoStream infoStream, Directory dir,
+                FieldInfos.FieldNumbers fieldNumbers, IOContext context) throws IOException {
+    this(readers, segmentInfo, infoStream, dir, fieldNumbers, context, null);
+  }
+
+  SegmentMerger(List<CodecReader> readers, SegmentInfo segmentInfo, InfoStream infoStream, Directory dir,
+                FieldInfos.FieldNumbers fieldNumbers, IOContext context, Executor intraMergeExecutor)
+      throws IOException {
+    if (context.context != IOContext.Context.MERGE) {
+      throw new IllegalArgumentException("IOContext.context should be MERGE; got: " + context.context);
+    }
+    mergeState = new MergeState(readers, segmentInfo, infoStream);
+    directory = dir;
+    this.codec = segmentInfo.getCodec();
+    this.context = context;
+    this.intraMergeExecutor = intraMergeExecutor;
+    this.fieldInfosBuilder = new FieldInfos.Builder(fieldNumbers);
+    Version minVersion = Version.LATEST;
+    for (CodecReader reader : readers) {
+      Version leafMinVersion = reader.getMetaData().getMinVersion();
+      if (leafMinVersion == null) {
+        minVersion = null;
+        break;
+      }
+      if (minVersion.onOrAfter(leafMinVersion)) {
+        minVersion = leafMinVersion;
+      }
+
+    }
+    assert segmentInfo.minVersion == null : "The min version should be set by SegmentMerger for merged segments";
+    segmentInfo.minVersion = minVersion;
+    if (mergeState.infoStream.isEnabled("SM")) {
+      if (segmentInfo.getIndexSort() != null) {
+        mergeState.infoStream.message("SM", "index sort during merge: " + segmentInfo.getIndexSort());
+      }
+    }
+  }
+  
+  boolean shouldMerge() {
+    return mergeState.segmentInfo.maxDoc() > 0;
+  }
+
+  MergeState merge() throws IOException {
+    if (!shouldMerge()) {
+      throw new IllegalStateException("Merge would result in 0 document segment");
+    }
+    UpgradeEvents.SegmentMerge mergeEvent = new UpgradeEvents.SegmentMerge();
+    mergeEvent.begin();
+    mergeFieldInfos();
+
+    // Each part writes its own files, so with an executor they're merged side by side
+    final int numMerged = mergeState.segmentInfo.maxDoc();
+    final SegmentReadState segmentReadState = new SegmentReadState(directory, mergeState.segmentInfo, mergeState.mergeFieldInfos,
+        IOContext.READ, "");
+    List<Part> parts = new ArrayList<>();
+
+    parts.add(() -> mergeWithLogging(this::mergeFields, "stored fields", numMerged));
+
+    parts.add(() -> {
+      // Postings are written along with the norms of the new segment, so those go first
+      if (mergeState.mergeFieldInfos.hasNorms()) {
+        mergeWithLogging(this::mergeNorms, "norms", numMerged);
+      }
+      mergeWithLogging(segmentWriteState -> mergeTerms(segmentWriteState, segmentReadState), "postings", numMerged);
+    });
+
+    if (mergeState.mergeFieldInfos.hasDocValues()) {
+      parts.add(() -> mergeWithLogging(this::mergeDocValues, "doc values", numMerged));
+    }
+
+    if (mergeState.mergeFieldInfos.hasPointValues()) {
+      parts.add(() -> mergeWithLogging(this::mergePoints, "points", numMerged));
+    }
+
+    if (mergeState.mergeFieldInfos.hasVectors()) {
+      parts.add(() -> mergeWithLogging(this::mergeVectors, "term vectors", numMerged));
+    }
+
+    mergeParts(parts);
+
+    // write the merged infos, once the formats have put their attributes on them
+    mergeWithLogging(segmentWriteState -> codec.fieldInfosFormat().write(segmentWriteState.directory,
+        mergeState.segmentInfo, "", mergeState.mergeFieldInfos, context), "field infos", numMerged);
+
+    mergeEvent.end();
+    if (mergeEvent.shouldCommit()) {
+      mergeEvent.segment = mergeState.segmentInfo.name;
+      mergeEvent.sourceSegmentCount = mergeState.maxDocs.length;
+      mergeEvent.documentCount = mergeState.segmentInfo.maxDoc();
+      mergeEvent.bytesWritten = segmentSizeInBytes();
+      mergeEvent.commit();
+    }
+
+    return mergeState;
+  }
+
+  private interface PartMerger {
+    void merge(SegmentWriteState segmentWriteState) throws IOException;
+  }
+
+  // one or more formats merged in turn, independently of the others
+  private interface Part {
+    void merge() throws IOException;
+  }
+
+  // The calling thread merges the first part itself, then waits for the others. If any part fails,
+  // the others are still waited for, so that nothing is writing to the new segment once it's thrown.
+  private void mergeParts(List<Part> parts) throws IOException {
+    if (intraMergeExecutor == null || parts.size() == 1) {
+      for (Part part : parts) {
+        part.merge();
+      }
+      return;
+    }
+
+    List<FutureTask<Void>> tasks = new ArrayList<>(parts.size() - 1);
+    for (Part part : parts.subList(1, parts.size())) {
+      FutureTask<Void> task = new FutureTask<>(() -> {
+        part.merge();
+        return null;
+      });
+      tasks.add(task);
+      intraMergeExecutor.execute(task);
+    }
+
+    Throwable failure = null;
+    try {
+      parts.get(0).merge();
+    } catch (Throwable t) {
+      failure = t;
+    }
+    boolean interrupted = false;
+    for (FutureTask<Void> task : tasks) {
+      while (true) {
+        try {
+          task.get();
+          break;
+        } catch (InterruptedException e) {
+          // the part is still writing to the new segment, so it has to be waited for all the same
+          interrupted = true;
+        } catch (ExecutionException e) {
+          failure = IOUtils.useOrSuppress(failure, e.getCause());
+          break;
+        }
+      }
+    }
+    if (interrupted) {
+      failure = IOUtils.useOrSuppress(failure, new ThreadInterruptedException(new InterruptedException()));
+      Thread.currentThread().interrupt();
+    }
+    if (failure != null) {
+      throw IOUtils.rethrowAlways(failure);
+    }
+  }
+
+  // Merges one format, writing through a directory of its own so that its files can be told apart
+  // from those of the formats being merged at the same time.
+  private void mergeWithLogging(PartMerger merger, String formatName, int numMerged) throws IOException {
+    long t0 = 0;
+    if (mergeState.infoStream.isEnabled("SM")) {
+      t0 = System.nanoTime();
+    }
+    TrackingDirectoryWrapper partDirectory = new TrackingDirectoryWrapper(directory);
+    SegmentWriteState segmentWriteState = new SegmentWriteState(mergeState.infoStream, partDirectory, mergeState.segmentInfo,
+                                                                mergeState.mergeFieldInfos, null, context);
+    UpgradeEvents.MergePart part = new UpgradeEvents.MergePart();
+    part.begin();
+    merger.merge(segmentWriteState);
+    endPart(part, formatName, numMerged, partDirectory);
+    if (mergeState.infoStream.isEnabled("SM")) {
+      long t1 = System.nanoTime();
+      mergeState.infoStream.message("SM", ((t1-t0)/1000000) + " msec to merge " + formatName + " [" + numMerged + " docs]");
+    }
+  }
+
+  private void endPart(UpgradeEvents.MergePart event, String part, int documentCount,
+                       TrackingDirectoryWrapper partDirectory) throws IOException {
+    event.end();
+    if (event.shouldCommit()) {
+      event.segment = mergeState.segmentInfo.name;
+      event.part = part;
+      event.documentCount = documentCount;
+      for (String file : partDirectory.getCreatedFiles()) {
+        try {
+          event.bytesWritten += directory.fileLength(file);
+        } catch (FileNotFoundException | NoSuchFileException e) {
+          // a temporary file, deleted since it was listed
+        }
+      }
+      event.commit();
+    }
+  }
+
+  /** Adds up the sizes of the new segment's files written so far, for Flight Recorder events. */
+  private long segmentSizeInBytes() throws IOException {
+    long size = 0;
+    for (String file : directory.listAll()) {
+      if (IndexFileNames.parseSegmentName(file).equals(mergeState.segmentInfo.name)) {
+        try {
+          size += directory.fileLength(file);
+        } catch (FileNotFoundException | NoSuchFileException e) {
+          // a temporary file, deleted since it was listed
+        }
+      }
+    }
+    return size;
+  }
+
+  private void mergeDocValues(SegmentWriteState segmentWriteState) throws IOException {
+    try (DocValuesConsumer consumer = codec.docValuesFormat().fieldsConsumer(segmentWriteState)) {
+      consumer.merge(mergeState);
+    }
+  }
+
+  private void mergePoints(SegmentWriteState segmentWriteState) throws IOException {
+    try (PointsWriter writer = codec.pointsFormat().fieldsWriter(segmentWriteState)) {
+      writer.merge(mergeState);
+    }
+  }
+
+  private void mergeNorms(SegmentWriteState segmentWriteState) throws IOException {
+    try (NormsConsumer consumer = codec.normsFormat().normsConsumer(segmentWriteState)) {
+      consumer.merge(mergeState);
+    }
+  }
+  
+  public void mergeFieldInfos() {
+    for (FieldInfos readerFieldInfos : mergeState.fieldInfos) {
+      for (FieldInfo fi : readerFieldInfos) {
+        fieldInfosBuilder.add(fi);
+      }
+    }
+    mergeState.mergeFieldInfos = fieldInfosBuilder.finish();
+  }
+
+  private void mergeFields(SegmentWriteState segmentWriteState) throws IOException {
+    try (StoredFieldsWriter fieldsWriter = codec.storedFieldsFormat().fieldsWriter(segmentWriteState.directory,
+                                                                                   mergeState.segmentInfo, context)) {
+      int numMerged = fieldsWriter.merge(mergeState);
+      assert numMerged == mergeState.segmentInfo.maxDoc(): "numMerged=" + numMerged + " vs mergeState.segmentInfo.maxDoc()=" + mergeState.segmentInfo.maxDoc();
+    }
+  }
+
+  private void mergeVectors(SegmentWriteState segmentWriteState) throws IOException {
+    try (TermVectorsWriter termVectorsWriter = codec.termVectorsFormat().vectorsWriter(segmentWriteState.directory,
+                                                                                       mergeState.segmentInfo, context)) {
+      int numMerged = termVectorsWriter.merge(mergeState);
+      assert numMerged == mergeState.segmentInfo.maxDoc();
+    }
+  }
+
+  private void mergeTerms(SegmentWriteState segmentWriteState, SegmentReadState segmentReadState) throws IOException {
+    try (NormsProducer norms = mergeState.mergeFieldInfos.hasNorms()
+        ? codec.normsFormat().normsProducer(segmentReadState)
+        : null) {
+      NormsProducer normsMergeInstance = null;
+      if (norms != null) {
+        // Use the merge instance in order to reuse the same IndexInput for all terms
+        normsMergeInstance = norms.getMergeInstance();
+      }
+      try (FieldsConsumer consumer = codec.postingsFormat().fieldsConsumer(segmentWriteState)) {
+        consumer.merge(mergeState, normsMergeInstance);
+      }
+    }
+  }
+}
@@ -0,0 +1,298 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trypticon.luceneupgrader.lucene8.internal.lucene.store;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.trypticon.luceneupgrader.IOAccounting;
+
+/**
+ * A {@link FilterDirectory} which counts the bytes read from and written to its files towards an
+ * {@link IOAccounting}, in the spirit of {@link TrackingDirectoryWrapper}.
+ *
+ * <p>Reads are counted as they are passed through to the underlying input, and writes when each
+ * output is closed. The bytes written to a file which is deleted again, such as one packed into a
+ * compound file, are also counted as discarded.
+ */
+public final class AccountingDirectory extends FilterDirectory {
+  private final IOAccounting accounting;
+
+  /** bytes written to each file created through this directory which still exists */
+  private final Map<String, Long> bytesWritten = new ConcurrentHashMap<>();
+
+  public AccountingDirectory(Directory in, IOAccounting accounting) {
+    super(in);
+    this.accounting = accounting;
+  }
+
+  /** Adds up the sizes of the files in the directory, without counting anything. */
+  public long sizeInBytes() throws IOException {
+    long size = 0;
+    for (String name : in.listAll()) {
+      try {
+        size += in.fileLength(name);
+      } catch (@SuppressWarnings("unused") NoSuchFileException | FileNotFoundException e) {
+        // deleted since it was listed
+      }
+    }
+    return size;
+  }
+
+  @Override
+  public IndexInput openInput(String name, IOContext context) throws IOException {
+    return new AccountingIndexInput(
+        in.openInput(name, context), accounting.counter(name, contextName(context)));
+  }
+
+  @Override
+  public IndexOutput createOutput(String name, IOContext context) throws IOException {
+    return new AccountingIndexOutput(
+        in.createOutput(name, context), accounting.counter(name, contextName(context)));
+  }
+
+  @Override
+  public IndexOutput createTempOutput(String prefix, String suffix, IOContext context)
+      throws IOException {
+    IndexOutput output = in.createTempOutput(prefix, suffix, context);
+    return new AccountingIndexOutput(
+        output, accounting.counter(output.getName(), contextName(context)));
+  }
+
+  @Override
+  public void deleteFile(String name) throws IOException {
+    in.deleteFile(name);
+    Long written = bytesWritten.remove(name);
+    if (written != null) {
+      accounting.addDiscarded(written);
+    }
+  }
+
+  @Override
+  public void rename(String source, String dest) throws IOException {
+    in.rename(source, dest);
+    Long written = bytesWritten.remove(source);
+    if (written != null) {
+      bytesWritten.put(dest, written);
+    }
+  }
+
+  private static String contextName(IOContext context) {
+    return context.readOnce ? "READONCE" : context.context.name();
+  }
+
+  /**
+   * Passes reads straight through, counting the bytes each one reads. Slices for random access come
+   * from the underlying input, so that its fast paths for them still apply.
+   */
+  private static final class AccountingIndexInput extends IndexInput {
+    private final IndexInput in;
+    private final IOAccounting.Counter counter;
+
+    AccountingIndexInput(IndexInput in, IOAccounting.Counter counter) {
+      super("AccountingIndexInput(" + in + ")");
+      this.in = in;
+      this.counter = counter;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+      byte b = in.readByte();
+      counter.addRead(Byte.BYTES);
+      return b;
+    }
+
+    @Override
+    public void readBytes(byte[] b, int offset, int len) throws IOException {
+      in.readBytes(b, offset, len);
+      counter.addRead(len);
+    }
+
+    @Override
+    public void readBytes(byte[] b, int offset, int len, boolean useBuffer) throws IOException {
+      in.readBytes(b, offset, len, useBuffer);
+      counter.addRead(len);
+    }
+
+    @Override
+    public short readShort() throws IOException {
+      short i = in.readShort();
+      counter.addRead(Short.BYTES);
+      return i;
+    }
+
+    @Override
+    public int readInt() throws IOException {
+      int i = in.readInt();
+      counter.addRead(Integer.BYTES);
+      return i;
+    }
+
+    @Override
+    public long readLong() throws IOException {
+      long i = in.readLong();
+      counter.addRead(Long.BYTES);
+      return i;
+    }
+
+    @Override
+    public void readLELongs(long[] dst, int offset, int length) throws IOException {
+      in.readLELongs(dst, offset, length);
+      counter.addRead((long) length * Long.BYTES);
+    }
+
+    @Override
+    public long getFilePointer() {
+      return in.getFilePointer();
+    }
+
+    @Override
+    public void seek(long pos) throws IOException {
+      in.seek(pos);
+    }
+
+    @Override
+    public long length() {
+      return in.length();
+    }
+
+    @Override
+    public AccountingIndexInput clone() {
+      return new AccountingIndexInput(in.clone(), counter);
+    }
+
+    @Override
+    public IndexInput slice(String sliceDescription, long offset, long length) throws IOException {
+      return new AccountingIndexInput(in.slice(sliceDescription, offset, length), counter);
+    }
+
+    @Override
+    public RandomAccessInput randomAccessSlice(long offset, long length) throws IOException {
+      return new AccountingRandomAccessInput(in.randomAccessSlice(offset, length), counter);
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  /** Passes random access reads straight through, counting the bytes each one reads. */
+  private static final class AccountingRandomAccessInput implements RandomAccessInput {
+    private final RandomAccessInput in;
+    private final IOAccounting.Counter counter;
+
+    AccountingRandomAccessInput(RandomAccessInput in, IOAccounting.Counter counter) {
+      this.in = in;
+      this.counter = counter;
+    }
+
+    @Override
+    public byte readByte(long pos) throws IOException {
+      byte b = in.readByte(pos);
+      counter.addRead(Byte.BYTES);
+      return b;
+    }
+
+    @Override
+    public short readShort(long pos) throws IOException {
+      short i = in.readShort(pos);
+      counter.addRead(Short.BYTES);
+      return i;
+    }
+
+    @Override
+    public int readInt(long pos) throws IOException {
+      int i = in.readInt(pos);
+      counter.addRead(Integer.BYTES);
+      return i;
+    }
+
+    @Override
+    public long readLong(long pos) throws IOException {
+      long i = in.readLong(pos);
+      counter.addRead(Long.BYTES);
+      return i;
+    }
+
+    @Override
+    public String toString() {
+      return "AccountingRandomAccessInput(" + in + ")";
+    }
+  }
+
+  /** Passes writes straight through, counting them when closed. */
+  private final class AccountingIndexOutput extends IndexOutput {
+    private final IndexOutput out;
+    private final IOAccounting.Counter counter;
+    private boolean closed;
+
+    AccountingIndexOutput(IndexOutput out, IOAccounting.Counter counter) {
+      super("AccountingIndexOutput(" + out + ")", out.getName());
+      this.out = out;
+      this.counter = counter;
+    }
+
+    @Override
+    public void writeByte(byte b) throws IOException {
+      out.writeByte(b);
+    }
+
+    @Override
+    public void writeBytes(byte[] b, int offset, int length) throws IOException {
+      out.writeBytes(b, offset, length);
+    }
+
+    @Override
+    public void writeShort(short i) throws IOException {
+      out.writeShort(i);
+    }
+
+    @Override
+    public void writeInt(int i) throws IOException {
+      out.writeInt(i);
+    }
+
+    @Override
+    public void writeLong(long i) throws IOException {
+      out.writeLong(i);
+    }
+
+    @Override
+    public long getFilePointer() {
+      return out.getFilePointer();
+    }
+
+    @Override
+    public long getChecksum() throws IOException {
+      return out.getChecksum();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!closed) {
+        closed = true;
+        long written = out.getFilePointer();
+        counter.addWritten(written);
+        bytesWritten.merge(getName(), written, Long::sum);
+      }
+      out.close();
+    }
+  }
+}
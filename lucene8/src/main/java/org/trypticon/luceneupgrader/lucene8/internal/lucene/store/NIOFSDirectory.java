@@ -45,7 +45,12 @@ public class NIOFSDirectory extends FSDirectory {
     FileChannel fc = FileChannel.open(path, StandardOpenOption.READ);
     boolean success = false;
     try {
-      final NIOFSIndexInput indexInput = new NIOFSIndexInput("NIOFSIndexInput(path=\"" + path + "\")", fc, context);
+      final IndexInput indexInput;
+      if (context.context == IOContext.Context.MERGE) {
+        indexInput = new ReadAheadIndexInput("ReadAheadIndexInput(path=\"" + path + "\")", fc);
+      } else {
+        indexInput = new NIOFSIndexInput("NIOFSIndexInput(path=\"" + path + "\")", fc, context);
+      }
       success = true;
       return indexInput;
     } finally {
@@ -20,6 +20,7 @@ package org.trypticon.luceneupgrader.lucene8.internal.lucene.util.fst;
 import java.io.IOException;
 
 import org.trypticon.luceneupgrader.lucene8.internal.lucene.store.ByteArrayDataOutput;
+import org.trypticon.luceneupgrader.lucene8.internal.lucene.store.DataOutput;
 import org.trypticon.luceneupgrader.lucene8.internal.lucene.util.ArrayUtil;
 import org.trypticon.luceneupgrader.lucene8.internal.lucene.util.IntsRef;
 import org.trypticon.luceneupgrader.lucene8.internal.lucene.util.IntsRefBuilder;
@@ -88,12 +89,29 @@ public class Builder<T> {
   public Builder(FST.INPUT_TYPE inputType, int minSuffixCount1, int minSuffixCount2, boolean doShareSuffix,
                  boolean doShareNonSingletonNodes, int shareMaxTailLength, Outputs<T> outputs,
                  boolean allowFixedLengthArcs, int bytesPageBits) {
+    this(inputType, minSuffixCount1, minSuffixCount2, doShareSuffix, doShareNonSingletonNodes, shareMaxTailLength,
+         outputs, allowFixedLengthArcs, bytesPageBits, null);
+  }
+
+  /**
+   * Instantiates an FST/FSA builder which, if {@code dataOutput} isn't null, writes the bytes of each
+   * node to it as soon as the node is finished, instead of keeping the whole FST on the heap. The
+   * finished FST can't be read until its bytes are read back from wherever the output went; its
+   * metadata is written with {@link FST#saveMetadata}. Sharing suffixes needs to read finished
+   * nodes back, so {@code doShareSuffix} must be false when writing to an output.
+   */
+  public Builder(FST.INPUT_TYPE inputType, int minSuffixCount1, int minSuffixCount2, boolean doShareSuffix,
+                 boolean doShareNonSingletonNodes, int shareMaxTailLength, Outputs<T> outputs,
+                 boolean allowFixedLengthArcs, int bytesPageBits, DataOutput dataOutput) {
+    if (dataOutput != null && doShareSuffix) {
+      throw new IllegalArgumentException("suffixes can't be shared when the FST is written to a DataOutput as it's built");
+    }
     this.minSuffixCount1 = minSuffixCount1;
     this.minSuffixCount2 = minSuffixCount2;
     this.doShareNonSingletonNodes = doShareNonSingletonNodes;
     this.shareMaxTailLength = shareMaxTailLength;
     this.allowFixedLengthArcs = allowFixedLengthArcs;
-    fst = new FST<>(inputType, outputs, bytesPageBits);
+    fst = new FST<>(inputType, outputs, bytesPageBits, dataOutput);
     bytes = fst.bytes;
     assert bytes != null;
     if (doShareSuffix) {
@@ -159,6 +177,11 @@ public class Builder<T> {
       lastFrozenNode = node;
     }
 
+    if (bytes.isSpilling()) {
+      // Nothing reads or changes a node once it's written, so all but the block it ends in can go.
+      bytes.spillBefore(bytesPosEnd);
+    }
+
     nodeIn.clear();
 
     final CompiledNode fn = new CompiledNode();
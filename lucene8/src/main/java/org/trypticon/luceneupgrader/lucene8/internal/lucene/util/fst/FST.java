@@ -316,10 +316,15 @@ public final class FST<T> implements Accountable {
 
   // make a new empty FST, for building; Builder invokes this
   FST(INPUT_TYPE inputType, Outputs<T> outputs, int bytesPageBits) {
+    this(inputType, outputs, bytesPageBits, null);
+  }
+
+  // make a new empty FST whose finished nodes are moved to dataOutput as it's built, if not null
+  FST(INPUT_TYPE inputType, Outputs<T> outputs, int bytesPageBits, DataOutput dataOutput) {
     this.inputType = inputType;
     this.outputs = outputs;
     fstStore = null;
-    bytes = new BytesStore(bytesPageBits);
+    bytes = new BytesStore(bytesPageBits, dataOutput);
     // pad: ensure no node gets address 0 which is reserved to mean
     // the stop state w/ no arcs
     bytes.writeByte((byte) 0);
@@ -421,6 +426,33 @@ public final class FST<T> implements Accountable {
   }
 
   public void save(DataOutput metaOut, DataOutput out) throws IOException {
+    if (bytes != null && bytes.isSpilling()) {
+      throw new IllegalStateException("the bytes of this FST were written as it was built; use saveMetadata instead");
+    }
+    writeMetadataHeader(metaOut);
+    if (bytes != null) {
+      long numBytes = bytes.getPosition();
+      metaOut.writeVLong(numBytes);
+      bytes.writeTo(out);
+    } else {
+      assert fstStore != null;
+      fstStore.writeTo(out);
+    }
+  }
+
+  /**
+   * Writes only the metadata of an FST whose bytes were written to a {@link DataOutput} as it was
+   * built. Reading it back takes this metadata along with an input positioned where those bytes start.
+   */
+  public void saveMetadata(DataOutput metaOut) throws IOException {
+    if (bytes == null || bytes.isSpilling() == false) {
+      throw new IllegalStateException("the bytes of this FST were not written as it was built");
+    }
+    writeMetadataHeader(metaOut);
+    metaOut.writeVLong(bytes.getPosition());
+  }
+
+  private void writeMetadataHeader(DataOutput metaOut) throws IOException {
     if (startNode == -1) {
       throw new IllegalStateException("call finish first");
     }
@@ -463,14 +495,6 @@ public final class FST<T> implements Accountable {
     }
     metaOut.writeByte(t);
     metaOut.writeVLong(startNode);
-    if (bytes != null) {
-      long numBytes = bytes.getPosition();
-      metaOut.writeVLong(numBytes);
-      bytes.writeTo(out);
-    } else {
-      assert fstStore != null;
-      fstStore.writeTo(out);
-    }
   }
   
   public void save(final Path path) throws IOException {
@@ -1283,6 +1307,8 @@ public final class FST<T> implements Accountable {
   public BytesReader getBytesReader() {
     if (this.fstStore != null) {
       return this.fstStore.getReverseBytesReader();
+    } else if (bytes.isSpilling()) {
+      throw new IllegalStateException("the bytes of this FST were written as it was built; read them back from there");
     } else {
       return bytes.getReverseReader();
     }
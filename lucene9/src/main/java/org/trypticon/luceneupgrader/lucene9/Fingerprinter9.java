@@ -0,0 +1,248 @@
+package org.trypticon.luceneupgrader.lucene9;
+
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.index.BinaryDocValues;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.index.DirectoryReader;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.index.FieldInfo;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.index.FieldInfos;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.index.IndexOptions;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.index.LeafReader;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.index.NumericDocValues;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.index.PostingsEnum;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.index.SortedDocValues;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.index.SortedNumericDocValues;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.index.SortedSetDocValues;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.index.StoredFieldVisitor;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.index.StoredFields;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.index.Terms;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.index.TermsEnum;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.search.DocIdSetIterator;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.util.Bits;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.util.BytesRef;
+import org.trypticon.luceneupgrader.IndexFingerprint;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+
+/**
+ * Computes the fingerprint of an index in Lucene 9 format.
+ */
+final class Fingerprinter9 {
+
+    /**
+     * The field infos of the whole index. Postings are hashed as far as every segment indexes them,
+     * which is as far as a merge of the segments would keep them.
+     */
+    @Nonnull
+    private final FieldInfos mergedFieldInfos;
+
+    @Nonnull
+    private final IndexFingerprint fingerprint = new IndexFingerprint();
+
+    @Nonnull
+    private final IndexFingerprint.Hasher hasher = new IndexFingerprint.Hasher();
+
+    private Fingerprinter9(@Nonnull FieldInfos mergedFieldInfos) {
+        this.mergedFieldInfos = mergedFieldInfos;
+    }
+
+    @Nonnull
+    static IndexFingerprint fingerprint(@Nonnull DirectoryReader reader, int threadCount) throws IOException {
+        FieldInfos mergedFieldInfos = FieldInfos.getMergedFieldInfos(reader);
+        return IndexFingerprint.compute(reader.leaves(), threadCount,
+                                        context -> new Fingerprinter9(mergedFieldInfos).fingerprint(context.reader()));
+    }
+
+    @Nonnull
+    private IndexFingerprint fingerprint(@Nonnull LeafReader reader) throws IOException {
+        Bits liveDocs = reader.getLiveDocs();
+        addTerms(reader, liveDocs);
+        addStoredFields(reader, liveDocs);
+        addDocValues(reader, liveDocs);
+        return fingerprint;
+    }
+
+    private void addTerms(@Nonnull LeafReader reader, Bits liveDocs) throws IOException {
+        for (FieldInfo fieldInfo : mergedFieldInfos) {
+            IndexOptions indexOptions = fieldInfo.getIndexOptions();
+            Terms terms = indexOptions == IndexOptions.NONE ? null : reader.terms(fieldInfo.name);
+            if (terms == null) {
+                continue;
+            }
+            boolean hasFreqs = indexOptions.compareTo(IndexOptions.DOCS_AND_FREQS) >= 0;
+            boolean hasPositions = indexOptions.compareTo(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS) >= 0;
+            boolean hasOffsets = indexOptions.compareTo(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS) >= 0;
+            int flags = hasPositions ? PostingsEnum.ALL : hasFreqs ? PostingsEnum.FREQS : PostingsEnum.NONE;
+
+            IndexFingerprint.Digest digest = fingerprint.digest(IndexFingerprint.Part.TERMS, fieldInfo.name);
+            TermsEnum termsEnum = terms.iterator();
+            PostingsEnum postings = null;
+            BytesRef term;
+            while ((term = termsEnum.next()) != null) {
+                long termHash = hasher.reset().putBytes(term.bytes, term.offset, term.length).hash();
+                postings = termsEnum.postings(postings, flags);
+                int doc;
+                while ((doc = postings.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                    if (liveDocs != null && !liveDocs.get(doc)) {
+                        continue;
+                    }
+                    hasher.reset().putLong(termHash);
+                    if (hasFreqs) {
+                        int freq = postings.freq();
+                        hasher.putInt(freq);
+                        for (int i = 0; hasPositions && i < freq; i++) {
+                            hasher.putInt(postings.nextPosition());
+                            if (hasOffsets) {
+                                hasher.putInt(postings.startOffset()).putInt(postings.endOffset());
+                            }
+                            BytesRef payload = postings.getPayload();
+                            if (payload != null && payload.length > 0) {
+                                hasher.putBytes(payload.bytes, payload.offset, payload.length);
+                            } else {
+                                hasher.putInt(-1);
+                            }
+                        }
+                    }
+                    digest.add(hasher.hash());
+                }
+            }
+        }
+    }
+
+    private void addStoredFields(@Nonnull LeafReader reader, Bits liveDocs) throws IOException {
+        IndexFingerprint.StoredFieldsDigester digester = new IndexFingerprint.StoredFieldsDigester(fingerprint);
+        StoredFieldsVisitor visitor = new StoredFieldsVisitor(digester);
+        StoredFields storedFields = reader.storedFields();
+        for (int doc = 0; doc < reader.maxDoc(); doc++) {
+            if (liveDocs != null && !liveDocs.get(doc)) {
+                continue;
+            }
+            digester.startDocument();
+            storedFields.document(doc, visitor);
+            digester.finishDocument();
+        }
+    }
+
+    private void addDocValues(@Nonnull LeafReader reader, Bits liveDocs) throws IOException {
+        for (FieldInfo fieldInfo : reader.getFieldInfos()) {
+            String field = fieldInfo.name;
+            switch (fieldInfo.getDocValuesType()) {
+                case NUMERIC: {
+                    IndexFingerprint.Digest digest = fingerprint.digest(IndexFingerprint.Part.DOC_VALUES, field);
+                    NumericDocValues values = reader.getNumericDocValues(field);
+                    for (int doc = values.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = values.nextDoc()) {
+                        if (liveDocs == null || liveDocs.get(doc)) {
+                            digest.add(hasher.reset().putLong(values.longValue()).hash());
+                        }
+                    }
+                    break;
+                }
+                case BINARY: {
+                    IndexFingerprint.Digest digest = fingerprint.digest(IndexFingerprint.Part.DOC_VALUES, field);
+                    BinaryDocValues values = reader.getBinaryDocValues(field);
+                    for (int doc = values.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = values.nextDoc()) {
+                        if (liveDocs == null || liveDocs.get(doc)) {
+                            BytesRef value = values.binaryValue();
+                            digest.add(hasher.reset().putBytes(value.bytes, value.offset, value.length).hash());
+                        }
+                    }
+                    break;
+                }
+                case SORTED: {
+                    IndexFingerprint.Digest digest = fingerprint.digest(IndexFingerprint.Part.DOC_VALUES, field);
+                    SortedDocValues values = reader.getSortedDocValues(field);
+                    for (int doc = values.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = values.nextDoc()) {
+                        if (liveDocs == null || liveDocs.get(doc)) {
+                            BytesRef value = values.lookupOrd(values.ordValue());
+                            digest.add(hasher.reset().putBytes(value.bytes, value.offset, value.length).hash());
+                        }
+                    }
+                    break;
+                }
+                case SORTED_SET: {
+                    IndexFingerprint.Digest digest = fingerprint.digest(IndexFingerprint.Part.DOC_VALUES, field);
+                    SortedSetDocValues values = reader.getSortedSetDocValues(field);
+                    for (int doc = values.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = values.nextDoc()) {
+                        if (liveDocs == null || liveDocs.get(doc)) {
+                            hasher.reset();
+                            for (int i = 0; i < values.docValueCount(); i++) {
+                                BytesRef value = values.lookupOrd(values.nextOrd());
+                                hasher.putBytes(value.bytes, value.offset, value.length);
+                            }
+                            digest.add(hasher.hash());
+                        }
+                    }
+                    break;
+                }
+                case SORTED_NUMERIC: {
+                    IndexFingerprint.Digest digest = fingerprint.digest(IndexFingerprint.Part.DOC_VALUES, field);
+                    SortedNumericDocValues values = reader.getSortedNumericDocValues(field);
+                    for (int doc = values.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = values.nextDoc()) {
+                        if (liveDocs == null || liveDocs.get(doc)) {
+                            hasher.reset();
+                            for (int i = 0; i < values.docValueCount(); i++) {
+                                hasher.putLong(values.nextValue());
+                            }
+                            digest.add(hasher.hash());
+                        }
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Passes each stored value of a document to the digester.
+     */
+    private static class StoredFieldsVisitor extends StoredFieldVisitor {
+        @Nonnull
+        private final IndexFingerprint.StoredFieldsDigester digester;
+
+        StoredFieldsVisitor(@Nonnull IndexFingerprint.StoredFieldsDigester digester) {
+            this.digester = digester;
+        }
+
+        @Override
+        public Status needsField(FieldInfo fieldInfo) {
+            return Status.YES;
+        }
+
+        @Override
+        public void binaryField(FieldInfo fieldInfo, byte[] value) {
+            digester.startValue(IndexFingerprint.StoredType.BINARY).putBytes(value, 0, value.length);
+            digester.finishValue(fieldInfo.name);
+        }
+
+        @Override
+        public void stringField(FieldInfo fieldInfo, String value) {
+            digester.startValue(IndexFingerprint.StoredType.STRING).putString(value);
+            digester.finishValue(fieldInfo.name);
+        }
+
+        @Override
+        public void intField(FieldInfo fieldInfo, int value) {
+            digester.startValue(IndexFingerprint.StoredType.INT).putInt(value);
+            digester.finishValue(fieldInfo.name);
+        }
+
+        @Override
+        public void longField(FieldInfo fieldInfo, long value) {
+            digester.startValue(IndexFingerprint.StoredType.LONG).putLong(value);
+            digester.finishValue(fieldInfo.name);
+        }
+
+        @Override
+        public void floatField(FieldInfo fieldInfo, float value) {
+            digester.startValue(IndexFingerprint.StoredType.FLOAT).putInt(Float.floatToIntBits(value));
+            digester.finishValue(fieldInfo.name);
+        }
+
+        @Override
+        public void doubleField(FieldInfo fieldInfo, double value) {
+            digester.startValue(IndexFingerprint.StoredType.DOUBLE).putLong(Double.doubleToLongBits(value));
+            digester.finishValue(fieldInfo.name);
+        }
+    }
+}
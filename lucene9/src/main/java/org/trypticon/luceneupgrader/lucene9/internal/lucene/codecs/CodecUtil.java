@@ -599,6 +599,11 @@ public final class CodecUtil {
    * extract the checksum value, call {@link #retrieveChecksum}.
    */
   public static long checksumEntireFile(IndexInput input) throws IOException {
+    if (FilterIndexInput.unwrap(input) instanceof ChecksumVerifyingIndexInput) {
+      // The bytes are checksummed as they are read and verified in one go by the directory.
+      // Inputs of older formats are wrapped to reverse their endianness, so they're unwrapped first.
+      return retrieveChecksum(input.clone());
+    }
     IndexInput clone = input.clone();
     clone.seek(0);
     ChecksumIndexInput in = new BufferedChecksumIndexInput(clone);
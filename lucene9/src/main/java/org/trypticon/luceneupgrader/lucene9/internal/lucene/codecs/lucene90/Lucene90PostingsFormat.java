@@ -369,6 +369,7 @@ public final class Lucene90PostingsFormat extends PostingsFormat {
 
   private final int minTermBlockSize;
   private final int maxTermBlockSize;
+  private final boolean offHeapTermsIndex;
 
   /** Creates {@code Lucene90PostingsFormat} with default settings. */
   public Lucene90PostingsFormat() {
@@ -385,10 +386,23 @@ public final class Lucene90PostingsFormat extends PostingsFormat {
    *     Lucene90BlockTreeTermsWriter#Lucene90BlockTreeTermsWriter(SegmentWriteState,PostingsWriterBase,int,int)
    */
   public Lucene90PostingsFormat(int minTermBlockSize, int maxTermBlockSize) {
+    this(minTermBlockSize, maxTermBlockSize, false);
+  }
+
+  /**
+   * Creates {@code Lucene90PostingsFormat} which, if {@code offHeapTermsIndex} is true, builds the
+   * terms index without holding it on the heap. The files are read the same way either way.
+   *
+   * @see
+   *     Lucene90BlockTreeTermsWriter#Lucene90BlockTreeTermsWriter(SegmentWriteState,PostingsWriterBase,int,int,boolean)
+   */
+  public Lucene90PostingsFormat(
+      int minTermBlockSize, int maxTermBlockSize, boolean offHeapTermsIndex) {
     super("Lucene90");
     Lucene90BlockTreeTermsWriter.validateSettings(minTermBlockSize, maxTermBlockSize);
     this.minTermBlockSize = minTermBlockSize;
     this.maxTermBlockSize = maxTermBlockSize;
+    this.offHeapTermsIndex = offHeapTermsIndex;
   }
 
   @Override
@@ -403,7 +417,7 @@ public final class Lucene90PostingsFormat extends PostingsFormat {
     try {
       FieldsConsumer ret =
           new Lucene90BlockTreeTermsWriter(
-              state, postingsWriter, minTermBlockSize, maxTermBlockSize);
+              state, postingsWriter, minTermBlockSize, maxTermBlockSize, offHeapTermsIndex);
       success = true;
       return ret;
     } finally {
@@ -21,16 +21,22 @@ import org.trypticon.luceneupgrader.lucene9.internal.lucene.index.*;
 import org.trypticon.luceneupgrader.lucene9.internal.lucene.store.ByteArrayDataOutput;
 import org.trypticon.luceneupgrader.lucene9.internal.lucene.store.ByteBuffersDataOutput;
 import org.trypticon.luceneupgrader.lucene9.internal.lucene.store.DataOutput;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.store.Directory;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.store.IOContext;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.store.IndexInput;
 import org.trypticon.luceneupgrader.lucene9.internal.lucene.store.IndexOutput;
 import org.trypticon.luceneupgrader.lucene9.internal.lucene.util.*;
 import org.trypticon.luceneupgrader.lucene9.internal.lucene.util.compress.LZ4;
 import org.trypticon.luceneupgrader.lucene9.internal.lucene.util.compress.LowercaseAsciiCompression;
 import org.trypticon.luceneupgrader.lucene9.internal.lucene.util.fst.*;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 /*
@@ -204,6 +210,13 @@ public final class Lucene90BlockTreeTermsWriter extends FieldsConsumer {
    */
   public static final int DEFAULT_MAX_BLOCK_SIZE = 48;
 
+  /**
+   * When the terms index is built off the heap, how large the indexes of a block's sub-blocks must
+   * be between them for the block's own index to be built into a temporary file rather than on the
+   * heap.
+   */
+  static final long OFF_HEAP_INDEX_MIN_BYTES = 256 * 1024;
+
   // public static boolean DEBUG = false;
   // public static boolean DEBUG2 = false;
 
@@ -221,6 +234,14 @@ public final class Lucene90BlockTreeTermsWriter extends FieldsConsumer {
 
   private final List<ByteBuffersDataOutput> fields = new ArrayList<>();
 
+  private final Directory directory;
+  private final String segment;
+  private final IOContext context;
+  private final boolean offHeapIndex;
+
+  // Indexes of blocks which were built into temporary files, until their parent blocks copy them
+  private final Map<FST<BytesRef>, SpilledIndex> spilledIndices = new IdentityHashMap<>();
+
   /**
    * Create a new writer. The number of items (terms or sub-blocks) per block will aim to be between
    * minItemsPerBlock and maxItemsPerBlock, though in some cases the blocks may be smaller than the
@@ -232,11 +253,33 @@ public final class Lucene90BlockTreeTermsWriter extends FieldsConsumer {
       int minItemsInBlock,
       int maxItemsInBlock)
       throws IOException {
+    this(state, postingsWriter, minItemsInBlock, maxItemsInBlock, false);
+  }
+
+  /**
+   * Create a new writer which, if {@code offHeapIndex} is true, keeps the terms index off the heap
+   * as it's built. The index of each field is written to the index file node by node, and the index
+   * of a block whose sub-blocks have large indexes goes to a temporary file until its parent block
+   * copies it. Suffixes aren't shared in indexes built this way, so the index file is a little
+   * larger, but the files are read exactly the same way.
+   */
+  public Lucene90BlockTreeTermsWriter(
+      SegmentWriteState state,
+      PostingsWriterBase postingsWriter,
+      int minItemsInBlock,
+      int maxItemsInBlock,
+      boolean offHeapIndex)
+      throws IOException {
     validateSettings(minItemsInBlock, maxItemsInBlock);
 
     this.minItemsInBlock = minItemsInBlock;
     this.maxItemsInBlock = maxItemsInBlock;
 
+    this.directory = state.directory;
+    this.segment = state.segmentInfo.name;
+    this.context = state.context;
+    this.offHeapIndex = offHeapIndex;
+
     this.maxDoc = state.segmentInfo.maxDoc();
     this.fieldInfos = state.fieldInfos;
     this.postingsWriter = postingsWriter;
@@ -439,10 +482,16 @@ public final class Lucene90BlockTreeTermsWriter extends FieldsConsumer {
       return "BLOCK: prefix=" + brToString(prefix);
     }
 
+    /**
+     * Compiles the index of the given blocks, together with those of their sub-blocks. If {@code
+     * indexOutput} isn't null, the nodes are written there as they're finished, and the index can
+     * only be read back from wherever that output went.
+     */
     public void compileIndex(
         List<PendingBlock> blocks,
         ByteBuffersDataOutput scratchBytes,
-        IntsRefBuilder scratchIntsRef)
+        IntsRefBuilder scratchIntsRef,
+        DataOutput indexOutput)
         throws IOException {
 
       assert (isFloor && blocks.size() > 1) || (isFloor == false && blocks.size() == 1)
@@ -471,10 +520,14 @@ public final class Lucene90BlockTreeTermsWriter extends FieldsConsumer {
       }
 
       final ByteSequenceOutputs outputs = ByteSequenceOutputs.getSingleton();
-      final FSTCompiler<BytesRef> fstCompiler =
+      final FSTCompiler.Builder<BytesRef> fstCompilerBuilder =
           new FSTCompiler.Builder<>(FST.INPUT_TYPE.BYTE1, outputs)
-              .shouldShareNonSingletonNodes(false)
-              .build();
+              .shouldShareNonSingletonNodes(false);
+      if (indexOutput != null) {
+        // Suffixes can't be shared with nodes which have already left the heap
+        fstCompilerBuilder.shouldShareSuffix(false).dataOutput(indexOutput);
+      }
+      final FSTCompiler<BytesRef> fstCompiler = fstCompilerBuilder.build();
       // if (DEBUG) {
       //  System.out.println("  compile index for prefix=" + prefix);
       // }
@@ -702,7 +755,11 @@ public final class Lucene90BlockTreeTermsWriter extends FieldsConsumer {
 
       assert firstBlock.isFloor || newBlocks.size() == 1;
 
-      firstBlock.compileIndex(newBlocks, scratchBytes, scratchIntsRef);
+      if (offHeapIndex) {
+        compileIndexOffHeap(firstBlock, prefixLength == 0);
+      } else {
+        firstBlock.compileIndex(newBlocks, scratchBytes, scratchIntsRef, null);
+      }
 
       // Remove slice from the top of the pending stack, that we just wrote:
       pending.subList(pending.size() - count, pending.size()).clear();
@@ -1069,9 +1126,75 @@ public final class Lucene90BlockTreeTermsWriter extends FieldsConsumer {
       lastTerm.copyBytes(text);
     }
 
+    /**
+     * Compiles the index of the blocks just written without holding it on the heap where that's
+     * worth it. The root block's index goes straight to the index file. A block whose sub-blocks
+     * have large indexes between them has its own index built into a temporary file and read from
+     * there, and the others are built on the heap as usual.
+     */
+    private void compileIndexOffHeap(PendingBlock firstBlock, boolean isRoot) throws IOException {
+      List<FST<BytesRef>> subIndices = new ArrayList<>();
+      long subIndicesBytes = 0;
+      for (PendingBlock block : newBlocks) {
+        if (block.subIndices != null) {
+          for (FST<BytesRef> subIndex : block.subIndices) {
+            subIndices.add(subIndex);
+            SpilledIndex spilled = spilledIndices.get(subIndex);
+            subIndicesBytes += spilled != null ? spilled.numBytes : subIndex.ramBytesUsed();
+          }
+        }
+      }
+
+      if (isRoot) {
+        firstBlock.compileIndex(newBlocks, scratchBytes, scratchIntsRef, indexOut);
+      } else if (subIndicesBytes >= OFF_HEAP_INDEX_MIN_BYTES) {
+        spillIndex(firstBlock);
+      } else {
+        firstBlock.compileIndex(newBlocks, scratchBytes, scratchIntsRef, null);
+      }
+
+      // The sub-block indexes have been copied into this one, so their files can go
+      for (FST<BytesRef> subIndex : subIndices) {
+        SpilledIndex spilled = spilledIndices.remove(subIndex);
+        if (spilled != null) {
+          spilled.close();
+        }
+      }
+    }
+
+    private void spillIndex(PendingBlock firstBlock) throws IOException {
+      IndexOutput tempOut = directory.createTempOutput(segment, "tip", context);
+      IndexInput in = null;
+      boolean success = false;
+      try {
+        firstBlock.compileIndex(newBlocks, scratchBytes, scratchIntsRef, tempOut);
+        tempOut.close();
+
+        ByteBuffersDataOutput indexMeta = new ByteBuffersDataOutput();
+        firstBlock.index.saveMetadata(indexMeta);
+        in = directory.openInput(tempOut.getName(), IOContext.READ);
+        firstBlock.index =
+            new FST<>(
+                indexMeta.toDataInput(),
+                in,
+                ByteSequenceOutputs.getSingleton(),
+                new OffHeapFSTStore());
+        spilledIndices.put(firstBlock.index, new SpilledIndex(tempOut.getName(), in));
+        success = true;
+      } finally {
+        if (!success) {
+          IOUtils.closeWhileHandlingException(tempOut, in);
+          IOUtils.deleteFilesIgnoringExceptions(directory, tempOut.getName());
+        }
+      }
+    }
+
     // Finishes all terms in this field
     public void finish() throws IOException {
       if (numTerms > 0) {
+        // An index built off the heap is written as the root block is compiled
+        final long indexStartFP = indexOut.getFilePointer();
+
         // if (DEBUG) System.out.println("BTTW: finish prefixStarts=" +
         // Arrays.toString(prefixStarts));
 
@@ -1107,9 +1230,13 @@ public final class Lucene90BlockTreeTermsWriter extends FieldsConsumer {
         metaOut.writeVInt(docsSeen.cardinality());
         writeBytesRef(metaOut, new BytesRef(firstPendingTerm.termBytes));
         writeBytesRef(metaOut, new BytesRef(lastPendingTerm.termBytes));
-        metaOut.writeVLong(indexOut.getFilePointer());
+        metaOut.writeVLong(indexStartFP);
         // Write FST to index
-        root.index.save(metaOut, indexOut);
+        if (offHeapIndex) {
+          root.index.saveMetadata(metaOut);
+        } else {
+          root.index.save(metaOut, indexOut);
+        }
         // System.out.println("  write FST " + indexStartFP + " field=" + fieldInfo.name);
 
         /*
@@ -1162,6 +1289,9 @@ public final class Lucene90BlockTreeTermsWriter extends FieldsConsumer {
       CodecUtil.writeFooter(metaOut);
       success = true;
     } finally {
+      // Only left over if a field failed part way through
+      IOUtils.closeWhileHandlingException(spilledIndices.values());
+      spilledIndices.clear();
       if (success) {
         IOUtils.close(metaOut, termsOut, indexOut, postingsWriter);
       } else {
@@ -1170,6 +1300,28 @@ public final class Lucene90BlockTreeTermsWriter extends FieldsConsumer {
     }
   }
 
+  /** The index of a block built into a temporary file, which is deleted once the index is closed. */
+  private final class SpilledIndex implements Closeable {
+    private final String fileName;
+    private final IndexInput in;
+    private final long numBytes;
+
+    SpilledIndex(String fileName, IndexInput in) {
+      this.fileName = fileName;
+      this.in = in;
+      this.numBytes = in.length();
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        in.close();
+      } finally {
+        directory.deleteFile(fileName);
+      }
+    }
+  }
+
   private static void writeBytesRef(DataOutput out, BytesRef bytes) throws IOException {
     out.writeVInt(bytes.length);
     out.writeBytes(bytes.bytes, bytes.offset, bytes.length);
@@ -23,71 +23,51 @@ import java.io.IOException;
 import java.util.*;
 
 /**
- * Utility class to update the {@link MergeState} instance to be restricted to a set of fields.
+ * Utility class to create a {@link MergeState} instance restricted to a set of fields.
  *
- * <p>Warning: the input {@linkplain MergeState} instance will be updated when calling {@link
- * #apply(Collection)}.
- *
- * <p>It should be called within a {@code try {...} finally {...}} block to make sure that the
- * mergeState instance is restored to its original state:
- *
- * <pre>
- * PerFieldMergeState pfMergeState = new PerFieldMergeState(mergeState);
- * try {
- *   doSomething(pfMergeState.apply(fields));
- *   ...
- * } finally {
- *   pfMergeState.reset();
- * }
- * </pre>
+ * <p>The input {@linkplain MergeState} instance is left as it is, since the other formats of the
+ * same merge may be reading it at the same time.
  */
 final class PerFieldMergeState {
-  private final MergeState in;
-  private final FieldInfos orgMergeFieldInfos;
-  private final FieldInfos[] orgFieldInfos;
-  private final FieldsProducer[] orgFieldsProducers;
-
-  PerFieldMergeState(MergeState in) {
-    this.in = in;
-    this.orgMergeFieldInfos = in.mergeFieldInfos;
-    this.orgFieldInfos = new FieldInfos[in.fieldInfos.length];
-    this.orgFieldsProducers = new FieldsProducer[in.fieldsProducers.length];
-
-    System.arraycopy(in.fieldInfos, 0, this.orgFieldInfos, 0, this.orgFieldInfos.length);
-    System.arraycopy(
-        in.fieldsProducers, 0, this.orgFieldsProducers, 0, this.orgFieldsProducers.length);
-  }
+
+  private PerFieldMergeState() {}
 
   /**
-   * Update the input {@link MergeState} instance to restrict the fields to the given ones.
+   * Creates a new {@link MergeState} from the given one, with the fields restricted to the given
+   * ones.
    *
-   * @param fields The fields to keep in the updated instance.
-   * @return The updated instance.
+   * @param in The instance to restrict.
+   * @param fields The fields to keep in the new instance.
+   * @return The new instance.
    */
-  MergeState apply(Collection<String> fields) {
-    in.mergeFieldInfos = new FilterFieldInfos(orgMergeFieldInfos, fields);
-    for (int i = 0; i < orgFieldInfos.length; i++) {
-      in.fieldInfos[i] = new FilterFieldInfos(orgFieldInfos[i], fields);
+  static MergeState restrictFields(MergeState in, Collection<String> fields) {
+    FieldInfos[] fieldInfos = new FieldInfos[in.fieldInfos.length];
+    for (int i = 0; i < fieldInfos.length; i++) {
+      fieldInfos[i] = new FilterFieldInfos(in.fieldInfos[i], fields);
     }
-    for (int i = 0; i < orgFieldsProducers.length; i++) {
-      in.fieldsProducers[i] =
-          orgFieldsProducers[i] == null
+    FieldsProducer[] fieldsProducers = new FieldsProducer[in.fieldsProducers.length];
+    for (int i = 0; i < fieldsProducers.length; i++) {
+      fieldsProducers[i] =
+          in.fieldsProducers[i] == null
               ? null
-              : new FilterFieldsProducer(orgFieldsProducers[i], fields);
+              : new FilterFieldsProducer(in.fieldsProducers[i], fields);
     }
-    return in;
-  }
-
-  /**
-   * Resets the input {@link MergeState} instance to its original state.
-   *
-   * @return The reset instance.
-   */
-  MergeState reset() {
-    in.mergeFieldInfos = orgMergeFieldInfos;
-    System.arraycopy(orgFieldInfos, 0, in.fieldInfos, 0, in.fieldInfos.length);
-    System.arraycopy(orgFieldsProducers, 0, in.fieldsProducers, 0, in.fieldsProducers.length);
-    return in;
+    return new MergeState(
+        in.docMaps,
+        in.segmentInfo,
+        new FilterFieldInfos(in.mergeFieldInfos, fields),
+        in.storedFieldsReaders,
+        in.termVectorsReaders,
+        in.normsProducers,
+        in.docValuesProducers,
+        fieldInfos,
+        in.liveDocs,
+        fieldsProducers,
+        in.pointsReaders,
+        in.knnVectorsReaders,
+        in.maxDocs,
+        in.infoStream,
+        in.needsIndexSort);
   }
 
   private static class FilterFieldInfos extends FieldInfos {
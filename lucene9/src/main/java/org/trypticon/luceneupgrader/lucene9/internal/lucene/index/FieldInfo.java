@@ -769,7 +769,7 @@ public final class FieldInfo {
   }
 
   /** Get a codec attribute value, or null if it does not exist */
-  public String getAttribute(String key) {
+  public synchronized String getAttribute(String key) {
     return attributes.get(key);
   }
 
@@ -783,8 +783,11 @@ public final class FieldInfo {
    * <p>If a value already exists for the key in the field, it will be replaced with the new value.
    * If the value of the attributes for a same field is changed between the documents, the behaviour
    * after merge is undefined.
+   *
+   * <p>The formats merged side by side within a merge may put attributes on the same field at the
+   * same time, so this is synchronized.
    */
-  public String putAttribute(String key, String value) {
+  public synchronized String putAttribute(String key, String value) {
     return attributes.put(key, value);
   }
 
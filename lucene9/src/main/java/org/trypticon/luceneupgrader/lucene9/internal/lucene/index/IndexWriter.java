@@ -30,6 +30,7 @@ import org.trypticon.luceneupgrader.lucene9.internal.lucene.tests.TestSecrets;
 import org.trypticon.luceneupgrader.lucene9.internal.lucene.search.*;
 import org.trypticon.luceneupgrader.lucene9.internal.lucene.store.*;
 import org.trypticon.luceneupgrader.lucene9.internal.lucene.util.*;
+import org.trypticon.luceneupgrader.UpgradeEvents;
 
 import java.io.Closeable;
 import java.io.IOException;
@@ -3367,7 +3368,14 @@ public class IndexWriter
     List<CodecReader> readers =
         merge.getMergeReader().stream().map(r -> r.codecReader).collect(Collectors.toList());
     SegmentMerger merger =
-        new SegmentMerger(readers, segInfo, infoStream, trackingDir, globalFieldNumberMap, context);
+        new SegmentMerger(
+            readers,
+            segInfo,
+            infoStream,
+            trackingDir,
+            globalFieldNumberMap,
+            context,
+            mergeScheduler.getIntraMergeExecutor(merge));
 
     if (!merger.shouldMerge()) {
       return;
@@ -5109,7 +5117,13 @@ public class IndexWriter
       }
       final SegmentMerger merger =
           new SegmentMerger(
-              mergeReaders, merge.info.info, infoStream, dirWrapper, globalFieldNumberMap, context);
+              mergeReaders,
+              merge.info.info,
+              infoStream,
+              dirWrapper,
+              globalFieldNumberMap,
+              context,
+              mergeScheduler.getIntraMergeExecutor(merge));
       merge.info.setSoftDelCount(Math.toIntExact(softDeleteCount.get()));
       merge.checkAborted();
 
@@ -5716,6 +5730,8 @@ public class IndexWriter
     if (infoStream.isEnabled("IW")) {
       infoStream.message("IW", "create compound file");
     }
+    UpgradeEvents.CompoundFile event = new UpgradeEvents.CompoundFile();
+    event.begin();
     // Now merge all added files
     boolean success = false;
     try {
@@ -5728,6 +5744,16 @@ public class IndexWriter
       }
     }
 
+    event.end();
+    if (event.shouldCommit()) {
+      event.segment = info.name;
+      event.fileCount = info.files().size();
+      for (String file : directory.getCreatedFiles()) {
+        event.bytesWritten += directory.fileLength(file);
+      }
+      event.commit();
+    }
+
     // Replace all previous files with the CFS/CFE files:
     info.setFiles(new HashSet<>(directory.getCreatedFiles()));
   }
@@ -23,6 +23,7 @@ import org.trypticon.luceneupgrader.lucene9.internal.lucene.util.InfoStream;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.concurrent.Executor;
 
 /**
  * Expert: {@link IndexWriter} uses an instance implementing this interface to execute the merges
@@ -53,6 +54,19 @@ public abstract class MergeScheduler implements Closeable {
     return in;
   }
 
+  /**
+   * Returns the executor to merge the parts of the codec within the given merge on, side by side:
+   * stored fields, postings, doc values and so on. The thread running the merge takes one part
+   * itself and waits for the rest, so the executor must not be one which runs merges, or they may
+   * end up waiting for each other.
+   *
+   * @return the executor, or {@code null} to merge the parts one after another.
+   */
+  public Executor getIntraMergeExecutor(OneMerge merge) {
+    // A no-op by default.
+    return null;
+  }
+
   /** Close this MergeScheduler. */
   @Override
   public abstract void close() throws IOException;
@@ -317,7 +317,7 @@ public final class SegmentInfo {
   }
 
   /** Get a codec attribute value, or null if it does not exist */
-  public String getAttribute(String key) {
+  public synchronized String getAttribute(String key) {
     return attributes.get(key);
   }
 
@@ -329,9 +329,10 @@ public final class SegmentInfo {
    * #getAttribute(String)}
    *
    * <p>If a value already exists for the field, it will be replaced with the new value. This method
-   * make a copy on write for every attribute change.
+   * make a copy on write for every attribute change, synchronized so that formats merged side by
+   * side can't lose each other's changes.
    */
-  public String putAttribute(String key, String value) {
+  public synchronized String putAttribute(String key, String value) {
     HashMap<String, String> newMap = new HashMap<>(attributes);
     String oldValue = newMap.put(key, value);
     // we make a full copy of this to prevent concurrent modifications to this in the toString
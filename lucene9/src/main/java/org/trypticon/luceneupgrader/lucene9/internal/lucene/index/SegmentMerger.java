@@ -19,11 +19,21 @@ package org.trypticon.luceneupgrader.lucene9.internal.lucene.index;
 import org.trypticon.luceneupgrader.lucene9.internal.lucene.codecs.*;
 import org.trypticon.luceneupgrader.lucene9.internal.lucene.store.Directory;
 import org.trypticon.luceneupgrader.lucene9.internal.lucene.store.IOContext;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.store.TrackingDirectoryWrapper;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.util.IOUtils;
 import org.trypticon.luceneupgrader.lucene9.internal.lucene.util.InfoStream;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.util.ThreadInterruptedException;
 import org.trypticon.luceneupgrader.lucene9.internal.lucene.util.Version;
+import org.trypticon.luceneupgrader.UpgradeEvents;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -39,6 +49,9 @@ final class SegmentMerger {
 
   private final IOContext context;
 
+  // runs the parts of the codec side by side, or null to run them one after another
+  private final Executor intraMergeExecutor;
+
   final MergeState mergeState;
   private final FieldInfos.Builder fieldInfosBuilder;
 
@@ -51,6 +64,18 @@ final class SegmentMerger {
       FieldInfos.FieldNumbers fieldNumbers,
       IOContext context)
       throws IOException {
+    this(readers, segmentInfo, infoStream, dir, fieldNumbers, context, null);
+  }
+
+  SegmentMerger(
+      List<CodecReader> readers,
+      SegmentInfo segmentInfo,
+      InfoStream infoStream,
+      Directory dir,
+      FieldInfos.FieldNumbers fieldNumbers,
+      IOContext context,
+      Executor intraMergeExecutor)
+      throws IOException {
     if (context.context != IOContext.Context.MERGE) {
       throw new IllegalArgumentException(
           "IOContext.context should be MERGE; got: " + context.context);
@@ -59,6 +84,7 @@ final class SegmentMerger {
     directory = dir;
     this.codec = segmentInfo.getCodec();
     this.context = context;
+    this.intraMergeExecutor = intraMergeExecutor;
     this.fieldInfosBuilder = new FieldInfos.Builder(fieldNumbers);
     Version minVersion = Version.LATEST;
     for (CodecReader reader : readers) {
@@ -98,62 +124,65 @@ final class SegmentMerger {
     if (!shouldMerge()) {
       throw new IllegalStateException("Merge would result in 0 document segment");
     }
+    UpgradeEvents.SegmentMerge mergeEvent = new UpgradeEvents.SegmentMerge();
+    mergeEvent.begin();
     mergeFieldInfos();
 
-    int numMerged = mergeWithLogging(this::mergeFields, "stored fields");
-    assert numMerged == mergeState.segmentInfo.maxDoc()
-        : "numMerged="
-            + numMerged
-            + " vs mergeState.segmentInfo.maxDoc()="
-            + mergeState.segmentInfo.maxDoc();
-
-    final SegmentWriteState segmentWriteState =
-        new SegmentWriteState(
-            mergeState.infoStream,
-            directory,
-            mergeState.segmentInfo,
-            mergeState.mergeFieldInfos,
-            null,
-            context);
+    // Each part writes its own files, so with an executor they're merged side by side
+    final int numMerged = mergeState.segmentInfo.maxDoc();
     final SegmentReadState segmentReadState =
         new SegmentReadState(
-            directory,
-            mergeState.segmentInfo,
-            mergeState.mergeFieldInfos,
-            IOContext.READ,
-            segmentWriteState.segmentSuffix);
+            directory, mergeState.segmentInfo, mergeState.mergeFieldInfos, IOContext.READ, "");
+    List<Part> parts = new ArrayList<>();
 
-    if (mergeState.mergeFieldInfos.hasNorms()) {
-      mergeWithLogging(this::mergeNorms, segmentWriteState, segmentReadState, "norms", numMerged);
-    }
+    parts.add(
+        () -> mergeWithLogging(this::mergeFields, segmentReadState, "stored fields", numMerged));
 
-    mergeWithLogging(this::mergeTerms, segmentWriteState, segmentReadState, "postings", numMerged);
+    parts.add(
+        () -> {
+          // Postings are written along with the norms of the new segment, so those go first
+          if (mergeState.mergeFieldInfos.hasNorms()) {
+            mergeWithLogging(this::mergeNorms, segmentReadState, "norms", numMerged);
+          }
+          mergeWithLogging(this::mergeTerms, segmentReadState, "postings", numMerged);
+        });
 
     if (mergeState.mergeFieldInfos.hasDocValues()) {
-      mergeWithLogging(
-          this::mergeDocValues, segmentWriteState, segmentReadState, "doc values", numMerged);
+      parts.add(
+          () -> mergeWithLogging(this::mergeDocValues, segmentReadState, "doc values", numMerged));
     }
 
     if (mergeState.mergeFieldInfos.hasPointValues()) {
-      mergeWithLogging(this::mergePoints, segmentWriteState, segmentReadState, "points", numMerged);
+      parts.add(() -> mergeWithLogging(this::mergePoints, segmentReadState, "points", numMerged));
     }
 
     if (mergeState.mergeFieldInfos.hasVectorValues()) {
-      mergeWithLogging(
-          this::mergeVectorValues,
-          segmentWriteState,
-          segmentReadState,
-          "numeric vectors",
-          numMerged);
+      parts.add(
+          () ->
+              mergeWithLogging(
+                  this::mergeVectorValues, segmentReadState, "numeric vectors", numMerged));
     }
 
     if (mergeState.mergeFieldInfos.hasVectors()) {
-      mergeWithLogging(this::mergeTermVectors, "term vectors");
+      parts.add(
+          () ->
+              mergeWithLogging(
+                  this::mergeTermVectors, segmentReadState, "term vectors", numMerged));
     }
 
-    // write the merged infos
-    mergeWithLogging(
-        this::mergeFieldInfos, segmentWriteState, segmentReadState, "field infos", numMerged);
+    mergeParts(parts);
+
+    // write the merged infos, once the formats have put their attributes on them
+    mergeWithLogging(this::mergeFieldInfos, segmentReadState, "field infos", numMerged);
+
+    mergeEvent.end();
+    if (mergeEvent.shouldCommit()) {
+      mergeEvent.segment = mergeState.segmentInfo.name;
+      mergeEvent.sourceSegmentCount = mergeState.maxDocs.length;
+      mergeEvent.documentCount = mergeState.segmentInfo.maxDoc();
+      mergeEvent.bytesWritten = segmentSizeInBytes();
+      mergeEvent.commit();
+    }
 
     return mergeState;
   }
@@ -162,7 +191,12 @@ final class SegmentMerger {
       SegmentWriteState segmentWriteState, SegmentReadState segmentReadState) throws IOException {
     codec
         .fieldInfosFormat()
-        .write(directory, mergeState.segmentInfo, "", mergeState.mergeFieldInfos, context);
+        .write(
+            segmentWriteState.directory,
+            mergeState.segmentInfo,
+            "",
+            mergeState.mergeFieldInfos,
+            context);
   }
 
   private void mergeDocValues(
@@ -217,14 +251,21 @@ final class SegmentMerger {
   /**
    * Merge stored fields from each of the segments into the new one.
    *
-   * @return The number of documents in all of the readers
    * @throws CorruptIndexException if the index is corrupt
    * @throws IOException if there is a low-level IO error
    */
-  private int mergeFields() throws IOException {
+  private void mergeFields(SegmentWriteState segmentWriteState, SegmentReadState segmentReadState)
+      throws IOException {
     try (StoredFieldsWriter fieldsWriter =
-        codec.storedFieldsFormat().fieldsWriter(directory, mergeState.segmentInfo, context)) {
-      return fieldsWriter.merge(mergeState);
+        codec
+            .storedFieldsFormat()
+            .fieldsWriter(segmentWriteState.directory, mergeState.segmentInfo, context)) {
+      int numMerged = fieldsWriter.merge(mergeState);
+      assert numMerged == mergeState.segmentInfo.maxDoc()
+          : "numMerged="
+              + numMerged
+              + " vs mergeState.segmentInfo.maxDoc()="
+              + mergeState.segmentInfo.maxDoc();
     }
   }
 
@@ -233,12 +274,14 @@ final class SegmentMerger {
    *
    * @throws IOException if there is a low-level IO error
    */
-  private int mergeTermVectors() throws IOException {
+  private void mergeTermVectors(
+      SegmentWriteState segmentWriteState, SegmentReadState segmentReadState) throws IOException {
     try (TermVectorsWriter termVectorsWriter =
-        codec.termVectorsFormat().vectorsWriter(directory, mergeState.segmentInfo, context)) {
+        codec
+            .termVectorsFormat()
+            .vectorsWriter(segmentWriteState.directory, mergeState.segmentInfo, context)) {
       int numMerged = termVectorsWriter.merge(mergeState);
       assert numMerged == mergeState.segmentInfo.maxDoc();
-      return numMerged;
     }
   }
 
@@ -249,46 +292,97 @@ final class SegmentMerger {
     }
   }
 
-  private interface Merger {
-    int merge() throws IOException;
-  }
-
   private interface VoidMerger {
     void merge(SegmentWriteState segmentWriteState, SegmentReadState segmentReadState)
         throws IOException;
   }
 
-  private int mergeWithLogging(Merger merger, String formatName) throws IOException {
-    long t0 = 0;
-    if (mergeState.infoStream.isEnabled("SM")) {
-      t0 = System.nanoTime();
+  /** One or more formats merged in turn, independently of the others. */
+  private interface Part {
+    void merge() throws IOException;
+  }
+
+  /**
+   * Merges the parts, side by side on the executor if there is one. The calling thread merges the
+   * first part itself, then waits for the others. If any part fails, the others are still waited
+   * for, so that nothing is writing to the new segment by the time the failure is thrown.
+   */
+  private void mergeParts(List<Part> parts) throws IOException {
+    if (intraMergeExecutor == null || parts.size() == 1) {
+      for (Part part : parts) {
+        part.merge();
+      }
+      return;
     }
-    int numMerged = merger.merge();
-    if (mergeState.infoStream.isEnabled("SM")) {
-      mergeState.infoStream.message(
-          "SM",
-          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0)
-              + " ms to merge "
-              + formatName
-              + " ["
-              + numMerged
-              + " docs]");
+
+    List<FutureTask<Void>> tasks = new ArrayList<>(parts.size() - 1);
+    for (Part part : parts.subList(1, parts.size())) {
+      FutureTask<Void> task =
+          new FutureTask<>(
+              () -> {
+                part.merge();
+                return null;
+              });
+      tasks.add(task);
+      intraMergeExecutor.execute(task);
+    }
+
+    Throwable failure = null;
+    try {
+      parts.get(0).merge();
+    } catch (Throwable t) {
+      failure = t;
+    }
+    boolean interrupted = false;
+    for (FutureTask<Void> task : tasks) {
+      while (true) {
+        try {
+          task.get();
+          break;
+        } catch (InterruptedException e) {
+          // the part is still writing to the new segment, so it has to be waited for all the same
+          interrupted = true;
+        } catch (ExecutionException e) {
+          failure = IOUtils.useOrSuppress(failure, e.getCause());
+          break;
+        }
+      }
+    }
+    if (interrupted) {
+      failure =
+          IOUtils.useOrSuppress(
+              failure, new ThreadInterruptedException(new InterruptedException()));
+      Thread.currentThread().interrupt();
+    }
+    if (failure != null) {
+      throw IOUtils.rethrowAlways(failure);
     }
-    return numMerged;
   }
 
+  /**
+   * Merges one format, writing through a directory of its own so that its files can be told apart
+   * from those of the formats being merged at the same time.
+   */
   private void mergeWithLogging(
-      VoidMerger merger,
-      SegmentWriteState segmentWriteState,
-      SegmentReadState segmentReadState,
-      String formatName,
-      int numMerged)
+      VoidMerger merger, SegmentReadState segmentReadState, String formatName, int numMerged)
       throws IOException {
     long t0 = 0;
     if (mergeState.infoStream.isEnabled("SM")) {
       t0 = System.nanoTime();
     }
+    TrackingDirectoryWrapper partDirectory = new TrackingDirectoryWrapper(directory);
+    SegmentWriteState segmentWriteState =
+        new SegmentWriteState(
+            mergeState.infoStream,
+            partDirectory,
+            mergeState.segmentInfo,
+            mergeState.mergeFieldInfos,
+            null,
+            context);
+    UpgradeEvents.MergePart part = new UpgradeEvents.MergePart();
+    part.begin();
     merger.merge(segmentWriteState, segmentReadState);
+    endPart(part, formatName, numMerged, partDirectory);
     long t1 = System.nanoTime();
     if (mergeState.infoStream.isEnabled("SM")) {
       mergeState.infoStream.message(
@@ -301,4 +395,41 @@ final class SegmentMerger {
               + " docs]");
     }
   }
+
+  private void endPart(
+      UpgradeEvents.MergePart event,
+      String part,
+      int documentCount,
+      TrackingDirectoryWrapper partDirectory)
+      throws IOException {
+    event.end();
+    if (event.shouldCommit()) {
+      event.segment = mergeState.segmentInfo.name;
+      event.part = part;
+      event.documentCount = documentCount;
+      for (String file : partDirectory.getCreatedFiles()) {
+        try {
+          event.bytesWritten += directory.fileLength(file);
+        } catch (FileNotFoundException | NoSuchFileException e) {
+          // a temporary file, deleted since it was listed
+        }
+      }
+      event.commit();
+    }
+  }
+
+  /** Adds up the sizes of the new segment's files written so far, for Flight Recorder events. */
+  private long segmentSizeInBytes() throws IOException {
+    long size = 0;
+    for (String file : directory.listAll()) {
+      if (IndexFileNames.parseSegmentName(file).equals(mergeState.segmentInfo.name)) {
+        try {
+          size += directory.fileLength(file);
+        } catch (FileNotFoundException | NoSuchFileException e) {
+          // a temporary file, deleted since it was listed
+        }
+      }
+    }
+    return size;
+  }
 }
@@ -0,0 +1,309 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trypticon.luceneupgrader.lucene9.internal.lucene.store;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.codecs.CodecUtil;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.index.CorruptIndexException;
+
+/**
+ * A {@link FilterDirectory} which computes the checksum of each file from the bytes its readers
+ * read anyway, instead of reading the whole file an extra time up front.
+ *
+ * <p>Inputs opened from this directory are {@link ChecksumVerifyingIndexInput}s, for which {@link
+ * CodecUtil#checksumEntireFile(IndexInput)} only checks that the footer is present. The caller
+ * <b>must</b> call {@link #verifyChecksums()} once it is done reading and before it trusts anything
+ * it read, e.g. before committing the result of a merge. Bytes which were never read are read at
+ * that point.
+ */
+public final class ChecksumVerifyingDirectory extends FilterDirectory {
+  private final Map<String, FileChecksum> checksums = new TreeMap<>();
+
+  public ChecksumVerifyingDirectory(Directory in) {
+    super(in);
+  }
+
+  @Override
+  public IndexInput openInput(String name, IOContext context) throws IOException {
+    IndexInput input = in.openInput(name, context);
+    FileChecksum checksum;
+    synchronized (checksums) {
+      checksum = checksums.computeIfAbsent(name, n -> new FileChecksum(input.length()));
+    }
+    return new ChecksumVerifyingIndexInput(
+        "ChecksumVerifyingIndexInput(" + input + ")", input, 0L, checksum, false);
+  }
+
+  /**
+   * Verifies the checksum of every file opened so far.
+   *
+   * @throws CorruptIndexException if any file's checksum does not match its footer.
+   * @throws IOException if an I/O error occurs reading the remainder of a file.
+   */
+  public void verifyChecksums() throws IOException {
+    synchronized (checksums) {
+      for (Map.Entry<String, FileChecksum> entry : checksums.entrySet()) {
+        entry.getValue().verify(in, entry.getKey());
+      }
+    }
+  }
+
+  /**
+   * Combines the CRC-32 of two runs of bytes into that of the second following the first, as zlib's
+   * {@code crc32_combine} does.
+   *
+   * @param crc1 the checksum of the first run.
+   * @param crc2 the checksum of the second run.
+   * @param length2 the length of the second run.
+   */
+  static long combine(long crc1, long crc2, long length2) {
+    if (length2 <= 0) {
+      return crc1;
+    }
+
+    // the operator for one zero bit, then for two and four
+    long[] even = new long[32];
+    long[] odd = new long[32];
+    odd[0] = 0xedb88320L;
+    long row = 1;
+    for (int n = 1; n < 32; n++) {
+      odd[n] = row;
+      row <<= 1;
+    }
+    square(even, odd);
+    square(odd, even);
+
+    // apply the zeros of the second run to the first checksum, one bit of its length at a time
+    do {
+      square(even, odd);
+      if ((length2 & 1) != 0) {
+        crc1 = times(even, crc1);
+      }
+      length2 >>= 1;
+      if (length2 == 0) {
+        break;
+      }
+      square(odd, even);
+      if ((length2 & 1) != 0) {
+        crc1 = times(odd, crc1);
+      }
+      length2 >>= 1;
+    } while (length2 != 0);
+
+    return crc1 ^ crc2;
+  }
+
+  private static long times(long[] matrix, long vector) {
+    long sum = 0;
+    for (int i = 0; vector != 0; i++, vector >>>= 1) {
+      if ((vector & 1) != 0) {
+        sum ^= matrix[i];
+      }
+    }
+    return sum;
+  }
+
+  private static void square(long[] square, long[] matrix) {
+    for (int n = 0; n < 32; n++) {
+      square[n] = times(matrix, matrix[n]);
+    }
+  }
+
+  /**
+   * The checksum of one file, shared by every input reading it, including those reading the files
+   * within a compound file. Each run of bytes read one after the other has a checksum of its own, and
+   * runs which meet are combined, so the bytes count in whatever order they are read.
+   */
+  static final class FileChecksum {
+    /**
+     * Beyond this many runs, reads which don't continue one are left for {@link #verify} to read
+     * again, to keep down the memory taken by a file read all over the place.
+     */
+    private static final int MAX_RUNS = 1024;
+
+    private final long length;
+
+    /** the checksum covers everything but the checksum itself at the end of the footer */
+    private final long checksumEnd;
+
+    /** the runs read so far, by where they start */
+    private final TreeMap<Long, Run> runs = new TreeMap<>();
+
+    /** the run last added to, which the next read most likely continues, and where it has to stop */
+    private Run lastRun;
+
+    private long lastRunLimit;
+
+    FileChecksum(long length) {
+      this.length = length;
+      this.checksumEnd = Math.max(0L, length - Long.BYTES);
+    }
+
+    /** Adds a byte read at a position in the file to the checksum, unless it's already there. */
+    synchronized void update(long position, byte b) {
+      if (lastRun != null && position == lastRun.end && position + 1 < lastRunLimit) {
+        lastRun.add(b);
+      } else {
+        add(position, new byte[] {b}, 0, 1, false);
+      }
+    }
+
+    /** Adds bytes read at a position in the file to the checksum, apart from those already there. */
+    synchronized void update(long position, byte[] bytes, int offset, int count) {
+      add(position, bytes, offset, count, false);
+    }
+
+    private void add(long position, byte[] bytes, int offset, int count, boolean verifying) {
+      long end = Math.min(position + count, checksumEnd);
+      while (position < end) {
+        Map.Entry<Long, Run> floor = runs.floorEntry(position);
+        Run run = floor == null ? null : floor.getValue();
+        if (run != null && run.end > position) {
+          int skip = (int) (Math.min(run.end, end) - position);
+          position += skip;
+          offset += skip;
+          continue;
+        }
+        if (run == null || run.end < position) {
+          if (!verifying && runs.size() >= MAX_RUNS) {
+            return;
+          }
+          run = new Run(position);
+          runs.put(position, run);
+        }
+
+        Map.Entry<Long, Run> next = runs.higherEntry(position);
+        long limit = next == null ? checksumEnd : next.getKey();
+        int n = (int) (Math.min(end, limit) - position);
+        run.add(bytes, offset, n);
+        position += n;
+        offset += n;
+        if (next != null && run.end == limit) {
+          run.append(next.getValue());
+          runs.remove(limit);
+          next = runs.higherEntry(run.start);
+          limit = next == null ? checksumEnd : next.getKey();
+        }
+        lastRun = run;
+        lastRunLimit = limit;
+      }
+    }
+
+    synchronized void verify(Directory directory, String name) throws IOException {
+      try (IndexInput input = directory.openInput(name, IOContext.READONCE)) {
+        if (length < CodecUtil.footerLength()) {
+          throw new CorruptIndexException(
+              "misplaced codec footer (file truncated?): length="
+                  + length
+                  + " but footerLength=="
+                  + CodecUtil.footerLength(),
+              input);
+        }
+
+        // Read the gaps between the runs, until there's one run over the whole file.
+        byte[] buffer = new byte[BufferedIndexInput.MERGE_BUFFER_SIZE];
+        while (true) {
+          Map.Entry<Long, Run> first = runs.firstEntry();
+          long gapStart = first != null && first.getKey() == 0 ? first.getValue().end : 0;
+          if (gapStart >= checksumEnd) {
+            break;
+          }
+          Map.Entry<Long, Run> next = runs.higherEntry(gapStart);
+          long gapEnd = next == null ? checksumEnd : next.getKey();
+          input.seek(gapStart);
+          for (long position = gapStart; position < gapEnd; ) {
+            int count = (int) Math.min(buffer.length, gapEnd - position);
+            input.readBytes(buffer, 0, count);
+            add(position, buffer, 0, count, true);
+            position += count;
+          }
+        }
+
+        input.seek(length - CodecUtil.footerLength());
+        int magic = CodecUtil.readBEInt(input);
+        if (magic != CodecUtil.FOOTER_MAGIC) {
+          throw new CorruptIndexException(
+              "codec footer mismatch (file truncated?): actual footer="
+                  + magic
+                  + " vs expected footer="
+                  + CodecUtil.FOOTER_MAGIC,
+              input);
+        }
+        int algorithmID = CodecUtil.readBEInt(input);
+        if (algorithmID != 0) {
+          throw new CorruptIndexException(
+              "codec footer mismatch: unknown algorithmID: " + algorithmID, input);
+        }
+        long expectedChecksum = CodecUtil.readBELong(input);
+        long actualChecksum = runs.isEmpty() ? 0 : runs.firstEntry().getValue().checksum();
+        if (expectedChecksum != actualChecksum) {
+          throw new CorruptIndexException(
+              "checksum failed (hardware problem?) : expected="
+                  + Long.toHexString(expectedChecksum)
+                  + " actual="
+                  + Long.toHexString(actualChecksum),
+              input);
+        }
+      }
+    }
+  }
+
+  /** A run of bytes read one after the other, and their checksum. */
+  private static final class Run {
+    private final long start;
+    private long end;
+
+    /** the checksum of the bytes from the start up to where the tail starts */
+    private long head;
+
+    private long tailStart;
+
+    /** the checksum of the bytes since the tail started */
+    private final CRC32 tail = new CRC32();
+
+    Run(long start) {
+      this.start = start;
+      this.end = start;
+      this.tailStart = start;
+    }
+
+    void add(byte b) {
+      tail.update(b);
+      end++;
+    }
+
+    void add(byte[] bytes, int offset, int count) {
+      tail.update(bytes, offset, count);
+      end += count;
+    }
+
+    /** Adds the run which starts where this one ends. */
+    void append(Run next) {
+      head = combine(checksum(), next.checksum(), next.end - next.start);
+      tail.reset();
+      end = next.end;
+      tailStart = end;
+    }
+
+    long checksum() {
+      return combine(head, tail.getValue(), end - tailStart);
+    }
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trypticon.luceneupgrader.lucene9.internal.lucene.store;
+
+import java.io.IOException;
+
+/**
+ * An input opened by {@link ChecksumVerifyingDirectory}, which passes every byte it reads to the
+ * checksum of the file. Clones and slices share the checksum of the file they came from.
+ *
+ * <p>Reads go straight through to the wrapped input, without a buffer of their own, so that nothing
+ * is read which the codec didn't ask for.
+ */
+public final class ChecksumVerifyingIndexInput extends IndexInput {
+  private final IndexInput in;
+  private final boolean isClone;
+
+  /** the position of this input's first byte in the underlying file */
+  private final long offset;
+
+  private final ChecksumVerifyingDirectory.FileChecksum checksum;
+
+  ChecksumVerifyingIndexInput(
+      String resourceDesc,
+      IndexInput in,
+      long offset,
+      ChecksumVerifyingDirectory.FileChecksum checksum,
+      boolean isClone) {
+    super(resourceDesc);
+    this.in = in;
+    this.offset = offset;
+    this.checksum = checksum;
+    this.isClone = isClone;
+  }
+
+  @Override
+  public byte readByte() throws IOException {
+    long position = in.getFilePointer();
+    byte b = in.readByte();
+    checksum.update(offset + position, b);
+    return b;
+  }
+
+  @Override
+  public void readBytes(byte[] b, int offset, int len) throws IOException {
+    long position = in.getFilePointer();
+    in.readBytes(b, offset, len);
+    checksum.update(this.offset + position, b, offset, len);
+  }
+
+  @Override
+  public long getFilePointer() {
+    return in.getFilePointer();
+  }
+
+  @Override
+  public void seek(long pos) throws IOException {
+    in.seek(pos);
+  }
+
+  @Override
+  public long length() {
+    return in.length();
+  }
+
+  @Override
+  public ChecksumVerifyingIndexInput clone() {
+    return new ChecksumVerifyingIndexInput(toString(), in.clone(), offset, checksum, true);
+  }
+
+  @Override
+  public IndexInput slice(String sliceDescription, long offset, long length) throws IOException {
+    return new ChecksumVerifyingIndexInput(
+        getFullSliceDescription(sliceDescription),
+        in.slice(sliceDescription, offset, length),
+        this.offset + offset,
+        checksum,
+        true);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!isClone) {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,372 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trypticon.luceneupgrader.lucene9.internal.lucene.store;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.util.IOUtils;
+
+/**
+ * An {@link NIOFSDirectory} which uses direct I/O ({@code O_DIRECT}) for merges, so that the bytes
+ * written do not go through, and evict everything else from, the OS page cache.
+ *
+ * <p>Outputs opened with a {@link IOContext.Context#MERGE} context are written in whole
+ * file-system blocks from an aligned buffer; the last block is padded and the file truncated back
+ * to its real length on close. Merge inputs can optionally be read with direct I/O too. All other
+ * files are handled exactly as in {@link NIOFSDirectory}.
+ *
+ * <p>If the file system rejects direct I/O, the first file which fails is retried with buffered
+ * I/O and the directory stops trying direct I/O from then on.
+ */
+public class DirectIODirectory extends NIOFSDirectory {
+
+  /** Default buffer size for direct reads and writes, set to {@value #DEFAULT_BUFFER_SIZE}. */
+  public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+  /** The JDK's {@code O_DIRECT} open option, or {@code null} if this JDK has none. */
+  private static final OpenOption DIRECT_OPEN_OPTION = getDirectOpenOption();
+
+  private final boolean directReads;
+  private final int blockSize;
+  private volatile boolean directSupported;
+
+  /**
+   * Create a new DirectIODirectory for the named location.
+   *
+   * @param path the path of the directory
+   * @param directReads whether merge inputs should also be read with direct I/O
+   * @throws IOException if there is a low-level I/O error
+   */
+  public DirectIODirectory(Path path, boolean directReads) throws IOException {
+    super(path);
+    this.directReads = directReads;
+    int size;
+    try {
+      size = Math.toIntExact(Files.getFileStore(getDirectory()).getBlockSize());
+    } catch (@SuppressWarnings("unused") UnsupportedOperationException | ArithmeticException e) {
+      size = 0;
+    }
+    this.blockSize = size;
+    this.directSupported = size > 0 && DIRECT_OPEN_OPTION != null;
+  }
+
+  /** Returns whether direct I/O is still being attempted by this directory. */
+  public boolean isDirectSupported() {
+    return directSupported;
+  }
+
+  /**
+   * Looks up {@code com.sun.nio.file.ExtendedOpenOption.DIRECT} reflectively, because it lives in a
+   * JDK-internal package which not every JDK has.
+   */
+  private static OpenOption getDirectOpenOption() {
+    try {
+      final Class<? extends OpenOption> clazz =
+          Class.forName("com.sun.nio.file.ExtendedOpenOption").asSubclass(OpenOption.class);
+      for (OpenOption option : clazz.getEnumConstants()) {
+        if (option.toString().equalsIgnoreCase("DIRECT")) {
+          return option;
+        }
+      }
+      return null;
+    } catch (@SuppressWarnings("unused") ClassNotFoundException | ClassCastException e) {
+      return null;
+    }
+  }
+
+  @Override
+  public IndexOutput createOutput(String name, IOContext context) throws IOException {
+    if (context.context != IOContext.Context.MERGE || !directSupported) {
+      return super.createOutput(name, context);
+    }
+    ensureOpen();
+    Path path = getDirectory().resolve(name);
+    FileChannel channel;
+    try {
+      channel = openDirect(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+    } catch (IOException | UnsupportedOperationException e) {
+      // If buffered I/O works where direct I/O didn't, it's direct I/O which isn't supported.
+      IndexOutput output = super.createOutput(name, context);
+      directSupported = false;
+      return output;
+    }
+    return new DirectIOIndexOutput(path, name, channel, blockSize);
+  }
+
+  @Override
+  public IndexInput openInput(String name, IOContext context) throws IOException {
+    if (!directReads || context.context != IOContext.Context.MERGE || !directSupported) {
+      return super.openInput(name, context);
+    }
+    ensureOpen();
+    ensureCanRead(name);
+    Path path = getDirectory().resolve(name);
+    FileChannel channel;
+    try {
+      channel = openDirect(path, StandardOpenOption.READ);
+    } catch (IOException | UnsupportedOperationException e) {
+      IndexInput input = super.openInput(name, context);
+      directSupported = false;
+      return input;
+    }
+    boolean success = false;
+    try {
+      final DirectIOIndexInput indexInput =
+          new DirectIOIndexInput("DirectIOIndexInput(path=\"" + path + "\")", channel, blockSize);
+      success = true;
+      return indexInput;
+    } finally {
+      if (success == false) {
+        IOUtils.closeWhileHandlingException(channel);
+      }
+    }
+  }
+
+  /**
+   * Opens a file with direct I/O. A file system which doesn't support it fails here, with an {@link
+   * IOException} or an {@link UnsupportedOperationException}.
+   */
+  FileChannel openDirect(Path path, OpenOption... options) throws IOException {
+    OpenOption[] directOptions = Arrays.copyOf(options, options.length + 1);
+    directOptions[options.length] = DIRECT_OPEN_OPTION;
+    return FileChannel.open(path, directOptions);
+  }
+
+  private static ByteBuffer allocateAligned(int capacity, int blockSize) {
+    return ByteBuffer.allocateDirect(capacity + blockSize - 1).alignedSlice(blockSize);
+  }
+
+  private static int roundUp(int length, int blockSize) {
+    return (length + blockSize - 1) / blockSize * blockSize;
+  }
+
+  /** An {@link OutputStreamIndexOutput} writing through a {@link DirectIOOutputStream}. */
+  static final class DirectIOIndexOutput extends OutputStreamIndexOutput {
+    DirectIOIndexOutput(Path path, String name, FileChannel channel, int blockSize) {
+      super(
+          "DirectIOIndexOutput(path=\"" + path + "\")",
+          name,
+          new DirectIOOutputStream(channel, blockSize),
+          FSIndexOutput.CHUNK_SIZE);
+    }
+  }
+
+  /** Writes whole blocks with direct I/O, padding the last one and truncating on close. */
+  private static final class DirectIOOutputStream extends OutputStream {
+    private final FileChannel channel;
+    private final int blockSize;
+    private final ByteBuffer buffer;
+    private long filePos;
+    private boolean closed;
+
+    DirectIOOutputStream(FileChannel channel, int blockSize) {
+      this.channel = channel;
+      this.blockSize = blockSize;
+      this.buffer = allocateAligned(roundUp(DEFAULT_BUFFER_SIZE, blockSize), blockSize);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      buffer.put((byte) b);
+      if (!buffer.hasRemaining()) {
+        dump();
+      }
+    }
+
+    @Override
+    public void write(byte[] b, int offset, int length) throws IOException {
+      while (length > 0) {
+        int chunk = Math.min(length, buffer.remaining());
+        buffer.put(b, offset, chunk);
+        offset += chunk;
+        length -= chunk;
+        if (!buffer.hasRemaining()) {
+          dump();
+        }
+      }
+    }
+
+    private void dump() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        filePos += channel.write(buffer, filePos);
+      }
+      buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try (FileChannel channel = this.channel) {
+        int tail = buffer.position();
+        long length = filePos + tail;
+        if (tail > 0) {
+          // Whatever is left over past the tail in the buffer gets written as padding,
+          // then truncated off again.
+          buffer.position(roundUp(tail, blockSize));
+          dump();
+        }
+        channel.truncate(length);
+      }
+    }
+  }
+
+  /** Reads aligned blocks with direct I/O into an aligned buffer, then copies what was asked for. */
+  static final class DirectIOIndexInput extends BufferedIndexInput {
+    /** the file channel we will read from */
+    private final FileChannel channel;
+    /** is this instance a clone and hence does not own the file to close it */
+    private boolean isClone;
+    /** start offset: non-zero in the slice case */
+    private final long off;
+    /** end offset (start+length) */
+    private final long end;
+
+    private final int blockSize;
+    private ByteBuffer alignedBuffer;
+
+    DirectIOIndexInput(String resourceDesc, FileChannel channel, int blockSize)
+        throws IOException {
+      super(resourceDesc, DEFAULT_BUFFER_SIZE);
+      this.channel = channel;
+      this.off = 0L;
+      this.end = channel.size();
+      this.blockSize = blockSize;
+    }
+
+    private DirectIOIndexInput(
+        String resourceDesc,
+        FileChannel channel,
+        long off,
+        long length,
+        int bufferSize,
+        int blockSize) {
+      super(resourceDesc, bufferSize);
+      this.channel = channel;
+      this.off = off;
+      this.end = off + length;
+      this.blockSize = blockSize;
+      this.isClone = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!isClone) {
+        channel.close();
+      }
+    }
+
+    @Override
+    public DirectIOIndexInput clone() {
+      DirectIOIndexInput clone = (DirectIOIndexInput) super.clone();
+      clone.isClone = true;
+      clone.alignedBuffer = null;
+      return clone;
+    }
+
+    @Override
+    public IndexInput slice(String sliceDescription, long offset, long length) throws IOException {
+      if (offset < 0 || length < 0 || offset + length > this.length()) {
+        throw new IllegalArgumentException(
+            "slice() "
+                + sliceDescription
+                + " out of bounds: offset="
+                + offset
+                + ",length="
+                + length
+                + ",fileLength="
+                + this.length()
+                + ": "
+                + this);
+      }
+      return new DirectIOIndexInput(
+          getFullSliceDescription(sliceDescription),
+          channel,
+          off + offset,
+          length,
+          getBufferSize(),
+          blockSize);
+    }
+
+    @Override
+    public long length() {
+      return end - off;
+    }
+
+    @Override
+    protected void readInternal(ByteBuffer b) throws IOException {
+      long pos = getFilePointer() + off;
+
+      if (pos + b.remaining() > end) {
+        throw new EOFException("read past EOF: " + this);
+      }
+
+      if (alignedBuffer == null) {
+        alignedBuffer = allocateAligned(roundUp(getBufferSize(), blockSize) + blockSize, blockSize);
+      }
+
+      try {
+        while (b.hasRemaining()) {
+          long alignedPos = pos / blockSize * blockSize;
+          int delta = (int) (pos - alignedPos);
+          alignedBuffer.clear();
+          alignedBuffer.limit(
+              Math.min(alignedBuffer.capacity(), roundUp(delta + b.remaining(), blockSize)));
+          long readPos = alignedPos;
+          // A short read which leaves us unaligned can only mean we hit the end of the file.
+          while (alignedBuffer.hasRemaining() && readPos % blockSize == 0) {
+            int i = channel.read(alignedBuffer, readPos);
+            if (i <= 0) {
+              break;
+            }
+            readPos += i;
+          }
+          int available = alignedBuffer.position() - delta;
+          if (available <= 0) {
+            throw new EOFException("read past EOF: " + this + " pos: " + pos + " end: " + end);
+          }
+          int count = Math.min(b.remaining(), available);
+          alignedBuffer.limit(delta + count);
+          alignedBuffer.position(delta);
+          b.put(alignedBuffer);
+          pos += count;
+        }
+      } catch (IOException ioe) {
+        throw new IOException(ioe.getMessage() + ": " + this, ioe);
+      }
+    }
+
+    @Override
+    protected void seekInternal(long pos) throws IOException {
+      if (pos > length()) {
+        throw new EOFException(
+            "read past EOF: pos=" + pos + " vs length=" + length() + ": " + this);
+      }
+    }
+  }
+}
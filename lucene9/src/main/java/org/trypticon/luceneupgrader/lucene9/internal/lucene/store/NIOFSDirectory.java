@@ -32,7 +32,8 @@ import java.util.concurrent.Future;
  * allows multiple threads to read from the same file without synchronizing.
  *
  * <p>This class only uses FileChannel when reading; writing is achieved with {@link
- * FSDirectory.FSIndexOutput}.
+ * FSDirectory.FSIndexOutput}. Inputs opened with a {@link IOContext.Context#MERGE} context are
+ * {@link ReadAheadIndexInput}s, which prefetch the file in the background.
  *
  * <p><b>NOTE</b>: NIOFSDirectory is not recommended on Windows because of a bug in how
  * FileChannel.read is implemented in Sun's JRE. Inside of the implementation the position is
@@ -79,8 +80,12 @@ public class NIOFSDirectory extends FSDirectory {
     FileChannel fc = FileChannel.open(path, StandardOpenOption.READ);
     boolean success = false;
     try {
-      final NIOFSIndexInput indexInput =
-          new NIOFSIndexInput("NIOFSIndexInput(path=\"" + path + "\")", fc, context);
+      final IndexInput indexInput;
+      if (context.context == IOContext.Context.MERGE) {
+        indexInput = new ReadAheadIndexInput("ReadAheadIndexInput(path=\"" + path + "\")", fc);
+      } else {
+        indexInput = new NIOFSIndexInput("NIOFSIndexInput(path=\"" + path + "\")", fc, context);
+      }
       success = true;
       return indexInput;
     } finally {
@@ -43,11 +43,46 @@ class BytesStore extends DataOutput implements Accountable {
   private byte[] current;
   private int nextWrite;
 
+  // Where blocks are moved once nothing will read or change them again, or null to keep them all
+  private final DataOutput spillOut;
+  // How many of the leading blocks have been moved to spillOut, leaving null in their place
+  private int spilledBlocks;
+
   public BytesStore(int blockBits) {
+    this(blockBits, null);
+  }
+
+  /**
+   * Creates a store which can move finished blocks to the given output with {@link
+   * #spillBefore(long)}, so that only the bytes still being written are kept on the heap.
+   */
+  BytesStore(int blockBits, DataOutput spillOut) {
     this.blockBits = blockBits;
     blockSize = 1 << blockBits;
     blockMask = blockSize - 1;
     nextWrite = blockSize;
+    this.spillOut = spillOut;
+  }
+
+  /** Returns true if the bytes are moved to an output instead of being kept. */
+  boolean isSpilling() {
+    return spillOut != null;
+  }
+
+  /**
+   * Moves every whole block before the given position to the spill output and drops it. The bytes
+   * before the position must never be read or written again.
+   */
+  void spillBefore(long position) throws IOException {
+    assert spillOut != null;
+    assert position <= getPosition();
+    int blockIndex = (int) (position >> blockBits);
+    while (spilledBlocks < blockIndex) {
+      byte[] block = blocks.get(spilledBlocks);
+      spillOut.writeBytes(block, 0, block.length);
+      blocks.set(spilledBlocks, null);
+      spilledBlocks++;
+    }
   }
 
   /** Absolute write byte; you must ensure dest is &lt; max position written so far. */
@@ -356,17 +391,33 @@ class BytesStore extends DataOutput implements Accountable {
     assert newLen == getPosition();
   }
 
-  public void finish() {
+  public void finish() throws IOException {
     if (current != null) {
-      byte[] lastBuffer = new byte[nextWrite];
-      System.arraycopy(current, 0, lastBuffer, 0, nextWrite);
-      blocks.set(blocks.size() - 1, lastBuffer);
+      // The last block may have been spilled already if it was full
+      if (spilledBlocks < blocks.size()) {
+        byte[] lastBuffer = new byte[nextWrite];
+        System.arraycopy(current, 0, lastBuffer, 0, nextWrite);
+        blocks.set(blocks.size() - 1, lastBuffer);
+      }
       current = null;
     }
+    if (spillOut != null) {
+      while (spilledBlocks < blocks.size()) {
+        byte[] block = blocks.get(spilledBlocks);
+        if (block != null) {
+          spillOut.writeBytes(block, 0, block.length);
+        }
+        blocks.set(spilledBlocks, null);
+        spilledBlocks++;
+      }
+    }
   }
 
   /** Writes all of our bytes to the target {@link DataOutput}. */
   public void writeTo(DataOutput out) throws IOException {
+    if (spilledBlocks > 0) {
+      throw new IllegalStateException("bytes were already moved to the spill output");
+    }
     for (byte[] block : blocks) {
       out.writeBytes(block, 0, block.length);
     }
@@ -503,7 +554,9 @@ class BytesStore extends DataOutput implements Accountable {
   public long ramBytesUsed() {
     long size = BASE_RAM_BYTES_USED;
     for (byte[] block : blocks) {
-      size += RamUsageEstimator.sizeOf(block);
+      if (block != null) {
+        size += RamUsageEstimator.sizeOf(block);
+      }
     }
     return size;
   }
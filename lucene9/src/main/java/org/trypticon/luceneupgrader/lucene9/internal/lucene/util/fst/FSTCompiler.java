@@ -17,6 +17,7 @@
 package org.trypticon.luceneupgrader.lucene9.internal.lucene.util.fst;
 
 import org.trypticon.luceneupgrader.lucene9.internal.lucene.store.ByteArrayDataOutput;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.store.DataOutput;
 import org.trypticon.luceneupgrader.lucene9.internal.lucene.util.ArrayUtil;
 import org.trypticon.luceneupgrader.lucene9.internal.lucene.util.IntsRef;
 import org.trypticon.luceneupgrader.lucene9.internal.lucene.util.IntsRefBuilder;
@@ -100,7 +101,7 @@ public class FSTCompiler<T> {
    * tuning and tweaking, see {@link Builder}.
    */
   public FSTCompiler(FST.INPUT_TYPE inputType, Outputs<T> outputs) {
-    this(inputType, 0, 0, true, true, Integer.MAX_VALUE, outputs, true, 15, 1f);
+    this(inputType, 0, 0, true, true, Integer.MAX_VALUE, outputs, true, 15, 1f, null);
   }
 
   private FSTCompiler(
@@ -113,14 +114,15 @@ public class FSTCompiler<T> {
       Outputs<T> outputs,
       boolean allowFixedLengthArcs,
       int bytesPageBits,
-      float directAddressingMaxOversizingFactor) {
+      float directAddressingMaxOversizingFactor,
+      DataOutput dataOutput) {
     this.minSuffixCount1 = minSuffixCount1;
     this.minSuffixCount2 = minSuffixCount2;
     this.doShareNonSingletonNodes = doShareNonSingletonNodes;
     this.shareMaxTailLength = shareMaxTailLength;
     this.allowFixedLengthArcs = allowFixedLengthArcs;
     this.directAddressingMaxOversizingFactor = directAddressingMaxOversizingFactor;
-    fst = new FST<>(inputType, outputs, bytesPageBits);
+    fst = new FST<>(inputType, outputs, bytesPageBits, dataOutput);
     bytes = fst.bytes;
     assert bytes != null;
     if (doShareSuffix) {
@@ -156,6 +158,7 @@ public class FSTCompiler<T> {
     private boolean allowFixedLengthArcs = true;
     private int bytesPageBits = 15;
     private float directAddressingMaxOversizingFactor = DIRECT_ADDRESSING_MAX_OVERSIZING_FACTOR;
+    private DataOutput dataOutput;
 
     /**
      * @param inputType The input type (transition labels). Can be anything from {@link INPUT_TYPE}
@@ -268,8 +271,28 @@ public class FSTCompiler<T> {
       return this;
     }
 
+    /**
+     * Writes the bytes of each node to the given output as soon as the node is finished, instead of
+     * keeping the whole FST on the heap, so that only the nodes still being built take up memory.
+     * The finished FST can't be read until its bytes are read back from wherever the output went;
+     * its metadata is written with {@link FST#saveMetadata}.
+     *
+     * <p>Sharing suffixes needs to read finished nodes back, so {@code shouldShareSuffix} must be
+     * {@code false}.
+     *
+     * <p>Default = {@code null}, to keep the FST on the heap.
+     */
+    public Builder<T> dataOutput(DataOutput dataOutput) {
+      this.dataOutput = dataOutput;
+      return this;
+    }
+
     /** Creates a new {@link FSTCompiler}. */
     public FSTCompiler<T> build() {
+      if (dataOutput != null && shouldShareSuffix) {
+        throw new IllegalArgumentException(
+            "suffixes can't be shared when the FST is written to a DataOutput as it's built");
+      }
       FSTCompiler<T> fstCompiler =
           new FSTCompiler<>(
               inputType,
@@ -281,7 +304,8 @@ public class FSTCompiler<T> {
               outputs,
               allowFixedLengthArcs,
               bytesPageBits,
-              directAddressingMaxOversizingFactor);
+              directAddressingMaxOversizingFactor,
+              dataOutput);
       return fstCompiler;
     }
   }
@@ -331,6 +355,11 @@ public class FSTCompiler<T> {
       lastFrozenNode = node;
     }
 
+    if (bytes.isSpilling()) {
+      // Nothing reads or changes a node once it's written, so all but the block it ends in can go.
+      bytes.spillBefore(bytesPosEnd);
+    }
+
     nodeIn.clear();
 
     final CompiledNode fn = new CompiledNode();
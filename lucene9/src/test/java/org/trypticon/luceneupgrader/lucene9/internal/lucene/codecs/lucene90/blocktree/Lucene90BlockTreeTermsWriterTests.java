@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trypticon.luceneupgrader.lucene9.internal.lucene.codecs.lucene90.blocktree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.codecs.Codec;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.codecs.FilterCodec;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.codecs.PostingsFormat;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.codecs.lucene90.Lucene90PostingsFormat;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.codecs.perfield.PerFieldPostingsFormat;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.document.Document;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.document.Field;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.document.StringField;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.index.DirectoryReader;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.index.IndexWriter;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.index.IndexWriterConfig;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.index.Terms;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.index.TermsEnum;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.store.ByteBuffersDirectory;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.store.FilterDirectory;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.store.IOContext;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.store.IndexOutput;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.util.BytesRef;
+
+/** Tests for {@link Lucene90BlockTreeTermsWriter} building the terms index off the heap. */
+public class Lucene90BlockTreeTermsWriterTests {
+  // Enough unique terms under one prefix for the index of the block holding them all to be built
+  // in a temporary file, once its sub-blocks' indexes reach OFF_HEAP_INDEX_MIN_BYTES between them.
+  // Small blocks make for more of them, and a bigger index, from fewer terms.
+  private static final int TERM_COUNT = 300_000;
+  private static final int TERMS_PER_DOCUMENT = 1000;
+  private static final int MIN_BLOCK_SIZE = 4;
+  private static final int MAX_BLOCK_SIZE = 6;
+
+  private final List<String> tempOutputs = new ArrayList<>();
+  private FilterDirectory directory;
+  private String[] terms;
+
+  @Before
+  public void setUp() {
+    directory =
+        new FilterDirectory(new ByteBuffersDirectory()) {
+          @Override
+          public IndexOutput createTempOutput(String prefix, String suffix, IOContext context)
+              throws IOException {
+            IndexOutput output = super.createTempOutput(prefix, suffix, context);
+            tempOutputs.add(output.getName());
+            return output;
+          }
+        };
+    // Distinct, and spread out over the whole range so that the blocks have varied prefixes
+    terms = new String[TERM_COUNT];
+    for (int i = 0; i < TERM_COUNT; i++) {
+      terms[i] = String.format("x%08x", i * 0x9E3779B1);
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    directory.close();
+  }
+
+  @Test
+  public void testOffHeapIndex() throws Exception {
+    IndexWriterConfig config = new IndexWriterConfig(null);
+    config.setCodec(new OffHeapIndexCodec(Codec.getDefault()));
+    try (IndexWriter writer = new IndexWriter(directory, config)) {
+      for (int start = 0; start < TERM_COUNT; start += TERMS_PER_DOCUMENT) {
+        Document document = new Document();
+        for (int i = start; i < start + TERMS_PER_DOCUMENT; i++) {
+          document.add(new StringField("term", terms[i], Field.Store.NO));
+        }
+        writer.addDocument(document);
+      }
+      writer.forceMerge(1);
+    }
+
+    List<String> spilled = new ArrayList<>();
+    for (String name : tempOutputs) {
+      if (name.contains("_tip_")) {
+        spilled.add(name);
+      }
+    }
+    assertFalse("No block's index was built in a temporary file", spilled.isEmpty());
+    for (String name : spilled) {
+      assertFalse(name + " was left behind", Arrays.asList(directory.listAll()).contains(name));
+    }
+
+    Arrays.sort(terms);
+    try (DirectoryReader reader = DirectoryReader.open(directory)) {
+      assertEquals(1, reader.leaves().size());
+      Terms indexTerms = reader.leaves().get(0).reader().terms("term");
+      assertEquals(TERM_COUNT, indexTerms.size());
+
+      TermsEnum termsEnum = indexTerms.iterator();
+      for (String term : terms) {
+        assertEquals(new BytesRef(term), termsEnum.next());
+      }
+      assertNull(termsEnum.next());
+
+      // Seeking goes through the terms index, including the parts copied from temporary files
+      termsEnum = indexTerms.iterator();
+      for (int i = 0; i < TERM_COUNT; i += 97) {
+        assertTrue(terms[i], termsEnum.seekExact(new BytesRef(terms[i])));
+        assertFalse(termsEnum.seekExact(new BytesRef(terms[i] + "0")));
+      }
+      assertEquals(TermsEnum.SeekStatus.END, termsEnum.seekCeil(new BytesRef("y")));
+    }
+  }
+
+  /** Writes with the given codec, but builds the terms index off the heap. */
+  private static class OffHeapIndexCodec extends FilterCodec {
+    private final PostingsFormat postingsFormat;
+
+    OffHeapIndexCodec(Codec delegate) {
+      super(delegate.getName(), delegate);
+      PostingsFormat offHeapFormat =
+          new Lucene90PostingsFormat(MIN_BLOCK_SIZE, MAX_BLOCK_SIZE, true);
+      postingsFormat =
+          new PerFieldPostingsFormat() {
+            @Override
+            public PostingsFormat getPostingsFormatForField(String field) {
+              return offHeapFormat;
+            }
+          };
+    }
+
+    @Override
+    public PostingsFormat postingsFormat() {
+      return postingsFormat;
+    }
+  }
+}
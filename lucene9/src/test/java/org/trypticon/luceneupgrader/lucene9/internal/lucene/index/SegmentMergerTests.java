@@ -0,0 +1,259 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trypticon.luceneupgrader.lucene9.internal.lucene.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.codecs.Codec;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.codecs.DocValuesConsumer;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.codecs.DocValuesFormat;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.codecs.DocValuesProducer;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.codecs.FilterCodec;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.codecs.PointsFormat;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.codecs.PointsReader;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.codecs.PointsWriter;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.codecs.StoredFieldsFormat;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.codecs.StoredFieldsReader;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.codecs.StoredFieldsWriter;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.document.Document;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.document.Field;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.document.LongPoint;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.document.NumericDocValuesField;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.document.StringField;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.store.ByteBuffersDirectory;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.store.Directory;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.store.IOContext;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.store.MergeInfo;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.util.InfoStream;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.util.StringHelper;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.util.Version;
+
+/** Tests for {@link SegmentMerger} merging the parts of the codec side by side. */
+public class SegmentMergerTests {
+  private static final int DOCUMENT_COUNT = 100;
+
+  private Directory source;
+  private DirectoryReader reader;
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() throws Exception {
+    source = new ByteBuffersDirectory();
+    try (IndexWriter writer = new IndexWriter(source, new IndexWriterConfig(null))) {
+      for (int i = 0; i < DOCUMENT_COUNT; i++) {
+        Document document = new Document();
+        document.add(new StringField("id", Integer.toString(i), Field.Store.YES));
+        document.add(new NumericDocValuesField("number", i));
+        document.add(new LongPoint("number", i));
+        writer.addDocument(document);
+      }
+    }
+    reader = DirectoryReader.open(source);
+    executor = Executors.newFixedThreadPool(3);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    executor.shutdownNow();
+    reader.close();
+    source.close();
+  }
+
+  @Test
+  public void testMerge() throws Exception {
+    try (Directory target = new ByteBuffersDirectory()) {
+      MergeState mergeState = createMerger(target, Codec.getDefault()).merge();
+      assertEquals(DOCUMENT_COUNT, mergeState.segmentInfo.maxDoc());
+      assertTrue(mergeState.mergeFieldInfos.hasDocValues());
+      assertTrue(mergeState.mergeFieldInfos.hasPointValues());
+    }
+  }
+
+  @Test
+  public void testPartFailsOnExecutor() throws Exception {
+    AtomicBoolean pointsClosed = new AtomicBoolean();
+    Codec codec =
+        new FilterCodec("FailingDocValues", Codec.getDefault()) {
+          @Override
+          public DocValuesFormat docValuesFormat() {
+            return new FailingDocValuesFormat();
+          }
+
+          @Override
+          public PointsFormat pointsFormat() {
+            return new SlowPointsFormat(delegate.pointsFormat(), pointsClosed);
+          }
+        };
+    assertMergeFails(codec, "doc values failed", pointsClosed);
+  }
+
+  @Test
+  public void testPartFailsOnCallingThread() throws Exception {
+    AtomicBoolean pointsClosed = new AtomicBoolean();
+    Codec codec =
+        new FilterCodec("FailingStoredFields", Codec.getDefault()) {
+          @Override
+          public StoredFieldsFormat storedFieldsFormat() {
+            return new FailingStoredFieldsFormat();
+          }
+
+          @Override
+          public PointsFormat pointsFormat() {
+            return new SlowPointsFormat(delegate.pointsFormat(), pointsClosed);
+          }
+        };
+    assertMergeFails(codec, "stored fields failed", pointsClosed);
+  }
+
+  /**
+   * Checks that the merge throws the failure of one part, and only once the slow points part has
+   * finished writing.
+   */
+  private void assertMergeFails(Codec codec, String message, AtomicBoolean pointsClosed)
+      throws Exception {
+    try (Directory target = new ByteBuffersDirectory()) {
+      SegmentMerger merger = createMerger(target, codec);
+      try {
+        merger.merge();
+        fail("Expected the merge to fail");
+      } catch (IOException e) {
+        assertEquals(message, e.getMessage());
+      }
+      assertTrue("Points were still being merged", pointsClosed.get());
+    }
+  }
+
+  private SegmentMerger createMerger(Directory target, Codec codec) throws IOException {
+    List<CodecReader> readers = new ArrayList<>();
+    for (LeafReaderContext context : reader.leaves()) {
+      readers.add((CodecReader) context.reader());
+    }
+    SegmentInfo segmentInfo =
+        new SegmentInfo(
+            target,
+            Version.LATEST,
+            null,
+            "_merged",
+            -1,
+            false,
+            codec,
+            Collections.emptyMap(),
+            StringHelper.randomId(),
+            new HashMap<>(),
+            null);
+    IOContext context = new IOContext(new MergeInfo(reader.maxDoc(), 1 << 20, false, 1));
+    return new SegmentMerger(
+        readers,
+        segmentInfo,
+        InfoStream.NO_OUTPUT,
+        target,
+        new FieldInfos.FieldNumbers(null, Version.LATEST.major),
+        context,
+        executor);
+  }
+
+  private static final class FailingDocValuesFormat extends DocValuesFormat {
+    FailingDocValuesFormat() {
+      super("Failing");
+    }
+
+    @Override
+    public DocValuesConsumer fieldsConsumer(SegmentWriteState state) throws IOException {
+      throw new IOException("doc values failed");
+    }
+
+    @Override
+    public DocValuesProducer fieldsProducer(SegmentReadState state) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private static final class FailingStoredFieldsFormat extends StoredFieldsFormat {
+    @Override
+    public StoredFieldsReader fieldsReader(
+        Directory directory, SegmentInfo si, FieldInfos fn, IOContext context) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public StoredFieldsWriter fieldsWriter(Directory directory, SegmentInfo si, IOContext context)
+        throws IOException {
+      throw new IOException("stored fields failed");
+    }
+  }
+
+  /** Merges points as usual, but only after the failing part has had plenty of time to fail. */
+  private static final class SlowPointsFormat extends PointsFormat {
+    private final PointsFormat delegate;
+    private final AtomicBoolean closed;
+
+    SlowPointsFormat(PointsFormat delegate, AtomicBoolean closed) {
+      this.delegate = delegate;
+      this.closed = closed;
+    }
+
+    @Override
+    public PointsWriter fieldsWriter(SegmentWriteState state) throws IOException {
+      PointsWriter writer = delegate.fieldsWriter(state);
+      return new PointsWriter() {
+        @Override
+        public void writeField(FieldInfo fieldInfo, PointsReader values) throws IOException {
+          writer.writeField(fieldInfo, values);
+        }
+
+        @Override
+        public void merge(MergeState mergeState) throws IOException {
+          try {
+            Thread.sleep(200);
+          } catch (InterruptedException e) {
+            throw new AssertionError(e);
+          }
+          writer.merge(mergeState);
+        }
+
+        @Override
+        public void finish() throws IOException {
+          writer.finish();
+        }
+
+        @Override
+        public void close() throws IOException {
+          writer.close();
+          closed.set(true);
+        }
+      };
+    }
+
+    @Override
+    public PointsReader fieldsReader(SegmentReadState state) throws IOException {
+      return delegate.fieldsReader(state);
+    }
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trypticon.luceneupgrader.lucene9.internal.lucene.store;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import org.junit.Before;
+import org.junit.Test;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.codecs.CodecUtil;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.index.CorruptIndexException;
+
+/** Tests for {@link ChecksumVerifyingDirectory}. */
+public class ChecksumVerifyingDirectoryTests {
+  private ByteBuffersDirectory directory;
+  private byte[] content;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = new ByteBuffersDirectory();
+    content = new byte[3 * BufferedIndexInput.MERGE_BUFFER_SIZE + 123];
+    new Random(42).nextBytes(content);
+    try (IndexOutput output = directory.createOutput("file", IOContext.DEFAULT)) {
+      output.writeBytes(content, content.length);
+      CodecUtil.writeFooter(output);
+    }
+  }
+
+  @Test
+  public void testCombine() {
+    Random random = new Random(42);
+    for (int i = 0; i < 100; i++) {
+      byte[] bytes = new byte[random.nextInt(1000)];
+      random.nextBytes(bytes);
+      int split = random.nextInt(bytes.length + 1);
+      CRC32 first = new CRC32();
+      first.update(bytes, 0, split);
+      CRC32 second = new CRC32();
+      second.update(bytes, split, bytes.length - split);
+      CRC32 whole = new CRC32();
+      whole.update(bytes, 0, bytes.length);
+      assertEquals(
+          whole.getValue(),
+          ChecksumVerifyingDirectory.combine(
+              first.getValue(), second.getValue(), bytes.length - split));
+    }
+  }
+
+  @Test
+  public void testReadInOrder() throws Exception {
+    ChecksumVerifyingDirectory verifying = new ChecksumVerifyingDirectory(directory);
+    try (IndexInput input = verifying.openInput("file", IOContext.DEFAULT)) {
+      byte[] read = new byte[content.length];
+      input.readBytes(read, 0, read.length);
+      assertArrayEquals(content, read);
+    }
+    verifying.verifyChecksums();
+  }
+
+  @Test
+  public void testReadOutOfOrder() throws Exception {
+    ChecksumVerifyingDirectory verifying = new ChecksumVerifyingDirectory(directory);
+    Random random = new Random(42);
+    try (IndexInput input = verifying.openInput("file", IOContext.DEFAULT)) {
+      // Pieces of the file through the input, clones and slices, single bytes and blocks, in any
+      // order and overlapping, leaving some of it unread.
+      for (int i = 0; i < 200; i++) {
+        int start = random.nextInt(content.length);
+        int length = Math.min(random.nextInt(2000), content.length - start);
+        IndexInput reader;
+        long position;
+        switch (random.nextInt(3)) {
+          case 0:
+            reader = input;
+            position = start;
+            break;
+          case 1:
+            reader = input.clone();
+            position = start;
+            break;
+          default:
+            int sliceStart = random.nextInt(start + 1);
+            reader = input.slice("slice", sliceStart, content.length - sliceStart);
+            position = start - sliceStart;
+            break;
+        }
+        reader.seek(position);
+        byte[] read = new byte[length];
+        if (random.nextBoolean()) {
+          reader.readBytes(read, 0, length);
+        } else {
+          for (int j = 0; j < length; j++) {
+            read[j] = reader.readByte();
+          }
+        }
+        assertArrayEquals(Arrays.copyOfRange(content, start, start + length), read);
+      }
+    }
+    verifying.verifyChecksums();
+  }
+
+  @Test
+  public void testNothingRead() throws Exception {
+    ChecksumVerifyingDirectory verifying = new ChecksumVerifyingDirectory(directory);
+    verifying.openInput("file", IOContext.DEFAULT).close();
+    verifying.verifyChecksums();
+  }
+
+  @Test
+  public void testCorruptByteRead() throws Exception {
+    corruptByte(content.length / 2);
+    ChecksumVerifyingDirectory verifying = new ChecksumVerifyingDirectory(directory);
+    try (IndexInput input = verifying.openInput("file", IOContext.DEFAULT)) {
+      input.seek(content.length / 2 - 10);
+      input.readBytes(new byte[20], 0, 20);
+    }
+    assertThrows(CorruptIndexException.class, verifying::verifyChecksums);
+  }
+
+  @Test
+  public void testCorruptByteNotRead() throws Exception {
+    corruptByte(content.length / 2);
+    ChecksumVerifyingDirectory verifying = new ChecksumVerifyingDirectory(directory);
+    try (IndexInput input = verifying.openInput("file", IOContext.DEFAULT)) {
+      input.readBytes(new byte[100], 0, 100);
+      input.seek(content.length - 100);
+      input.readBytes(new byte[100], 0, 100);
+    }
+    assertThrows(CorruptIndexException.class, verifying::verifyChecksums);
+  }
+
+  /** Rewrites the file with one byte changed but the footer left as it was. */
+  private void corruptByte(int position) throws Exception {
+    byte[] file = new byte[content.length + CodecUtil.footerLength()];
+    try (IndexInput input = directory.openInput("file", IOContext.DEFAULT)) {
+      input.readBytes(file, 0, file.length);
+    }
+    file[position] ^= 1;
+    directory.deleteFile("file");
+    try (IndexOutput output = directory.createOutput("file", IOContext.DEFAULT)) {
+      output.writeBytes(file, file.length);
+    }
+  }
+}
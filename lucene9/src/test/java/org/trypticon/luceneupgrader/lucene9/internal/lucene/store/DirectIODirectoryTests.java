@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trypticon.luceneupgrader.lucene9.internal.lucene.store;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.util.IOUtils;
+
+/** Tests for {@link DirectIODirectory}. */
+public class DirectIODirectoryTests {
+  private static final IOContext MERGE = new IOContext(new MergeInfo(1000, 1 << 20, false, 1));
+
+  private Path temp;
+  private byte[] content;
+
+  @Before
+  public void setUp() throws Exception {
+    temp = Files.createTempDirectory("directio");
+    // Not a whole number of blocks, so the last block is padded and truncated.
+    content = new byte[DirectIODirectory.DEFAULT_BUFFER_SIZE * 2 + 1234];
+    new Random(42).nextBytes(content);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    IOUtils.rm(temp);
+  }
+
+  @Test
+  public void testMergeFilesUseDirectIO() throws Exception {
+    try (DirectIODirectory directory = new DirectIODirectory(temp, true)) {
+      assumeTrue("File system doesn't support direct I/O", directory.isDirectSupported());
+
+      try (IndexOutput output = directory.createOutput("merged", MERGE)) {
+        assertTrue(output instanceof DirectIODirectory.DirectIOIndexOutput);
+        output.writeBytes(content, content.length);
+      }
+      assertEquals(content.length, Files.size(temp.resolve("merged")));
+
+      try (IndexInput input = directory.openInput("merged", MERGE)) {
+        assertTrue(input instanceof DirectIODirectory.DirectIOIndexInput);
+        assertArrayEquals(content, readAll(input));
+      }
+      assertTrue(directory.isDirectSupported());
+    }
+  }
+
+  @Test
+  public void testOtherFilesAreBuffered() throws Exception {
+    try (DirectIODirectory directory = new DirectIODirectory(temp, true)) {
+      try (IndexOutput output = directory.createOutput("flushed", IOContext.DEFAULT)) {
+        assertFalse(output instanceof DirectIODirectory.DirectIOIndexOutput);
+        output.writeBytes(content, content.length);
+      }
+      try (IndexInput input = directory.openInput("flushed", IOContext.DEFAULT)) {
+        assertFalse(input instanceof DirectIODirectory.DirectIOIndexInput);
+        assertArrayEquals(content, readAll(input));
+      }
+    }
+  }
+
+  @Test
+  public void testFallsBackWhenDirectIOIsRejected() throws Exception {
+    try (DirectIODirectory directory = new UnsupportingDirectory(temp)) {
+      assumeTrue("File system has no block size", directory.isDirectSupported());
+
+      try (IndexOutput output = directory.createOutput("merged", MERGE)) {
+        assertFalse(output instanceof DirectIODirectory.DirectIOIndexOutput);
+        output.writeBytes(content, content.length);
+      }
+      assertFalse(directory.isDirectSupported());
+
+      // Once rejected, direct I/O isn't tried again.
+      try (IndexOutput output = directory.createOutput("merged2", MERGE)) {
+        assertFalse(output instanceof DirectIODirectory.DirectIOIndexOutput);
+      }
+      try (IndexInput input = directory.openInput("merged", MERGE)) {
+        assertFalse(input instanceof DirectIODirectory.DirectIOIndexInput);
+        assertArrayEquals(content, readAll(input));
+      }
+    }
+  }
+
+  private static byte[] readAll(IndexInput input) throws IOException {
+    byte[] bytes = new byte[(int) input.length()];
+    input.readBytes(bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  /** Fails to open files for direct I/O as file systems without {@code O_DIRECT} do. */
+  private static class UnsupportingDirectory extends DirectIODirectory {
+    UnsupportingDirectory(Path path) throws IOException {
+      super(path, true);
+    }
+
+    @Override
+    FileChannel openDirect(Path path, OpenOption... options) throws IOException {
+      throw new IOException("Invalid argument");
+    }
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trypticon.luceneupgrader.lucene9.internal.lucene.util.fst;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.store.ByteBuffersDataOutput;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.store.ByteBuffersDirectory;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.store.Directory;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.store.IOContext;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.store.IndexInput;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.store.IndexOutput;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.util.BytesRef;
+import org.trypticon.luceneupgrader.lucene9.internal.lucene.util.IntsRefBuilder;
+
+/**
+ * Tests for building an {@link FST} through {@link FSTCompiler.Builder#dataOutput}, against the
+ * same FST built on the heap.
+ */
+public class FSTDataOutputTests {
+  // Small pages, so that the FST spans many of them and most are written out before it's finished
+  private static final int BYTES_PAGE_BITS = 8;
+
+  private final PositiveIntOutputs outputs = PositiveIntOutputs.getSingleton();
+  private Directory directory;
+  private BytesRef[] terms;
+
+  @Before
+  public void setUp() {
+    directory = new ByteBuffersDirectory();
+    Random random = new Random(42);
+    TreeSet<BytesRef> sorted = new TreeSet<>();
+    while (sorted.size() < 20_000) {
+      byte[] bytes = new byte[1 + random.nextInt(12)];
+      for (int i = 0; i < bytes.length; i++) {
+        bytes[i] = (byte) ('a' + random.nextInt(26));
+      }
+      sorted.add(new BytesRef(bytes));
+    }
+    terms = sorted.toArray(new BytesRef[0]);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    directory.close();
+  }
+
+  @Test
+  public void testSameBytesAsOnHeap() throws Exception {
+    FST<Long> onHeap = build(newBuilder());
+    ByteBuffersDataOutput heapMeta = new ByteBuffersDataOutput();
+    ByteBuffersDataOutput heapBytes = new ByteBuffersDataOutput();
+    onHeap.save(heapMeta, heapBytes);
+
+    ByteBuffersDataOutput streamedMeta = new ByteBuffersDataOutput();
+    buildStreamed(streamedMeta);
+
+    assertArrayEquals(heapMeta.toArrayCopy(), streamedMeta.toArrayCopy());
+    try (IndexInput in = directory.openInput("fst", IOContext.READ)) {
+      byte[] streamedBytes = new byte[(int) in.length()];
+      in.readBytes(streamedBytes, 0, streamedBytes.length);
+      assertArrayEquals(heapBytes.toArrayCopy(), streamedBytes);
+    }
+  }
+
+  @Test
+  public void testReadBackOnHeap() throws Exception {
+    ByteBuffersDataOutput meta = new ByteBuffersDataOutput();
+    buildStreamed(meta);
+    try (IndexInput in = directory.openInput("fst", IOContext.READ)) {
+      assertSameAsOnHeap(new FST<>(meta.toDataInput(), in, outputs));
+    }
+  }
+
+  @Test
+  public void testReadBackOffHeap() throws Exception {
+    ByteBuffersDataOutput meta = new ByteBuffersDataOutput();
+    buildStreamed(meta);
+    try (IndexInput in = directory.openInput("fst", IOContext.READ)) {
+      assertSameAsOnHeap(new FST<>(meta.toDataInput(), in, outputs, new OffHeapFSTStore()));
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testSaveStreamed() throws Exception {
+    try (IndexOutput out = directory.createOutput("fst", IOContext.DEFAULT)) {
+      FST<Long> fst = build(newBuilder().dataOutput(out));
+      fst.save(new ByteBuffersDataOutput(), new ByteBuffersDataOutput());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testShareSuffix() throws Exception {
+    try (IndexOutput out = directory.createOutput("fst", IOContext.DEFAULT)) {
+      newBuilder().shouldShareSuffix(true).dataOutput(out).build();
+    }
+  }
+
+  private FSTCompiler.Builder<Long> newBuilder() {
+    // Suffixes can't be shared when streaming, so the FST on the heap doesn't share them either
+    return new FSTCompiler.Builder<>(FST.INPUT_TYPE.BYTE1, outputs)
+        .shouldShareSuffix(false)
+        .bytesPageBits(BYTES_PAGE_BITS);
+  }
+
+  private void buildStreamed(ByteBuffersDataOutput meta) throws IOException {
+    try (IndexOutput out = directory.createOutput("fst", IOContext.DEFAULT)) {
+      FST<Long> fst = build(newBuilder().dataOutput(out));
+      fst.saveMetadata(meta);
+    }
+  }
+
+  /** Adds every term, with its ordinal as the output. */
+  private FST<Long> build(FSTCompiler.Builder<Long> builder) throws IOException {
+    FSTCompiler<Long> compiler = builder.build();
+    IntsRefBuilder scratch = new IntsRefBuilder();
+    for (int i = 0; i < terms.length; i++) {
+      compiler.add(Util.toIntsRef(terms[i], scratch), (long) i);
+    }
+    return compiler.compile();
+  }
+
+  private void assertSameAsOnHeap(FST<Long> fst) throws IOException {
+    FST<Long> onHeap = build(newBuilder());
+    for (int i = 0; i < terms.length; i++) {
+      assertEquals(Long.valueOf(i), Util.get(fst, terms[i]));
+      assertEquals(Util.get(onHeap, terms[i]), Util.get(fst, terms[i]));
+    }
+    assertNull(Util.get(fst, new BytesRef("0")));
+    assertNull(Util.get(fst, new BytesRef("zzzzzzzzzzzzzz")));
+
+    BytesRefFSTEnum<Long> expected = new BytesRefFSTEnum<>(onHeap);
+    BytesRefFSTEnum<Long> actual = new BytesRefFSTEnum<>(fst);
+    BytesRefFSTEnum.InputOutput<Long> next;
+    int count = 0;
+    while ((next = expected.next()) != null) {
+      BytesRefFSTEnum.InputOutput<Long> actualNext = actual.next();
+      assertEquals(next.input, actualNext.input);
+      assertEquals(next.output, actualNext.output);
+      count++;
+    }
+    assertNull(actual.next());
+    assertEquals(terms.length, count);
+  }
+}
@@ -1,4 +1,13 @@
 rootProject.name = "luceneupgrader"
+include("core")
+include("lucene3")
+include("lucene4")
+include("lucene5")
+include("lucene6")
+include("lucene7")
+include("lucene8")
+include("lucene9")
+include("benchmarks")
 include("testgen:common")
 include("testgen:lucene1")
 include("testgen:lucene2")
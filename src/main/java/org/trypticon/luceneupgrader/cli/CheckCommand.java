@@ -0,0 +1,94 @@
+package org.trypticon.luceneupgrader.cli;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.trypticon.luceneupgrader.IndexChecker;
+
+/**
+ * Command to check a text index for corruption.
+ */
+class CheckCommand extends Command {
+    CheckCommand() {
+        this("check", "Checks a text index for corruption");
+    }
+
+    /**
+     * Constructs a command taking the same arguments as this one.
+     *
+     * @param name a short name for the command.
+     * @param description a description of the command.
+     */
+    protected CheckCommand(String name, String description) {
+        super(name, description, "[--threads <count>] [--verbose] <index dir>");
+    }
+
+    @Override
+    int run(List<String> args, PrintStream out, PrintStream err) {
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        boolean verbose = false;
+        List<String> remaining = new ArrayList<>();
+        for (int i = 0; i < args.size(); i++) {
+            String arg = args.get(i);
+            if (arg.equals("--threads")) {
+                if (i + 1 == args.size()) {
+                    usage(err);
+                    return 1;
+                }
+                i++;
+                try {
+                    threadCount = Integer.parseInt(args.get(i));
+                } catch (NumberFormatException e) {
+                    err.println("Not a number: " + args.get(i));
+                    return 1;
+                }
+                if (threadCount <= 0) {
+                    err.println("Thread count must be at least 1: " + threadCount);
+                    return 1;
+                }
+            } else if (arg.equals("--verbose")) {
+                verbose = true;
+            } else {
+                remaining.add(arg);
+            }
+        }
+        if (remaining.size() != 1) {
+            usage(err);
+            return 1;
+        }
+
+        Path directory = Path.of(remaining.get(0));
+        try {
+            out.println("Checking Lucene index at: " + directory + "...");
+            IndexChecker checker = new IndexChecker(directory).setThreadCount(threadCount);
+            if (verbose) {
+                checker.setOutput(out);
+            }
+            if (check(checker)) {
+                out.println("No problems were found with the index.");
+                return 0;
+            } else {
+                out.println("Problems were found with the index.");
+                return 1;
+            }
+        } catch (IOException e) {
+            err.println("Error checking Lucene index at: " + directory);
+            printErrorSummary(err, e);
+            return 1;
+        }
+    }
+
+    /**
+     * Performs the check.
+     *
+     * @param checker the checker.
+     * @return {@code true} if no problems were found, {@code false} otherwise.
+     * @throws IOException if an error occurs reading the index.
+     */
+    protected boolean check(IndexChecker checker) throws IOException {
+        return checker.check();
+    }
+}
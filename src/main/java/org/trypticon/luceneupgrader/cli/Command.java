@@ -67,7 +67,7 @@ abstract class Command {
      * @param err the error stream.
      * @param e the exception.
      */
-    static void printErrorSummary(PrintStream err, Exception e) {
+    static void printErrorSummary(PrintStream err, Throwable e) {
         Throwable temp = e;
         while (temp != null) {
             err.println(temp);
@@ -7,9 +7,14 @@ import java.io.PrintStream;
  */
 public class Commands {
     private static final Command[] commands = {
+            new CheckCommand(),
+            new GenerateCommand(),
             new HelpCommand(),
             new InfoCommand(),
+            new PlanCommand(),
+            new ServeCommand(),
             new UpgradeCommand(),
+            new VerifyCommand(),
     };
 
     /**
@@ -0,0 +1,131 @@
+package org.trypticon.luceneupgrader.cli;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.trypticon.luceneupgrader.LuceneVersion;
+import org.trypticon.luceneupgrader.SyntheticIndexConfig;
+import org.trypticon.luceneupgrader.SyntheticIndexGenerator;
+
+/**
+ * Command to generate a made-up text index, to measure upgrades against.
+ */
+class GenerateCommand extends Command {
+    GenerateCommand() {
+        super("generate", "Generates a made-up text index",
+              "[--documents <count>] [--size <bytes>] [--seed <seed>] [--words <count>] " +
+              "[--features <feature,...>] [--deletions <ratio>] <index dir> <version>");
+    }
+
+    @Override
+    int run(List<String> args, PrintStream out, PrintStream err) {
+        SyntheticIndexConfig config = new SyntheticIndexConfig();
+        List<String> remaining = new ArrayList<>();
+        for (int i = 0; i < args.size(); i++) {
+            String arg = args.get(i);
+            if (!arg.startsWith("--") || i + 1 == args.size()) {
+                remaining.add(arg);
+                continue;
+            }
+            i++;
+            String value = args.get(i);
+            try {
+                switch (arg) {
+                    case "--documents":
+                        config.setDocumentCount(Integer.parseInt(value));
+                        break;
+                    case "--size":
+                        config.setTargetSize(Long.parseLong(value));
+                        break;
+                    case "--seed":
+                        config.setSeed(Long.parseLong(value));
+                        break;
+                    case "--words":
+                        config.setWordsPerDocument(Integer.parseInt(value));
+                        break;
+                    case "--deletions":
+                        config.setDeletionRatio(Double.parseDouble(value));
+                        break;
+                    case "--features":
+                        Set<SyntheticIndexConfig.Feature> features = parseFeatures(value);
+                        if (features == null) {
+                            err.println("Unknown feature in: " + value);
+                            return 1;
+                        }
+                        config.setFeatures(features);
+                        break;
+                    default:
+                        remaining.add(arg);
+                        i--;
+                        break;
+                }
+            } catch (NumberFormatException e) {
+                err.println("Not a number: " + value);
+                return 1;
+            } catch (IllegalArgumentException e) {
+                err.println(e.getMessage());
+                return 1;
+            }
+        }
+        if (remaining.size() != 2) {
+            usage(err);
+            return 1;
+        }
+
+        Path directory = Path.of(remaining.get(0));
+        int versionNumber;
+        try {
+            versionNumber = Integer.parseInt(remaining.get(1));
+        } catch (NumberFormatException e) {
+            err.println("Not a number: " + remaining.get(1));
+            return 1;
+        }
+        LuceneVersion version = LuceneVersion.findByNumber(versionNumber);
+        if (version == null) {
+            err.println("Not a known Lucene version: " + versionNumber);
+            return 1;
+        }
+        if (config.getDocumentCount() == 0 && config.getTargetSize() == 0) {
+            err.println("One of --documents or --size is required");
+            return 1;
+        }
+
+        try {
+            out.println("Generating Lucene index at: " + directory + " in version " + versionNumber + "...");
+            new SyntheticIndexGenerator(config).generate(directory, version);
+            out.println("Index generated successfully.");
+            return 0;
+        } catch (IOException | IllegalArgumentException | IllegalStateException e) {
+            err.println("Error generating Lucene index at: " + directory);
+            printErrorSummary(err, e);
+            return 1;
+        }
+    }
+
+    /**
+     * Parses a list of features like {@code stored-fields,doc-values}, or {@code none}.
+     *
+     * @return the features, or {@code null} if one of them isn't known.
+     */
+    private static Set<SyntheticIndexConfig.Feature> parseFeatures(String value) {
+        Set<SyntheticIndexConfig.Feature> features = EnumSet.noneOf(SyntheticIndexConfig.Feature.class);
+        if (value.equals("none")) {
+            return features;
+        }
+        for (String name : value.split(",")) {
+            try {
+                features.add(SyntheticIndexConfig.Feature.valueOf(
+                        name.trim().toUpperCase(Locale.ROOT).replace('-', '_')));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+        return features;
+    }
+}
@@ -3,8 +3,14 @@ package org.trypticon.luceneupgrader.cli;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
+import org.trypticon.luceneupgrader.IndexChecker;
+import org.trypticon.luceneupgrader.IndexInventory;
+import org.trypticon.luceneupgrader.IndexStatistics;
 import org.trypticon.luceneupgrader.LuceneVersion;
 import org.trypticon.luceneupgrader.VersionGuesser;
 
@@ -13,19 +19,71 @@ import org.trypticon.luceneupgrader.VersionGuesser;
  */
 class InfoCommand extends Command {
     InfoCommand() {
-        super("info", "Gives info about a text index", "<index dir>");
+        super("info", "Gives info about a text index", "[--recursive | --format table|json] [--threads <count>] <index dir>");
     }
 
     @Override
     int run(List<String> args, PrintStream out, PrintStream err) {
-        if (args.size() != 1) {
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        boolean recursive = false;
+        String format = null;
+        List<String> remaining = new ArrayList<>();
+        for (int i = 0; i < args.size(); i++) {
+            String arg = args.get(i);
+            if (arg.equals("--threads")) {
+                if (i + 1 == args.size()) {
+                    usage(err);
+                    return 1;
+                }
+                i++;
+                try {
+                    threadCount = Integer.parseInt(args.get(i));
+                } catch (NumberFormatException e) {
+                    err.println("Not a number: " + args.get(i));
+                    return 1;
+                }
+                if (threadCount <= 0) {
+                    err.println("Thread count must be at least 1: " + threadCount);
+                    return 1;
+                }
+            } else if (arg.equals("--recursive")) {
+                recursive = true;
+            } else if (arg.equals("--format")) {
+                if (i + 1 == args.size()) {
+                    usage(err);
+                    return 1;
+                }
+                i++;
+                format = args.get(i);
+                if (!format.equals("table") && !format.equals("json")) {
+                    err.println("Unknown format: " + format);
+                    return 1;
+                }
+            } else {
+                remaining.add(arg);
+            }
+        }
+        if (remaining.size() != 1 || (recursive && format != null)) {
             usage(err);
             return 1;
         }
-        Path directory = Path.of(args.get(0));
+
+        Path directory = Path.of(remaining.get(0));
+        if (recursive) {
+            return runRecursive(directory, threadCount, out, err);
+        }
         try {
             LuceneVersion version = new VersionGuesser().guess(directory);
-            out.println("Lucene index version: " + version.getNumber());
+            if (format == null) {
+                out.println("Lucene index version: " + version.getNumber());
+                return 0;
+            }
+            IndexStatistics statistics = new IndexChecker(directory).setThreadCount(threadCount).statistics();
+            if (format.equals("json")) {
+                printJson(version, statistics, out);
+            } else {
+                printTable(version, statistics, out);
+            }
             return 0;
         } catch (IOException e) {
             err.println("Error getting info for Lucene index at: " + directory);
@@ -33,4 +91,127 @@ class InfoCommand extends Command {
             return 1;
         }
     }
+
+    /**
+     * Prints a line for every index under the directory, with the version, generation, segment count
+     * and size of each, separated by tabs.
+     */
+    private int runRecursive(Path root, int threadCount, PrintStream out, PrintStream err) {
+        List<IndexInventory.Entry> entries = new IndexInventory().setThreadCount(threadCount).scan(root);
+        int result = 0;
+        out.println("path\tversion\tgeneration\tsegments\tbytes");
+        for (IndexInventory.Entry entry : entries) {
+            if (entry.getError() != null) {
+                err.println("Error getting info for Lucene index at: " + entry.getPath());
+                printErrorSummary(err, entry.getError());
+                result = 1;
+            } else {
+                out.println(entry.getPath() + "\t" + entry.getVersion().getNumber() + "\t" + entry.getGeneration() +
+                            "\t" + entry.getSegmentCount() + "\t" + entry.getSizeInBytes());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Prints a summary of the index followed by a row for each segment, with the columns lined up.
+     */
+    private static void printTable(LuceneVersion version, IndexStatistics statistics, PrintStream out) {
+        out.println("Lucene index version: " + version.getNumber());
+        out.println("Generation: " + statistics.getGeneration());
+        out.println("Segments: " + statistics.getSegments().size() + ", documents: " + statistics.getMaxDoc() +
+                    ", deleted: " + statistics.getDeletedDocCount() + ", bytes: " + statistics.getSizeInBytes());
+        if (statistics.getSegments().isEmpty()) {
+            return;
+        }
+
+        TextTable table = new TextTable("segment", "codec", "version", "docs", "deleted", "cfs", "doc values",
+                                        "points", "vectors", "term vectors", "bytes", "files");
+        for (IndexStatistics.Segment segment : statistics.getSegments()) {
+            StringBuilder files = new StringBuilder();
+            for (Map.Entry<String, Long> entry : segment.getSizeByExtension().entrySet()) {
+                if (files.length() > 0) {
+                    files.append(' ');
+                }
+                files.append(entry.getKey()).append('=').append(entry.getValue());
+            }
+            table.addRow(segment.getName(),
+                         segment.getCodec() == null ? "-" : segment.getCodec(),
+                         segment.getLuceneVersion() == null ? "-" : segment.getLuceneVersion(),
+                         String.valueOf(segment.getMaxDoc()),
+                         String.format(Locale.ROOT, "%d (%.1f%%)", segment.getDeletedDocCount(),
+                                       segment.getDeletionRatio() * 100),
+                         yesNo(segment.isCompoundFile()),
+                         yesNo(segment.hasDocValues()),
+                         yesNo(segment.hasPoints()),
+                         yesNo(segment.hasVectors()),
+                         yesNo(segment.hasTermVectors()),
+                         String.valueOf(segment.getSizeInBytes()),
+                         files.toString());
+        }
+        out.println();
+        table.print(out);
+    }
+
+    private static String yesNo(boolean value) {
+        return value ? "yes" : "no";
+    }
+
+    /**
+     * Prints the same information as the table as a JSON object, with one line per segment.
+     */
+    private static void printJson(LuceneVersion version, IndexStatistics statistics, PrintStream out) {
+        out.println("{");
+        out.println("  \"version\": " + version.getNumber() + ",");
+        out.println("  \"generation\": " + statistics.getGeneration() + ",");
+        out.println("  \"maxDoc\": " + statistics.getMaxDoc() + ",");
+        out.println("  \"deletedDocCount\": " + statistics.getDeletedDocCount() + ",");
+        out.println("  \"sizeInBytes\": " + statistics.getSizeInBytes() + ",");
+        out.println("  \"segments\": [");
+        List<IndexStatistics.Segment> segments = statistics.getSegments();
+        for (int i = 0; i < segments.size(); i++) {
+            IndexStatistics.Segment segment = segments.get(i);
+            StringBuilder sizeByExtension = new StringBuilder("{");
+            for (Map.Entry<String, Long> entry : segment.getSizeByExtension().entrySet()) {
+                if (sizeByExtension.length() > 1) {
+                    sizeByExtension.append(", ");
+                }
+                sizeByExtension.append(jsonString(entry.getKey())).append(": ").append(entry.getValue());
+            }
+            sizeByExtension.append('}');
+            out.println("    {\"name\": " + jsonString(segment.getName()) +
+                        ", \"codec\": " + jsonString(segment.getCodec()) +
+                        ", \"luceneVersion\": " + jsonString(segment.getLuceneVersion()) +
+                        ", \"maxDoc\": " + segment.getMaxDoc() +
+                        ", \"deletedDocCount\": " + segment.getDeletedDocCount() +
+                        ", \"deletionRatio\": " + segment.getDeletionRatio() +
+                        ", \"compoundFile\": " + segment.isCompoundFile() +
+                        ", \"docValues\": " + segment.hasDocValues() +
+                        ", \"points\": " + segment.hasPoints() +
+                        ", \"vectors\": " + segment.hasVectors() +
+                        ", \"termVectors\": " + segment.hasTermVectors() +
+                        ", \"sizeInBytes\": " + segment.getSizeInBytes() +
+                        ", \"sizeByExtension\": " + sizeByExtension +
+                        "}" + (i < segments.size() - 1 ? "," : ""));
+        }
+        out.println("  ]");
+        out.println("}");
+    }
+
+    private static String jsonString(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder builder = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.append('"').toString();
+    }
 }
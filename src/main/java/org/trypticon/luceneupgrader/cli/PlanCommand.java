@@ -0,0 +1,137 @@
+package org.trypticon.luceneupgrader.cli;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.trypticon.luceneupgrader.IndexUpgraderConfig;
+import org.trypticon.luceneupgrader.LuceneVersion;
+import org.trypticon.luceneupgrader.UpgradePlan;
+import org.trypticon.luceneupgrader.UpgradePlanner;
+
+/**
+ * Command to estimate what upgrading a text index would cost, without upgrading it.
+ */
+class PlanCommand extends Command {
+    PlanCommand() {
+        super("plan", "Estimates the cost of upgrading a text index",
+              "[--calibrate] [--heap-budget <bytes>] [--verify-content] <index dir> <version>");
+    }
+
+    @Override
+    int run(List<String> args, PrintStream out, PrintStream err) {
+        IndexUpgraderConfig config = new IndexUpgraderConfig();
+        boolean calibrate = false;
+        List<String> remaining = new ArrayList<>();
+        for (int i = 0; i < args.size(); i++) {
+            String arg = args.get(i);
+            if (arg.equals("--heap-budget")) {
+                if (i + 1 == args.size()) {
+                    usage(err);
+                    return 1;
+                }
+                i++;
+                long heapBudget;
+                try {
+                    heapBudget = Long.parseLong(args.get(i));
+                } catch (NumberFormatException e) {
+                    err.println("Not a number: " + args.get(i));
+                    return 1;
+                }
+                if (heapBudget < 0) {
+                    err.println("Heap budget cannot be negative: " + heapBudget);
+                    return 1;
+                }
+                config.setHeapBudget(heapBudget);
+            } else if (arg.equals("--calibrate")) {
+                calibrate = true;
+            } else if (arg.equals("--verify-content")) {
+                config.setVerifyContent(true);
+            } else {
+                remaining.add(arg);
+            }
+        }
+        if (remaining.size() != 2) {
+            usage(err);
+            return 1;
+        }
+
+        Path directory = Path.of(remaining.get(0));
+        int versionNumber;
+        try {
+            versionNumber = Integer.parseInt(remaining.get(1));
+        } catch (NumberFormatException e) {
+            err.println("Not a number: " + remaining.get(1));
+            return 1;
+        }
+        LuceneVersion destinationVersion = LuceneVersion.findByNumber(versionNumber);
+        if (destinationVersion == null) {
+            err.println("Not a known Lucene version: " + versionNumber);
+            return 1;
+        }
+
+        UpgradePlanner planner = new UpgradePlanner(directory, config);
+        if (calibrate) {
+            try {
+                out.println("Calibrating...");
+                planner.calibrate();
+            } catch (IOException e) {
+                err.println("Error calibrating upgrade steps");
+                printErrorSummary(err, e);
+                return 1;
+            }
+        }
+
+        UpgradePlan plan;
+        try {
+            plan = planner.plan(destinationVersion);
+        } catch (IOException e) {
+            err.println("Error planning upgrade of Lucene index at: " + directory);
+            printErrorSummary(err, e);
+            return 1;
+        }
+
+        out.println("Upgrade plan for Lucene index at: " + directory);
+        out.println("Version " + plan.getVersion().getNumber() + " to " + plan.getDestinationVersion().getNumber() +
+                    ", segments: " + plan.getSegmentCount() + ", bytes: " + plan.getSizeInBytes());
+        if (plan.getSteps().isEmpty()) {
+            out.println("Nothing to upgrade.");
+            return 0;
+        }
+
+        TextTable table = new TextTable("step", "where", "read", "written", "temp", "heap", "time");
+        for (UpgradePlan.Step step : plan.getSteps()) {
+            table.addRow(step.getFromVersion().getNumber() + "->" + step.getToVersion().getNumber(),
+                         step.isInMemory() ? "memory" : "disk",
+                         String.valueOf(step.getBytesRead()),
+                         String.valueOf(step.getBytesWritten()),
+                         String.valueOf(step.getPeakTempBytes()),
+                         String.valueOf(step.getPeakHeapBytes()),
+                         formatDuration(step.getEstimatedDuration()));
+        }
+        table.addRow("total", "",
+                     String.valueOf(plan.getBytesRead()),
+                     String.valueOf(plan.getBytesWritten()),
+                     String.valueOf(plan.getPeakTempBytes()),
+                     String.valueOf(plan.getPeakHeapBytes()),
+                     formatDuration(plan.getEstimatedDuration()));
+        out.println();
+        table.print(out);
+        out.println();
+
+        out.println("Threads to check, verify or fingerprint with: " + plan.getRecommendedThreadCount());
+        if (plan.getRecommendedHeapBudget() > 0) {
+            out.println("Heap budget to upgrade in memory: " + plan.getRecommendedHeapBudget());
+        }
+        out.println("Indexes of this size to upgrade side by side: " + plan.getRecommendedConcurrentUpgrades());
+        return 0;
+    }
+
+    private static String formatDuration(Duration duration) {
+        return String.format(Locale.ROOT, "%.1fs", duration.toMillis() / 1000.0);
+    }
+}
@@ -0,0 +1,394 @@
+package org.trypticon.luceneupgrader.cli;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.trypticon.luceneupgrader.HeapGovernor;
+import org.trypticon.luceneupgrader.IndexUpgrader;
+import org.trypticon.luceneupgrader.IndexUpgraderConfig;
+import org.trypticon.luceneupgrader.InfoStream;
+import org.trypticon.luceneupgrader.LuceneVersion;
+
+/**
+ * Command to keep upgrading text indexes as jobs for them turn up in a spool directory, so that
+ * a stream of small indexes doesn't pay for starting and warming up a JVM for each one.
+ * <p>
+ * A job is a properties file named {@code <name>.job} giving the {@code index} directory and the
+ * {@code version} to upgrade it to. It should be written under some other name and then renamed, because
+ * it can be picked up as soon as it appears. Its suffix shows how it's going: it's renamed to {@code .running}
+ * while it runs, then to {@code .done} or {@code .failed}, with the outcome added to its properties.
+ * Creating a file named {@code stop} makes the command finish the jobs it has and exit.
+ */
+class ServeCommand extends Command {
+
+    static final String JOB_SUFFIX = ".job";
+    static final String RUNNING_SUFFIX = ".running";
+    static final String DONE_SUFFIX = ".done";
+    static final String FAILED_SUFFIX = ".failed";
+    static final String STOP_FILE = "stop";
+
+    /**
+     * How long to wait for the spool directory to change before looking at it again anyway,
+     * in case the file system doesn't report every change.
+     */
+    private static final long RESCAN_SECONDS = 5;
+
+    ServeCommand() {
+        super("serve", "Upgrades text indexes as jobs turn up in a spool directory",
+              "[--threads <count>] [--heap-budget <bytes>] [--merge-heap <bytes>] [--verify-content] <spool dir>");
+    }
+
+    @Override
+    int run(List<String> args, PrintStream out, PrintStream err) {
+        IndexUpgraderConfig config = new IndexUpgraderConfig();
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        List<String> remaining = new ArrayList<>();
+        for (int i = 0; i < args.size(); i++) {
+            String arg = args.get(i);
+            if (arg.equals("--threads")) {
+                if (i + 1 == args.size()) {
+                    usage(err);
+                    return 1;
+                }
+                i++;
+                try {
+                    threadCount = Integer.parseInt(args.get(i));
+                } catch (NumberFormatException e) {
+                    err.println("Not a number: " + args.get(i));
+                    return 1;
+                }
+                if (threadCount <= 0) {
+                    err.println("Thread count must be at least 1: " + threadCount);
+                    return 1;
+                }
+            } else if (arg.equals("--heap-budget")) {
+                if (i + 1 == args.size()) {
+                    usage(err);
+                    return 1;
+                }
+                i++;
+                long heapBudget;
+                try {
+                    heapBudget = Long.parseLong(args.get(i));
+                } catch (NumberFormatException e) {
+                    err.println("Not a number: " + args.get(i));
+                    return 1;
+                }
+                if (heapBudget < 0) {
+                    err.println("Heap budget cannot be negative: " + heapBudget);
+                    return 1;
+                }
+                config.setHeapBudget(heapBudget);
+            } else if (arg.equals("--merge-heap")) {
+                if (i + 1 == args.size()) {
+                    usage(err);
+                    return 1;
+                }
+                i++;
+                long mergeHeap;
+                try {
+                    mergeHeap = Long.parseLong(args.get(i));
+                } catch (NumberFormatException e) {
+                    err.println("Not a number: " + args.get(i));
+                    return 1;
+                }
+                if (mergeHeap <= 0) {
+                    err.println("Merge heap must be positive: " + mergeHeap);
+                    return 1;
+                }
+                // Every job shares the config, so the jobs running at once share the one budget.
+                config.setHeapGovernor(new HeapGovernor(mergeHeap));
+            } else if (arg.equals("--verify-content")) {
+                config.setVerifyContent(true);
+            } else {
+                remaining.add(arg);
+            }
+        }
+        if (remaining.size() != 1) {
+            usage(err);
+            return 1;
+        }
+
+        Path spool = Path.of(remaining.get(0));
+        if (!Files.isDirectory(spool)) {
+            err.println("Not a directory: " + spool);
+            return 1;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try (WatchService watcher = spool.getFileSystem().newWatchService()) {
+            spool.register(watcher, StandardWatchEventKinds.ENTRY_CREATE);
+
+            // Jobs left running by a server which didn't get to finish them. Upgrades pick up from
+            // whatever step they got to, so they can simply be run again.
+            for (Path running : list(spool, RUNNING_SUFFIX)) {
+                Files.move(running, withSuffix(running, RUNNING_SUFFIX, JOB_SUFFIX));
+                out.println("Requeued: " + jobName(running, RUNNING_SUFFIX));
+            }
+
+            out.println("Serving upgrade jobs from: " + spool + " with " + threadCount + " threads");
+            JobQueues queues = new JobQueues(executor, config, out, err);
+            while (true) {
+                for (Path file : list(spool, JOB_SUFFIX)) {
+                    Path running = withSuffix(file, JOB_SUFFIX, RUNNING_SUFFIX);
+                    try {
+                        Files.move(file, running, StandardCopyOption.ATOMIC_MOVE);
+                    } catch (NoSuchFileException e) {
+                        // Withdrawn by whoever put it there.
+                        continue;
+                    }
+                    Job job = new Job(running);
+                    try {
+                        job.load();
+                    } catch (IOException | RuntimeException e) {
+                        finishJob(job, 0, e, out, err);
+                        continue;
+                    }
+                    synchronized (out) {
+                        out.println("Queued: " + job.name + " upgrading " + job.directory +
+                                    " to version " + job.version.getNumber());
+                    }
+                    queues.submit(job);
+                }
+
+                if (Files.deleteIfExists(spool.resolve(STOP_FILE))) {
+                    break;
+                }
+
+                // Only used as a hint that something changed, everything is found by listing the directory.
+                WatchKey key = watcher.poll(RESCAN_SECONDS, TimeUnit.SECONDS);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+            }
+
+            out.println("Stopping once running jobs finish...");
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            out.println("Stopped.");
+            return 0;
+        } catch (IOException | ClosedWatchServiceException e) {
+            err.println("Error serving upgrade jobs from: " + spool);
+            printErrorSummary(err, e);
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            err.println("Interrupted serving upgrade jobs from: " + spool);
+            return 1;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs a job which has been claimed, recording how it went in its file.
+     */
+    private static void runJob(Job job, IndexUpgraderConfig config, PrintStream out, PrintStream err) {
+        synchronized (out) {
+            out.println("Started: " + job.name);
+        }
+        long startNS = System.nanoTime();
+        Throwable failure = null;
+        try {
+            new IndexUpgrader(job.directory, InfoStream.NO_OUTPUT, config).upgradeTo(job.version);
+        } catch (Throwable t) {
+            // Even running out of heap has to be recorded, or the job would be left looking like it's still running.
+            failure = t;
+        }
+        finishJob(job, System.nanoTime() - startNS, failure, out, err);
+    }
+
+    /**
+     * Records how a job went in its file and renames it to show that it's finished.
+     */
+    private static void finishJob(Job job, long elapsedNS, Throwable failure, PrintStream out, PrintStream err) {
+        double seconds = elapsedNS / 1_000_000_000.0;
+        Properties properties = job.properties;
+        properties.setProperty("status", failure == null ? "done" : "failed");
+        properties.setProperty("seconds", String.format(Locale.ROOT, "%.3f", seconds));
+        if (failure != null) {
+            properties.setProperty("error", String.valueOf(failure));
+        }
+        Path finished = withSuffix(job.running, RUNNING_SUFFIX, failure == null ? DONE_SUFFIX : FAILED_SUFFIX);
+        try {
+            try (OutputStream stream = Files.newOutputStream(job.running)) {
+                properties.store(stream, null);
+            }
+            Files.move(job.running, finished, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = e;
+            } else {
+                failure.addSuppressed(e);
+            }
+        }
+
+        if (failure == null) {
+            synchronized (out) {
+                out.println(String.format(Locale.ROOT, "Finished: %s [took %.3f sec]", job.name, seconds));
+            }
+        } else {
+            synchronized (err) {
+                err.println("Failed: " + job.name);
+                printErrorSummary(err, failure);
+            }
+        }
+    }
+
+    private static String requireProperty(Properties job, String key) throws IOException {
+        String value = job.getProperty(key);
+        if (value == null) {
+            throw new IOException("Job has no " + key);
+        }
+        return value.trim();
+    }
+
+    private static LuceneVersion parseVersion(String value) throws IOException {
+        LuceneVersion version;
+        try {
+            version = LuceneVersion.findByNumber(Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            throw new IOException("Not a number: " + value);
+        }
+        if (version == null) {
+            throw new IOException("Not a known Lucene version: " + value);
+        }
+        return version;
+    }
+
+    /**
+     * Lists the files in the spool with a suffix, in order of name so that jobs can be given an order.
+     */
+    private static List<Path> list(Path spool, String suffix) throws IOException {
+        List<Path> result = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(spool, "*" + suffix)) {
+            for (Path path : stream) {
+                result.add(path);
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    private static String jobName(Path path, String suffix) {
+        String fileName = path.getFileName().toString();
+        return fileName.substring(0, fileName.length() - suffix.length());
+    }
+
+    private static Path withSuffix(Path path, String oldSuffix, String newSuffix) {
+        return path.resolveSibling(jobName(path, oldSuffix) + newSuffix);
+    }
+
+    /**
+     * A job which has been claimed by renaming it to {@code .running}.
+     */
+    private static class Job {
+        private final Path running;
+        private final String name;
+        private final Properties properties = new Properties();
+        private Path directory;
+        private LuceneVersion version;
+
+        Job(Path running) {
+            this.running = running;
+            this.name = jobName(running, RUNNING_SUFFIX);
+        }
+
+        /**
+         * Reads the index and version from the job's file.
+         */
+        void load() throws IOException {
+            try (InputStream stream = Files.newInputStream(running)) {
+                properties.load(stream);
+            }
+            directory = Path.of(requireProperty(properties, "index")).toAbsolutePath().normalize();
+            version = parseVersion(requireProperty(properties, "version"));
+        }
+    }
+
+    /**
+     * Runs jobs on the executor, one at a time for each index, since two upgrades of the same index would trip
+     * over each other. Jobs for an index which already has one running wait in its queue, and the thread running
+     * that one goes on to them, so no thread sits blocked waiting for another. An index's queue is dropped as soon
+     * as it's empty.
+     */
+    private static class JobQueues {
+        private final Executor executor;
+        private final IndexUpgraderConfig config;
+        private final PrintStream out;
+        private final PrintStream err;
+
+        /**
+         * The jobs waiting for each index which has a job running, guarded by itself.
+         */
+        private final Map<Path, Queue<Job>> waiting = new HashMap<>();
+
+        JobQueues(Executor executor, IndexUpgraderConfig config, PrintStream out, PrintStream err) {
+            this.executor = executor;
+            this.config = config;
+            this.out = out;
+            this.err = err;
+        }
+
+        void submit(Job job) {
+            synchronized (waiting) {
+                Queue<Job> queue = waiting.get(job.directory);
+                if (queue != null) {
+                    queue.add(job);
+                    return;
+                }
+                waiting.put(job.directory, new ArrayDeque<>());
+            }
+            executor.execute(() -> runQueue(job));
+        }
+
+        private void runQueue(Job first) {
+            Job job = first;
+            while (job != null) {
+                try {
+                    runJob(job, config, out, err);
+                } finally {
+                    job = next(job.directory);
+                }
+            }
+        }
+
+        /**
+         * Takes the next job waiting for an index, dropping its queue if there are none.
+         */
+        private Job next(Path directory) {
+            synchronized (waiting) {
+                Job next = waiting.get(directory).poll();
+                if (next == null) {
+                    waiting.remove(directory);
+                }
+                return next;
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.trypticon.luceneupgrader.cli;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A table of text, printed with its columns lined up.
+ */
+class TextTable {
+    private final List<String[]> rows = new ArrayList<>();
+
+    /**
+     * Constructs the table.
+     *
+     * @param headings the heading of each column.
+     */
+    TextTable(String... headings) {
+        rows.add(headings);
+    }
+
+    /**
+     * Adds a row to the table.
+     *
+     * @param cells the text of each cell, one for each column.
+     * @return this table.
+     */
+    TextTable addRow(String... cells) {
+        if (cells.length != rows.get(0).length) {
+            throw new IllegalArgumentException("Expected " + rows.get(0).length + " cells, got " + cells.length);
+        }
+        rows.add(cells);
+        return this;
+    }
+
+    /**
+     * Prints the table, with two spaces between columns.
+     *
+     * @param out the stream to print to.
+     */
+    void print(PrintStream out) {
+        int[] widths = new int[rows.get(0).length];
+        for (String[] row : rows) {
+            for (int i = 0; i < row.length; i++) {
+                widths[i] = Math.max(widths[i], row[i].length());
+            }
+        }
+        for (String[] row : rows) {
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < row.length; i++) {
+                line.append(row[i]);
+                if (i < row.length - 1) {
+                    for (int pad = row[i].length(); pad < widths[i] + 2; pad++) {
+                        line.append(' ');
+                    }
+                }
+            }
+            out.println(line);
+        }
+    }
+}
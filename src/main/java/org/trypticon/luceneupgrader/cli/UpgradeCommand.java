@@ -3,9 +3,15 @@ package org.trypticon.luceneupgrader.cli;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
+import org.trypticon.luceneupgrader.IOAccounting;
 import org.trypticon.luceneupgrader.IndexUpgrader;
+import org.trypticon.luceneupgrader.IndexUpgraderConfig;
+import org.trypticon.luceneupgrader.InfoStream;
 import org.trypticon.luceneupgrader.LuceneVersion;
 
 /**
@@ -13,22 +19,32 @@ import org.trypticon.luceneupgrader.LuceneVersion;
  */
 class UpgradeCommand extends Command {
     UpgradeCommand() {
-        super("upgrade", "Upgrades a text index", "<index dir> <version>");
+        super("upgrade", "Upgrades a text index", "[--io-stats] <index dir> <version>");
     }
 
     @Override
     int run(List<String> args, PrintStream out, PrintStream err) {
-        if (args.size() != 2) {
+        IndexUpgraderConfig config = new IndexUpgraderConfig();
+        List<IOAccounting> accountings = new ArrayList<>();
+        List<String> remaining = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("--io-stats")) {
+                config.setIOAccountingListener(accountings::add);
+            } else {
+                remaining.add(arg);
+            }
+        }
+        if (remaining.size() != 2) {
             usage(err);
             return 1;
         }
 
-        Path directory = Path.of(args.get(0));
+        Path directory = Path.of(remaining.get(0));
         int versionNumber;
         try {
-            versionNumber = Integer.parseInt(args.get(1));
+            versionNumber = Integer.parseInt(remaining.get(1));
         } catch (NumberFormatException e) {
-            err.println("Not a number: " + args.get(1));
+            err.println("Not a number: " + remaining.get(1));
             return 1;
         }
         LuceneVersion version = LuceneVersion.findByNumber(versionNumber);
@@ -39,13 +55,71 @@ class UpgradeCommand extends Command {
 
         try {
             out.println("Upgrading Lucene index at: " + directory + " to version " + versionNumber + "...");
-            new IndexUpgrader(directory).upgradeTo(version);
+            new IndexUpgrader(directory, InfoStream.NO_OUTPUT, config).upgradeTo(version);
             out.println("Index upgraded successfully.");
-            return 0;
         } catch (IOException e) {
             err.println("Error upgrading Lucene index at: " + directory);
             printErrorSummary(err, e);
             return 1;
         }
+
+        if (!accountings.isEmpty()) {
+            printIOStats(accountings, out);
+        }
+        return 0;
+    }
+
+    /**
+     * Prints the amplification of each step, then where each step's I/O went.
+     */
+    private static void printIOStats(List<IOAccounting> accountings, PrintStream out) {
+        TextTable summary = new TextTable("to", "before", "after", "read", "written", "discarded",
+                                          "read amp", "write amp");
+        for (IOAccounting accounting : accountings) {
+            summary.addRow(String.valueOf(accounting.getVersion().getNumber()),
+                           String.valueOf(accounting.getSizeBefore()),
+                           String.valueOf(accounting.getSizeAfter()),
+                           String.valueOf(accounting.getBytesRead()),
+                           String.valueOf(accounting.getBytesWritten()),
+                           String.valueOf(accounting.getBytesDiscarded()),
+                           formatAmplification(accounting.getReadAmplification()),
+                           formatAmplification(accounting.getWriteAmplification()));
+        }
+        out.println();
+        summary.print(out);
+
+        for (IOAccounting accounting : accountings) {
+            TextTable breakdown = new TextTable("by", "name", "read", "written");
+            Map<IOAccounting.Phase, Long> readByPhase = accounting.getBytesReadByPhase();
+            Map<IOAccounting.Phase, Long> writtenByPhase = accounting.getBytesWrittenByPhase();
+            for (IOAccounting.Phase phase : IOAccounting.Phase.values()) {
+                long read = readByPhase.get(phase);
+                long written = writtenByPhase.get(phase);
+                if (read > 0 || written > 0) {
+                    breakdown.addRow("phase", phase.name(), String.valueOf(read), String.valueOf(written));
+                }
+            }
+            addRows(breakdown, "context", accounting.getBytesReadByContext(), accounting.getBytesWrittenByContext());
+            addRows(breakdown, "extension", accounting.getBytesReadByExtension(),
+                    accounting.getBytesWrittenByExtension());
+            out.println();
+            out.println("Step to version " + accounting.getVersion().getNumber() + ":");
+            breakdown.print(out);
+        }
+    }
+
+    private static void addRows(TextTable table, String by, Map<String, Long> read, Map<String, Long> written) {
+        List<String> names = new ArrayList<>(read.keySet());
+        written.keySet().stream().filter(name -> !read.containsKey(name)).forEach(names::add);
+        names.sort(null);
+        for (String name : names) {
+            table.addRow(by, name,
+                         String.valueOf(read.getOrDefault(name, 0L)),
+                         String.valueOf(written.getOrDefault(name, 0L)));
+        }
+    }
+
+    private static String formatAmplification(double amplification) {
+        return String.format(Locale.ROOT, "%.2fx", amplification);
     }
 }
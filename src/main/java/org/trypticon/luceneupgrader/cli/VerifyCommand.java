@@ -0,0 +1,19 @@
+package org.trypticon.luceneupgrader.cli;
+
+import java.io.IOException;
+
+import org.trypticon.luceneupgrader.IndexChecker;
+
+/**
+ * Command to quickly check a text index for corruption by verifying its checksums.
+ */
+class VerifyCommand extends CheckCommand {
+    VerifyCommand() {
+        super("verify", "Verifies the checksums of a text index");
+    }
+
+    @Override
+    protected boolean check(IndexChecker checker) throws IOException {
+        return checker.verify();
+    }
+}
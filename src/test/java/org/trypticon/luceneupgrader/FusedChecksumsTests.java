@@ -0,0 +1,99 @@
+package org.trypticon.luceneupgrader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link IndexUpgraderConfig#setFusedChecksums(boolean)}, comparing what each step reads with
+ * and without it.
+ */
+@RunWith(Parameterized.class)
+public class FusedChecksumsTests {
+    private final LuceneVersion version;
+    private final LuceneVersion target;
+    private final int documentsPerSegment;
+    private Path temp;
+
+    public FusedChecksumsTests(LuceneVersion version, LuceneVersion target, int documentsPerSegment) {
+        this.version = version;
+        this.target = target;
+        this.documentsPerSegment = documentsPerSegment;
+    }
+
+    @Parameterized.Parameters(name = "{0} to {1}, {2} per segment")
+    public static Collection<Object[]> data() {
+        // The steps to 7 through 9 are the ones which can fuse the checksums into the merge. Small segments
+        // are packed into compound files, so the files within them share one checksum.
+        return Arrays.asList(new Object[][] {
+            { LuceneVersion.VERSION_6, LuceneVersion.VERSION_7, 20000 },
+            { LuceneVersion.VERSION_7, LuceneVersion.VERSION_8, 20000 },
+            { LuceneVersion.VERSION_8, LuceneVersion.VERSION_9, 20000 },
+            { LuceneVersion.VERSION_8, LuceneVersion.VERSION_9, 500 },
+        });
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        temp = Files.createTempDirectory("test");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Utils.recursiveDeleteIfExists(temp);
+    }
+
+    @Test
+    public void test() throws Exception {
+        Path original = temp.resolve("original");
+        new SyntheticIndexGenerator(new SyntheticIndexConfig()
+                .setDocumentCount(20000)
+                .setDocumentsPerSegment(documentsPerSegment)
+                .setSeed(1))
+            .generate(original, version);
+        IndexFingerprint before = new IndexChecker(original).fingerprint();
+
+        long fused = upgrade(original, temp.resolve("fused"), true);
+        long separate = upgrade(original, temp.resolve("separate"), false);
+
+        assertThat(fused, is(lessThan(separate)));
+        assertThat(new IndexChecker(temp.resolve("fused")).fingerprint(), is(before));
+    }
+
+    /**
+     * Upgrades a copy of the index by one step, returning the bytes read over every phase of it.
+     */
+    private long upgrade(Path original, Path index, boolean fusedChecksums) throws Exception {
+        Files.createDirectories(index);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(original)) {
+            for (Path file : stream) {
+                Files.copy(file, index.resolve(file.getFileName()));
+            }
+        }
+        List<IOAccounting> steps = new ArrayList<>();
+        IndexUpgraderConfig config = new IndexUpgraderConfig()
+            .setFusedChecksums(fusedChecksums)
+            .setIOAccountingListener(steps::add);
+        new IndexUpgrader(index, InfoStream.NO_OUTPUT, config).upgradeTo(target);
+        assertThat(steps.size(), is(1));
+        long total = 0;
+        for (long bytes : steps.get(0).getBytesReadByPhase().values()) {
+            total += bytes;
+        }
+        return total;
+    }
+}
@@ -6,11 +6,35 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 
+import javax.annotation.Nonnull;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
 
 /**
  * Tests for {@link IndexUpgrader} against indices created against various versions of Lucene.
@@ -61,4 +85,354 @@ public class IndexUpgraderTests {
         IndexUpgrader upgrader = new IndexUpgrader(temp);
         upgrader.upgradeTo(LuceneVersion.VERSION_8);
     }
+
+    @Test
+    public void testNonEmpty_DirectIO() throws Exception {
+        TestIndices.explodeZip(version, "nonempty", temp);
+        IndexUpgraderConfig config = new IndexUpgraderConfig()
+            .setDirectIO(EnumSet.allOf(LuceneVersion.class))
+            .setDirectIOReads(true);
+        IndexUpgrader upgrader = new IndexUpgrader(temp, InfoStream.NO_OUTPUT, config);
+        upgrader.upgradeTo(LuceneVersion.VERSION_8);
+    }
+
+    @Test
+    public void testNonEmpty_InMemory() throws Exception {
+        TestIndices.explodeZip(version, "nonempty", temp);
+        IndexUpgraderConfig config = new IndexUpgraderConfig()
+            .setHeapBudget(Runtime.getRuntime().maxMemory() / 4);
+        IndexUpgrader upgrader = new IndexUpgrader(temp, InfoStream.NO_OUTPUT, config);
+        upgrader.upgradeTo(LuceneVersion.VERSION_8);
+        assertEquals(LuceneVersion.VERSION_8, new VersionGuesser().guess(temp));
+    }
+
+    @Test
+    public void testNonEmpty_FusedChecksums() throws Exception {
+        TestIndices.explodeZip(version, "nonempty", temp);
+        IndexUpgraderConfig config = new IndexUpgraderConfig()
+            .setFusedChecksums(true);
+        IndexUpgrader upgrader = new IndexUpgrader(temp, InfoStream.NO_OUTPUT, config);
+        upgrader.upgradeTo(LuceneVersion.VERSION_8);
+        assertEquals(LuceneVersion.VERSION_8, new VersionGuesser().guess(temp));
+    }
+
+    @Test
+    public void testNonEmpty_FusedChecksums_Corrupt() throws Exception {
+        TestIndices.explodeZip(version, "nonempty", temp);
+        new IndexUpgrader(temp).upgradeTo(LuceneVersion.VERSION_8);
+
+        // Flipping the last byte of the footer changes only the checksum, so nothing fails until
+        // the checksums are verified. Stored fields are only read in full by the merge itself,
+        // and they're inside the compound file when the segment has one.
+        Path storedFields;
+        try (Stream<Path> files = Files.list(temp)) {
+            storedFields = files.filter(file -> file.getFileName().toString().endsWith(".fdt")
+                                                || file.getFileName().toString().endsWith(".cfs"))
+                .findFirst().orElseThrow(AssertionError::new);
+        }
+        byte[] content = Files.readAllBytes(storedFields);
+        content[content.length - 1] ^= 1;
+        Files.write(storedFields, content);
+        Map<String, byte[]> filesBefore = readFiles(temp);
+
+        Path scratch = temp.resolveSibling(temp.getFileName() + ".tmp");
+        try {
+            IndexUpgraderConfig config = new IndexUpgraderConfig()
+                .setFusedChecksums(true);
+            IndexUpgrader upgrader = new IndexUpgrader(temp, InfoStream.NO_OUTPUT, config);
+            IOException exception = assertThrows(IOException.class, () -> upgrader.upgradeTo(LuceneVersion.VERSION_9));
+            // The embedded Lucene's own exception, which isn't on the test compile classpath.
+            assertEquals("CorruptIndexException", exception.getClass().getSimpleName());
+
+            Map<String, byte[]> filesAfter = readFiles(temp);
+            assertEquals(filesBefore.keySet(), filesAfter.keySet());
+            for (Map.Entry<String, byte[]> entry : filesBefore.entrySet()) {
+                assertArrayEquals(entry.getKey(), entry.getValue(), filesAfter.get(entry.getKey()));
+            }
+            assertEquals(LuceneVersion.VERSION_8, new VersionGuesser().guess(temp));
+        } finally {
+            Utils.recursiveDeleteIfExists(scratch);
+        }
+    }
+
+    @Test
+    public void testNonEmpty_Verify() throws Exception {
+        TestIndices.explodeZip(version, "nonempty", temp);
+        assertTrue(new IndexChecker(temp).verify());
+    }
+
+    @Test
+    public void testNonEmpty_Verify_Corrupt() throws Exception {
+        TestIndices.explodeZip(version, "nonempty", temp);
+
+        // Files from 4.8 on have checksums. Before that, the stored fields index, or the compound
+        // file holding it, starts with a header or a format, which no longer fits the rest of it.
+        Path storedFieldsIndex;
+        try (Stream<Path> files = Files.list(temp)) {
+            storedFieldsIndex = files.filter(file -> file.getFileName().toString().endsWith(".fdx")
+                                                     || file.getFileName().toString().endsWith(".cfs"))
+                .findFirst().orElseThrow(AssertionError::new);
+        }
+        byte[] content = Files.readAllBytes(storedFieldsIndex);
+        Arrays.fill(content, 0, 4, (byte) 0);
+        Files.write(storedFieldsIndex, content);
+
+        // Reading the commit already looks at the stored fields of segments from before 3.1, so the
+        // corruption can also come up before any file gets verified.
+        boolean verified;
+        try {
+            verified = new IndexChecker(temp).verify();
+        } catch (IOException e) {
+            verified = false;
+        }
+        assertFalse(verified);
+    }
+
+    @Test
+    public void testNonEmpty_IOAccounting() throws Exception {
+        TestIndices.explodeZip(version, "nonempty", temp);
+        List<IOAccounting> accountings = new ArrayList<>();
+        IndexUpgraderConfig config = new IndexUpgraderConfig()
+            .setIOAccountingListener(accountings::add);
+        IndexUpgrader upgrader = new IndexUpgrader(temp, InfoStream.NO_OUTPUT, config);
+        upgrader.upgradeTo(LuceneVersion.VERSION_8);
+        for (IOAccounting accounting : accountings) {
+            assertTrue(accounting.getSizeBefore() > 0);
+            assertTrue(accounting.getSizeAfter() > 0);
+            assertTrue(accounting.getBytesRead() >= accounting.getSizeBefore() / 2);
+            assertTrue(accounting.getBytesWritten() >= accounting.getSizeAfter());
+            assertEquals(accounting.getBytesRead(),
+                         accounting.getBytesReadByPhase().values().stream().mapToLong(Long::longValue).sum());
+            assertEquals(accounting.getBytesWritten(),
+                         accounting.getBytesWrittenByExtension().values().stream().mapToLong(Long::longValue).sum());
+        }
+        if (!accountings.isEmpty()) {
+            assertEquals(LuceneVersion.VERSION_8, accountings.get(accountings.size() - 1).getVersion());
+        }
+    }
+
+    @Test
+    public void testNonEmpty_HeapGovernor() throws Exception {
+        TestIndices.explodeZip(version, "nonempty", temp);
+        // Less than any step is estimated to need, so each one runs on its own and short.
+        HeapGovernor governor = new HeapGovernor(1024 * 1024);
+        List<Long> admittedBytes = new ArrayList<>();
+        IndexUpgraderConfig config = new IndexUpgraderConfig()
+            .setHeapGovernor(governor)
+            .setIOAccountingListener(accounting -> admittedBytes.add(governor.getAdmittedBytes()));
+        IndexUpgrader upgrader = new IndexUpgrader(temp, InfoStream.NO_OUTPUT, config);
+        upgrader.upgradeTo(LuceneVersion.VERSION_8);
+        assertEquals(LuceneVersion.VERSION_8, new VersionGuesser().guess(temp));
+        for (long bytes : admittedBytes) {
+            assertEquals(governor.getBudget(), bytes);
+        }
+        assertEquals(0, governor.getAdmittedBytes());
+    }
+
+    @Test
+    public void testNonEmpty_OffHeapTermsIndex() throws Exception {
+        assertUpgradeKeepsContent(new IndexUpgraderConfig()
+            .setOffHeapTermsIndex(true));
+    }
+
+    @Test
+    public void testNonEmpty_ParallelMergeParts() throws Exception {
+        assertUpgradeKeepsContent(new IndexUpgraderConfig()
+            .setThreadCount(4));
+    }
+
+    @Test
+    public void testNonEmpty_Monitor() throws Exception {
+        TestIndices.explodeZip(version, "nonempty", temp);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("org.trypticon.luceneupgrader:type=IndexUpgrader,index=" +
+                                         ObjectName.quote(temp.toString()));
+        List<String> expectedHops = new ArrayList<>();
+        List<Object> hops = new ArrayList<>();
+        // The listener is called at the end of each step, while the upgrade is still registered.
+        IndexUpgraderConfig config = new IndexUpgraderConfig()
+            .setThreadCount(1)
+            .setIOAccountingListener(accounting -> {
+                int number = accounting.getVersion().getNumber();
+                expectedHops.add((number - 1) + "->" + number);
+                try {
+                    hops.add(server.getAttribute(name, "CurrentHop"));
+                    assertEquals(1, server.getAttribute(name, "ThreadCount"));
+                } catch (JMException e) {
+                    throw new AssertionError(e);
+                }
+            });
+        IndexUpgrader upgrader = new IndexUpgrader(temp, InfoStream.NO_OUTPUT, config);
+        upgrader.upgradeTo(LuceneVersion.VERSION_8);
+        assertEquals(expectedHops, hops);
+        assertFalse(server.isRegistered(name));
+        if (!hops.isEmpty()) {
+            assertTrue(upgrader.getMonitor().getBytesProcessed() > 0);
+        }
+        assertEquals(null, upgrader.getMonitor().getCurrentHop());
+    }
+
+    @Test
+    public void testNonEmpty_FlightRecorderEvents() throws Exception {
+        TestIndices.explodeZip(version, "nonempty", temp);
+        LuceneVersion originalVersion = new VersionGuesser().guess(temp);
+        Path recordingFile = Files.createTempFile("upgrade", ".jfr");
+        try {
+            List<RecordedEvent> events;
+            try (Recording recording = new Recording()) {
+                recording.enable(UpgradeEvents.Step.class);
+                recording.enable(UpgradeEvents.SegmentMerge.class);
+                recording.start();
+                new IndexUpgrader(temp).upgradeTo(LuceneVersion.VERSION_8);
+                recording.stop();
+                recording.dump(recordingFile);
+                events = RecordingFile.readAllEvents(recordingFile);
+                events.sort(Comparator.comparing(RecordedEvent::getStartTime));
+            }
+            List<Integer> toVersions = new ArrayList<>();
+            for (RecordedEvent event : events) {
+                if (event.getEventType().getName().equals("org.trypticon.luceneupgrader.Step")) {
+                    toVersions.add(event.getInt("toVersion"));
+                    assertTrue(event.getLong("sizeAfter") > 0);
+                }
+            }
+            assertEquals(Math.max(0, LuceneVersion.VERSION_8.ordinal() - originalVersion.ordinal()), toVersions.size());
+            if (!toVersions.isEmpty()) {
+                assertEquals(8, (int) toVersions.get(toVersions.size() - 1));
+            }
+        } finally {
+            Files.deleteIfExists(recordingFile);
+        }
+    }
+
+    @Test
+    public void testNonEmpty_VerifyContent() throws Exception {
+        TestIndices.explodeZip(version, "nonempty", temp);
+        IndexFingerprint before = new IndexChecker(temp).fingerprint();
+        IndexUpgraderConfig config = new IndexUpgraderConfig()
+            .setVerifyContent(true);
+        IndexUpgrader upgrader = new IndexUpgrader(temp, InfoStream.NO_OUTPUT, config);
+        upgrader.upgradeTo(LuceneVersion.VERSION_8);
+        assertEquals(before, new IndexChecker(temp).fingerprint());
+        assertFalse(before.differences(new IndexFingerprint()).isEmpty());
+    }
+
+    @Test
+    public void testNonEmpty_VerifyContent_Mismatch() throws Exception {
+        TestIndices.explodeZip(version, "nonempty", temp);
+        assumeTrue(new VersionGuesser().guess(temp).isOlderThan(LuceneVersion.VERSION_9));
+
+        // Swapping in an index without any of the documents once the last step is done stands in for
+        // an upgrade which lost them.
+        Path tampered = Files.createTempDirectory("tampered");
+        try {
+            TestIndices.explodeZip(version, "empty", tampered);
+            new IndexUpgrader(tampered).upgradeTo(LuceneVersion.VERSION_9);
+            IndexUpgraderConfig config = new IndexUpgraderConfig()
+                .setVerifyContent(true);
+            IndexStorage storage = new FileSystemIndexStorage(temp, config) {
+                @Override
+                public void promoteScratch() throws IOException {
+                    super.promoteScratch();
+                    if (new VersionGuesser().guess(temp) == LuceneVersion.VERSION_9) {
+                        try (Stream<Path> files = Files.list(temp)) {
+                            for (Path file : (Iterable<Path>) files::iterator) {
+                                Files.delete(file);
+                            }
+                        }
+                        try (Stream<Path> files = Files.list(tampered)) {
+                            for (Path file : (Iterable<Path>) files::iterator) {
+                                Files.copy(file, temp.resolve(file.getFileName()));
+                            }
+                        }
+                    }
+                }
+            };
+            IndexUpgrader upgrader = new IndexUpgrader(storage, InfoStream.NO_OUTPUT, config);
+            ContentMismatchException exception = assertThrows(ContentMismatchException.class,
+                                                              () -> upgrader.upgradeTo(LuceneVersion.VERSION_9));
+            assertFalse(exception.getDifferences().isEmpty());
+            assertTrue(exception.getDifferences().get(0).startsWith("documents: "));
+            assertTrue(exception.getMessage().contains(exception.getDifferences().get(0)));
+        } finally {
+            Utils.recursiveDeleteIfExists(tampered);
+        }
+    }
+
+    @Test
+    public void testNonEmpty_CustomStorage() throws Exception {
+        TestIndices.explodeZip(version, "nonempty", temp);
+        IndexStorage fileSystemStorage = new FileSystemIndexStorage(temp);
+        AtomicInteger openCount = new AtomicInteger();
+        IndexStorage storage = new IndexStorage() {
+            @Nonnull
+            @Override
+            public <D> D openDirectory(@Nonnull Area area, @Nonnull Class<D> directoryType) throws IOException {
+                openCount.incrementAndGet();
+                return fileSystemStorage.openDirectory(area, directoryType);
+            }
+
+            @Override
+            public void clearScratch() throws IOException {
+                fileSystemStorage.clearScratch();
+            }
+
+            @Override
+            public void promoteScratch() throws IOException {
+                fileSystemStorage.promoteScratch();
+            }
+        };
+        IndexUpgrader upgrader = new IndexUpgrader(storage, InfoStream.NO_OUTPUT, new IndexUpgraderConfig());
+        upgrader.upgradeTo(LuceneVersion.VERSION_8);
+        assertEquals(LuceneVersion.VERSION_8, new VersionGuesser().guess(temp));
+        assertTrue(openCount.get() > 0);
+    }
+
+    @Test
+    public void testNonEmpty_Rollback() throws Exception {
+        TestIndices.explodeZip(version, "nonempty", temp);
+        LuceneVersion originalVersion = new VersionGuesser().guess(temp);
+        Path snapshot = temp.resolveSibling(temp.getFileName() + ".snapshot");
+        try {
+            IndexUpgraderConfig config = new IndexUpgraderConfig().setSnapshot(true);
+            IndexUpgrader upgrader = new IndexUpgrader(temp, InfoStream.NO_OUTPUT, config);
+            upgrader.upgradeTo(LuceneVersion.VERSION_9);
+            assertEquals(LuceneVersion.VERSION_9, new VersionGuesser().guess(temp));
+
+            upgrader.rollback();
+            assertEquals(originalVersion, new VersionGuesser().guess(temp));
+            assertFalse(Files.exists(snapshot));
+
+            // The restored index must still be upgradable.
+            upgrader.upgradeTo(LuceneVersion.VERSION_9);
+            upgrader.confirmUpgrade();
+            assertEquals(LuceneVersion.VERSION_9, new VersionGuesser().guess(temp));
+            assertFalse(Files.exists(snapshot));
+        } finally {
+            Utils.recursiveDeleteIfExists(snapshot);
+        }
+    }
+
+    /**
+     * Upgrades the non-empty index to version 9 with the config, and checks that it comes out clean and
+     * with the same content it went in with.
+     */
+    private void assertUpgradeKeepsContent(IndexUpgraderConfig config) throws Exception {
+        TestIndices.explodeZip(version, "nonempty", temp);
+        IndexFingerprint before = new IndexChecker(temp).fingerprint();
+        IndexUpgrader upgrader = new IndexUpgrader(temp, InfoStream.NO_OUTPUT, config);
+        upgrader.upgradeTo(LuceneVersion.VERSION_9);
+        assertEquals(before, new IndexChecker(temp).fingerprint());
+        assertTrue(new IndexChecker(temp).check());
+    }
+
+    private static Map<String, byte[]> readFiles(Path directory) throws IOException {
+        Map<String, byte[]> files = new TreeMap<>();
+        try (Stream<Path> paths = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                files.put(path.getFileName().toString(), Files.readAllBytes(path));
+            }
+        }
+        return files;
+    }
 }
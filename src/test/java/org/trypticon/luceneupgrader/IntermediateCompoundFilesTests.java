@@ -0,0 +1,118 @@
+package org.trypticon.luceneupgrader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link IndexUpgraderConfig#setIntermediateCompoundFiles(boolean)}, on indexes of many small
+ * segments, which are the ones forcing down to one segment takes several merges for.
+ */
+@RunWith(Parameterized.class)
+public class IntermediateCompoundFilesTests {
+    private final LuceneVersion version;
+    private Path temp;
+
+    public IntermediateCompoundFilesTests(LuceneVersion version) {
+        this.version = version;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> data() {
+        // The steps to 3 through 6 are the ones done by Lucene's own upgrader, which merges as it goes.
+        return Arrays.asList(new Object[][] {
+            { LuceneVersion.VERSION_3 },
+            { LuceneVersion.VERSION_4 },
+            { LuceneVersion.VERSION_5 },
+        });
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        temp = Files.createTempDirectory("test");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Utils.recursiveDeleteIfExists(temp);
+    }
+
+    @Test
+    public void test() throws Exception {
+        Path original = temp.resolve("original");
+        new SyntheticIndexGenerator(new SyntheticIndexConfig()
+                .setDocumentCount(1000)
+                .setDocumentsPerSegment(5)
+                .setWordsPerDocument(20)
+                .setSeed(1))
+            .generate(original, version);
+        IndexFingerprint before = new IndexChecker(original).fingerprint();
+
+        List<IOAccounting> packed = upgrade(original, temp.resolve("packed"), true);
+        List<IOAccounting> unpacked = upgrade(original, temp.resolve("unpacked"), false);
+
+        assertThat(bytesWritten(packed, "cfs"), is(greaterThan(0L)));
+        assertThat(bytesWritten(unpacked, "cfs"), is(0L));
+        assertThat(bytesWritten(packed, null), is(greaterThan(bytesWritten(unpacked, null))));
+
+        // Either way, the upgrade ends up with the same index, with no compound file.
+        assertThat(new IndexChecker(temp.resolve("packed")).fingerprint(), is(before));
+        assertThat(new IndexChecker(temp.resolve("unpacked")).fingerprint(), is(before));
+        assertThat(countCompoundFiles(temp.resolve("packed")), is(0));
+        assertThat(countCompoundFiles(temp.resolve("unpacked")), is(0));
+    }
+
+    private static List<IOAccounting> upgrade(Path original, Path index, boolean intermediateCompoundFiles)
+            throws Exception {
+        Files.createDirectories(index);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(original)) {
+            for (Path file : stream) {
+                Files.copy(file, index.resolve(file.getFileName()));
+            }
+        }
+        List<IOAccounting> steps = new ArrayList<>();
+        IndexUpgraderConfig config = new IndexUpgraderConfig()
+            .setIntermediateCompoundFiles(intermediateCompoundFiles)
+            .setIOAccountingListener(steps::add);
+        new IndexUpgrader(index, InfoStream.NO_OUTPUT, config).upgradeTo(LuceneVersion.VERSION_9);
+        return steps;
+    }
+
+    /**
+     * Adds up the bytes written by every step, either to files with the extension or, given {@code null},
+     * to every file.
+     */
+    private static long bytesWritten(List<IOAccounting> steps, String extension) {
+        long total = 0;
+        for (IOAccounting step : steps) {
+            total += extension == null
+                    ? step.getBytesWritten()
+                    : step.getBytesWrittenByExtension().getOrDefault(extension, 0L);
+        }
+        return total;
+    }
+
+    private static int countCompoundFiles(Path index) throws Exception {
+        int count = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(index, "*.cfs")) {
+            for (Path ignored : stream) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,82 @@
+package org.trypticon.luceneupgrader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link SyntheticIndexGenerator}.
+ */
+@RunWith(Parameterized.class)
+public class SyntheticIndexGeneratorTests {
+    private static final int DOCUMENT_COUNT = 200;
+
+    private final LuceneVersion version;
+    private Path temp;
+
+    public SyntheticIndexGeneratorTests(LuceneVersion version) {
+        this.version = version;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> data() {
+        List<Object[]> data = new ArrayList<>();
+        for (LuceneVersion version : LuceneVersion.values()) {
+            if (!version.isOlderThan(LuceneVersion.VERSION_3)) {
+                data.add(new Object[]{ version });
+            }
+        }
+        return data;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        temp = Files.createTempDirectory("test");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Utils.recursiveDeleteIfExists(temp);
+    }
+
+    @Test
+    public void test() throws Exception {
+        SyntheticIndexConfig config = new SyntheticIndexConfig()
+                .setDocumentCount(DOCUMENT_COUNT)
+                .setWordsPerDocument(20)
+                .setFeatures(EnumSet.allOf(SyntheticIndexConfig.Feature.class))
+                .setDeletionRatio(0.1)
+                .setSeed(1);
+        Path index = temp.resolve("index");
+        new SyntheticIndexGenerator(config).generate(index, version);
+
+        assertThat(new VersionGuesser().guess(index), is(version));
+
+        int expectedDeletions = 0;
+        SyntheticDocuments documents = new SyntheticDocuments(config, index);
+        while (documents.next()) {
+            if (documents.isDeleted()) {
+                expectedDeletions++;
+            }
+        }
+        IndexStatistics statistics = version.createChecker(new FileSystemIndexStorage(index, new IndexUpgraderConfig()))
+                .statistics(1);
+        assertThat(statistics.getMaxDoc(), is((long) DOCUMENT_COUNT));
+        assertThat(statistics.getDeletedDocCount(), is((long) expectedDeletions));
+
+        new IndexUpgrader(index).upgradeTo(LuceneVersion.VERSION_9);
+        assertThat(new VersionGuesser().guess(index), is(LuceneVersion.VERSION_9));
+    }
+}
@@ -0,0 +1,134 @@
+package org.trypticon.luceneupgrader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link UpgradeMonitor}.
+ */
+public class UpgradeMonitorTests {
+    private static final long MIB = 1024 * 1024;
+
+    private Path temp;
+
+    @Before
+    public void setUp() throws Exception {
+        temp = Files.createTempDirectory("test");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Utils.recursiveDeleteIfExists(temp);
+    }
+
+    @Test
+    public void testThrottle() throws Exception {
+        long rate = 4 * MIB;
+        UpgradeMonitor monitor = new UpgradeMonitor(new IndexUpgraderConfig().setThrottleRate(rate));
+        long nanos = write(monitor, MIB);
+        assertThat(monitor.getBytesProcessed(), is(MIB));
+        assertThat(nanos, greaterThanOrEqualTo(nanosAt(MIB, rate)));
+    }
+
+    @Test
+    public void testSetThrottleRate() throws Exception {
+        UpgradeMonitor monitor = new UpgradeMonitor(new IndexUpgraderConfig());
+        write(monitor, MIB);
+
+        long rate = 4 * MIB;
+        monitor.setThrottleRate(rate);
+        long nanos = write(monitor, MIB);
+        assertThat(monitor.getBytesProcessed(), is(2 * MIB));
+        assertThat(nanos, greaterThanOrEqualTo(nanosAt(MIB, rate)));
+    }
+
+    @Test
+    public void testThrottle_Upgrade() throws Exception {
+        Path index = temp.resolve("index");
+        new SyntheticIndexGenerator(new SyntheticIndexConfig()
+                .setTargetSize(MIB)
+                .setSeed(1))
+            .generate(index, LuceneVersion.VERSION_8);
+
+        long rate = MIB / 4;
+        IndexUpgraderConfig config = new IndexUpgraderConfig()
+                .setThreadCount(1)
+                .setThrottleRate(rate);
+        IndexUpgrader upgrader = new IndexUpgrader(index, InfoStream.NO_OUTPUT, config);
+        long start = System.nanoTime();
+        upgrader.upgradeTo(LuceneVersion.VERSION_9);
+        long nanos = System.nanoTime() - start;
+
+        long written = upgrader.getMonitor().getBytesProcessed();
+        assertThat(written, greaterThanOrEqualTo(MIB));
+        assertThat(nanos, greaterThanOrEqualTo(nanosAt(written, rate)));
+    }
+
+    @Test
+    public void testSetThreadCount_DuringStep() throws Exception {
+        Path index = temp.resolve("index");
+        new SyntheticIndexGenerator(new SyntheticIndexConfig()
+                .setTargetSize(MIB)
+                .setSeed(1))
+            .generate(index, LuceneVersion.VERSION_8);
+
+        // Once the step has started merging on the one thread it was given, it's given more.
+        AtomicReference<UpgradeMonitor> monitor = new AtomicReference<>();
+        Set<String> partThreads = ConcurrentHashMap.newKeySet();
+        InfoStream infoStream = new InfoStream() {
+            @Override
+            public void message(String component, String line) {
+                if (component.equals("SM") && monitor.get().getCurrentHop() != null) {
+                    monitor.get().setThreadCount(4);
+                    if (line.contains(" to merge ")) {
+                        partThreads.add(Thread.currentThread().getName());
+                    }
+                }
+            }
+
+            @Override
+            public boolean isEnabled(String component) {
+                return component.equals("SM");
+            }
+        };
+        IndexUpgrader upgrader = new IndexUpgrader(index, infoStream, new IndexUpgraderConfig().setThreadCount(1));
+        monitor.set(upgrader.getMonitor());
+        upgrader.upgradeTo(LuceneVersion.VERSION_9);
+
+        assertThat(monitor.get().getThreadCount(), is(4));
+        assertTrue("Parts were merged on " + partThreads,
+                   partThreads.stream().anyMatch(name -> name.startsWith("merge-parts")));
+    }
+
+    /**
+     * Writes to a file through the monitor, the way the monitored directories do.
+     *
+     * @return how long it took, in nanoseconds.
+     */
+    private static long write(UpgradeMonitor monitor, long bytes) throws IOException {
+        long start = System.nanoTime();
+        UpgradeMonitor.Output output = monitor.outputOpened("_0.fdt");
+        for (long remaining = bytes; remaining > 0; remaining -= 8192) {
+            output.written(Math.min(remaining, 8192));
+        }
+        output.closed();
+        return System.nanoTime() - start;
+    }
+
+    private static long nanosAt(long bytes, long rate) {
+        return (long) (bytes * 1e9 / rate);
+    }
+}
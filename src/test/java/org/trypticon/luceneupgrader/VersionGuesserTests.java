@@ -12,8 +12,11 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 /**
@@ -93,4 +96,33 @@ public class VersionGuesserTests {
         LuceneVersion guessed = new VersionGuesser().guess(temp);
         assertThat(guessed, is(expected));
     }
+
+    @Test
+    public void testInventory() throws Exception {
+        TestIndices.explodeZip(version, variant, temp);
+        List<IndexInventory.Entry> entries = new IndexInventory().scan(temp);
+        assertThat(entries.size(), is(1));
+        IndexInventory.Entry entry = entries.get(0);
+        assertThat(entry.getError(), is(nullValue()));
+        assertThat(entry.getVersion(), is(expected));
+        assertThat(entry.getSegmentCount(), is("empty".equals(variant) ? 0 : 1));
+    }
+
+    @Test
+    public void testBackupOfSegmentsFile() throws Exception {
+        TestIndices.explodeZip(version, variant, temp);
+        try (Stream<Path> files = Files.list(temp)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                String fileName = file.getFileName().toString();
+                if (fileName.startsWith("segments") && !fileName.equals("segments.gen")) {
+                    Files.copy(file, file.resolveSibling(fileName + ".bak"));
+                }
+            }
+        }
+        assertThat(new VersionGuesser().guess(temp), is(expected));
+        List<IndexInventory.Entry> entries = new IndexInventory().scan(temp);
+        assertThat(entries.size(), is(1));
+        assertThat(entries.get(0).getError(), is(nullValue()));
+        assertThat(entries.get(0).getVersion(), is(expected));
+    }
 }
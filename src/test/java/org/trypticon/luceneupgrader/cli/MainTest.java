@@ -17,10 +17,14 @@ import java.util.stream.Collectors;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.trypticon.luceneupgrader.LuceneVersion;
 import org.trypticon.luceneupgrader.TestIndices;
 import org.trypticon.luceneupgrader.Utils;
+import org.trypticon.luceneupgrader.VersionGuesser;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class MainTest {
     private Path temp;
@@ -52,9 +56,14 @@ public class MainTest {
         assertOutput();
         assertError("Unknown command: pickle",
                 "Available commands:",
+                "  check",
+                "  generate",
                 "  help",
                 "  info",
-                "  upgrade");
+                "  plan",
+                "  serve",
+                "  upgrade",
+                "  verify");
     }
 
     @Test
@@ -63,7 +72,7 @@ public class MainTest {
         assertResult(0);
         assertOutput();
         assertError("luceneupgrader info - Gives info about a text index",
-                "usage: luceneupgrader info <index dir>");
+                "usage: luceneupgrader info [--recursive | --format table|json] [--threads <count>] <index dir>");
     }
 
     @Test
@@ -73,9 +82,14 @@ public class MainTest {
         assertOutput();
         assertError("Unknown command: pickle",
                 "Available commands:",
+                "  check",
+                "  generate",
                 "  help",
                 "  info",
-                "  upgrade");
+                "  plan",
+                "  serve",
+                "  upgrade",
+                "  verify");
     }
 
     @Test
@@ -96,6 +110,246 @@ public class MainTest {
                 "java.nio.file.NoSuchFileException: " + invalid.resolve("segments"));
     }
 
+    @Test
+    public void testInfo_Table() {
+        run("info", "--format", "table", "--threads", "2", temp.toString());
+        assertResult(0);
+        assertOutput("Lucene index version: 4",
+                "Generation: 1",
+                "Segments: 1, documents: 1, deleted: 0, bytes: 1046",
+                "",
+                "segment  codec     version  docs  deleted   cfs  doc values  points  vectors  term vectors  bytes  files",
+                "_0       Lucene40  4.0.0.2  1     0 (0.0%)  no   no          no      no       yes           1046   " +
+                        "cfe=61 cfs=49 fdt=42 fdx=42 fnm=112 frq=35 prx=35 si=366 tim=109 tip=65 tvd=34 tvf=47 tvx=49");
+        assertError();
+    }
+
+    @Test
+    public void testInfo_Json() {
+        run("info", "--format", "json", temp.toString());
+        assertResult(0);
+        assertOutput("{",
+                "  \"version\": 4,",
+                "  \"generation\": 1,",
+                "  \"maxDoc\": 1,",
+                "  \"deletedDocCount\": 0,",
+                "  \"sizeInBytes\": 1046,",
+                "  \"segments\": [",
+                "    {\"name\": \"_0\", \"codec\": \"Lucene40\", \"luceneVersion\": \"4.0.0.2\", \"maxDoc\": 1, " +
+                        "\"deletedDocCount\": 0, \"deletionRatio\": 0.0, \"compoundFile\": false, " +
+                        "\"docValues\": false, \"points\": false, \"vectors\": false, \"termVectors\": true, " +
+                        "\"sizeInBytes\": 1046, \"sizeByExtension\": {\"cfe\": 61, \"cfs\": 49, \"fdt\": 42, " +
+                        "\"fdx\": 42, \"fnm\": 112, \"frq\": 35, \"prx\": 35, \"si\": 366, \"tim\": 109, " +
+                        "\"tip\": 65, \"tvd\": 34, \"tvf\": 47, \"tvx\": 49}}",
+                "  ]",
+                "}");
+        assertError();
+    }
+
+    @Test
+    public void testInfo_UnknownFormat() {
+        run("info", "--format", "xml", temp.toString());
+        assertResult(1);
+        assertOutput();
+        assertError("Unknown format: xml");
+    }
+
+    @Test
+    public void testInfo_FormatWithoutValue() {
+        run("info", temp.toString(), "--format");
+        assertResult(1);
+        assertOutput();
+        assertError("usage: luceneupgrader info [--recursive | --format table|json] [--threads <count>] <index dir>");
+    }
+
+    @Test
+    public void testInfo_Recursive() {
+        run("info", "--recursive", temp.toString());
+        assertResult(0);
+        assertOutput("path\tversion\tgeneration\tsegments\tbytes",
+                temp + "\t4\t1\t1\t1135");
+        assertError();
+    }
+
+    @Test
+    public void testCheck() {
+        run("check", "--threads", "2", temp.toString());
+        assertResult(0);
+        assertOutput("Checking Lucene index at: " + temp + "...",
+                "No problems were found with the index.");
+        assertError();
+    }
+
+    @Test
+    public void testCheck_ThreadsWithoutCount() {
+        run("check", "--threads");
+        assertResult(1);
+        assertOutput();
+        assertError("usage: luceneupgrader check [--threads <count>] [--verbose] <index dir>");
+    }
+
+    @Test
+    public void testCheck_InvalidPath() {
+        Path invalid = temp.resolveSibling("invalid");
+        run("check", invalid.toString());
+        assertResult(1);
+        assertOutput("Checking Lucene index at: " + invalid + "...");
+        assertError("Error checking Lucene index at: " + invalid,
+                "java.nio.file.NoSuchFileException: " + invalid.resolve("segments"));
+    }
+
+    @Test
+    public void testVerify() {
+        run("verify", temp.toString());
+        assertResult(0);
+        assertOutput("Checking Lucene index at: " + temp + "...",
+                "No problems were found with the index.");
+        assertError();
+    }
+
+    @Test
+    public void testVerify_ThreadsWithoutCount() {
+        run("verify", "--threads");
+        assertResult(1);
+        assertOutput();
+        assertError("usage: luceneupgrader verify [--threads <count>] [--verbose] <index dir>");
+    }
+
+    @Test
+    public void testPlan() {
+        run("plan", temp.toString(), "9");
+        assertResult(0);
+        // The recommendations after the table depend on the machine.
+        assertOutputStartsWith("Upgrade plan for Lucene index at: " + temp,
+                "Version 4 to 9, segments: 1, bytes: 1135",
+                "",
+                "step   where  read  written  temp  heap      time",
+                "4->5   disk   1135  1135     1135  67108929  0.0s",
+                "5->6   disk   1135  1135     1135  67108929  0.0s",
+                "6->7   disk   1135  1135     1135  67108929  0.0s",
+                "7->8   disk   1135  1135     1135  67108929  0.0s",
+                "8->9   disk   1135  1135     1135  67108929  0.0s",
+                "total         5675  5675     1135  67108929  0.0s",
+                "",
+                "Threads to check, verify or fingerprint with: 1");
+        assertError();
+    }
+
+    @Test
+    public void testPlan_InMemory() {
+        run("plan", "--heap-budget", "10000", temp.toString(), "6");
+        assertResult(0);
+        assertOutputStartsWith("Upgrade plan for Lucene index at: " + temp,
+                "Version 4 to 6, segments: 1, bytes: 1135",
+                "",
+                "step   where   read  written  temp  heap  time",
+                "4->5   memory  1135  0        0     4540  0.0s",
+                "5->6   memory  0     1135     1135  4540  0.0s",
+                "total          1135  1135     1135  4540  0.0s");
+        assertError();
+    }
+
+    @Test
+    public void testPlan_HeapBudgetWithoutValue() {
+        run("plan", temp.toString(), "--heap-budget");
+        assertResult(1);
+        assertOutput();
+        assertError("usage: luceneupgrader plan [--calibrate] [--heap-budget <bytes>] [--verify-content] " +
+                "<index dir> <version>");
+    }
+
+    @Test
+    public void testPlan_AlreadyUpgraded() {
+        run("plan", temp.toString(), "4");
+        assertResult(0);
+        assertOutput("Upgrade plan for Lucene index at: " + temp,
+                "Version 4 to 4, segments: 1, bytes: 1135",
+                "Nothing to upgrade.");
+        assertError();
+    }
+
+    @Test
+    public void testGenerate() throws Exception {
+        Path generated = temp.resolve("generated");
+        run("generate", "--documents", "50", "--features", "stored-fields,term-vectors,trie-fields",
+                "--deletions", "0.2", generated.toString(), "3");
+        assertResult(0);
+        assertOutput("Generating Lucene index at: " + generated + " in version 3...",
+                "Index generated successfully.");
+        assertError();
+        assertEquals(LuceneVersion.VERSION_3, new VersionGuesser().guess(generated));
+    }
+
+    @Test
+    public void testGenerate_NoLimit() {
+        run("generate", temp.resolve("generated").toString(), "9");
+        assertResult(1);
+        assertOutput();
+        assertError("One of --documents or --size is required");
+    }
+
+    @Test
+    public void testServe() throws Exception {
+        Path spool = Files.createTempDirectory("spool");
+        try {
+            Files.writeString(spool.resolve("a.job"), "index=" + temp.toString().replace("\\", "\\\\") + "\nversion=9\n");
+            Files.createFile(spool.resolve("stop"));
+            run("serve", "--threads", "1", spool.toString());
+            assertResult(0);
+            assertOutputStartsWith("Serving upgrade jobs from: " + spool + " with 1 threads",
+                    "Queued: a upgrading " + temp.toAbsolutePath() + " to version 9");
+            assertError();
+            assertTrue(Files.exists(spool.resolve("a.done")));
+            assertFalse(Files.exists(spool.resolve("stop")));
+            assertEquals(LuceneVersion.VERSION_9, new VersionGuesser().guess(temp));
+        } finally {
+            Utils.recursiveDeleteIfExists(spool);
+        }
+    }
+
+    @Test
+    public void testServe_SameIndex() throws Exception {
+        Path spool = Files.createTempDirectory("spool");
+        try {
+            Files.writeString(spool.resolve("a.job"), "index=" + temp.toString().replace("\\", "\\\\") + "\nversion=6\n");
+            Files.writeString(spool.resolve("b.job"), "index=" + temp.toString().replace("\\", "\\\\") + "\nversion=9\n");
+            Files.createFile(spool.resolve("stop"));
+            run("serve", "--threads", "2", spool.toString());
+            assertResult(0);
+            assertError();
+            assertTrue(Files.exists(spool.resolve("a.done")));
+            assertTrue(Files.exists(spool.resolve("b.done")));
+            assertEquals(LuceneVersion.VERSION_9, new VersionGuesser().guess(temp));
+        } finally {
+            Utils.recursiveDeleteIfExists(spool);
+        }
+    }
+
+    @Test
+    public void testServe_BadJob() throws Exception {
+        Path spool = Files.createTempDirectory("spool");
+        try {
+            Files.writeString(spool.resolve("a.job"), "version=9\n");
+            Files.createFile(spool.resolve("stop"));
+            run("serve", "--threads", "1", spool.toString());
+            assertResult(0);
+            assertError("Failed: a",
+                    "java.io.IOException: Job has no index");
+            assertTrue(Files.exists(spool.resolve("a.failed")));
+        } finally {
+            Utils.recursiveDeleteIfExists(spool);
+        }
+    }
+
+    @Test
+    public void testServe_ThreadsWithoutCount() {
+        run("serve", "--threads");
+        assertResult(1);
+        assertOutput();
+        assertError("usage: luceneupgrader serve [--threads <count>] [--heap-budget <bytes>] [--merge-heap <bytes>] " +
+                "[--verify-content] <spool dir>");
+    }
+
     @Test
     public void testUpgrade() {
         run("upgrade", temp.toString(), "6");
@@ -105,6 +359,18 @@ public class MainTest {
         assertError();
     }
 
+    @Test
+    public void testUpgrade_IOStats() {
+        run("upgrade", "--io-stats", temp.toString(), "6");
+        assertResult(0);
+        // The byte counts depend on buffer sizes, so only the start of the table is checked.
+        assertOutputStartsWith("Upgrading Lucene index at: " + temp + " to version 6...",
+                "Index upgraded successfully.",
+                "",
+                "to  before  ");
+        assertError();
+    }
+
     @Test
     public void testUpgrade_InvalidPath() {
         Path invalid = temp.resolveSibling("invalid");
@@ -144,6 +410,12 @@ public class MainTest {
         assertEquals(expected, rawOut.toString(StandardCharsets.UTF_8).trim());
     }
 
+    private void assertOutputStartsWith(String... expectedLines) {
+        String expected = String.join(System.lineSeparator(), expectedLines);
+        String actual = rawOut.toString(StandardCharsets.UTF_8);
+        assertEquals(expected, actual.substring(0, Math.min(expected.length(), actual.length())));
+    }
+
     private void assertError(String... expectedLines) {
         String expected = String.join(System.lineSeparator(), expectedLines);
         assertEquals(expected, rawErr.toString(StandardCharsets.UTF_8).trim());